@@ -89,6 +89,11 @@ public abstract class AppRenderer implements Renderer {
 	
 	private List<Touchable> touchables;
 	
+	/**
+	 * Registered cached layers, rendered before beforeRendering() if they are dirty.
+	 */
+	private List<CachedLayer> layers;
+	
 	/**
 	 * Override this constructor to create new instances.
 	 * @param savedInstance
@@ -99,6 +104,7 @@ public abstract class AppRenderer implements Renderer {
 		world = new World();
 		mapper = new TouchMapper();
 		touchables = new ArrayList<Touchable>();
+		layers = new ArrayList<CachedLayer>();
 	}
 	
 	public void setContext(Context con) {
@@ -218,6 +224,33 @@ public abstract class AppRenderer implements Renderer {
 		return touchables.remove(t);
 	}
 	
+	/**
+	 * Registers a cached layer. After that it will be rendered automatically whenever it is dirty and it will be
+	 * informed about resolution changes. It still has to be blitted by you.
+	 * @param layer cached layer to add
+	 */
+	protected void registerLayer(CachedLayer layer) {
+		layers.add(layer);
+		if (buffer != null) {
+			layer.setResolution(width, height);
+		}
+	}
+	
+	/**
+	 * Removes a cached layer and disposes its texture.
+	 * @param layer cached layer to remove
+	 * @return true if removing was successful
+	 */
+	protected boolean removeLayer(CachedLayer layer) {
+		if (!layers.remove(layer)) {
+			return false;
+		}
+		if (buffer != null) {
+			layer.dispose(buffer);
+		}
+		return true;
+	}
+	
 	/**
 	 * Creation method with garantee on existence of a frame buffer. Will be called before first call of
 	 * onResolutionChange. Will only be called one time.
@@ -288,6 +321,10 @@ public abstract class AppRenderer implements Renderer {
 		
 		update(time);
 		
+		for (int i = 0; i < layers.size(); i++) {
+			layers.get(i).render(buffer);
+		}
+		
 		beforeRendering();
 		
 		world.renderScene(buffer);
@@ -312,6 +349,10 @@ public abstract class AppRenderer implements Renderer {
 		height = y;
 		ratio = x / (float) y;
 		
+		for (int i = 0; i < layers.size(); i++) {
+			layers.get(i).setResolution(x, y);
+		}
+		
 		if (firstRun) {
 			onCreate(x, y);
 		} else {
@@ -0,0 +1,106 @@
+package info.flowersoft.gameframe;
+
+import java.util.Arrays;
+
+import com.threed.jpct.RGBColor;
+import com.threed.jpct.Texture;
+
+/**
+ * A blit list is a recorded sequence of blits, e.g. the frames, icons and static labels of a HUD. It is created by
+ * BlittingEngine.beginRecording() and endRecording() and holds the final source and destination rectangles in buffer
+ * pixels together with transparency, color and blending of every blit, so replaying it by
+ * BlittingEngine.blitList() doesn't have to look up UV coordinates, lay out text or transform coordinates again.</br>
+ *
+ * A blit list can't be changed after recording. As its coordinates are buffer pixels it has to be recorded again if
+ * the buffer or the virtual resolution changes.
+ *
+ * @author Lobby Divinus
+ */
+public class BlitList {
+	
+	/**
+	 * Number of ints per blit: source x, y, destination x, y, source width, height, destination width, height and
+	 * transparency.
+	 */
+	static final int STRIDE = 9;
+	
+	int count;
+	
+	int[] data;
+	
+	Texture[] textures;
+	
+	RGBColor[] colors;
+	
+	boolean[] additive;
+	
+	// Bounds of all destination rectangles in buffer pixels
+	int minX;
+	
+	int minY;
+	
+	int maxX;
+	
+	int maxY;
+	
+	BlitList() {
+		data = new int[STRIDE * 16];
+		textures = new Texture[16];
+		colors = new RGBColor[16];
+		additive = new boolean[16];
+		minX = Integer.MAX_VALUE;
+		minY = Integer.MAX_VALUE;
+		maxX = Integer.MIN_VALUE;
+		maxY = Integer.MIN_VALUE;
+	}
+	
+	void add(Texture tex, int sx, int sy, int dx, int dy, int sw, int sh, int dw, int dh, int trans,
+			boolean add, RGBColor color) {
+		if (count == textures.length) {
+			int size = 2 * count;
+			data = Arrays.copyOf(data, STRIDE * size);
+			textures = Arrays.copyOf(textures, size);
+			colors = Arrays.copyOf(colors, size);
+			additive = Arrays.copyOf(additive, size);
+		}
+		
+		int c = count++;
+		int d = STRIDE * c;
+		data[d] = sx;
+		data[d + 1] = sy;
+		data[d + 2] = dx;
+		data[d + 3] = dy;
+		data[d + 4] = sw;
+		data[d + 5] = sh;
+		data[d + 6] = dw;
+		data[d + 7] = dh;
+		data[d + 8] = trans;
+		textures[c] = tex;
+		colors[c] = color;
+		additive[c] = add;
+		
+		minX = Math.min(minX, Math.min(dx, dx + dw));
+		minY = Math.min(minY, Math.min(dy, dy + dh));
+		maxX = Math.max(maxX, Math.max(dx, dx + dw));
+		maxY = Math.max(maxY, Math.max(dy, dy + dh));
+	}
+	
+	void trim() {
+		data = Arrays.copyOf(data, STRIDE * count);
+		textures = Arrays.copyOf(textures, count);
+		colors = Arrays.copyOf(colors, count);
+		additive = Arrays.copyOf(additive, count);
+	}
+	
+	/**
+	 * Returns the number of recorded blits.
+	 * @return number of blits
+	 */
+	public int size() {
+		return count;
+	}
+	
+	public boolean isEmpty() {
+		return count == 0;
+	}
+}
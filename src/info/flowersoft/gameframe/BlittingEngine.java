@@ -2,12 +2,27 @@ package info.flowersoft.gameframe;
 
 import info.flowersoft.gameframe.description.FontDescription;
 import info.flowersoft.gameframe.description.ImageDescription;
+import info.flowersoft.gameframe.description.TextLayout;
+import info.flowersoft.gameframe.description.TextLayoutCache;
+
+import java.util.Arrays;
 
 import com.threed.jpct.FrameBuffer;
 import com.threed.jpct.RGBColor;
 import com.threed.jpct.Texture;
 
 public class BlittingEngine {
+	
+	/**
+	 * Number of earlier batches of a layer a batched blit may be moved back over to join a batch of its texture.
+	 */
+	private static final int MAX_BATCH_LOOKBACK = 16;
+	
+	/**
+	 * Number of blits after which batch mode flushes automatically, command and batch indices have 24 bits in the
+	 * sort key.
+	 */
+	private static final int MAX_COMMANDS = 1 << 24;
 
 	FrameBuffer buffer;
 	
@@ -33,6 +48,66 @@ public class BlittingEngine {
 	
 	int virtH;
 	
+	// Viewport transform from virtual to buffer coordinates, updated whenever the buffer or virtual resolution changes
+	float facX;
+	
+	float facY;
+	
+	boolean clipping;
+	
+	float clipX;
+	
+	float clipY;
+	
+	float clipW;
+	
+	float clipH;
+	
+	// Clip rectangle in buffer pixels, the whole buffer if clipping is disabled
+	int clipLeft;
+	
+	int clipTop;
+	
+	int clipRight;
+	
+	int clipBottom;
+	
+	int layer;
+	
+	boolean batching;
+	
+	// Recorded blits: 9 ints per command (source and destination rectangles, transparency) plus texture, color and
+	// blending, sorted by a key of layer, batch and sequence number
+	int commandCount;
+	
+	int[] commandData;
+	
+	Texture[] commandTextures;
+	
+	RGBColor[] commandColors;
+	
+	boolean[] commandAdditive;
+	
+	long[] commandKeys;
+	
+	// Batches of recorded blits with equal texture and blending: layer, bounds of the destination rectangles (left,
+	// top, right, bottom) and the texture and blending
+	int batchCount;
+	
+	int[] batchData;
+	
+	Texture[] batchTextures;
+	
+	boolean[] batchAdditive;
+	
+	BlitList recording;
+	
+	TextLayoutCache layouts;
+	
+	boolean fixedDigits;
+	
+	float[] uv;
+	
 	public BlittingEngine(FrameBuffer buf) {
 		buffer = buf;
 		trans = 15;
@@ -44,6 +119,18 @@ public class BlittingEngine {
 		virtY = 0;
 		virtW = buf.getWidth();
 		virtH = buf.getHeight();
+		updateViewport();
+		
+		commandData = new int[9 * 256];
+		commandTextures = new Texture[256];
+		commandColors = new RGBColor[256];
+		commandAdditive = new boolean[256];
+		commandKeys = new long[256];
+		batchData = new int[5 * 64];
+		batchTextures = new Texture[64];
+		batchAdditive = new boolean[64];
+		layouts = new TextLayoutCache(64);
+		uv = new float[4];
 	}
 	
 	public void setBuffer(FrameBuffer buf) {
@@ -52,6 +139,7 @@ public class BlittingEngine {
 		virtY = 0;
 		virtW = buf.getWidth();
 		virtH = buf.getHeight();
+		updateViewport();
 	}
 	
 	public FrameBuffer getBuffer() {
@@ -117,6 +205,372 @@ public class BlittingEngine {
 		virtY = y;
 		virtW = w;
 		virtH = h;
+		updateViewport();
+	}
+	
+	/**
+	 * Restricts the following blits to a rectangle of the virtual resolution, the movement isn't applied to it. Blits
+	 * outside of it are rejected before they reach the frame buffer and blits crossing its border are trimmed, so
+	 * large scrolling scenes only pay for what is visible. Without a clip rectangle blits are clipped to the buffer.
+	 * @param x left border in virtual coordinates
+	 * @param y upper border in virtual coordinates
+	 * @param w width in virtual coordinates
+	 * @param h height in virtual coordinates
+	 */
+	public void setClipping(float x, float y, float w, float h) {
+		clipping = true;
+		clipX = x;
+		clipY = y;
+		clipW = w;
+		clipH = h;
+		updateViewport();
+	}
+	
+	/**
+	 * Removes the clip rectangle, blits are only clipped to the buffer afterwards.
+	 */
+	public void resetClipping() {
+		clipping = false;
+		updateViewport();
+	}
+	
+	public boolean isClipping() {
+		return clipping;
+	}
+	
+	private void updateViewport() {
+		facX = (float) buffer.getWidth() / virtW;
+		facY = (float) buffer.getHeight() / virtH;
+		
+		clipLeft = 0;
+		clipTop = 0;
+		clipRight = buffer.getWidth();
+		clipBottom = buffer.getHeight();
+		if (clipping) {
+			clipLeft = Math.max(clipLeft, (int) ((clipX - virtX) * facX));
+			clipTop = Math.max(clipTop, (int) ((clipY - virtY) * facY));
+			clipRight = Math.min(clipRight, (int) ((clipX + clipW - virtX) * facX));
+			clipBottom = Math.min(clipBottom, (int) ((clipY + clipH - virtY) * facY));
+		}
+	}
+	
+	/**
+	 * Determines whether a rectangle would be visible within the clip rectangle if it were blitted with the current
+	 * movement. Can be used to skip invisible objects of large scenes early.
+	 * @param x position in virtual coordinates
+	 * @param y position in virtual coordinates
+	 * @param width width in virtual coordinates, the scale is applied to it
+	 * @param height height in virtual coordinates, the scale is applied to it
+	 * @return true if a part of the rectangle is visible
+	 */
+	public boolean isVisible(float x, float y, float width, float height) {
+		int px = (int) ((x - virtX + moveX) * facX);
+		int py = (int) ((y - virtY + moveY) * facY);
+		return isVisible(px, py, (int) (scaleX * width * facX), (int) (scaleY * height * facY));
+	}
+	
+	private boolean isVisible(int px, int py, int pw, int ph) {
+		if (pw < 0) {
+			px += pw;
+			pw = -pw;
+		}
+		if (ph < 0) {
+			py += ph;
+			ph = -ph;
+		}
+		return px < clipRight && py < clipBottom && px + pw > clipLeft && py + ph > clipTop;
+	}
+	
+	/**
+	 * Sets whether all digits of the following text blits should take the width of the widest digit, so numbers that
+	 * change every frame don't make their line jitter. Default is false.
+	 * @param enable true for fixed width digits
+	 */
+	public void setFixedDigits(boolean enable) {
+		fixedDigits = enable;
+	}
+	
+	public boolean hasFixedDigits() {
+		return fixedDigits;
+	}
+	
+	/**
+	 * Sets the layer of the following blits. In batch mode blits of lower layers are drawn first. Within a layer blits
+	 * are only grouped by blending and texture as far as this doesn't change the result, so overlapping blits are
+	 * always drawn in their order. Default is 0.
+	 * @param layer layer between -32768 and 32767
+	 */
+	public void setLayer(int layer) {
+		this.layer = layer;
+	}
+	
+	public int getLayer() {
+		return layer;
+	}
+	
+	/**
+	 * Starts batch mode. Blits are only recorded until end() is called, then they are drawn sorted by layer. Within a
+	 * layer a blit is moved back to an earlier blit with the same texture and blending if it doesn't overlap any blit
+	 * drawn in between, so texture switches are saved without changing the result. The search is limited to the last
+	 * few groups of a layer.
+	 */
+	public void begin() {
+		if (batching) {
+			throw new IllegalStateException("begin() has already been called");
+		}
+		batching = true;
+		commandCount = 0;
+	}
+	
+	/**
+	 * Draws all blits recorded since begin() and ends batch mode.
+	 */
+	public void end() {
+		if (!batching) {
+			throw new IllegalStateException("begin() hasn't been called");
+		}
+		flush();
+		batching = false;
+	}
+	
+	/**
+	 * Draws all blits recorded so far and stays in batch mode. Can be used to draw something between batched blits.
+	 */
+	public void flush() {
+		Arrays.sort(commandKeys, 0, commandCount);
+		for (int i = 0; i < commandCount; i++) {
+			int c = (int) (commandKeys[i] & MAX_COMMANDS - 1);
+			int d = 9 * c;
+			buffer.blit(commandTextures[c],
+					commandData[d],
+					commandData[d + 1],
+					commandData[d + 2],
+					commandData[d + 3],
+					commandData[d + 4],
+					commandData[d + 5],
+					commandData[d + 6],
+					commandData[d + 7],
+					commandData[d + 8],
+					commandAdditive[c],
+					commandColors[c]);
+			commandTextures[c] = null;
+			commandColors[c] = null;
+		}
+		commandCount = 0;
+		Arrays.fill(batchTextures, 0, batchCount, null);
+		batchCount = 0;
+	}
+	
+	public boolean isBatching() {
+		return batching;
+	}
+	
+	/**
+	 * Starts recording a blit list. The following blits aren't drawn, but their final coordinates, transparency,
+	 * color and blending are recorded until endRecording() is called. Clipping is applied when the list is replayed.
+	 */
+	public void beginRecording() {
+		if (recording != null) {
+			throw new IllegalStateException("beginRecording() has already been called");
+		}
+		recording = new BlitList();
+	}
+	
+	/**
+	 * Ends recording.
+	 * @return the blits recorded since beginRecording()
+	 */
+	public BlitList endRecording() {
+		if (recording == null) {
+			throw new IllegalStateException("beginRecording() hasn't been called");
+		}
+		BlitList list = recording;
+		recording = null;
+		list.trim();
+		return list;
+	}
+	
+	public boolean isRecording() {
+		return recording != null;
+	}
+	
+	/**
+	 * Blits a recorded blit list with its recorded transparency. In batch mode the blits are recorded with the
+	 * current layer.
+	 * @param list blit list
+	 * @param x offset in virtual coordinates, the movement is added to it
+	 * @param y offset in virtual coordinates, the movement is added to it
+	 */
+	public void blitList(BlitList list, float x, float y) {
+		blitList(list, x, y, 0, false);
+	}
+	
+	/**
+	 * Blits a recorded blit list with another transparency, e.g. to fade it in or out.
+	 * @param list blit list
+	 * @param x offset in virtual coordinates, the movement is added to it
+	 * @param y offset in virtual coordinates, the movement is added to it
+	 * @param transparency transparency of all blits of the list
+	 */
+	public void blitList(BlitList list, float x, float y, int transparency) {
+		blitList(list, x, y, transparency, true);
+	}
+	
+	private void blitList(BlitList list, float x, float y, int transparency, boolean replaceTransparency) {
+		int ox = (int) ((x + moveX) * facX);
+		int oy = (int) ((y + moveY) * facY);
+		if (list.count == 0 || (recording == null && !isVisible(list.minX + ox, list.minY + oy,
+				list.maxX - list.minX, list.maxY - list.minY))) {
+			return;
+		}
+		
+		// The state used by blit() is replaced by the recorded one for every blit
+		int oldTrans = trans;
+		boolean oldAdditive = addivitve;
+		RGBColor oldColor = color;
+		int[] data = list.data;
+		for (int i = 0; i < list.count; i++) {
+			int d = BlitList.STRIDE * i;
+			trans = replaceTransparency ? transparency : data[d + 8];
+			addivitve = list.additive[i];
+			color = list.colors[i];
+			blit(list.textures[i],
+					data[d],
+					data[d + 1],
+					data[d + 2] + ox,
+					data[d + 3] + oy,
+					data[d + 4],
+					data[d + 5],
+					data[d + 6],
+					data[d + 7]);
+		}
+		trans = oldTrans;
+		addivitve = oldAdditive;
+		color = oldColor;
+	}
+	
+	private void blit(Texture tex, int sx, int sy, int dx, int dy, int sw, int sh, int dw, int dh) {
+		if (recording != null) {
+			recording.add(tex, sx, sy, dx, dy, sw, sh, dw, dh, trans, addivitve, color);
+			return;
+		}
+		
+		if (dw <= 0 || dh <= 0) {
+			// Mirrored blits are only culled, not trimmed
+			if (dw == 0 || dh == 0 || !isVisible(dx, dy, dw, dh)) {
+				return;
+			}
+		} else {
+			if (dx >= clipRight || dy >= clipBottom || dx + dw <= clipLeft || dy + dh <= clipTop) {
+				return;
+			}
+			
+			// Trim the destination rectangle to the clip rectangle and the source rectangle proportionally
+			if (dx < clipLeft) {
+				int cut = (int) ((float) (clipLeft - dx) * sw / dw);
+				sx += cut;
+				sw -= cut;
+				dw -= clipLeft - dx;
+				dx = clipLeft;
+			}
+			if (dy < clipTop) {
+				int cut = (int) ((float) (clipTop - dy) * sh / dh);
+				sy += cut;
+				sh -= cut;
+				dh -= clipTop - dy;
+				dy = clipTop;
+			}
+			if (dx + dw > clipRight) {
+				int cut = (int) ((float) (dx + dw - clipRight) * sw / dw);
+				sw -= cut;
+				dw = clipRight - dx;
+			}
+			if (dy + dh > clipBottom) {
+				int cut = (int) ((float) (dy + dh - clipBottom) * sh / dh);
+				sh -= cut;
+				dh = clipBottom - dy;
+			}
+		}
+		
+		if (!batching) {
+			buffer.blit(tex, sx, sy, dx, dy, sw, sh, dw, dh, trans, addivitve, color);
+			return;
+		}
+		
+		if (commandCount == MAX_COMMANDS) {
+			flush();
+		}
+		if (commandCount == commandTextures.length) {
+			int size = 2 * commandCount;
+			commandData = Arrays.copyOf(commandData, 9 * size);
+			commandTextures = Arrays.copyOf(commandTextures, size);
+			commandColors = Arrays.copyOf(commandColors, size);
+			commandAdditive = Arrays.copyOf(commandAdditive, size);
+			commandKeys = Arrays.copyOf(commandKeys, size);
+		}
+		
+		int c = commandCount++;
+		int d = 9 * c;
+		commandData[d] = sx;
+		commandData[d + 1] = sy;
+		commandData[d + 2] = dx;
+		commandData[d + 3] = dy;
+		commandData[d + 4] = sw;
+		commandData[d + 5] = sh;
+		commandData[d + 6] = dw;
+		commandData[d + 7] = dh;
+		commandData[d + 8] = trans;
+		commandTextures[c] = tex;
+		commandColors[c] = color;
+		commandAdditive[c] = addivitve;
+		
+		// Batches are numbered in creation order and the index of the command is the lowest part of the key, so
+		// blits keep their order within a batch and batches keep their order within a layer
+		long key = (long) ((layer + 32768) & 0xffff) << 48;
+		key |= (long) getBatch(tex, Math.min(dx, dx + dw), Math.min(dy, dy + dh), Math.max(dx, dx + dw),
+				Math.max(dy, dy + dh)) << 24;
+		commandKeys[c] = key | c;
+	}
+	
+	private int getBatch(Texture tex, int left, int top, int right, int bottom) {
+		// Look for a batch with equal texture and blending, which the blit may only join if it doesn't overlap
+		// anything drawn after that batch
+		int searched = 0;
+		for (int b = batchCount - 1; b >= 0 && searched < MAX_BATCH_LOOKBACK; b--) {
+			int d = 5 * b;
+			if (batchData[d] != layer) {
+				continue;
+			}
+			if (batchTextures[b] == tex && batchAdditive[b] == addivitve) {
+				batchData[d + 1] = Math.min(batchData[d + 1], left);
+				batchData[d + 2] = Math.min(batchData[d + 2], top);
+				batchData[d + 3] = Math.max(batchData[d + 3], right);
+				batchData[d + 4] = Math.max(batchData[d + 4], bottom);
+				return b;
+			}
+			if (left < batchData[d + 3] && top < batchData[d + 4] && right > batchData[d + 1]
+					&& bottom > batchData[d + 2]) {
+				break;
+			}
+			searched++;
+		}
+		
+		if (batchCount == batchTextures.length) {
+			int size = 2 * batchCount;
+			batchData = Arrays.copyOf(batchData, 5 * size);
+			batchTextures = Arrays.copyOf(batchTextures, size);
+			batchAdditive = Arrays.copyOf(batchAdditive, size);
+		}
+		int b = batchCount++;
+		int d = 5 * b;
+		batchData[d] = layer;
+		batchData[d + 1] = left;
+		batchData[d + 2] = top;
+		batchData[d + 3] = right;
+		batchData[d + 4] = bottom;
+		batchTextures[b] = tex;
+		batchAdditive[b] = addivitve;
+		return b;
 	}
 	
 	public void blitImage(ImageDescription img, int x, int y) {
@@ -132,59 +586,93 @@ public class BlittingEngine {
 	}
 	
 	public void blitImage(ImageDescription img, int x, int y, int width, int height, int frame) {
+		int px = (int) ((x - virtX + moveX) * facX);
+		int py = (int) ((y - virtY + moveY) * facY);
+		int pw = (int) (scaleX * width * facX);
+		int ph = (int) (scaleY * height * facY);
+		if (recording == null && !isVisible(px, py, pw, ph)) {
+			return;
+		}
+		
 		Texture tex = img.getTextureObj();
 		int w = tex.getWidth();
 		int h = tex.getHeight();
-		float[] uv = img.getUVCoords(frame);
+		img.getUVCoords(frame, uv, 0);
 		
-		int px = (int) ((x - virtX + moveX) * (buffer.getWidth() / virtW));
-		int py = (int) ((y - virtY + moveY) * (buffer.getHeight() / virtH));
-		
-		buffer.blit(tex,
+		blit(tex,
 				(int) (uv[0] * w),
 				(int) (uv[1] * h),
 				px,
 				py,
 				(int) ((uv[2] - uv[0]) * w),
 				(int) ((uv[3] - uv[1]) * h),
-				(int) (scaleX * width),
-				(int) (scaleY * height),
-				trans,
-				addivitve,
-				color);
+				pw,
+				ph);
 	}
 	
-	public void blitTextLine(FontDescription font, String text, int x, int y) {
-		Texture tex = font.getTextureObj();
-		int w = tex.getWidth();
-		int h = tex.getHeight();
-		
-		int px = x;
-		int py = y;
+	/**
+	 * Blits the texture of a cached layer in its original size in pixels, so a layer covering the whole buffer fits
+	 * exactly at position 0, 0. Does nothing if the layer hasn't been rendered yet. Can't be recorded into a blit
+	 * list, as the layer replaces its texture when its size changes.
+	 * @param layer cached layer
+	 * @param x position in virtual coordinates
+	 * @param y position in virtual coordinates
+	 */
+	public void blitLayer(CachedLayer layer, float x, float y) {
+		if (recording != null) {
+			throw new IllegalStateException("Cached layers can't be recorded into a blit list");
+		}
+		Texture tex = layer.getTexture();
+		if (tex == null) {
+			return;
+		}
+		int w = layer.getWidth();
+		int h = layer.getHeight();
+		blit(tex, 0, 0, (int) ((x - virtX + moveX) * facX), (int) ((y - virtY + moveY) * facY), w, h, w, h);
+	}
+	
+	/**
+	 * Blits a line of text. The layout of the text is cached, so drawing the same text with the same font and scale
+	 * again only needs to position the glyphs. Numbers can be formatted by a TextBuilder, so no strings have to be
+	 * created for them.
+	 * @param font font to use
+	 * @param text line of text
+	 * @param x position of the line
+	 * @param y position of the line
+	 */
+	public void blitTextLine(FontDescription font, CharSequence text, int x, int y) {
+		blitTextLayout(layouts.get(font, text, scaleX, scaleY, fixedDigits), x, y);
+	}
+	
+	/**
+	 * Blits a line of text that has been laid out before. The scale of the layout is used instead of the current
+	 * scale.
+	 * @param layout layout of the text
+	 * @param x position of the line
+	 * @param y position of the line
+	 */
+	public void blitTextLayout(TextLayout layout, int x, int y) {
+		Texture tex = layout.getFont().getTextureObj();
+		int[] glyphs = layout.getGlyphData();
+		float[] sizes = layout.getGlyphSizes();
+		int py = (int) ((y - virtY + moveY) * facY);
+		float lineHeight = layout.getHeight() * facY;
+		if (recording == null
+				&& (Math.min(py, py + lineHeight) >= clipBottom || Math.max(py, py + lineHeight) <= clipTop)) {
+			return;
+		}
 		
-		for (int i = 0; i < text.length(); i++) {
-			char c = text.charAt(i);
-			float[] uv = font.getUVCoords(c);
-			
-			if (uv != null) {
-				float gw = font.getGlyphWidth(c);
-				float gh = font.getGlyphHeight(c);
-				
-				buffer.blit(tex,
-						(int) (uv[0] * w),
-						(int) (uv[1] * h),
-						(int) ((px - virtX + moveX) * (buffer.getWidth() / virtW)),
-						(int) ((py - virtY + moveY) * (buffer.getHeight() / virtH)),
-						(int) ((uv[2] - uv[0]) * w),
-						(int) ((uv[3] - uv[1]) * h),
-						(int) (scaleX * gw * (buffer.getWidth() / virtW)),
-						(int) (scaleY * gh * (buffer.getHeight() / virtH)),
-						trans,
-						addivitve,
-						color);
-				
-				px += (int) (scaleX * (gw + font.getHorizontalSpacing()));
-			}
+		for (int i = 0; i < layout.getGlyphCount(); i++) {
+			int g = TextLayout.GLYPH_STRIDE * i;
+			blit(tex,
+					glyphs[g],
+					glyphs[g + 1],
+					(int) ((x + glyphs[g + 4] - virtX + moveX) * facX),
+					py,
+					glyphs[g + 2],
+					glyphs[g + 3],
+					(int) (sizes[2 * i] * facX),
+					(int) (sizes[2 * i + 1] * facY));
 		}
 	}
-}
+}
\ No newline at end of file
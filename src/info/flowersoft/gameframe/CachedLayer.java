@@ -0,0 +1,258 @@
+package info.flowersoft.gameframe;
+
+import info.flowersoft.gameframe.description.ImageDescription;
+
+import com.threed.jpct.FrameBuffer;
+import com.threed.jpct.RGBColor;
+import com.threed.jpct.Texture;
+import com.threed.jpct.TextureManager;
+import com.threed.jpct.World;
+
+/**
+ * A cached layer renders static UI like a complex menu once into an offscreen texture, which is then drawn by a
+ * single blit every frame by BlittingEngine.blitLayer(). Its content are the shapes of an own world, e.g. one used
+ * by a ShapeFactory, and blits done by a content renderer. The content is rendered again only if the layer has been
+ * marked dirty by invalidate() or the resolution has changed.</br>
+ *
+ * Layers registered at the AppRenderer are rendered before beforeRendering() is called and informed about
+ * resolution changes automatically. The dirty state and the decision whether render() has to draw don't depend on
+ * the GPU, only draw() and dispose() do.
+ *
+ * @author Lobby Divinus
+ */
+public class CachedLayer {
+	
+	/**
+	 * Color the texture is cleared with before the content is rendered.
+	 */
+	private static final RGBColor CLEAR_COLOR = new RGBColor(0, 0, 0, 0);
+	
+	/**
+	 * Renders the blits of a layer.
+	 */
+	public interface ILayerContent {
+		
+		/**
+		 * Called when the layer is rendered. The buffer renders into the texture of the layer while this method is
+		 * running, so a BlittingEngine using it must not be in batch mode anymore when this method returns.
+		 * @param buffer frame buffer to blit on
+		 */
+		void render(FrameBuffer buffer);
+	}
+	
+	private String name;
+	
+	private boolean fixedSize;
+	
+	private int width;
+	
+	private int height;
+	
+	private World world;
+	
+	private ILayerContent content;
+	
+	private boolean dirty;
+	
+	private int renderCount;
+	
+	private Texture texture;
+	
+	private ImageDescription image;
+	
+	/**
+	 * Creates a new cached layer that covers the whole frame buffer. It has no size until setResolution() is called,
+	 * which the AppRenderer does for registered layers.
+	 * @param name texture name to use for the layer
+	 */
+	public CachedLayer(String name) {
+		this.name = name;
+		dirty = true;
+	}
+	
+	/**
+	 * Creates a new cached layer of a fixed size.
+	 * @param name texture name to use for the layer
+	 * @param width width of the layer in pixels
+	 * @param height height of the layer in pixels
+	 */
+	public CachedLayer(String name, int width, int height) {
+		this(name);
+		fixedSize = true;
+		this.width = width;
+		this.height = height;
+	}
+	
+	/**
+	 * Sets a world whose objects are rendered into the layer before the content renderer is called. Marks the layer
+	 * as dirty.
+	 * @param w world to render or null
+	 */
+	public void setWorld(World w) {
+		world = w;
+		dirty = true;
+	}
+	
+	public World getWorld() {
+		return world;
+	}
+	
+	/**
+	 * Sets the renderer for the blits of the layer. Marks the layer as dirty.
+	 * @param c content renderer or null
+	 */
+	public void setContent(ILayerContent c) {
+		content = c;
+		dirty = true;
+	}
+	
+	public ILayerContent getContent() {
+		return content;
+	}
+	
+	/**
+	 * Marks the layer as dirty, so it is rendered again by the next call of render(). Has to be called whenever a
+	 * shape or blit of the layer changes.
+	 */
+	public void invalidate() {
+		dirty = true;
+	}
+	
+	/**
+	 * Informs the layer about a new frame buffer resolution. Layers without a fixed size take it as their size. The
+	 * layer is marked as dirty in any case, because the content of the texture may be lost with the old surface.
+	 * @param w buffer width in pixels
+	 * @param h buffer height in pixels
+	 */
+	public void setResolution(int w, int h) {
+		if (!fixedSize) {
+			width = w;
+			height = h;
+		}
+		dirty = true;
+	}
+	
+	/**
+	 * Determines whether the next call of render() will render the content.
+	 * @return true if the layer is dirty and has a size
+	 */
+	public boolean needsRendering() {
+		return dirty && width > 0 && height > 0;
+	}
+	
+	public boolean isDirty() {
+		return dirty;
+	}
+	
+	/**
+	 * Renders the content into the texture of the layer if it is dirty, clean layers are skipped.
+	 * @param buffer frame buffer to render with
+	 * @return true if the content has been rendered
+	 */
+	public boolean render(FrameBuffer buffer) {
+		if (!needsRendering()) {
+			return false;
+		}
+		draw(buffer);
+		dirty = false;
+		renderCount++;
+		return true;
+	}
+	
+	/**
+	 * Draws the content into the texture of the layer. The texture is created or replaced if its size doesn't match
+	 * the size of the layer.
+	 * @param buffer frame buffer to render with
+	 */
+	protected void draw(FrameBuffer buffer) {
+		if (texture == null || texture.getWidth() != width || texture.getHeight() != height) {
+			createTexture(buffer);
+		}
+		
+		buffer.setRenderTarget(texture);
+		buffer.clear(CLEAR_COLOR);
+		if (world != null) {
+			world.renderScene(buffer);
+			world.draw(buffer);
+		}
+		if (content != null) {
+			content.render(buffer);
+		}
+		buffer.display();
+		buffer.removeRenderTarget();
+	}
+	
+	private void createTexture(FrameBuffer buffer) {
+		Texture old = texture;
+		texture = new Texture(width, height);
+		texture.setMipmap(false);
+		texture.setClamping(true);
+		TextureManager mgr = TextureManager.getInstance();
+		if (mgr.containsTexture(name)) {
+			mgr.replaceTexture(name, texture);
+		} else {
+			mgr.addTexture(name, texture);
+		}
+		if (old != null) {
+			mgr.unloadTexture(buffer, old);
+		}
+		
+		image = new ImageDescription(name, true, true);
+	}
+	
+	/**
+	 * Returns how often the content has been rendered so far.
+	 * @return number of renderings
+	 */
+	public int getRenderCount() {
+		return renderCount;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Returns the texture of the layer.
+	 * @return texture or null if the layer hasn't been rendered yet
+	 */
+	public Texture getTexture() {
+		return texture;
+	}
+	
+	/**
+	 * Returns an image description containing the whole layer as frame 0.
+	 * @return image description or null if the layer hasn't been rendered yet
+	 */
+	public ImageDescription getImage() {
+		return image;
+	}
+	
+	/**
+	 * Returns the texture name of the layer.
+	 * @return texture name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Unloads the texture from the GPU and removes it from the TextureManager. The layer is rendered into a new
+	 * texture if it is used again.
+	 * @param buffer frame buffer the texture has been used with
+	 */
+	public void dispose(FrameBuffer buffer) {
+		if (texture != null) {
+			TextureManager mgr = TextureManager.getInstance();
+			mgr.unloadTexture(buffer, texture);
+			mgr.removeTexture(name);
+			texture = null;
+			image = null;
+			dirty = true;
+		}
+	}
+}
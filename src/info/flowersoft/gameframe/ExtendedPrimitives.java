@@ -1,7 +1,8 @@
 package info.flowersoft.gameframe;
 
-import com.threed.jpct.GenericVertexController;
-import com.threed.jpct.IVertexController;
+import info.flowersoft.gameframe.mesh.CircleTable;
+import info.flowersoft.gameframe.mesh.MeshBuilder;
+
 import com.threed.jpct.Object3D;
 import com.threed.jpct.PolygonManager;
 import com.threed.jpct.SimpleVector;
@@ -155,66 +156,68 @@ public final class ExtendedPrimitives {
 	 * @return the created cylinder
 	 */
 	public static Object3D createCylinder(float radius, float height, int quads, boolean caps) {
+		return buildCylinder(radius, height, quads, caps).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a cylinder without creating an Object3D, so it can be done on any thread.
+	 * See createCylinder() for details.
+	 * @param radius of the cylinder
+	 * @param height of the cylinder along Y-Axis
+	 * @param quads The number of quads that should be used for the cylinder. Don't use more quads than you need!
+	 * @param caps if false the cylinder won't have caps an the ends
+	 * @return mesh builder containing the cylinder
+	 */
+	public static MeshBuilder buildCylinder(float radius, float height, int quads, boolean caps) {
+		int vertices = 2 * (quads + 1);
 		int triangles = 2 * quads;
 		if (caps) {
+			vertices += 2 * quads;
 			triangles += 2 * quads - 4;
 		}
-		Object3D obj = new Object3D(triangles);
+		MeshBuilder builder = new MeshBuilder(vertices, triangles);
 		
-		SimpleVector[] topV = new SimpleVector[quads];
-		SimpleVector[] bottomV = new SimpleVector[quads];
-		
-		// Prepare vertices
 		float halfHeight = height / 2;
-		float angle = 0;
-		float angleStep = (float) (2 * Math.PI / quads);
-		float x;
-		float y;
-		for (int i = 0; i < quads; i++) {
-			x = (float) Math.cos(angle);
-			y = (float) Math.sin(angle);
-			
-			topV[i] = new SimpleVector(radius * x, -halfHeight, radius * y);
-			bottomV[i] = new SimpleVector(radius * x, halfHeight, radius * y);
-			
-			angle += angleStep;
-		}
+		CircleTable circle = CircleTable.get(quads);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
 		
 		// Add caps if wanted
 		if (caps) {
-			angle = angleStep + angleStep;
-			float u0 = 0.5f + 0.5f * (float) Math.cos(0);
-			float v0 = 0.5f - 0.5f * (float) Math.sin(0);
-			float u1 = 0.5f + 0.5f * (float) Math.cos(angleStep);
-			float v1 = 0.5f - 0.5f * (float) Math.sin(angleStep);
-			float u2 = 0.5f + 0.5f * (float) Math.cos(angle);
-			float v2 = 0.5f - 0.5f * (float) Math.sin(angle);
+			int top = builder.getVertexCount();
+			for (int i = 0; i < quads; i++) {
+				float x = cos[i];
+				float y = sin[i];
+				builder.addVertex(radius * x, -halfHeight, radius * y, 0f, -1f, 0f, 0.5f + 0.5f * x, 0.5f - 0.5f * y);
+			}
+			int bottom = builder.getVertexCount();
+			for (int i = 0; i < quads; i++) {
+				float x = cos[i];
+				float y = sin[i];
+				builder.addVertex(radius * x, halfHeight, radius * y, 0f, 1f, 0f, 0.5f - 0.5f * x, 0.5f - 0.5f * y);
+			}
 			for (int i = 1; i + 1 < quads; i++) {
-				u2 = 0.5f + 0.5f * (float) Math.cos(angle);
-				v2 = 0.5f - 0.5f * (float) Math.sin(angle);
-				
-				obj.addTriangle(topV[0], u0, v0, topV[i], u1, v1, topV[i + 1], u2, v2);
-				obj.addTriangle(bottomV[0], 1f - u0, v0, bottomV[i + 1], 1f - u2, v2, bottomV[i], 1f - u1, v1);
-				
-				u1 = u2;
-				v1 = v2;
-				
-				angle += angleStep;
+				builder.addTriangle(top, top + i, top + i + 1);
+				builder.addTriangle(bottom, bottom + i + 1, bottom + i);
 			}
 		}
 		
-		// Add round faces
-		float u = 0;
+		// Add round faces, first and last column share their position but not their uv coords
+		int side = builder.getVertexCount();
 		float uStep = 2f / quads;
+		for (int i = 0; i <= quads; i++) {
+			float x = cos[i];
+			float y = sin[i];
+			builder.addVertex(radius * x, -halfHeight, radius * y, x, 0f, y, i * uStep, 0f);
+			builder.addVertex(radius * x, halfHeight, radius * y, x, 0f, y, i * uStep, 1f);
+		}
 		for (int i = 0; i < quads; i++) {
-			obj.addTriangle(topV[i], u, 0f, bottomV[i], u, 1f, topV[(i + 1) % quads], u + uStep, 0f);
-			obj.addTriangle(
-					topV[(i + 1) % quads], u + uStep, 0f, bottomV[i], u, 1f, bottomV[(i + 1) % quads], u + uStep, 1f);
-			
-			u += uStep;
+			int t = side + 2 * i;
+			builder.addTriangle(t, t + 1, t + 2);
+			builder.addTriangle(t + 2, t + 1, t + 3);
 		}
 		
-		return obj;
+		return builder;
 	}
 	
 	/**
@@ -235,63 +238,65 @@ public final class ExtendedPrimitives {
 	 * @return the created cone
 	 */
 	public static Object3D createCone(float radius, float height, int faces, boolean cap) {
+		return buildCone(radius, height, faces, cap).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a cone without creating an Object3D, so it can be done on any thread.
+	 * See createCone() for details.
+	 * @param radius of the cone
+	 * @param height of the cone along the Y-Axis
+	 * @param faces Number of faces that should be used. Don't use more faces than you need!
+	 * @param cap If false the cone won't have a ground.
+	 * @return mesh builder containing the cone
+	 */
+	public static MeshBuilder buildCone(float radius, float height, int faces, boolean cap) {
+		int vertices = 2 * faces + 1;
 		int triangles = faces;
 		if (cap) {
+			vertices += faces;
 			triangles += faces - 2;
 		}
-		Object3D obj = new Object3D(triangles);
+		MeshBuilder builder = new MeshBuilder(vertices, triangles);
 		
 		float halfHeight = height / 2;
-		
-		SimpleVector topV = new SimpleVector(0, -halfHeight, 0);
-		SimpleVector[] bottomV = new SimpleVector[faces];
-		
-		// Prepare vertices
-		float angle = 0;
-		float angleStep = (float) (2 * Math.PI / faces);
-		float x;
-		float y;
-		for (int i = 0; i < faces; i++) {
-			x = (float) Math.cos(angle);
-			y = (float) Math.sin(angle);
-			
-			bottomV[i] = new SimpleVector(radius * x, halfHeight, radius * y);
-			
-			angle += angleStep;
-		}
+		CircleTable circle = CircleTable.get(faces);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
 		
 		// Add cap if wanted
 		if (cap) {
-			angle = angleStep + angleStep;
-			float u0 = 0.5f + 0.5f * (float) Math.cos(0);
-			float v0 = 0.5f - 0.5f * (float) Math.sin(0);
-			float u1 = 0.5f + 0.5f * (float) Math.cos(angleStep);
-			float v1 = 0.5f - 0.5f * (float) Math.sin(angleStep);
-			float u2 = 0.5f + 0.5f * (float) Math.cos(angle);
-			float v2 = 0.5f - 0.5f * (float) Math.sin(angle);
+			int bottom = builder.getVertexCount();
+			for (int i = 0; i < faces; i++) {
+				float x = cos[i];
+				float y = sin[i];
+				builder.addVertex(radius * x, halfHeight, radius * y, 0f, 1f, 0f, 0.5f - 0.5f * x, 0.5f - 0.5f * y);
+			}
 			for (int i = 1; i + 1 < faces; i++) {
-				u2 = 0.5f + 0.5f * (float) Math.cos(angle);
-				v2 = 0.5f - 0.5f * (float) Math.sin(angle);
-				
-				obj.addTriangle(bottomV[0], 1f - u0, v0, bottomV[i + 1], 1f - u2, v2, bottomV[i], 1f - u1, v1);
-				
-				u1 = u2;
-				v1 = v2;
-				
-				angle += angleStep;
+				builder.addTriangle(bottom, bottom + i + 1, bottom + i);
 			}
 		}
 		
-		// Add round faces
-		float u = 0;
+		// Add round faces, every face gets its own top vertex because of different uv coords
+		float slant = (float) Math.sqrt(height * height + radius * radius);
+		float nh = height / slant;
+		float ny = -radius / slant;
 		float uStep = 2f / faces;
+		int ring = builder.getVertexCount();
+		for (int i = 0; i <= faces; i++) {
+			float x = cos[i];
+			float y = sin[i];
+			builder.addVertex(radius * x, halfHeight, radius * y, nh * x, ny, nh * y, i * uStep, 1f);
+		}
+		CircleTable halfSteps = CircleTable.get(2 * faces);
 		for (int i = 0; i < faces; i++) {
-			obj.addTriangle(topV, u + uStep / 2, 0f, bottomV[i], u, 1f, bottomV[(i + 1) % faces], u + uStep, 1f);
-			
-			u += uStep;
+			float x = halfSteps.getCos()[2 * i + 1];
+			float y = halfSteps.getSin()[2 * i + 1];
+			int top = builder.addVertex(0f, -halfHeight, 0f, nh * x, ny, nh * y, (i + 0.5f) * uStep, 0f);
+			builder.addTriangle(top, ring + i, ring + i + 1);
 		}
 		
-		return obj;
+		return builder;
 	}
 	
 	/**
@@ -330,22 +335,34 @@ public final class ExtendedPrimitives {
 	 * @return created sprite
 	 */
 	public static Object3D createSprite(float width, float height) {
-		Object3D obj = new Object3D(2);
+		Object3D obj = buildSprite(width, height).toObject3D();
+		obj.setBillboarding(Object3D.BILLBOARDING_ENABLED);
+		
+		return obj; 
+	}
+	
+	/**
+	 * Creates the mesh of a sprite without creating an Object3D, so it can be done on any thread.
+	 * See createSprite() for details.
+	 * @param width of the sprite
+	 * @param height of the sprite
+	 * @return mesh builder containing the sprite
+	 */
+	public static MeshBuilder buildSprite(float width, float height) {
+		MeshBuilder builder = new MeshBuilder(4, 2);
 		
 		float halfWidth = width / 2;
 		float halfHeight = height / 2;
 		
-		SimpleVector v0 = new SimpleVector(-halfWidth, -halfHeight, 0);
-		SimpleVector v1 = new SimpleVector(halfWidth, -halfHeight, 0);
-		SimpleVector v2 = new SimpleVector(-halfWidth, halfHeight, 0);
-		SimpleVector v3 = new SimpleVector(halfWidth, halfHeight, 0);
+		int v0 = builder.addVertex(-halfWidth, -halfHeight, 0, 0f, 0f, -1f, 0f, 0f);
+		int v1 = builder.addVertex(halfWidth, -halfHeight, 0, 0f, 0f, -1f, 1f, 0f);
+		int v2 = builder.addVertex(-halfWidth, halfHeight, 0, 0f, 0f, -1f, 0f, 1f);
+		int v3 = builder.addVertex(halfWidth, halfHeight, 0, 0f, 0f, -1f, 1f, 1f);
 		
-		obj.addTriangle(v0, 0f, 0f, v2, 0f, 1f, v1, 1f, 0f);
-		obj.addTriangle(v1, 1f, 0f, v2, 0f, 1f, v3, 1f, 1f);
+		builder.addTriangle(v0, v2, v1);
+		builder.addTriangle(v1, v2, v3);
 		
-		obj.setBillboarding(Object3D.BILLBOARDING_ENABLED);
-		
-		return obj; 
+		return builder;
 	}
 	
 	/**
@@ -374,30 +391,40 @@ public final class ExtendedPrimitives {
 	 * @return the created plane
 	 */
 	public static Object3D createPlane(float size, int quads) {
-		Object3D obj = new Object3D(2 * quads * quads);
+		return buildPlane(size, quads).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a plane without creating an Object3D, so it can be done on any thread.
+	 * See createPlane() for details.
+	 * @param size of the quads
+	 * @param quads Number of quads at each edge.
+	 * @return mesh builder containing the plane
+	 */
+	public static MeshBuilder buildPlane(float size, int quads) {
+		MeshBuilder builder = new MeshBuilder((quads + 1) * (quads + 1), 2 * quads * quads);
 		
 		// Prepare vertices
-		SimpleVector[][] v = new SimpleVector[quads + 1][quads + 1];
+		float scale = 1f / quads;
 		for (int x = 0; x <= quads; x++) {
 			for (int y = 0; y <= quads; y++) {
-				v[x][y] = new SimpleVector(size * (x - quads / 2f), 0f, size * (y - quads / 2f));
+				builder.addVertex(size * (x - quads / 2f), 0f, size * (y - quads / 2f),
+						0f, -1f, 0f,
+						scale * x, scale * (quads - y));
 			}
 		}
 		
 		// Create quads
-		float scale = 1f / quads;
 		for (int x = 0; x < quads; x++) {
 			for (int y = 0; y < quads; y++) {
-				obj.addTriangle(v[x][y + 1], scale * x, scale * (quads - y - 1),
-						v[x][y], scale * x, scale * (quads - y),
-						v[x + 1][y + 1], scale * (x + 1), scale * (quads - y - 1));
-				obj.addTriangle(v[x + 1][y + 1], scale * (x + 1), scale * (quads - y - 1),
-						v[x][y], scale * x, scale * (quads - y),
-						v[x + 1][y], scale * (x + 1), scale * (quads - y));
+				int v = x * (quads + 1) + y;
+				int right = v + quads + 1;
+				builder.addTriangle(v + 1, v, right + 1);
+				builder.addTriangle(right + 1, v, right);
 			}
 		}
 		
-		return obj;
+		return builder;
 	}
 	
 	/**
@@ -420,42 +447,53 @@ public final class ExtendedPrimitives {
 	 * @return the created torus
 	 */
 	public static Object3D createTorus(float radius, float pipeRadius, int lengthQuads, int pipeQuads) {
-		Object3D obj = new Object3D(2 * lengthQuads * pipeQuads);
+		return buildTorus(radius, pipeRadius, lengthQuads, pipeQuads).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a torus without creating an Object3D, so it can be done on any thread.
+	 * See createTorus() for details.
+	 * @param radius Radius of a imaginary circle the torus should contain.
+	 * @param pipeRadius Radius of the pipe.
+	 * @param lengthQuads Number of quads that should be used along the pipe.
+	 * @param pipeQuads Number of quads that should be used the pipe round.
+	 * @return mesh builder containing the torus
+	 */
+	public static MeshBuilder buildTorus(float radius, float pipeRadius, int lengthQuads, int pipeQuads) {
+		MeshBuilder builder = new MeshBuilder((lengthQuads + 1) * (pipeQuads + 1), 2 * lengthQuads * pipeQuads);
 		
-		// Prepare vertices
-		SimpleVector[][] v = new SimpleVector[lengthQuads][pipeQuads];
-		for (int i = 0; i < pipeQuads; i++) {
-			double ringAngle = 2 * Math.PI * i / pipeQuads + Math.PI;
-			float ringRadius = (float) (radius + pipeRadius * Math.cos(ringAngle));
-			float y = (float) (pipeRadius * Math.sin(ringAngle));
-			float angle = 0f;
-			float angleStep = (float) (2 * Math.PI / lengthQuads);
-			for (int j = 0; j < lengthQuads; j++) {
-				v[j][i] = new SimpleVector(ringRadius * Math.cos(angle), y, ringRadius * Math.sin(angle));
-				angle += angleStep;
+		// Prepare vertices, first and last ring/column share their position but not their uv coords
+		float uStep = 1f / lengthQuads;
+		float vStep = 1f / pipeQuads;
+		CircleTable circle = CircleTable.get(lengthQuads);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
+		CircleTable pipe = CircleTable.get(pipeQuads);
+		for (int i = 0; i <= pipeQuads; i++) {
+			// The pipe starts at its inner side, half a turn from the table's first angle
+			float ringCos = -pipe.getCos()[i];
+			float ringSin = -pipe.getSin()[i];
+			float ringRadius = radius + pipeRadius * ringCos;
+			float y = pipeRadius * ringSin;
+			for (int j = 0; j <= lengthQuads; j++) {
+				float x = cos[j];
+				float z = sin[j];
+				builder.addVertex(ringRadius * x, y, ringRadius * z, ringCos * x, ringSin, ringCos * z,
+						j * uStep, i * vStep);
 			}
 		}
 		
 		// Create quads
-		float uC = 0f;
-		float vC = 0f;
-		float uStep = 1f / lengthQuads;
-		float vStep = 1f / pipeQuads;
+		int row = lengthQuads + 1;
 		for (int i = 0; i < pipeQuads; i++) {
-			uC = 0f;
 			for (int j = 0; j < lengthQuads; j++) {
-				obj.addTriangle(v[j][i], uC, vC,
-						v[j][(i + 1) % pipeQuads], uC, vC + vStep,
-						v[(j + 1) % lengthQuads][i], uC + uStep, vC);
-				obj.addTriangle(v[(j + 1) % lengthQuads][i], uC + uStep, vC,
-						v[j][(i + 1) % pipeQuads], uC, vC + vStep,
-						v[(j + 1) % lengthQuads][(i + 1) % pipeQuads], uC + uStep, vC + vStep);
-				uC += uStep;
+				int v = i * row + j;
+				builder.addTriangle(v, v + row, v + 1);
+				builder.addTriangle(v + 1, v + row, v + row + 1);
 			}
-			vC += vStep;
 		}
 		
-		return obj;
+		return builder;
 	}
 	
 	/**
@@ -482,29 +520,48 @@ public final class ExtendedPrimitives {
 	 * @return the created pyramid
 	 */
 	public static Object3D createPyramid(float size, float height) {
-		Object3D obj = new Object3D(6);
+		return buildPyramid(size, height).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a pyramid without creating an Object3D, so it can be done on any thread.
+	 * See createPyramid() for details.
+	 * @param size of the ground of the pyramid
+	 * @param height of the pyramid
+	 * @return mesh builder containing the pyramid
+	 */
+	public static MeshBuilder buildPyramid(float size, float height) {
+		MeshBuilder builder = new MeshBuilder(16, 6);
 		
 		float halfSize = size / 2;
 		float halfHeight = height / 2;
 		
-		// Prepare vertices
-		SimpleVector v0 = new SimpleVector(halfSize, halfHeight, halfSize);
-		SimpleVector v1 = new SimpleVector(-halfSize, halfHeight, halfSize);
-		SimpleVector v2 = new SimpleVector(halfSize, halfHeight, -halfSize);
-		SimpleVector v3 = new SimpleVector(-halfSize, halfHeight, -halfSize);
-		SimpleVector v4 = new SimpleVector(0, -halfHeight, 0);
-		
 		// Create ground
-		obj.addTriangle(v0, 0f, 0f, v2, 0f, 1f, v1, 1f, 0f);
-		obj.addTriangle(v1, 1f, 0f, v2, 0f, 1f, v3, 1f, 1f);
+		int v0 = builder.addVertex(halfSize, halfHeight, halfSize, 0f, 1f, 0f, 0f, 0f);
+		int v1 = builder.addVertex(-halfSize, halfHeight, halfSize, 0f, 1f, 0f, 1f, 0f);
+		int v2 = builder.addVertex(halfSize, halfHeight, -halfSize, 0f, 1f, 0f, 0f, 1f);
+		int v3 = builder.addVertex(-halfSize, halfHeight, -halfSize, 0f, 1f, 0f, 1f, 1f);
+		builder.addTriangle(v0, v2, v1);
+		builder.addTriangle(v1, v2, v3);
 		
-		// Create faces
-		obj.addTriangle(v4, 0.5f, 0f, v3, 0f, 1f, v2, 1f, 1f);
-		obj.addTriangle(v4, 0.5f, 0f, v2, 0f, 1f, v0, 1f, 1f);
-		obj.addTriangle(v4, 0.5f, 0f, v1, 0f, 1f, v3, 1f, 1f);
-		obj.addTriangle(v4, 0.5f, 0f, v0, 0f, 1f, v1, 1f, 1f);
+		// Create faces, each one with its own vertices to keep the edges sharp
+		float slant = (float) Math.sqrt(height * height + halfSize * halfSize);
+		float nh = height / slant;
+		float ny = -halfSize / slant;
+		addPyramidFace(builder, halfHeight, -halfSize, -halfSize, halfSize, -halfSize, 0f, ny, -nh);
+		addPyramidFace(builder, halfHeight, halfSize, -halfSize, halfSize, halfSize, nh, ny, 0f);
+		addPyramidFace(builder, halfHeight, -halfSize, halfSize, -halfSize, -halfSize, -nh, ny, 0f);
+		addPyramidFace(builder, halfHeight, halfSize, halfSize, -halfSize, halfSize, 0f, ny, nh);
 		
-		return obj;
+		return builder;
+	}
+	
+	private static void addPyramidFace(MeshBuilder builder, float halfHeight, float x0, float z0, float x1, float z1,
+			float nx, float ny, float nz) {
+		int top = builder.addVertex(0f, -halfHeight, 0f, nx, ny, nz, 0.5f, 0f);
+		int a = builder.addVertex(x0, halfHeight, z0, nx, ny, nz, 0f, 1f);
+		int b = builder.addVertex(x1, halfHeight, z1, nx, ny, nz, 1f, 1f);
+		builder.addTriangle(top, a, b);
 	}
 	
 	/**
@@ -529,6 +586,19 @@ public final class ExtendedPrimitives {
 		return createEllipsoid(new SimpleVector(size, size, size), quads);
 	}
 	
+	/**
+	 * Creates the mesh of a sphere without creating an Object3D, so it can be done on any thread.
+	 * See createSphere() for details.
+	 * @param radius of the sphere
+	 * @param quads Number of quads that should be used for the sphere. You should seriously not use more quads than
+	 * you need!
+	 * @return mesh builder containing the sphere
+	 */
+	public static MeshBuilder buildSphere(float radius, int quads) {
+		float size = 2 * radius;
+		return buildEllipsoid(new SimpleVector(size, size, size), quads, 2f, 1f);
+	}
+	
 	/**
 	 * Creates an ellipsoid with given width, height and depth.
 	 * @param size Vector that contains width, height and depth
@@ -550,64 +620,56 @@ public final class ExtendedPrimitives {
 	 * @return the created ellipsoid
 	 */
 	public static Object3D createEllipsoid(SimpleVector size, int quads, float uScale, float vScale) {
+		return buildEllipsoid(size, quads, uScale, vScale).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of an ellipsoid without creating an Object3D, so it can be done on any thread.
+	 * See createEllipsoid() for details.
+	 * @param size Vector that contains width, height and depth
+	 * @param quads Number of quads that should be used for the sphere. You should seriously not use more quads than
+	 * you need!
+	 * @param uScale texture u scale, default is 2f
+	 * @param vScale texture v scale, default is 1f
+	 * @return mesh builder containing the ellipsoid
+	 */
+	public static MeshBuilder buildEllipsoid(SimpleVector size, int quads, float uScale, float vScale) {
 		int yQuads = Math.max(quads / 2 + 1, 3);
+		MeshBuilder builder = new MeshBuilder((quads + 1) * yQuads, 2 * quads * (yQuads - 2));
 		
 		// Prepare vertices
-		float[] vertices = new float[(quads + 1) * yQuads * 3];
-		float[] uvs = new float[(quads + 1) * yQuads * 3];
-		float[] normals = new float[(quads + 1) * yQuads * 3];
-		int ctr = 0;
-		float v0 = 0;
 		float vStep = vScale / (yQuads - 1);
+		CircleTable circle = CircleTable.get(quads);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
+		CircleTable halfCircle = CircleTable.get(2 * (yQuads - 1));
 		for (int y = 0; y < yQuads; y++) {
-			float yAngle = (float) (Math.PI * y / (yQuads - 1));
-			float ny = -(float) Math.cos(yAngle);
+			float ny = -halfCircle.getCos()[y];
 			float yPos = 0.5f * size.y * ny;
-			float yRadius = (float) Math.sin(yAngle);
+			float yRadius = halfCircle.getSin()[y];
 			for (int x = 0; x <= quads; x++) {
-				float u0 = uScale * (float) x / quads;
-				float xAngle = (float) (2 * Math.PI * x / quads);
-				float nx = (float) Math.cos(xAngle) * yRadius;
-				float nz = (float) Math.sin(xAngle) * yRadius;
-				float xPos = 0.5f * size.x * nx;
-				float zPos = 0.5f * size.z * nz;
-				
-				vertices[ctr + 0] = xPos;
-				vertices[ctr + 1] = yPos;
-				vertices[ctr + 2] = zPos;
-				normals[ctr + 0] = nx;
-				normals[ctr + 1] = ny;
-				normals[ctr + 2] = nz;
-				uvs[2 * ctr / 3 + 0] = u0;
-				uvs[2 * ctr / 3 + 1] = v0;
-				ctr += 3;
+				float nx = cos[x] * yRadius;
+				float nz = sin[x] * yRadius;
+				builder.addVertex(0.5f * size.x * nx, yPos, 0.5f * size.z * nz, nx, ny, nz,
+						uScale * x / quads, y * vStep);
 			}
-			
-			v0 += vStep;
 		}
 		
-		// Create quads
-		int[] indices = new int[quads * yQuads * 2 * 3];
-		ctr = 0;
+		// Create quads, the poles only need one triangle per quad
 		for (int y = 0; y + 1 < yQuads; y++) {
 			for (int x = 0; x < quads; x++) {
+				int v = x + y * (quads + 1);
+				int below = v + quads + 1;
 				if (y > 0) {
-					indices[ctr + 0] = x + y * (quads + 1);
-					indices[ctr + 1] = x + (y + 1) * (quads + 1);
-					indices[ctr + 2] = x + 1 + y * (quads + 1);
-					ctr += 3;
+					builder.addTriangle(v, below, v + 1);
 				}
 				if (y + 2 < yQuads) {
-					indices[ctr + 0] = x + 1 + y * (quads + 1);
-					indices[ctr + 1] = x + (y + 1) * (quads + 1);
-					indices[ctr + 2] = x + 1 + (y + 1) * (quads + 1);
-					ctr += 3;
+					builder.addTriangle(v + 1, below, below + 1);
 				}
 			}
 		}
 		
-		return new Object3D(vertices, normals, uvs, indices, TextureManager.TEXTURE_NOTFOUND);
-		//return obj;
+		return builder;
 	}
 	
 	/**
@@ -640,41 +702,36 @@ public final class ExtendedPrimitives {
 	 * @return the created disk
 	 */
 	public static Object3D createDisc(float xradius, float yradius, int vertices) {
-		Object3D obj = new Object3D(vertices - 2);
+		return buildDisc(xradius, yradius, vertices).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a disc without creating an Object3D, so it can be done on any thread.
+	 * See createDisc() for details.
+	 * @param xradius Radius along the X-Axis.
+	 * @param yradius Radius along the Y-Axis.
+	 * @param vertices Number of vertices that should be used.
+	 * @return mesh builder containing the disc
+	 */
+	public static MeshBuilder buildDisc(float xradius, float yradius, int vertices) {
+		MeshBuilder builder = new MeshBuilder(vertices, vertices - 2);
 		
 		// Prepare vertices
-		SimpleVector[] v = new SimpleVector[vertices];
-		float angle = 0f;
-		float angleStep = (float) (2 * Math.PI / vertices);
+		CircleTable circle = CircleTable.get(vertices);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
 		for (int i = 0; i < vertices; i++) {
-			float x = xradius * (float) Math.cos(angle);
-			float y = yradius * (float) Math.sin(angle);
-			v[i] = new SimpleVector(x, y, 0);
-			
-			angle += angleStep;
+			float x = cos[i];
+			float y = sin[i];
+			builder.addVertex(xradius * x, yradius * y, 0f, 0f, 0f, -1f, 0.5f + 0.5f * x, 0.5f + 0.5f * y);
 		}
 		
 		// Create triangles
-		angle = angleStep + angleStep;
-		float u0 = 0.5f - 0.5f * (float) Math.cos(0);
-		float v0 = 0.5f + 0.5f * (float) Math.sin(0);
-		float u1 = 0.5f - 0.5f * (float) Math.cos(angleStep);
-		float v1 = 0.5f + 0.5f * (float) Math.sin(angleStep);
-		float u2 = 0.5f - 0.5f * (float) Math.cos(angle);
-		float v2 = 0.5f + 0.5f * (float) Math.sin(angle);
 		for (int i = 1; i + 1 < vertices; i++) {
-			u2 = 0.5f - 0.5f * (float) Math.cos(angle);
-			v2 = 0.5f + 0.5f * (float) Math.sin(angle);
-			
-			obj.addTriangle(v[0], 1f - u0, v0, v[i + 1], 1f - u2, v2, v[i], 1f - u1, v1);
-			
-			u1 = u2;
-			v1 = v2;
-			
-			angle += angleStep;
+			builder.addTriangle(0, i + 1, i);
 		}
 		
-		return obj;
+		return builder;
 	}
 	
 	/**
@@ -700,144 +757,153 @@ public final class ExtendedPrimitives {
 	 */
 	public static Object3D createCog(int teeth, float holeRadius, float innerRadius, float outerRadius,
 			float innerSpace, float outerSpace, float outerMovement, float height) {
-		Object3D obj = new Object3D(24 * teeth);
-		
-		// Prepare vertices
+		return buildCog(teeth, holeRadius, innerRadius, outerRadius, innerSpace, outerSpace, outerMovement, height)
+				.toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a cog without creating an Object3D, so it can be done on any thread.
+	 * See createCog() for details.
+	 * @param teeth Number of teeth
+	 * @param holeRadius Radius of the hole within the cog.
+	 * @param innerRadius Radius without the theeth.
+	 * @param outerRadius Radius with the teeth.
+	 * @param innerSpace Factor of the size between teeth. Default is 1.
+	 * @param outerSpace Factor of the size of teeth. Default is 1.
+	 * @param outerMovement Turning of the teeth in radian. Default is 0.
+	 * @param height Heihgt of the cog.
+	 * @return mesh builder containing the cog
+	 */
+	public static MeshBuilder buildCog(int teeth, float holeRadius, float innerRadius, float outerRadius,
+			float innerSpace, float outerSpace, float outerMovement, float height) {
 		int count = 2 * teeth;
-		SimpleVector[] topHole = new SimpleVector[count];
-		SimpleVector[] bottomHole = new SimpleVector[count];
-		SimpleVector[] topInner = new SimpleVector[count];
-		SimpleVector[] bottomInner = new SimpleVector[count];
-		SimpleVector[] topOuter = new SimpleVector[count];
-		SimpleVector[] bottomOuter = new SimpleVector[count];
+		MeshBuilder builder = new MeshBuilder(16 * count, 24 * teeth);
+		
+		// Prepare positions
+		float[] holeX = new float[count];
+		float[] holeZ = new float[count];
+		float[] innerX = new float[count];
+		float[] innerZ = new float[count];
+		float[] outerX = new float[count];
+		float[] outerZ = new float[count];
 		float halfHeight = height / 2;
-		float angle = 0f;
 		float angleStep = (float) (Math.PI / teeth);
+		CircleTable circle = CircleTable.get(count);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
 		for (int i = 0; i < count; i++) {
-			float x = holeRadius * (float) Math.cos(angle);
-			float y = holeRadius * (float) Math.sin(angle);
-			
-			topHole[i] = new SimpleVector(x, -halfHeight, y);
-			bottomHole[i] = new SimpleVector(x, halfHeight, y);
-			
-			angle += angleStep;
+			holeX[i] = holeRadius * cos[i];
+			holeZ[i] = holeRadius * sin[i];
 		}
-		angle = 0.5f * (2 - innerSpace) * angleStep;
+		float angle = 0.5f * (2 - innerSpace) * angleStep;
 		for (int i = 0; i < count; i += 2) {
-			float x = innerRadius * (float) Math.cos(angle);
-			float y = innerRadius * (float) Math.sin(angle);
-			topInner[i] = new SimpleVector(x, -halfHeight, y);
-			bottomInner[i] = new SimpleVector(x, halfHeight, y);
+			innerX[i] = innerRadius * (float) Math.cos(angle);
+			innerZ[i] = innerRadius * (float) Math.sin(angle);
 			angle += innerSpace * angleStep;
 			
-			x = innerRadius * (float) Math.cos(angle);
-			y = innerRadius * (float) Math.sin(angle);
-			topInner[i + 1] = new SimpleVector(x, -halfHeight, y);
-			bottomInner[i + 1] = new SimpleVector(x, halfHeight, y);
+			innerX[i + 1] = innerRadius * (float) Math.cos(angle);
+			innerZ[i + 1] = innerRadius * (float) Math.sin(angle);
 			angle += (2 - innerSpace) * angleStep;
 		}
 		angle = 0.5f * outerSpace * angleStep + outerMovement;
 		for (int i = 0; i < count; i += 2) {
-			float x = outerRadius * (float) Math.cos(angle);
-			float y = outerRadius * (float) Math.sin(angle);
-			topOuter[i] = new SimpleVector(x, -halfHeight, y);
-			bottomOuter[i] = new SimpleVector(x, halfHeight, y);
+			outerX[i] = outerRadius * (float) Math.cos(angle);
+			outerZ[i] = outerRadius * (float) Math.sin(angle);
 			angle += (2 - outerSpace) * angleStep;
 			
-			x = outerRadius * (float) Math.cos(angle);
-			y = outerRadius * (float) Math.sin(angle);
-			topOuter[i + 1] = new SimpleVector(x, -halfHeight, y);
-			bottomOuter[i + 1] = new SimpleVector(x, halfHeight, y);
+			outerX[i + 1] = outerRadius * (float) Math.cos(angle);
+			outerZ[i + 1] = outerRadius * (float) Math.sin(angle);
 			angle += outerSpace * angleStep;
 		}
 		
-		// Create triangles
+		// Top and bottom face, uv coords are taken from the position
+		int top = builder.getVertexCount();
+		addCogRing(builder, holeX, holeZ, -halfHeight, -1f, outerRadius);
+		addCogRing(builder, innerX, innerZ, -halfHeight, -1f, outerRadius);
+		addCogRing(builder, outerX, outerZ, -halfHeight, -1f, outerRadius);
+		int bottom = builder.getVertexCount();
+		addCogRing(builder, holeX, holeZ, halfHeight, 1f, outerRadius);
+		addCogRing(builder, innerX, innerZ, halfHeight, 1f, outerRadius);
+		addCogRing(builder, outerX, outerZ, halfHeight, 1f, outerRadius);
 		for (int i = 0; i < count; i++) {
-			float topHoleU0 = 0.5f + 0.5f * topHole[i].x / outerRadius;
-			float topHoleU1 = 0.5f + 0.5f * topHole[(i + 1) % count].x / outerRadius;
-			float topHoleV0 = 0.5f - 0.5f * topHole[i].z / outerRadius;
-			float topHoleV1 = 0.5f - 0.5f * topHole[(i + 1) % count].z / outerRadius;
-			float topInnerU0 = 0.5f + 0.5f * topInner[i].x / outerRadius;
-			float topInnerU1 = 0.5f + 0.5f * topInner[(i + 1) % count].x / outerRadius;
-			float topInnerV0 = 0.5f - 0.5f * topInner[i].z / outerRadius;
-			float topInnerV1 = 0.5f - 0.5f * topInner[(i + 1) % count].z / outerRadius;
-			float topOuterU0 = 0.5f + 0.5f * topOuter[i].x / outerRadius;
-			float topOuterU1 = 0.5f + 0.5f * topOuter[(i + 1) % count].x / outerRadius;
-			float topOuterV0 = 0.5f - 0.5f * topOuter[i].z / outerRadius;
-			float topOuterV1 = 0.5f - 0.5f * topOuter[(i + 1) % count].z / outerRadius;
-			
-			// Hole
-			obj.addTriangle(topHole[(i + 1) % count], topHoleU1, topHoleV1,
-					bottomHole[(i + 1) % count], -topHoleU1, topHoleV1,
-					topHole[i], topHoleU0, topHoleV0);
-			obj.addTriangle(topHole[i], topHoleU0, topHoleV0,
-					bottomHole[(i + 1) % count], -topHoleU1, topHoleV1,
-					bottomHole[i], -topHoleU0, topHoleV0);
-			
-			// Top inner face
-			obj.addTriangle(topInner[(i + 1) % count], topInnerU1, topInnerV1,
-					topHole[(i + 1) % count], topHoleU1, topHoleV1,
-					topInner[i], topInnerU0, topInnerV0);
-			obj.addTriangle(topInner[i], topInnerU0, topInnerV0,
-					topHole[(i + 1) % count], topHoleU1, topHoleV1,
-					topHole[i], topHoleU0, topHoleV0);
+			int h0 = i;
+			int h1 = (i + 1) % count;
+			int i0 = count + h0;
+			int i1 = count + h1;
+			int o0 = 2 * count + h0;
+			int o1 = 2 * count + h1;
 			
-			// Bottom inner face
-			obj.addTriangle(bottomInner[i], -topInnerU0, topInnerV0,
-					bottomHole[i], -topHoleU0, topHoleV0,
-					bottomInner[(i + 1) % count], -topInnerU1, topInnerV1);
-			obj.addTriangle(bottomInner[(i + 1) % count], -topInnerU1, topInnerV1,
-					bottomHole[i], -topHoleU0, topHoleV0,
-					bottomHole[(i + 1) % count], -topHoleU1, topHoleV1);
+			builder.addTriangle(top + i1, top + h1, top + i0);
+			builder.addTriangle(top + i0, top + h1, top + h0);
+			builder.addTriangle(bottom + i0, bottom + h0, bottom + i1);
+			builder.addTriangle(bottom + i1, bottom + h0, bottom + h1);
 			
 			if (i % 2 == 1) {
-				// Top outer face
-				obj.addTriangle(topOuter[(i + 1) % count], topOuterU1, topOuterV1,
-						topInner[(i + 1) % count], topInnerU1, topOuterV1,
-						topOuter[i], topOuterU0, topOuterV0);
-				obj.addTriangle(topOuter[i], topOuterU0, topOuterV0,
-						topInner[(i + 1) % count], topInnerU1, topInnerV1,
-						topInner[i], topInnerU0, topInnerV0);
-				
-				// Bottom outer face
-				obj.addTriangle(bottomOuter[i], -topOuterU0, topOuterV0, 
-						bottomInner[i], -topInnerU0, topInnerV0,
-						bottomOuter[(i + 1) % count], -topOuterU1, topOuterV1);
-				obj.addTriangle(bottomOuter[(i + 1) % count], -topOuterU1, topOuterV1,
-						bottomInner[i], -topInnerU0, topInnerV0,
-						bottomInner[(i + 1) % count], -topInnerU1, topInnerV1);
-				
-				// Outer side face
-				obj.addTriangle(topOuter[i], topOuterU0, topOuterV0,
-						bottomOuter[i], topOuterU0, topOuterV0,
-						topOuter[(i + 1) % count], topOuterU1, topOuterV1);
-				obj.addTriangle(topOuter[(i + 1) % count], topOuterU1, topOuterV1,
-						bottomOuter[i], topOuterU0, topOuterV0,
-						bottomOuter[(i + 1) % count], topOuterU1, topOuterV1);
-				obj.addTriangle(topInner[i], topInnerU0, topInnerV0,
-						bottomInner[i], topInnerU0, topInnerV0,
-						topOuter[i], topOuterU0, topOuterV0);
-				obj.addTriangle(topOuter[i], topOuterU0, topOuterV0,
-						bottomInner[i], topInnerU0, topInnerV0,
-						bottomOuter[i], topOuterU0, topOuterV0);
+				builder.addTriangle(top + o1, top + i1, top + o0);
+				builder.addTriangle(top + o0, top + i1, top + i0);
+				builder.addTriangle(bottom + o0, bottom + i0, bottom + o1);
+				builder.addTriangle(bottom + o1, bottom + i0, bottom + i1);
+			}
+		}
+		
+		// Hole, smooth normals pointing inwards
+		int hole = builder.getVertexCount();
+		for (int i = 0; i < count; i++) {
+			float nx = -cos[i];
+			float nz = -sin[i];
+			float u = 0.5f + 0.5f * holeX[i] / outerRadius;
+			float v = 0.5f - 0.5f * holeZ[i] / outerRadius;
+			builder.addVertex(holeX[i], -halfHeight, holeZ[i], nx, 0f, nz, u, v);
+			builder.addVertex(holeX[i], halfHeight, holeZ[i], nx, 0f, nz, -u, v);
+		}
+		for (int i = 0; i < count; i++) {
+			int h0 = hole + 2 * i;
+			int h1 = hole + 2 * ((i + 1) % count);
+			builder.addTriangle(h1, h1 + 1, h0);
+			builder.addTriangle(h0, h1 + 1, h0 + 1);
+		}
+		
+		// Side faces of the teeth, each one flat with its own vertices
+		for (int i = 0; i < count; i++) {
+			int j = (i + 1) % count;
+			if (i % 2 == 1) {
+				addCogWall(builder, outerX[i], outerZ[i], outerX[j], outerZ[j], halfHeight, outerRadius);
+				addCogWall(builder, innerX[i], innerZ[i], outerX[i], outerZ[i], halfHeight, outerRadius);
 			} else {
-				// Inner side face
-				obj.addTriangle(topInner[i], topInnerU0, topInnerV0,
-						bottomInner[i], topInnerU0, topInnerV0,
-						topInner[(i + 1) % count], topInnerU1, topInnerV1);
-				obj.addTriangle(topInner[(i + 1) % count], topInnerU1, topInnerV1,
-						bottomInner[i], topInnerU0, topInnerV0,
-						bottomInner[(i + 1) % count], topInnerU1, topInnerV1);
-				obj.addTriangle(topOuter[i], topOuterU0, topOuterV0,
-						bottomOuter[i], topOuterU0, topOuterV0,
-						topInner[i], topInnerU0, topInnerV0);
-				obj.addTriangle(topInner[i], topInnerU0, topInnerV0,
-						bottomOuter[i], topOuterU0, topOuterV0,
-						bottomInner[i], topInnerU0, topInnerV0);
+				addCogWall(builder, innerX[i], innerZ[i], innerX[j], innerZ[j], halfHeight, outerRadius);
+				addCogWall(builder, outerX[i], outerZ[i], innerX[i], innerZ[i], halfHeight, outerRadius);
 			}
 		}
 		
-		return obj;
+		return builder;
+	}
+	
+	private static void addCogRing(MeshBuilder builder, float[] xs, float[] zs, float y, float ny, float radius) {
+		for (int i = 0; i < xs.length; i++) {
+			float u = 0.5f + 0.5f * xs[i] / radius;
+			float v = 0.5f - 0.5f * zs[i] / radius;
+			builder.addVertex(xs[i], y, zs[i], 0f, ny, 0f, ny < 0 ? u : -u, v);
+		}
+	}
+	
+	private static void addCogWall(MeshBuilder builder, float x0, float z0, float x1, float z1, float halfHeight,
+			float radius) {
+		float dx = x1 - x0;
+		float dz = z1 - z0;
+		float length = (float) Math.sqrt(dx * dx + dz * dz);
+		float nx = length > 0 ? dz / length : 0f;
+		float nz = length > 0 ? -dx / length : 0f;
+		float u0 = 0.5f + 0.5f * x0 / radius;
+		float v0 = 0.5f - 0.5f * z0 / radius;
+		float u1 = 0.5f + 0.5f * x1 / radius;
+		float v1 = 0.5f - 0.5f * z1 / radius;
+		
+		int a = builder.addVertex(x0, -halfHeight, z0, nx, 0f, nz, u0, v0);
+		int b = builder.addVertex(x0, halfHeight, z0, nx, 0f, nz, u0, v0);
+		int c = builder.addVertex(x1, -halfHeight, z1, nx, 0f, nz, u1, v1);
+		int d = builder.addVertex(x1, halfHeight, z1, nx, 0f, nz, u1, v1);
+		builder.addTriangle(a, b, c);
+		builder.addTriangle(c, b, d);
 	}
 	
 	/**
@@ -859,80 +925,183 @@ public final class ExtendedPrimitives {
 	 * @return the created cube.
 	 */
 	public static Object3D createTube(float innerRadius, float outerRadius, float height, int quads) {
-		Object3D obj = new Object3D(8 * quads);
+		return buildTube(innerRadius, outerRadius, height, quads).toObject3D();
+	}
+	
+	/**
+	 * Creates the mesh of a tube without creating an Object3D, so it can be done on any thread.
+	 * See createTube() for details.
+	 * @param innerRadius Radius of the cylinder.
+	 * @param outerRadius Radius of the hole.
+	 * @param height Heihgt of the cylinder.
+	 * @param quads Number of quads that should be used. Don't use more than you need!
+	 * @return mesh builder containing the tube
+	 */
+	public static MeshBuilder buildTube(float innerRadius, float outerRadius, float height, int quads) {
+		MeshBuilder builder = new MeshBuilder(8 * quads + 4, 8 * quads);
 		
-		// Prepare vertices
-		SimpleVector[] topOuterV = new SimpleVector[quads];
-		SimpleVector[] topInnerV = new SimpleVector[quads];
-		SimpleVector[] bottomOuterV = new SimpleVector[quads];
-		SimpleVector[] bottomInnerV = new SimpleVector[quads];
 		float halfHeight = height / 2;
-		float angle = 0f;
-		float angleStep = 2 * (float) Math.PI / quads;
+		CircleTable circle = CircleTable.get(quads);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
 		float innerFac = innerRadius / outerRadius;
+		
+		// Top and bottom face, uv coords are taken from the position
+		int top = builder.getVertexCount();
+		int bottom = top + 2 * quads;
 		for (int i = 0; i < quads; i++) {
-			float outerX = outerRadius * (float) Math.cos(angle);
-			float outerY = outerRadius * (float) Math.sin(angle);
-			float innerX = innerFac * outerX;
-			float innerY = innerFac * outerY;
-			
-			topOuterV[i] = new SimpleVector(outerX, -halfHeight, outerY);
-			topInnerV[i] = new SimpleVector(innerX, -halfHeight, innerY);
-			bottomOuterV[i] = new SimpleVector(outerX, halfHeight, outerY);
-			bottomInnerV[i] = new SimpleVector(innerX, halfHeight, innerY);
-			
-			angle += angleStep;
+			float x = cos[i];
+			float y = sin[i];
+			builder.addVertex(outerRadius * x, -halfHeight, outerRadius * y, 0f, -1f, 0f,
+					0.5f + 0.5f * x, 0.5f - 0.5f * y);
+			builder.addVertex(innerRadius * x, -halfHeight, innerRadius * y, 0f, -1f, 0f,
+					0.5f + 0.5f * innerFac * x, 0.5f - 0.5f * innerFac * y);
+		}
+		for (int i = 0; i < quads; i++) {
+			float x = cos[i];
+			float y = sin[i];
+			builder.addVertex(outerRadius * x, halfHeight, outerRadius * y, 0f, 1f, 0f,
+					-0.5f - 0.5f * x, 0.5f - 0.5f * y);
+			builder.addVertex(innerRadius * x, halfHeight, innerRadius * y, 0f, 1f, 0f,
+					-0.5f - 0.5f * innerFac * x, 0.5f - 0.5f * innerFac * y);
+		}
+		for (int i = 0; i < quads; i++) {
+			int o0 = 2 * i;
+			int o1 = 2 * ((i + 1) % quads);
+			builder.addTriangle(top + o1, top + o1 + 1, top + o0);
+			builder.addTriangle(top + o0, top + o1 + 1, top + o0 + 1);
+			builder.addTriangle(bottom + o0, bottom + o0 + 1, bottom + o1);
+			builder.addTriangle(bottom + o1, bottom + o0 + 1, bottom + o1 + 1);
 		}
 		
-		// Create quads
-		float uC = 0f;
+		// Outer and inner face, first and last column share their position but not their uv coords
+		int outer = builder.getVertexCount();
 		float uStep = 2f / quads;
+		for (int i = 0; i <= quads; i++) {
+			float x = cos[i];
+			float y = sin[i];
+			builder.addVertex(outerRadius * x, -halfHeight, outerRadius * y, x, 0f, y, i * uStep, 0f);
+			builder.addVertex(outerRadius * x, halfHeight, outerRadius * y, x, 0f, y, i * uStep, 1f);
+		}
+		int inner = builder.getVertexCount();
+		for (int i = 0; i <= quads; i++) {
+			float x = cos[i];
+			float y = sin[i];
+			builder.addVertex(innerRadius * x, -halfHeight, innerRadius * y, -x, 0f, -y, -i * uStep, 0f);
+			builder.addVertex(innerRadius * x, halfHeight, innerRadius * y, -x, 0f, -y, -i * uStep, 1f);
+		}
 		for (int i = 0; i < quads; i++) {
-			float ou0 = 0.5f + 0.5f * topOuterV[i].x / outerRadius;
-			float ou1 = 0.5f + 0.5f * topOuterV[(i + 1) % quads].x / outerRadius;
-			float ov0 = 0.5f - 0.5f * topOuterV[i].z / outerRadius;
-			float ov1 = 0.5f - 0.5f * topOuterV[(i + 1) % quads].z / outerRadius;
-			float iu0 = 0.5f + 0.5f * topInnerV[i].x / outerRadius;
-			float iu1 = 0.5f + 0.5f * topInnerV[(i + 1) % quads].x / outerRadius;
-			float iv0 = 0.5f - 0.5f * topInnerV[i].z / outerRadius;
-			float iv1 = 0.5f - 0.5f * topInnerV[(i + 1) % quads].z / outerRadius;
-			
-			// Top face
-			obj.addTriangle(topOuterV[(i + 1) % quads], ou1, ov1,
-					topInnerV[(i + 1) % quads], iu1, iv1,
-					topOuterV[i], ou0, ov0);
-			obj.addTriangle(topOuterV[i], ou0, ov0,
-					topInnerV[(i + 1) % quads], iu1, iv1,
-					topInnerV[i], iu0, iv0);
-			
-			// Bottom face
-			obj.addTriangle(bottomOuterV[i], -ou0, ov0,
-					bottomInnerV[i], -iu0, iv0,
-					bottomOuterV[(i + 1) % quads], -ou1, ov1);
-			obj.addTriangle(bottomOuterV[(i + 1) % quads], -ou1, ov1,
-					bottomInnerV[i], -iu0, iv0,
-					bottomInnerV[(i + 1) % quads], -iu1, iv1);
-			
-			// Outer face
-			obj.addTriangle(topOuterV[i], uC, 0f,
-					bottomOuterV[i], uC, 1f,
-					topOuterV[(i + 1) % quads], uC + uStep, 0f);
-			obj.addTriangle(topOuterV[(i + 1) % quads], uC + uStep, 0f,
-					bottomOuterV[i], uC, 1f,
-					bottomOuterV[(i + 1) % quads], uC + uStep, 1f);
-			
-			// Inner face
-			obj.addTriangle(topInnerV[(i + 1) % quads], -uC - uStep, 0f,
-					bottomInnerV[(i + 1) % quads], -uC - uStep, 1f,
-					topInnerV[i], -uC, 0f);
-			obj.addTriangle(topInnerV[i], -uC, 0f,
-					bottomInnerV[(i + 1) % quads], -uC - uStep, 1f,
-					bottomInnerV[i], -uC, 1f);
-			
-			uC += uStep;
+			int o = outer + 2 * i;
+			builder.addTriangle(o, o + 1, o + 2);
+			builder.addTriangle(o + 2, o + 1, o + 3);
+			int n = inner + 2 * i;
+			builder.addTriangle(n + 2, n + 3, n);
+			builder.addTriangle(n, n + 3, n + 1);
 		}
 		
-		return obj;
+		return builder;
+	}
+	
+	/**
+	 * Creates a chain of spheres with decreasing detail that can be used with a LodObject. Each level has half the
+	 * quads of the level before, but at least 6.
+	 * @param radius of the sphere
+	 * @param quads Number of quads of the most detailed level.
+	 * @param levels Number of levels.
+	 * @return the created spheres, most detailed first
+	 */
+	public static Object3D[] createSphereLods(float radius, int quads, int levels) {
+		Object3D[] lods = new Object3D[levels];
+		for (int i = 0; i < levels; i++) {
+			lods[i] = createSphere(radius, getLodQuads(quads, i, 6));
+		}
+		return lods;
+	}
+	
+	/**
+	 * Creates a chain of cylinders with decreasing detail that can be used with a LodObject. Each level has half the
+	 * quads of the level before, but at least 4.
+	 * @param radius of the cylinder
+	 * @param height of the cylinder along Y-Axis
+	 * @param quads Number of quads of the most detailed level.
+	 * @param caps if false the cylinder won't have caps an the ends
+	 * @param levels Number of levels.
+	 * @return the created cylinders, most detailed first
+	 */
+	public static Object3D[] createCylinderLods(float radius, float height, int quads, boolean caps, int levels) {
+		Object3D[] lods = new Object3D[levels];
+		for (int i = 0; i < levels; i++) {
+			lods[i] = createCylinder(radius, height, getLodQuads(quads, i, 4), caps);
+		}
+		return lods;
+	}
+	
+	/**
+	 * Creates a chain of cones with decreasing detail that can be used with a LodObject. Each level has half the
+	 * faces of the level before, but at least 4.
+	 * @param radius of the cone
+	 * @param height of the cone along the Y-Axis
+	 * @param faces Number of faces of the most detailed level.
+	 * @param cap If false the cone won't have a ground.
+	 * @param levels Number of levels.
+	 * @return the created cones, most detailed first
+	 */
+	public static Object3D[] createConeLods(float radius, float height, int faces, boolean cap, int levels) {
+		Object3D[] lods = new Object3D[levels];
+		for (int i = 0; i < levels; i++) {
+			lods[i] = createCone(radius, height, getLodQuads(faces, i, 4), cap);
+		}
+		return lods;
+	}
+	
+	/**
+	 * Creates a chain of tori with decreasing detail that can be used with a LodObject. Each level has half the
+	 * quads of the level before in both directions, but at least 6 along the pipe and 4 round the pipe.
+	 * @param radius Radius of a imaginary circle the torus should contain.
+	 * @param pipeRadius Radius of the pipe.
+	 * @param lengthQuads Number of quads along the pipe of the most detailed level.
+	 * @param pipeQuads Number of quads round the pipe of the most detailed level.
+	 * @param levels Number of levels.
+	 * @return the created tori, most detailed first
+	 */
+	public static Object3D[] createTorusLods(float radius, float pipeRadius, int lengthQuads, int pipeQuads,
+			int levels) {
+		Object3D[] lods = new Object3D[levels];
+		for (int i = 0; i < levels; i++) {
+			lods[i] = createTorus(radius, pipeRadius, getLodQuads(lengthQuads, i, 6), getLodQuads(pipeQuads, i, 4));
+		}
+		return lods;
+	}
+	
+	/**
+	 * Creates a chain of cogs with decreasing detail that can be used with a LodObject. The first level is the cog
+	 * itself. Teeth can't be reduced without changing the look of the cog, so all further levels are tubes that
+	 * reach from the hole to the middle of the teeth, each one with half the quads of the level before.
+	 * @param teeth Number of teeth
+	 * @param holeRadius Radius of the hole within the cog.
+	 * @param innerRadius Radius without the theeth.
+	 * @param outerRadius Radius with the teeth.
+	 * @param innerSpace Factor of the size between teeth. Default is 1.
+	 * @param outerSpace Factor of the size of teeth. Default is 1.
+	 * @param outerMovement Turning of the teeth in radian. Default is 0.
+	 * @param height Heihgt of the cog.
+	 * @param levels Number of levels.
+	 * @return the created cog and tubes, most detailed first
+	 */
+	public static Object3D[] createCogLods(int teeth, float holeRadius, float innerRadius, float outerRadius,
+			float innerSpace, float outerSpace, float outerMovement, float height, int levels) {
+		Object3D[] lods = new Object3D[levels];
+		lods[0] = createCog(teeth, holeRadius, innerRadius, outerRadius, innerSpace, outerSpace, outerMovement,
+				height);
+		float radius = (innerRadius + outerRadius) / 2;
+		for (int i = 1; i < levels; i++) {
+			lods[i] = createTube(holeRadius, radius, height, getLodQuads(2 * teeth, i, 6));
+		}
+		return lods;
+	}
+	
+	private static int getLodQuads(int quads, int level, int min) {
+		return Math.max(quads >> level, Math.min(quads, min));
 	}
 	
 	/**
@@ -940,7 +1109,8 @@ public final class ExtendedPrimitives {
 	 * follow these rules:</br>
 	 * 1. Never call strip() before</br>
 	 * 2. Use build(false) instead of build() method (you have to call it manually)</br>
-	 * 3. Call touch() on object to apply changes
+	 * 3. Call touch() on object to apply changes</br>
+	 * To animate uvs every frame use a UVTransform instead, its texture matrix doesn't need to touch the mesh at all.
 	 * @param obj object whom uv coords should be scaled
 	 * @param uMove1 u movement before scaling
 	 * @param vMove1 v movement before scaling
@@ -952,56 +1122,49 @@ public final class ExtendedPrimitives {
 	public static void transformUVCoords(Object3D obj, float uMove1, float vMove1, float uScale, float vScale,
 			float uMove2, float vMove2) {
 		PolygonManager mgr = obj.getPolygonManager();
-		SimpleVector[] coords = {new SimpleVector(), new SimpleVector(), new SimpleVector()};
+		SimpleVector uv = new SimpleVector();
+		float[] coords = new float[6];
+		TextureInfo info = new TextureInfo(0);
 		
 		for (int i = 0; i < mgr.getMaxPolygonID(); i++) {
 			for (int j = 0; j < 3; j++) {
-				mgr.getTextureUV(i, j, coords[j]);
-				
-				coords[j].x += uMove1;
-				coords[j].x *= uScale;
-				coords[j].x += uMove2;
-				
-				coords[j].y += vMove1;
-				coords[j].y *= vScale;
-				coords[j].y += vMove2;
+				mgr.getTextureUV(i, j, uv);
+				coords[2 * j] = (uv.x + uMove1) * uScale + uMove2;
+				coords[2 * j + 1] = (uv.y + vMove1) * vScale + vMove2;
 			}
 			
-			TextureInfo info = new TextureInfo(
-					mgr.getPolygonTexture(i),
-					coords[0].x,
-					coords[0].y,
-					coords[1].x,
-					coords[1].y,
-					coords[2].x,
-					coords[2].y);
+			info.set(mgr.getPolygonTexture(i), 0, coords[0], coords[1], coords[2], coords[3], coords[4], coords[5],
+					TextureInfo.MODE_MODULATE);
 			mgr.setPolygonTexture(i, info);
 		}
 	}
 	
-	private static void calculateFlatNormals(final Object3D obj) {
-		IVertexController c = new GenericVertexController() {
-			@Override
-			public void apply() {
-				SimpleVector[] sv = getSourceMesh();
-				SimpleVector[] dn = getDestinationNormals();
-				System.out.println(sv.length + " ............. " + dn.length);
-				System.out.println(obj.getMesh().getUniqueVertexCount());
-				for (int i = 0; i < sv.length; i += 3) {
-					SimpleVector a = sv[i + 1].calcSub(sv[i]);
-					SimpleVector b = sv[i + 2].calcSub(sv[i]);
-					SimpleVector n = a.calcCross(b).normalize();
-					dn[i] = n;
-					dn[i + 1] = n;
-					dn[i + 2] = n;
-				}
+	/**
+	 * Creates a faceted copy of an object, every triangle gets its own vertices with the normal of the triangle. The
+	 * vertices and normals are written directly, so the new object doesn't need jPCT to search equal vertices or to
+	 * calculate normals when it is built.
+	 * @param obj object to copy, it must have been built before and must not be stripped
+	 * @return the flat shaded object, each polygon has the base texture of its polygon in obj. Further texture
+	 * stages for multi texturing aren't copied.
+	 */
+	public static Object3D createFlatShaded(Object3D obj) {
+		PolygonManager mgr = obj.getPolygonManager();
+		int polygons = mgr.getMaxPolygonID();
+		MeshBuilder builder = new MeshBuilder(3 * polygons, polygons);
+		builder.addFlat(obj);
+		
+		int texture = polygons > 0 ? mgr.getPolygonTexture(0) : TextureManager.TEXTURE_NOTFOUND;
+		Object3D flat = builder.toObject3D(texture);
+		
+		// Polygon p of the copy is made of the vertices of polygon p of obj
+		PolygonManager flatMgr = flat.getPolygonManager();
+		for (int p = 1; p < polygons; p++) {
+			int polygonTexture = mgr.getPolygonTexture(p);
+			if (polygonTexture != texture) {
+				flatMgr.setPolygonTexture(p, polygonTexture);
 			}
-		};
-		obj.getMesh().setVertexController(c, true);
-		obj.getMesh().applyVertexController();
-		obj.getMesh().removeVertexController();
-		obj.getMesh().getUniqueVertexCount();
-		obj.build();
+		}
+		return flat;
 	}
 }
 
@@ -428,6 +428,61 @@ public class Terrain extends Object3D {
 		return lH + o1V.y + o2V.y;
 	}
 	
+	/**
+	 * Determines heights and optionally slopes for many positions at once in terrain absolute system. Other than
+	 * getCenteredY() this method doesn't allocate anything and is safe to be called from multiple threads as long as
+	 * the height data isn't modified meanwhile. Positions out of the terrain will get height 0 and slope 0.
+	 * @param xs x coordinates
+	 * @param zs z coordinates
+	 * @param ys array to write the heights into (same values as getCenteredY() would return)
+	 * @param slopes array to write the slopes into (rise over run, so 1 means 45 degree), may be null
+	 * @param count number of positions to process
+	 */
+	public void getCenteredHeights(float[] xs, float[] zs, float[] ys, float[] slopes, int count) {
+		float offX = width / 2f - 0.5f;
+		float offZ = depth / 2f - 0.5f;
+		float invSize = 1f / size;
+		
+		for (int i = 0; i < count; i++) {
+			float x = xs[i] * invSize + offX;
+			float z = zs[i] * invSize + offZ;
+			
+			if (x < 0 || z < 0 || x > width - 1 || z > depth - 1) {
+				ys[i] = 0f;
+				if (slopes != null) {
+					slopes[i] = 0f;
+				}
+				continue;
+			}
+			
+			int ix = Math.min((int) x, width - 2);
+			int iz = Math.min((int) z, depth - 2);
+			float mx = x - ix;
+			float mz = z - iz;
+			
+			float h00 = -height * heightData[ix][depth - iz - 1];
+			float h10 = -height * heightData[ix + 1][depth - iz - 1];
+			float h01 = -height * heightData[ix][depth - iz - 2];
+			float h11 = -height * heightData[ix + 1][depth - iz - 2];
+			
+			float dx;
+			float dz;
+			if (mx + mz < 1) {
+				dx = h10 - h00;
+				dz = h01 - h00;
+				ys[i] = h00 + dx * mx + dz * mz;
+			} else {
+				dx = h11 - h01;
+				dz = h11 - h10;
+				ys[i] = h11 - dx * (1 - mx) - dz * (1 - mz);
+			}
+			
+			if (slopes != null) {
+				slopes[i] = (float) Math.sqrt(dx * dx + dz * dz) * invSize;
+			}
+		}
+	}
+	
 	/**
 	 * Determines height of a vertex at given position in quad coordinate system. If position is out of the terrain
 	 * 0 will be returned.
@@ -0,0 +1,390 @@
+package info.flowersoft.gameframe;
+
+import info.flowersoft.gameframe.description.ImageDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.threed.jpct.FrameBuffer;
+import com.threed.jpct.ITextureEffect;
+import com.threed.jpct.Texture;
+import com.threed.jpct.TextureManager;
+
+/**
+ * Renders a shaded top view of a terrain into a texture. Colors come from a height palette and are shaded by the
+ * slope of the terrain (hill shading). The map is divided into tiles that are computed in parallel, and after edits
+ * only tiles marked by invalidate() are computed again.</br>
+ *
+ * The texture is registered at the TextureManager, so it can be blitted with a BlittingEngine by using the image
+ * description returned by getImage(). Rows of the map follow the z coordinate of the terrain, so the upper border
+ * of the map is the border of the terrain in negative z direction.
+ *
+ * @author Lobby Divinus
+ */
+public class TerrainMinimap {
+	
+	/**
+	 * Edge length of a tile in pixels.
+	 */
+	private static final int TILE_SIZE = 32;
+	
+	/**
+	 * Number of entries in the height palette lookup table.
+	 */
+	private static final int PALETTE_SIZE = 256;
+	
+	/**
+	 * Default palette from low to high: water, sand, grass, forest, rock and snow.
+	 */
+	private static final int[] DEFAULT_PALETTE = {
+		0xff2a5d9f, 0xffd8c98a, 0xff5f9e3c, 0xff2f6b2a, 0xff7d6e5e, 0xfff4f4f4
+	};
+	
+	private Terrain terrain;
+	
+	private String name;
+	
+	private int mapWidth;
+	
+	private int mapHeight;
+	
+	private int[] pixels;
+	
+	private int[] palette;
+	
+	private boolean[] dirty;
+	
+	private int tilesX;
+	
+	private int tilesY;
+	
+	private float lightX;
+	
+	private float lightY;
+	
+	private float lightZ;
+	
+	private float ambient;
+	
+	private Texture texture;
+	
+	private ImageDescription image;
+	
+	private ExecutorService executor;
+	
+	private boolean ownExecutor;
+	
+	/**
+	 * Effect that copies the computed pixels into the texture.
+	 */
+	private class MinimapEffect implements ITextureEffect {
+		
+		@Override
+		public void init(Texture tex) {
+		}
+		
+		@Override
+		public void apply(int[] dest, int[] source) {
+			System.arraycopy(pixels, 0, dest, 0, pixels.length);
+		}
+		
+		@Override
+		public boolean containsAlpha() {
+			return false;
+		}
+	}
+	
+	/**
+	 * Creates a new minimap for a terrain and registers its texture at the TextureManager. Width and height have to
+	 * be powers of 2. The map is completely computed on the first call of update().
+	 * @param terrain terrain to show
+	 * @param name texture name to use for the map
+	 * @param width width of the map in pixels
+	 * @param height height of the map in pixels
+	 */
+	public TerrainMinimap(Terrain terrain, String name, int width, int height) {
+		this.terrain = terrain;
+		this.name = name;
+		mapWidth = width;
+		mapHeight = height;
+		pixels = new int[width * height];
+		
+		tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+		tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+		dirty = new boolean[tilesX * tilesY];
+		
+		setPalette(DEFAULT_PALETTE);
+		setLight(315f, 45f, 0.35f);
+		
+		texture = new Texture(width, height);
+		texture.setMipmap(false);
+		texture.keepPixelData(true);
+		texture.setEffect(new MinimapEffect());
+		TextureManager mgr = TextureManager.getInstance();
+		if (mgr.containsTexture(name)) {
+			mgr.replaceTexture(name, texture);
+		} else {
+			mgr.addTexture(name, texture);
+		}
+		
+		image = new ImageDescription(name, false, true);
+		
+		invalidate();
+	}
+	
+	/**
+	 * Sets the colors of the height palette. The colors are spread evenly from the lowest (height 0) to the highest
+	 * (terrain height) point and interpolated in between. Marks the whole map as dirty.
+	 * @param colors at least two colors in 0xAARRGGBB format
+	 */
+	public void setPalette(int[] colors) {
+		palette = new int[PALETTE_SIZE];
+		for (int i = 0; i < PALETTE_SIZE; i++) {
+			float pos = i * (colors.length - 1) / (float) (PALETTE_SIZE - 1);
+			int idx = Math.min((int) pos, colors.length - 2);
+			float f = pos - idx;
+			int c0 = colors[idx];
+			int c1 = colors[idx + 1];
+			int r = (int) (((c0 >> 16) & 0xff) * (1 - f) + ((c1 >> 16) & 0xff) * f);
+			int g = (int) (((c0 >> 8) & 0xff) * (1 - f) + ((c1 >> 8) & 0xff) * f);
+			int b = (int) ((c0 & 0xff) * (1 - f) + (c1 & 0xff) * f);
+			palette[i] = (r << 16) | (g << 8) | b;
+		}
+		invalidate();
+	}
+	
+	/**
+	 * Sets the light used for hill shading. Marks the whole map as dirty.
+	 * @param azimuth direction the light comes from in degrees on the map, 0 is right and 90 is down
+	 * @param altitude angle of the light above the ground in degrees
+	 * @param ambient brightness of fully shaded areas in [0..1]
+	 */
+	public void setLight(float azimuth, float altitude, float ambient) {
+		double az = Math.toRadians(azimuth);
+		double alt = Math.toRadians(altitude);
+		lightX = (float) (Math.cos(alt) * Math.cos(az));
+		lightY = (float) (Math.cos(alt) * Math.sin(az));
+		lightZ = (float) Math.sin(alt);
+		this.ambient = ambient;
+		invalidate();
+	}
+	
+	/**
+	 * Lets the map use the given executor to compute tiles. By default a thread pool with one thread per processor
+	 * is created on the first update.
+	 * @param executor executor to use
+	 */
+	public void setExecutor(ExecutorService executor) {
+		if (ownExecutor) {
+			this.executor.shutdown();
+			ownExecutor = false;
+		}
+		this.executor = executor;
+	}
+	
+	/**
+	 * Marks the whole map as dirty.
+	 */
+	public void invalidate() {
+		for (int i = 0; i < dirty.length; i++) {
+			dirty[i] = true;
+		}
+	}
+	
+	/**
+	 * Marks the part of the map as dirty that covers the given vertices in quad coordinate system. Call this after
+	 * changing heights of the terrain, for example with setPointHeight().
+	 * @param x first vertex in x direction
+	 * @param z first vertex in z direction
+	 * @param w number of vertices in x direction
+	 * @param h number of vertices in z direction
+	 */
+	public void invalidate(int x, int z, int w, int h) {
+		float facX = (mapWidth - 1) / (float) terrain.getEdgeWidth();
+		float facY = (mapHeight - 1) / (float) terrain.getEdgeDepth();
+		
+		// Neighbour pixels are affected by shading as well
+		int minX = Math.max((int) Math.floor((x - 1) * facX) - 1, 0) / TILE_SIZE;
+		int minY = Math.max((int) Math.floor((z - 1) * facY) - 1, 0) / TILE_SIZE;
+		int maxX = Math.min((int) Math.ceil((x + w) * facX) + 1, mapWidth - 1) / TILE_SIZE;
+		int maxY = Math.min((int) Math.ceil((z + h) * facY) + 1, mapHeight - 1) / TILE_SIZE;
+		
+		for (int ty = minY; ty <= maxY; ty++) {
+			for (int tx = minX; tx <= maxX; tx++) {
+				dirty[tx + ty * tilesX] = true;
+			}
+		}
+	}
+	
+	/**
+	 * Computes all dirty tiles and uploads the map if anything changed. Call this on the rendering thread.
+	 * @return true if the map has been changed
+	 */
+	public boolean update() {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int ty = 0; ty < tilesY; ty++) {
+			for (int tx = 0; tx < tilesX; tx++) {
+				if (dirty[tx + ty * tilesX]) {
+					dirty[tx + ty * tilesX] = false;
+					final int x0 = tx * TILE_SIZE;
+					final int y0 = ty * TILE_SIZE;
+					final int w = Math.min(TILE_SIZE, mapWidth - x0);
+					final int h = Math.min(TILE_SIZE, mapHeight - y0);
+					futures.add(getExecutor().submit(new Runnable() {
+						@Override
+						public void run() {
+							renderTile(x0, y0, w, h);
+						}
+					}));
+				}
+			}
+		}
+		
+		if (futures.isEmpty()) {
+			return false;
+		}
+		
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while rendering minimap", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Rendering minimap failed", e.getCause());
+			}
+		}
+		
+		texture.applyEffect();
+		return true;
+	}
+	
+	/**
+	 * Returns an image description containing the whole map as frame 0.
+	 * @return image description of the map
+	 */
+	public ImageDescription getImage() {
+		return image;
+	}
+	
+	/**
+	 * Returns the texture of the map.
+	 * @return texture
+	 */
+	public Texture getTexture() {
+		return texture;
+	}
+	
+	/**
+	 * Returns the texture name of the map.
+	 * @return texture name
+	 */
+	public String getName() {
+		return name;
+	}
+	
+	/**
+	 * Converts a x coordinate in terrain absolute system into a pixel column of the map. Useful to draw markers.
+	 * @param x coordinate
+	 * @return pixel column
+	 */
+	public float getPixelX(float x) {
+		float w = terrain.getEdgeWidth() * terrain.getQuadSize();
+		return (x / w + 0.5f) * (mapWidth - 1);
+	}
+	
+	/**
+	 * Converts a z coordinate in terrain absolute system into a pixel row of the map. Useful to draw markers.
+	 * @param z coordinate
+	 * @return pixel row
+	 */
+	public float getPixelY(float z) {
+		float d = terrain.getEdgeDepth() * terrain.getQuadSize();
+		return (z / d + 0.5f) * (mapHeight - 1);
+	}
+	
+	/**
+	 * Unloads the texture from the GPU, removes it from the TextureManager and stops the own thread pool if there is
+	 * one.
+	 * @param buffer frame buffer the texture has been used with
+	 */
+	public void dispose(FrameBuffer buffer) {
+		if (ownExecutor) {
+			executor.shutdown();
+			executor = null;
+			ownExecutor = false;
+		}
+		TextureManager mgr = TextureManager.getInstance();
+		mgr.unloadTexture(buffer, texture);
+		mgr.removeTexture(name);
+	}
+	
+	private ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			ownExecutor = true;
+		}
+		return executor;
+	}
+	
+	private void renderTile(int x0, int y0, int w, int h) {
+		// Heights of the tile plus a border of one pixel for the gradients
+		int bw = w + 2;
+		float[] heights = new float[bw * (h + 2)];
+		for (int y = 0; y < h + 2; y++) {
+			for (int x = 0; x < bw; x++) {
+				heights[x + y * bw] = sampleHeight(x0 + x - 1, y0 + y - 1);
+			}
+		}
+		
+		float stepX = terrain.getEdgeWidth() * terrain.getQuadSize() / (mapWidth - 1);
+		float stepY = terrain.getEdgeDepth() * terrain.getQuadSize() / (mapHeight - 1);
+		float maxHeight = terrain.getHeight();
+		float paletteScale = maxHeight != 0f ? (PALETTE_SIZE - 1) / maxHeight : 0f;
+		
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int i = (x + 1) + (y + 1) * bw;
+				float dx = (heights[i + 1] - heights[i - 1]) / (2 * stepX);
+				float dy = (heights[i + bw] - heights[i - bw]) / (2 * stepY);
+				
+				float shade = (-dx * lightX - dy * lightY + lightZ) / (float) Math.sqrt(dx * dx + dy * dy + 1);
+				shade = ambient + (1 - ambient) * Math.max(shade, 0f);
+				
+				int idx = Math.max(0, Math.min(PALETTE_SIZE - 1, (int) (heights[i] * paletteScale)));
+				int col = palette[idx];
+				int r = Math.min(255, (int) (((col >> 16) & 0xff) * shade));
+				int g = Math.min(255, (int) (((col >> 8) & 0xff) * shade));
+				int b = Math.min(255, (int) ((col & 0xff) * shade));
+				
+				pixels[(x0 + x) + (y0 + y) * mapWidth] = 0xff000000 | (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+	
+	/**
+	 * Samples the height (upwards, so -y) of the terrain at a map pixel with bilinear interpolation between the
+	 * vertices. Pixels outside of the map are clamped to the border.
+	 */
+	private float sampleHeight(int px, int py) {
+		float x = Math.max(0, Math.min(mapWidth - 1, px)) * terrain.getEdgeWidth() / (float) (mapWidth - 1);
+		float z = Math.max(0, Math.min(mapHeight - 1, py)) * terrain.getEdgeDepth() / (float) (mapHeight - 1);
+		int ix = (int) x;
+		int iz = (int) z;
+		float fx = x - ix;
+		float fz = z - iz;
+		
+		float h00 = terrain.getPointY(ix, iz);
+		float h10 = terrain.getPointY(ix + 1, iz);
+		float h01 = terrain.getPointY(ix, iz + 1);
+		float h11 = terrain.getPointY(ix + 1, iz + 1);
+		
+		float top = h00 + (h10 - h00) * fx;
+		float bottom = h01 + (h11 - h01) * fx;
+		return -(top + (bottom - top) * fz);
+	}
+}
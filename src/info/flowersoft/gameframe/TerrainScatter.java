@@ -0,0 +1,614 @@
+package info.flowersoft.gameframe;
+
+import info.flowersoft.gameframe.mesh.MeshBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.threed.jpct.Camera;
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.PolygonManager;
+import com.threed.jpct.SimpleVector;
+import com.threed.jpct.World;
+
+/**
+ * Scatters props like trees, rocks or grass over a terrain. Instead of creating an Object3D for every single prop all
+ * instances of a layer are merged into one static mesh per chunk, so a whole forest costs only a few draw calls.</br>
+ *
+ * Positions are found by poisson disk sampling that runs in parallel for all chunks. Every position is then checked
+ * against the height, slope and mask rules of the layer. Chunks that are far away from the camera can be hidden by
+ * calling update() every frame.
+ *
+ * @author Lobby Divinus
+ */
+public class TerrainScatter {
+	
+	/**
+	 * Number of tries to place a new sample around an active one (k in Bridson's algorithm).
+	 */
+	private static final int SAMPLE_TRIES = 30;
+	
+	/**
+	 * Maximum number of vertices of one merged object.
+	 */
+	private static final int MAX_VERTICES = 65535;
+	
+	/**
+	 * A mask decides how dense props should be placed at a specific position of the terrain. Masks will be called
+	 * from multiple threads at the same time, so they must not modify any shared state.
+	 *
+	 * @author Lobby Divinus
+	 */
+	public interface IScatterMask {
+		/**
+		 * Returns the density at the given position in terrain absolute system.
+		 * @param x coordinate
+		 * @param z coordinate
+		 * @return density in [0..1] where 0 means no props at all and 1 means as many as the spacing allows
+		 */
+		float getDensity(float x, float z);
+	}
+	
+	/**
+	 * A layer is a kind of prop (for example a tree model) together with the rules where it may be placed.
+	 *
+	 * @author Lobby Divinus
+	 */
+	public static class Layer {
+		
+		private float[] coords;
+		
+		private float[] normals;
+		
+		private float[] uvs;
+		
+		private int[] indices;
+		
+		private int textureId;
+		
+		private float spacing;
+		
+		private float minHeight;
+		
+		private float maxHeight;
+		
+		private float maxSlope;
+		
+		private IScatterMask mask;
+		
+		private float minScale;
+		
+		private float maxScale;
+		
+		private boolean rotate;
+		
+		private float yOffset;
+		
+		/**
+		 * Creates a new layer from a template object.
+		 * @param template built but untransformed object whose geometry and texture should be used
+		 * @param spacing minimum distance between two props of this layer
+		 * @throws IllegalArgumentException if the template has more than 65535 vertices
+		 */
+		Layer(Object3D template, float spacing) {
+			this.spacing = spacing;
+			minHeight = -Float.MAX_VALUE;
+			maxHeight = Float.MAX_VALUE;
+			maxSlope = Float.MAX_VALUE;
+			minScale = 1f;
+			maxScale = 1f;
+			rotate = true;
+			
+			extractGeometry(template);
+		}
+		
+		/**
+		 * Only allows props where the terrain is between min and max height. Heights are measured upwards, so they
+		 * are the negated values of getCenteredY().
+		 * @param min minimum height
+		 * @param max maximum height
+		 */
+		public void setHeightRange(float min, float max) {
+			minHeight = min;
+			maxHeight = max;
+		}
+		
+		/**
+		 * Only allows props where the terrain is not steeper than the given slope.
+		 * @param slope maximum slope as rise over run (1 means 45 degree)
+		 */
+		public void setMaxSlope(float slope) {
+			maxSlope = slope;
+		}
+		
+		/**
+		 * Sets a mask to control the density of props over the terrain.
+		 * @param mask mask to use or null to place props everywhere
+		 */
+		public void setMask(IScatterMask mask) {
+			this.mask = mask;
+		}
+		
+		/**
+		 * Every prop will get a random scale within the given range. Default is 1 for both.
+		 * @param min minimum scale
+		 * @param max maximum scale
+		 */
+		public void setScaleRange(float min, float max) {
+			minScale = min;
+			maxScale = max;
+		}
+		
+		/**
+		 * Enables or disables random rotation of props around the Y-Axis. Enabled by default.
+		 * @param enable true to rotate props randomly
+		 */
+		public void setRandomRotation(boolean enable) {
+			rotate = enable;
+		}
+		
+		/**
+		 * Moves all props along the Y-Axis, useful if the origin of the template is not at its ground.
+		 * @param offset movement along the Y-Axis
+		 */
+		public void setYOffset(float offset) {
+			yOffset = offset;
+		}
+		
+		/**
+		 * Returns the minimum distance between two props of this layer.
+		 * @return spacing
+		 */
+		public float getSpacing() {
+			return spacing;
+		}
+		
+		private void extractGeometry(Object3D template) {
+			PolygonManager mgr = template.getPolygonManager();
+			int polygons = mgr.getMaxPolygonID();
+			
+			textureId = polygons > 0 ? mgr.getPolygonTexture(0) : 0;
+			
+			MeshBuilder builder = new MeshBuilder(3 * polygons, polygons);
+			builder.add(template);
+			if (builder.getVertexCount() > MAX_VERTICES) {
+				throw new IllegalArgumentException("Template must not have more than " + MAX_VERTICES + " vertices");
+			}
+			coords = Arrays.copyOf(builder.getCoords(), 3 * builder.getVertexCount());
+			normals = Arrays.copyOf(builder.getNormals(), 3 * builder.getVertexCount());
+			uvs = Arrays.copyOf(builder.getUVs(), 2 * builder.getVertexCount());
+			indices = Arrays.copyOf(builder.getIndices(), 3 * builder.getTriangleCount());
+		}
+	}
+	
+	/**
+	 * Rectangular part of the terrain that gets its own merged objects.
+	 */
+	private static class Chunk {
+		private float minX;
+		private float minZ;
+		private float maxX;
+		private float maxZ;
+		private float[][][] coords;
+		private float[][][] normals;
+		private float[][][] uvs;
+		private int[][][] indices;
+		private int[] instances;
+		private Object3D[] objects;
+		private boolean visible;
+	}
+	
+	private Terrain terrain;
+	
+	private List<Layer> layers;
+	
+	private Chunk[] chunks;
+	
+	private float viewDistance;
+	
+	private Matrix inverse;
+	
+	private SimpleVector position;
+	
+	/**
+	 * Creates a new scatter for the given terrain. The terrain will be divided into chunksX * chunksZ chunks. The
+	 * props of a layer in a chunk are merged into objects of at most 65535 vertices, so chunks with more vertices get
+	 * several objects per layer.
+	 * @param terrain terrain to place props on
+	 * @param chunksX number of chunks along the X-Axis
+	 * @param chunksZ number of chunks along the Z-Axis
+	 */
+	public TerrainScatter(Terrain terrain, int chunksX, int chunksZ) {
+		this.terrain = terrain;
+		layers = new ArrayList<Layer>();
+		viewDistance = Float.MAX_VALUE;
+		inverse = new Matrix();
+		position = new SimpleVector();
+		
+		float totalWidth = terrain.getEdgeWidth() * terrain.getQuadSize();
+		float totalDepth = terrain.getEdgeDepth() * terrain.getQuadSize();
+		float chunkWidth = totalWidth / chunksX;
+		float chunkDepth = totalDepth / chunksZ;
+		
+		chunks = new Chunk[chunksX * chunksZ];
+		for (int x = 0; x < chunksX; x++) {
+			for (int z = 0; z < chunksZ; z++) {
+				Chunk c = new Chunk();
+				c.minX = -totalWidth / 2 + x * chunkWidth;
+				c.minZ = -totalDepth / 2 + z * chunkDepth;
+				c.maxX = c.minX + chunkWidth;
+				c.maxZ = c.minZ + chunkDepth;
+				c.visible = true;
+				chunks[x + z * chunksX] = c;
+			}
+		}
+	}
+	
+	/**
+	 * Adds a new layer of props. The template has to be built and should not be transformed, its texture will be
+	 * used for all props of the layer. Layers are independent from each other, so props of different layers may
+	 * overlap.
+	 * @param template object to scatter, for example created by ExtendedPrimitives or loaded from a model
+	 * @param spacing minimum distance between two props of this layer
+	 * @return the new layer, use it to set up placement rules
+	 * @throws IllegalArgumentException if the template has more than 65535 vertices
+	 */
+	public Layer addLayer(Object3D template, float spacing) {
+		Layer layer = new Layer(template, spacing);
+		layers.add(layer);
+		return layer;
+	}
+	
+	/**
+	 * Places all props and creates the merged objects. Sampling and merging run on a temporary thread pool with one
+	 * thread per processor. Objects of a previous build are replaced, so remove them from the world before.
+	 * @param seed random seed, the same seed will always result in the same placement
+	 */
+	public void build(long seed) {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		try {
+			build(seed, executor);
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	/**
+	 * Places all props and creates the merged objects. Sampling and merging are done by the given executor, the
+	 * objects are created on the calling thread. Objects of a previous build are replaced, so remove them from the
+	 * world before.
+	 * @param seed random seed, the same seed will always result in the same placement
+	 * @param executor executor to run the chunk tasks on
+	 */
+	public void build(final long seed, ExecutorService executor) {
+		List<Future<?>> futures = new ArrayList<Future<?>>(chunks.length);
+		for (int i = 0; i < chunks.length; i++) {
+			final Chunk chunk = chunks[i];
+			final long chunkSeed = seed * 31 + i;
+			futures.add(executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					scatterChunk(chunk, new Random(chunkSeed));
+				}
+			}));
+		}
+		
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while scattering", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Scattering failed", e.getCause());
+			}
+		}
+		
+		for (Chunk chunk : chunks) {
+			int batches = 0;
+			for (int l = 0; l < layers.size(); l++) {
+				batches += chunk.coords[l].length;
+			}
+			chunk.objects = new Object3D[batches];
+			int o = 0;
+			for (int l = 0; l < layers.size(); l++) {
+				for (int b = 0; b < chunk.coords[l].length; b++) {
+					Object3D obj = new Object3D(chunk.coords[l][b], chunk.normals[l][b], chunk.uvs[l][b],
+							chunk.indices[l][b], layers.get(l).textureId);
+					obj.addParent(terrain);
+					obj.build();
+					obj.setVisibility(chunk.visible);
+					chunk.objects[o++] = obj;
+				}
+			}
+			chunk.coords = null;
+			chunk.normals = null;
+			chunk.uvs = null;
+			chunk.indices = null;
+		}
+	}
+	
+	/**
+	 * Adds all merged objects to a world. Call this after build().
+	 * @param world world to add the objects to
+	 */
+	public void addToWorld(World world) {
+		for (Chunk chunk : chunks) {
+			if (chunk.objects != null) {
+				for (Object3D obj : chunk.objects) {
+					if (obj != null) {
+						world.addObject(obj);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Removes all merged objects from a world.
+	 * @param world world to remove the objects from
+	 */
+	public void removeFromWorld(World world) {
+		for (Chunk chunk : chunks) {
+			if (chunk.objects != null) {
+				for (Object3D obj : chunk.objects) {
+					if (obj != null) {
+						world.removeObject(obj);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Sets the distance up to which chunks should be visible. The distance is measured on the X-Z-plane from the
+	 * camera to the nearest point of a chunk in terrain absolute system.
+	 * @param distance view distance, Float.MAX_VALUE by default
+	 */
+	public void setViewDistance(float distance) {
+		viewDistance = distance;
+	}
+	
+	/**
+	 * Returns the distance up to which chunks are visible.
+	 * @return view distance
+	 */
+	public float getViewDistance() {
+		return viewDistance;
+	}
+	
+	/**
+	 * Shows chunks near the camera and hides all other. Call this every frame, it doesn't allocate anything.
+	 * @param cam camera to measure distance from
+	 */
+	public void update(Camera cam) {
+		cam.getPosition(position);
+		terrain.getInverseWorldTransformation(inverse);
+		position.matMul(inverse);
+		
+		float maxDist = viewDistance * viewDistance;
+		for (Chunk chunk : chunks) {
+			float dx = Math.max(Math.max(chunk.minX - position.x, position.x - chunk.maxX), 0f);
+			float dz = Math.max(Math.max(chunk.minZ - position.z, position.z - chunk.maxZ), 0f);
+			boolean visible = dx * dx + dz * dz <= maxDist;
+			
+			if (visible != chunk.visible) {
+				chunk.visible = visible;
+				if (chunk.objects != null) {
+					for (Object3D obj : chunk.objects) {
+						if (obj != null) {
+							obj.setVisibility(visible);
+						}
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of props that have been placed by the last build for a layer.
+	 * @param layer the layer
+	 * @return number of props
+	 */
+	public int countInstances(Layer layer) {
+		int l = layers.indexOf(layer);
+		int count = 0;
+		for (Chunk chunk : chunks) {
+			if (chunk.instances != null && l >= 0) {
+				count += chunk.instances[l];
+			}
+		}
+		return count;
+	}
+	
+	private void scatterChunk(Chunk chunk, Random rnd) {
+		int layerCount = layers.size();
+		chunk.coords = new float[layerCount][][];
+		chunk.normals = new float[layerCount][][];
+		chunk.uvs = new float[layerCount][][];
+		chunk.indices = new int[layerCount][][];
+		chunk.instances = new int[layerCount];
+		
+		for (int l = 0; l < layerCount; l++) {
+			Layer layer = layers.get(l);
+			
+			// Stay half the spacing away from the chunk border so neighbour chunks keep the distance as well
+			float r = layer.spacing;
+			float cellSize = r / (float) Math.sqrt(2);
+			float w = chunk.maxX - chunk.minX - r;
+			float d = chunk.maxZ - chunk.minZ - r;
+			int maxSamples = w > 0 && d > 0 ? ((int) (w / cellSize) + 1) * ((int) (d / cellSize) + 1) : 0;
+			
+			float[] xs = new float[maxSamples];
+			float[] zs = new float[maxSamples];
+			int count = samplePoissonDisk(chunk.minX + r / 2, chunk.minZ + r / 2, w, d, r, rnd, xs, zs);
+			
+			float[] ys = new float[count];
+			float[] slopes = new float[count];
+			terrain.getCenteredHeights(xs, zs, ys, slopes, count);
+			
+			int accepted = 0;
+			for (int i = 0; i < count; i++) {
+				float h = -ys[i];
+				if (h < layer.minHeight || h > layer.maxHeight || slopes[i] > layer.maxSlope) {
+					continue;
+				}
+				if (layer.mask != null && rnd.nextFloat() >= layer.mask.getDensity(xs[i], zs[i])) {
+					continue;
+				}
+				xs[accepted] = xs[i];
+				ys[accepted] = ys[i];
+				zs[accepted] = zs[i];
+				accepted++;
+			}
+			
+			mergeInstances(chunk, l, layer, xs, ys, zs, accepted, rnd);
+		}
+	}
+	
+	private static void mergeInstances(Chunk chunk, int l, Layer layer, float[] xs, float[] ys, float[] zs,
+			int count, Random rnd) {
+		// Split the props into batches that stay within the vertex limit of an object
+		int vertices = layer.coords.length / 3;
+		int perBatch = Math.max(1, MAX_VERTICES / Math.max(vertices, 1));
+		int batches = (count + perBatch - 1) / perBatch;
+		float[][] coords = new float[batches][];
+		float[][] normals = new float[batches][];
+		float[][] uvs = new float[batches][];
+		int[][] indices = new int[batches][];
+		for (int b = 0; b < batches; b++) {
+			int n = Math.min(perBatch, count - b * perBatch);
+			coords[b] = new float[n * layer.coords.length];
+			normals[b] = new float[n * layer.coords.length];
+			uvs[b] = new float[n * layer.uvs.length];
+			indices[b] = new int[n * layer.indices.length];
+		}
+		
+		for (int i = 0; i < count; i++) {
+			float angle = layer.rotate ? rnd.nextFloat() * 2 * (float) Math.PI : 0f;
+			float scale = layer.minScale + rnd.nextFloat() * (layer.maxScale - layer.minScale);
+			float rotCos = (float) Math.cos(angle);
+			float rotSin = (float) Math.sin(angle);
+			float cos = scale * rotCos;
+			float sin = scale * rotSin;
+			float y = ys[i] + layer.yOffset;
+			
+			int b = i / perBatch;
+			int k = i % perBatch;
+			float[] batchCoords = coords[b];
+			float[] batchNormals = normals[b];
+			int c = k * layer.coords.length;
+			for (int v = 0; v < layer.coords.length; v += 3) {
+				float tx = layer.coords[v];
+				float tz = layer.coords[v + 2];
+				batchCoords[c + v + 0] = xs[i] + cos * tx + sin * tz;
+				batchCoords[c + v + 1] = y + scale * layer.coords[v + 1];
+				batchCoords[c + v + 2] = zs[i] - sin * tx + cos * tz;
+				
+				float nx = layer.normals[v];
+				float nz = layer.normals[v + 2];
+				batchNormals[c + v + 0] = rotCos * nx + rotSin * nz;
+				batchNormals[c + v + 1] = layer.normals[v + 1];
+				batchNormals[c + v + 2] = -rotSin * nx + rotCos * nz;
+			}
+			
+			System.arraycopy(layer.uvs, 0, uvs[b], k * layer.uvs.length, layer.uvs.length);
+			
+			int[] batchIndices = indices[b];
+			int idx = k * layer.indices.length;
+			for (int j = 0; j < layer.indices.length; j++) {
+				batchIndices[idx + j] = layer.indices[j] + k * vertices;
+			}
+		}
+		
+		chunk.coords[l] = coords;
+		chunk.normals[l] = normals;
+		chunk.uvs[l] = uvs;
+		chunk.indices[l] = indices;
+		chunk.instances[l] = count;
+	}
+	
+	/**
+	 * Poisson disk sampling (Bridson's algorithm) within a rectangle. Output arrays must be large enough to store one
+	 * sample per grid cell.
+	 * @return number of samples
+	 */
+	private static int samplePoissonDisk(float x0, float z0, float w, float d, float r, Random rnd,
+			float[] xs, float[] zs) {
+		if (w <= 0 || d <= 0) {
+			return 0;
+		}
+		
+		float cellSize = r / (float) Math.sqrt(2);
+		int gw = (int) (w / cellSize) + 1;
+		int gd = (int) (d / cellSize) + 1;
+		int[] grid = new int[gw * gd];
+		Arrays.fill(grid, -1);
+		int[] active = new int[gw * gd];
+		int activeCount = 0;
+		float r2 = r * r;
+		
+		xs[0] = rnd.nextFloat() * w;
+		zs[0] = rnd.nextFloat() * d;
+		grid[(int) (xs[0] / cellSize) + (int) (zs[0] / cellSize) * gw] = 0;
+		active[activeCount++] = 0;
+		int count = 1;
+		
+		while (activeCount > 0) {
+			int a = rnd.nextInt(activeCount);
+			int s = active[a];
+			boolean found = false;
+			
+			for (int t = 0; t < SAMPLE_TRIES && !found; t++) {
+				float angle = rnd.nextFloat() * 2 * (float) Math.PI;
+				float dist = r * (1 + rnd.nextFloat());
+				float x = xs[s] + dist * (float) Math.cos(angle);
+				float z = zs[s] + dist * (float) Math.sin(angle);
+				if (x < 0 || z < 0 || x >= w || z >= d) {
+					continue;
+				}
+				
+				int gx = (int) (x / cellSize);
+				int gz = (int) (z / cellSize);
+				boolean free = true;
+				for (int nz = Math.max(gz - 2, 0); nz <= Math.min(gz + 2, gd - 1) && free; nz++) {
+					for (int nx = Math.max(gx - 2, 0); nx <= Math.min(gx + 2, gw - 1) && free; nx++) {
+						int o = grid[nx + nz * gw];
+						if (o >= 0) {
+							float dx = xs[o] - x;
+							float dz = zs[o] - z;
+							free = dx * dx + dz * dz >= r2;
+						}
+					}
+				}
+				
+				if (free) {
+					xs[count] = x;
+					zs[count] = z;
+					grid[gx + gz * gw] = count;
+					active[activeCount++] = count;
+					count++;
+					found = true;
+				}
+			}
+			
+			if (!found) {
+				active[a] = active[--activeCount];
+			}
+		}
+		
+		for (int i = 0; i < count; i++) {
+			xs[i] += x0;
+			zs[i] += z0;
+		}
+		
+		return count;
+	}
+}
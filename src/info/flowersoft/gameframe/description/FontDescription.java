@@ -1,6 +1,7 @@
 package info.flowersoft.gameframe.description;
 
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -13,15 +14,33 @@ import java.util.Set;
  */
 public class FontDescription extends ImageDescription {
 	
+	/**
+	 * Maximum number of chars covered by the dense lookup table. Chars far away from the others are only kept in the
+	 * map.
+	 */
+	private static final int MAX_DENSE_RANGE = 512;
+	
 	Map<Character, Integer> mapping;
 	
 	float spacing;
 	
 	float lineSpacing;
 	
+	/**
+	 * Frames of the chars from firstChar on, -1 for chars that aren't defined.
+	 */
+	int[] charFrames;
+	
+	int firstChar;
+	
+	int denseCount;
+	
+	int modCount;
+	
 	public FontDescription(String tex, boolean hasAlpha) {
 		super(tex, hasAlpha, false);
 		mapping = new HashMap<Character, Integer>();
+		charFrames = new int[0];
 	}
 	
 	public FontDescription(String tex, boolean alpha, float glyphWidth, float glyphHeight, char startChar, char endChar) {
@@ -33,6 +52,7 @@ public class FontDescription extends ImageDescription {
 	public void setSpacing(float horizontal, float vertical) {
 		spacing = horizontal;
 		lineSpacing = vertical;
+		modCount++;
 	}
 	
 	public float getHorizontalSpacing() {
@@ -51,6 +71,21 @@ public class FontDescription extends ImageDescription {
 		return getHeight(mapCharToFrame(c));
 	}
 	
+	/**
+	 * Returns the width of the widest digit, which is used for digits of text with fixed width digits.
+	 * @return width of the widest digit or 0 if no digits are defined
+	 */
+	public float getDigitWidth() {
+		float width = 0;
+		for (char c = '0'; c <= '9'; c++) {
+			int frame = mapCharToFrame(c);
+			if (frame >= 0) {
+				width = Math.max(width, getWidth(frame));
+			}
+		}
+		return width;
+	}
+	
 	public int countCharacters() {
 		return mapping.size();
 	}
@@ -75,7 +110,7 @@ public class FontDescription extends ImageDescription {
 			
 			px += glyph_w;
 			if (px + glyph_w > x + w) {
-				px = 0;
+				px = x;
 				py += glyph_h;
 			}
 			curChar++;
@@ -83,32 +118,91 @@ public class FontDescription extends ImageDescription {
 		
 		spacing = 0;
 		lineSpacing = 0;
+		modCount++;
 	}
 	
 	public int defineChar(char c, float sx, float sy, float sw, float sh) {
 		int frame = super.addFrame(sx, sy, sw, sh);
-		mapping.put(c, frame);
+		mapChar(c, frame);
 		return frame;
 	}
-
-	public float[] getUVCoords(char c) {
-		float[] result = null;
+	
+	/**
+	 * Uses an existing frame as glyph for a char.
+	 * @param c char to define
+	 * @param frame index of the frame
+	 */
+	public void mapChar(char c, int frame) {
+		mapping.put(c, frame);
 		
-		if (mapping.containsKey(c)) {
-			result = this.getUVCoords(mapping.get(c));
+		int index = c - firstChar;
+		if (index < 0 || index >= charFrames.length) {
+			int first = charFrames.length == 0 ? c : Math.min(firstChar, c);
+			int last = charFrames.length == 0 ? c : Math.max(firstChar + charFrames.length - 1, c);
+			if (last - first < MAX_DENSE_RANGE) {
+				setDenseRange(first, last - first + 1);
+			}
+			index = c - firstChar;
+		}
+		if (index >= 0 && index < charFrames.length) {
+			if (charFrames[index] < 0) {
+				denseCount++;
+			}
+			charFrames[index] = frame;
 		}
 		
-		return result;
+		modCount++;
 	}
 	
-	public int mapCharToFrame(char c) {
-		int result = -1;
+	private void setDenseRange(int first, int length) {
+		charFrames = new int[length];
+		Arrays.fill(charFrames, -1);
+		firstChar = first;
+		denseCount = 0;
 		
-		if (mapping.containsKey(c)) {
-			result = mapping.get(c);
+		// Chars that have only been in the map so far may be covered now
+		for (Map.Entry<Character, Integer> entry : mapping.entrySet()) {
+			int index = entry.getKey() - first;
+			if (index >= 0 && index < length) {
+				charFrames[index] = entry.getValue();
+				denseCount++;
+			}
+		}
+	}
+	
+	@Override
+	public void setSize(float width, float height, int frame) {
+		super.setSize(width, height, frame);
+		modCount++;
+	}
+	
+	/**
+	 * Returns a number that changes whenever glyphs, their sizes or the spacing are changed, so laid out text can be
+	 * checked for being outdated.
+	 * @return modification count
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+
+	public float[] getUVCoords(char c) {
+		int frame = mapCharToFrame(c);
+		return frame >= 0 ? getUVCoords(frame) : null;
+	}
+	
+	public int mapCharToFrame(char c) {
+		int index = c - firstChar;
+		if (index >= 0 && index < charFrames.length) {
+			return charFrames[index];
 		}
 		
-		return result;
+		if (denseCount < mapping.size()) {
+			Integer frame = mapping.get(c);
+			if (frame != null) {
+				return frame;
+			}
+		}
+		return -1;
 	}
 	
 }
@@ -1,14 +1,13 @@
 package info.flowersoft.gameframe.description;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 import com.threed.jpct.Texture;
 import com.threed.jpct.TextureManager;
 
 /**
  * An image description is a set of rectangles within one texture. Different rectangles are adresses by an index called
- * frame.
+ * frame. Frames are stored in parallel primitive arrays, so descriptions of large sprite sheets stay small.
  * 
  * @author Lobby Divinus
  */
@@ -30,20 +29,26 @@ public class ImageDescription {
 	private boolean alpha;
 	
 	/**
-	 * List of all frames in the image description.
+	 * Number of frames in the image description.
 	 */
-	private List<Frame> frameList;
+	private int frameCount;
 	
 	/**
-	 * Frame within the image description.
-	 * 
-	 * @author Lobby Divinus
+	 * UV coords of all frames, four floats per frame: left, upper, right and lower border.
 	 */
-	private class Frame {
-		private float actualWidth;
-		private float actualHeight;
-		private float[] uv;
-	}
+	private float[] uvs;
+	
+	/**
+	 * Sizes of all frames, can be different from the size of their rectangles.
+	 */
+	private float[] widths;
+	
+	private float[] heights;
+	
+	/**
+	 * UV coords of single frames as returned by getUVCoords(int), only created for frames that are asked for.
+	 */
+	private float[][] uvArrays;
 	
 	/**
 	 * Creates a new image description for a texture. Also creates a frame containing the whole texture if singleFrame
@@ -58,7 +63,9 @@ public class ImageDescription {
 		
 		textureObj = TextureManager.getInstance().getTexture(tex);
 		
-		frameList = new ArrayList<Frame>();
+		uvs = new float[4 * 8];
+		widths = new float[8];
+		heights = new float[8];
 		
 		if (singleFrame) {
 			addFrame(0, 0, textureObj.getWidth(), textureObj.getHeight());
@@ -105,15 +112,22 @@ public class ImageDescription {
 	public ImageDescription(String tex, ImageDescription des, boolean hasAlpha) {
 		this(tex, hasAlpha, false);
 		
-		for (int i = 0; i < des.frameList.size(); i++) {
-			Frame other = des.frameList.get(i);
-			Frame frame = new Frame();
-			
-			frame.actualWidth = other.actualWidth;
-			frame.actualHeight = other.actualHeight;
-			frame.uv = other.uv.clone();
-			
-			frameList.add(frame);
+		ensureCapacity(des.frameCount);
+		System.arraycopy(des.uvs, 0, uvs, 0, 4 * des.frameCount);
+		System.arraycopy(des.widths, 0, widths, 0, des.frameCount);
+		System.arraycopy(des.heights, 0, heights, 0, des.frameCount);
+		frameCount = des.frameCount;
+	}
+	
+	private void ensureCapacity(int frames) {
+		if (frames > widths.length) {
+			int size = Math.max(frames, 2 * widths.length);
+			uvs = Arrays.copyOf(uvs, 4 * size);
+			widths = Arrays.copyOf(widths, size);
+			heights = Arrays.copyOf(heights, size);
+			if (uvArrays != null) {
+				uvArrays = Arrays.copyOf(uvArrays, size);
+			}
 		}
 	}
 	
@@ -126,24 +140,19 @@ public class ImageDescription {
 	 * @return index of the frame
 	 */
 	public int addFrame(float x, float y, float w, float h) {
-		Frame frame = new Frame();
-		frame.actualWidth = w;
-		frame.actualHeight = h;
-		
-		float facX = 1f / textureObj.getWidth();
-		float facY = 1f / textureObj.getHeight();
-		
-		float[] uv = new float[4];
-		uv[0] = facX * (x + 1);
-		uv[1] = facY * (y + 1);
-		uv[2] = facX * (x + w);
-		uv[3] = facY * (y + h);
-		
-		frame.uv = uv;
-		
-		frameList.add(frame);
-		
-		return frameList.size() - 1;
+		ensureCapacity(frameCount + 1);
+		setFrame(frameCount, x, y, w, h, 1f / textureObj.getWidth(), 1f / textureObj.getHeight());
+		return frameCount++;
+	}
+	
+	private void setFrame(int frame, float x, float y, float w, float h, float facX, float facY) {
+		int i = 4 * frame;
+		uvs[i] = facX * (x + 1);
+		uvs[i + 1] = facY * (y + 1);
+		uvs[i + 2] = facX * (x + w);
+		uvs[i + 3] = facY * (y + h);
+		widths[frame] = w;
+		heights[frame] = h;
 	}
 	
 	/**
@@ -179,12 +188,25 @@ public class ImageDescription {
 	 * @return frame index of the first added frame even if no frames have been added, so compare it with countFrames()
 	 */
 	public int addStrip(float x, float y, float w, float h, float frameWidth, float frameHeight, int count) {
-		int frameIndex = frameList.size();
+		int frameIndex = frameCount;
+		
+		// Count the frames first, so the arrays grow at most once
+		int columns = 0;
+		for (float px = x; px + frameWidth <= x + w; px += frameWidth) {
+			columns++;
+		}
+		int rows = 0;
+		for (float py = y; py + frameHeight <= y + h; py += frameHeight) {
+			rows++;
+		}
+		ensureCapacity(frameCount + (int) Math.min((long) columns * rows, count));
 		
+		float facX = 1f / textureObj.getWidth();
+		float facY = 1f / textureObj.getHeight();
 		int idx = 0;
 		for (float py = y; py + frameHeight <= y + h && idx < count; py += frameHeight) {
 			for (float px = x; px + frameWidth <= x + w && idx < count; px += frameWidth) {
-				addFrame(px, py, frameWidth, frameHeight);
+				setFrame(frameCount++, px, py, frameWidth, frameHeight, facX, facY);
 				idx++;
 			}
 		}
@@ -192,6 +214,32 @@ public class ImageDescription {
 		return frameIndex;
 	}
 	
+	/**
+	 * Adds many frames at once. The arrays are read in bulk, so this is the fastest way to create large sprite sheets.
+	 * @param rects rectangles of the frames in pixels, four floats per frame: x, y, width, height
+	 * @param sizes sizes of the frames, two floats per frame: width, height, or null to use the rectangle sizes
+	 * @param offset index of the first frame to add within the arrays
+	 * @param count number of frames to add
+	 * @return frame index of the first added frame
+	 */
+	public int addFrames(float[] rects, float[] sizes, int offset, int count) {
+		int frameIndex = frameCount;
+		ensureCapacity(frameCount + count);
+		
+		float facX = 1f / textureObj.getWidth();
+		float facY = 1f / textureObj.getHeight();
+		for (int i = offset; i < offset + count; i++) {
+			setFrame(frameCount, rects[4 * i], rects[4 * i + 1], rects[4 * i + 2], rects[4 * i + 3], facX, facY);
+			if (sizes != null) {
+				widths[frameCount] = sizes[2 * i];
+				heights[frameCount] = sizes[2 * i + 1];
+			}
+			frameCount++;
+		}
+		
+		return frameIndex;
+	}
+	
 	/**
 	 * Returns texture name the image description is based on.
 	 * @return texture name
@@ -217,9 +265,9 @@ public class ImageDescription {
 	 * @param frame index of the frame to modify
 	 */
 	public void setSize(float width, float height, int frame) {
-		Frame f = frameList.get(frame);
-		f.actualWidth = width;
-		f.actualHeight = height;
+		checkFrame(frame);
+		widths[frame] = width;
+		heights[frame] = height;
 	}
 	
 	/**
@@ -228,7 +276,8 @@ public class ImageDescription {
 	 * @return width of the frame
 	 */
 	public float getWidth(int frame) {
-		return frameList.get(frame).actualWidth;
+		checkFrame(frame);
+		return widths[frame];
 	}
 	
 	/**
@@ -237,7 +286,8 @@ public class ImageDescription {
 	 * @return height of the frame
 	 */
 	public float getHeight(int frame) {
-		return frameList.get(frame).actualHeight;
+		checkFrame(frame);
+		return heights[frame];
 	}
 	
 	/**
@@ -253,16 +303,42 @@ public class ImageDescription {
 	 * @return number of frames
 	 */
 	public int countFrames() {
-		return frameList.size();
+		return frameCount;
 	}
 	
 	/**
 	 * Gets the uv coords for a specific frame. The uv coords are an array of four entries, where uv[0], uv[1] is the
-	 * left upper corner and uv[2], uv[3] is the right lower corner.
+	 * left upper corner and uv[2], uv[3] is the right lower corner. The array is created on the first call for a frame
+	 * and must not be modified, getUVCoords(int, float[], int) doesn't need it at all.
 	 * @param frame index of the frame
 	 * @return uv coords of the frame
 	 */
 	public float[] getUVCoords(int frame) {
-		return frameList.get(frame).uv;
+		checkFrame(frame);
+		if (uvArrays == null) {
+			uvArrays = new float[widths.length][];
+		}
+		if (uvArrays[frame] == null) {
+			uvArrays[frame] = Arrays.copyOfRange(uvs, 4 * frame, 4 * frame + 4);
+		}
+		return uvArrays[frame];
+	}
+	
+	/**
+	 * Copies the uv coords of a specific frame into an array: left upper corner u, v followed by right lower corner
+	 * u, v.
+	 * @param frame index of the frame
+	 * @param dst array to write the four uv coords to
+	 * @param offset index to start writing at
+	 */
+	public void getUVCoords(int frame, float[] dst, int offset) {
+		checkFrame(frame);
+		System.arraycopy(uvs, 4 * frame, dst, offset, 4);
+	}
+	
+	private void checkFrame(int frame) {
+		if (frame >= frameCount) {
+			throw new IndexOutOfBoundsException("Frame " + frame + " doesn't exist, there are " + frameCount);
+		}
 	}
 }
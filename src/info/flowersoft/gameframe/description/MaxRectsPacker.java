@@ -0,0 +1,220 @@
+package info.flowersoft.gameframe.description;
+
+import java.util.Arrays;
+
+/**
+ * A max rects packer places rectangles within a bin without overlapping. It keeps a list of maximal free rectangles,
+ * which may overlap each other, and puts every new rectangle into the free rectangle that leaves the shortest side
+ * over (best short side fit). Results only depend on the order of insertions, so packing is deterministic. Inserting
+ * rectangles sorted by decreasing height gives the best results.
+ *
+ * @author Lobby Divinus
+ */
+public class MaxRectsPacker {
+	
+	private int width;
+	
+	private int height;
+	
+	/**
+	 * Free rectangles, four ints each: x, y, width, height.
+	 */
+	private int[] free;
+	
+	private int freeCount;
+	
+	private int[] split;
+	
+	/**
+	 * Indices of the free rectangles created by the last placement.
+	 */
+	private int[] created;
+	
+	private int createdCount;
+	
+	private int usedArea;
+	
+	/**
+	 * Creates a new max rects packer with an empty bin.
+	 * @param width width of the bin
+	 * @param height height of the bin
+	 */
+	public MaxRectsPacker(int width, int height) {
+		free = new int[4 * 64];
+		split = new int[4 * 4];
+		created = new int[64];
+		reset(width, height);
+	}
+	
+	/**
+	 * Removes all rectangles and sets a new bin size.
+	 * @param width width of the bin
+	 * @param height height of the bin
+	 */
+	public void reset(int width, int height) {
+		this.width = width;
+		this.height = height;
+		free[0] = 0;
+		free[1] = 0;
+		free[2] = width;
+		free[3] = height;
+		freeCount = 1;
+		usedArea = 0;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	/**
+	 * Returns the area covered by all inserted rectangles.
+	 * @return used area
+	 */
+	public int getUsedArea() {
+		return usedArea;
+	}
+	
+	/**
+	 * Places a rectangle within the bin.
+	 * @param w width of the rectangle
+	 * @param h height of the rectangle
+	 * @param position array to write the x and y coordinate of the placed rectangle to
+	 * @return true if the rectangle has been placed, false if it doesn't fit anymore
+	 */
+	public boolean insert(int w, int h, int[] position) {
+		int best = -1;
+		int bestShort = Integer.MAX_VALUE;
+		int bestLong = Integer.MAX_VALUE;
+		for (int i = 0; i < freeCount; i++) {
+			int fw = free[4 * i + 2];
+			int fh = free[4 * i + 3];
+			if (fw >= w && fh >= h) {
+				int shortSide = Math.min(fw - w, fh - h);
+				int longSide = Math.max(fw - w, fh - h);
+				if (shortSide < bestShort || (shortSide == bestShort && longSide < bestLong)) {
+					best = i;
+					bestShort = shortSide;
+					bestLong = longSide;
+				}
+			}
+		}
+		if (best < 0) {
+			return false;
+		}
+		
+		int x = free[4 * best];
+		int y = free[4 * best + 1];
+		place(x, y, w, h);
+		position[0] = x;
+		position[1] = y;
+		usedArea += w * h;
+		return true;
+	}
+	
+	private void place(int x, int y, int w, int h) {
+		// Split every free rectangle that intersects the placed one into the up to four parts around it
+		int count = freeCount;
+		createdCount = 0;
+		for (int i = 0; i < count; i++) {
+			int fx = free[4 * i];
+			int fy = free[4 * i + 1];
+			int fw = free[4 * i + 2];
+			int fh = free[4 * i + 3];
+			if (x >= fx + fw || x + w <= fx || y >= fy + fh || y + h <= fy) {
+				continue;
+			}
+			
+			int parts = 0;
+			if (x > fx) {
+				parts = addSplit(parts, fx, fy, x - fx, fh);
+			}
+			if (x + w < fx + fw) {
+				parts = addSplit(parts, x + w, fy, fx + fw - x - w, fh);
+			}
+			if (y > fy) {
+				parts = addSplit(parts, fx, fy, fw, y - fy);
+			}
+			if (y + h < fy + fh) {
+				parts = addSplit(parts, fx, y + h, fw, fy + fh - y - h);
+			}
+			
+			// The first part replaces the split rectangle, the others are appended
+			if (parts == 0) {
+				free[4 * i + 2] = 0;
+			} else {
+				System.arraycopy(split, 0, free, 4 * i, 4);
+				addCreated(i);
+				for (int p = 1; p < parts; p++) {
+					addCreated(freeCount);
+					addFree(split[4 * p], split[4 * p + 1], split[4 * p + 2], split[4 * p + 3]);
+				}
+			}
+		}
+		prune();
+	}
+	
+	private int addSplit(int parts, int x, int y, int w, int h) {
+		split[4 * parts] = x;
+		split[4 * parts + 1] = y;
+		split[4 * parts + 2] = w;
+		split[4 * parts + 3] = h;
+		return parts + 1;
+	}
+	
+	private void addCreated(int index) {
+		if (createdCount == created.length) {
+			created = Arrays.copyOf(created, 2 * createdCount);
+		}
+		created[createdCount++] = index;
+	}
+	
+	private void addFree(int x, int y, int w, int h) {
+		if (4 * freeCount == free.length) {
+			free = Arrays.copyOf(free, 2 * free.length);
+		}
+		free[4 * freeCount] = x;
+		free[4 * freeCount + 1] = y;
+		free[4 * freeCount + 2] = w;
+		free[4 * freeCount + 3] = h;
+		freeCount++;
+	}
+	
+	private void prune() {
+		// Remove empty rectangles and rectangles contained in others, keeping the order of the remaining ones. Only new
+		// rectangles have to be checked, an old one can't be contained in a new one that is part of another old one.
+		for (int c = 0; c < createdCount; c++) {
+			int i = created[c];
+			if (free[4 * i + 2] == 0) {
+				continue;
+			}
+			for (int j = 0; j < freeCount; j++) {
+				if (i != j && free[4 * j + 2] != 0 && contains(j, i)) {
+					free[4 * i + 2] = 0;
+					break;
+				}
+			}
+		}
+		
+		int count = 0;
+		for (int i = 0; i < freeCount; i++) {
+			if (free[4 * i + 2] != 0) {
+				System.arraycopy(free, 4 * i, free, 4 * count, 4);
+				count++;
+			}
+		}
+		freeCount = count;
+	}
+	
+	private boolean contains(int outer, int inner) {
+		int ox = free[4 * outer];
+		int oy = free[4 * outer + 1];
+		int ix = free[4 * inner];
+		int iy = free[4 * inner + 1];
+		return ix >= ox && iy >= oy && ix + free[4 * inner + 2] <= ox + free[4 * outer + 2]
+				&& iy + free[4 * inner + 3] <= oy + free[4 * outer + 3];
+	}
+}
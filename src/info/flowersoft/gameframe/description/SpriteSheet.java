@@ -0,0 +1,469 @@
+package info.flowersoft.gameframe.description;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A sprite sheet describes the frames of a texture together with their pivots, named animations over frame ranges
+ * and optionally the glyphs of a bitmap font. Sheets are stored in a compact binary format, so artists can change
+ * them without touching code and loading needs no per frame calls. The whole file is read into one buffer and every
+ * block is copied into a pre-sized array at once.</br>
+ *
+ * The data doesn't need the texture, so sheets can be created and written by tools. The texture has to be loaded
+ * before getImage() or getFont() is called the first time, they create the description with all frames in bulk.</br>
+ *
+ * File layout (little endian): magic, version, flags (1 = alpha), frame count, animation count, glyph count,
+ * horizontal and vertical glyph spacing as floats, followed by the frame rectangles (x, y, width, height), frame
+ * sizes (width, height) and pivots (x, y) as floats, the animations (first frame, length, mode) as ints, their speeds
+ * as floats, the glyphs (char, frame) as ints and finally the texture name and the animation names, each as a short
+ * length followed by UTF-8 bytes.
+ *
+ * @author Lobby Divinus
+ */
+public class SpriteSheet {
+	
+	/**
+	 * Version of the file format.
+	 */
+	public static final int VERSION = 1;
+	
+	/**
+	 * Animation mode that stops at the last frame.
+	 */
+	public static final int ONCE = 0;
+	
+	/**
+	 * Animation mode that starts again at the first frame after the last one.
+	 */
+	public static final int LOOP = 1;
+	
+	/**
+	 * Animation mode that plays forwards and backwards in turn.
+	 */
+	public static final int PING_PONG = 2;
+	
+	private static final int MAGIC = 0x53534647;
+	
+	private static final int HEADER_SIZE = 32;
+	
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private String texture;
+	
+	private boolean alpha;
+	
+	private int frameCount;
+	
+	private float[] rects;
+	
+	private float[] sizes;
+	
+	private float[] pivots;
+	
+	private int animationCount;
+	
+	private String[] animationNames;
+	
+	/**
+	 * Animations, three ints each: first frame, length, mode.
+	 */
+	private int[] animations;
+	
+	private float[] speeds;
+	
+	private int glyphCount;
+	
+	/**
+	 * Glyphs, two ints each: char and frame.
+	 */
+	private int[] glyphs;
+	
+	private float spacing;
+	
+	private float lineSpacing;
+	
+	private ImageDescription image;
+	
+	/**
+	 * Creates a new empty sprite sheet, e.g. for tools that write sheets.
+	 * @param texture name of the texture the sheet describes, at most 65535 bytes in UTF-8
+	 * @param hasAlpha set this to true if your texture contains alpha you want to use
+	 */
+	public SpriteSheet(String texture, boolean hasAlpha) {
+		checkName(texture);
+		this.texture = texture;
+		alpha = hasAlpha;
+		rects = new float[4 * 16];
+		sizes = new float[2 * 16];
+		pivots = new float[2 * 16];
+		animationNames = new String[4];
+		animations = new int[3 * 4];
+		speeds = new float[4];
+		glyphs = new int[0];
+	}
+	
+	private SpriteSheet() {
+	}
+	
+	/**
+	 * Reads a sprite sheet. The stream is read completely but not closed.
+	 * @param stream stream to read from, e.g. from JPCTGameContext.openStream()
+	 * @return the sprite sheet
+	 * @throws IOException if the stream can't be read or doesn't contain a sprite sheet
+	 */
+	public static SpriteSheet read(InputStream stream) throws IOException {
+		byte[] data = new byte[Math.max(stream.available(), 4096)];
+		int length = 0;
+		int n;
+		while ((n = stream.read(data, length, data.length - length)) > 0) {
+			length += n;
+			if (length == data.length) {
+				data = Arrays.copyOf(data, 2 * length);
+			}
+		}
+		
+		ByteBuffer buffer = ByteBuffer.wrap(data, 0, length);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		if (length < HEADER_SIZE || buffer.getInt() != MAGIC) {
+			throw new IOException("Not a sprite sheet");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException("Unsupported sprite sheet version " + version);
+		}
+		
+		SpriteSheet sheet = new SpriteSheet();
+		sheet.alpha = (buffer.getInt() & 1) != 0;
+		int frames = buffer.getInt();
+		int animations = buffer.getInt();
+		int glyphs = buffer.getInt();
+		sheet.spacing = buffer.getFloat();
+		sheet.lineSpacing = buffer.getFloat();
+		if (frames < 0 || animations < 0 || glyphs < 0
+				|| buffer.remaining() < 32L * frames + 16L * animations + 8L * glyphs + 2L * (animations + 1)) {
+			throw new IOException("Damaged sprite sheet");
+		}
+		
+		sheet.frameCount = frames;
+		sheet.rects = new float[4 * frames];
+		sheet.sizes = new float[2 * frames];
+		sheet.pivots = new float[2 * frames];
+		buffer.asFloatBuffer().get(sheet.rects);
+		buffer.position(buffer.position() + 16 * frames);
+		buffer.asFloatBuffer().get(sheet.sizes);
+		buffer.position(buffer.position() + 8 * frames);
+		buffer.asFloatBuffer().get(sheet.pivots);
+		buffer.position(buffer.position() + 8 * frames);
+		
+		sheet.animationCount = animations;
+		sheet.animations = new int[3 * animations];
+		sheet.speeds = new float[animations];
+		buffer.asIntBuffer().get(sheet.animations);
+		buffer.position(buffer.position() + 12 * animations);
+		buffer.asFloatBuffer().get(sheet.speeds);
+		buffer.position(buffer.position() + 4 * animations);
+		
+		sheet.glyphCount = glyphs;
+		sheet.glyphs = new int[2 * glyphs];
+		buffer.asIntBuffer().get(sheet.glyphs);
+		buffer.position(buffer.position() + 8 * glyphs);
+		
+		sheet.texture = readString(buffer);
+		sheet.animationNames = new String[animations];
+		for (int i = 0; i < animations; i++) {
+			sheet.animationNames[i] = readString(buffer);
+		}
+		
+		for (int i = 0; i < animations; i++) {
+			int first = sheet.animations[3 * i];
+			int count = sheet.animations[3 * i + 1];
+			if (first < 0 || count < 1 || first + count > frames) {
+				throw new IOException("Animation " + sheet.animationNames[i] + " exceeds the frames");
+			}
+		}
+		for (int i = 0; i < glyphs; i++) {
+			if (sheet.glyphs[2 * i + 1] < 0 || sheet.glyphs[2 * i + 1] >= frames) {
+				throw new IOException("Glyph exceeds the frames");
+			}
+		}
+		return sheet;
+	}
+	
+	private static String readString(ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 2) {
+			throw new IOException("Damaged sprite sheet");
+		}
+		int length = buffer.getShort() & 0xffff;
+		if (buffer.remaining() < length) {
+			throw new IOException("Damaged sprite sheet");
+		}
+		String s = new String(buffer.array(), buffer.position(), length, UTF8);
+		buffer.position(buffer.position() + length);
+		return s;
+	}
+	
+	/**
+	 * Writes the sprite sheet. The stream isn't closed.
+	 * @param stream stream to write to
+	 * @throws IOException if writing fails
+	 */
+	public void write(OutputStream stream) throws IOException {
+		byte[] textureName = texture.getBytes(UTF8);
+		int size = HEADER_SIZE + 32 * frameCount + 16 * animationCount + 8 * glyphCount + 2 + textureName.length;
+		byte[][] names = new byte[animationCount][];
+		for (int i = 0; i < animationCount; i++) {
+			names[i] = animationNames[i].getBytes(UTF8);
+			size += 2 + names[i].length;
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(alpha ? 1 : 0);
+		buffer.putInt(frameCount).putInt(animationCount).putInt(glyphCount);
+		buffer.putFloat(spacing).putFloat(lineSpacing);
+		buffer.asFloatBuffer().put(rects, 0, 4 * frameCount);
+		buffer.position(buffer.position() + 16 * frameCount);
+		buffer.asFloatBuffer().put(sizes, 0, 2 * frameCount);
+		buffer.position(buffer.position() + 8 * frameCount);
+		buffer.asFloatBuffer().put(pivots, 0, 2 * frameCount);
+		buffer.position(buffer.position() + 8 * frameCount);
+		buffer.asIntBuffer().put(animations, 0, 3 * animationCount);
+		buffer.position(buffer.position() + 12 * animationCount);
+		buffer.asFloatBuffer().put(speeds, 0, animationCount);
+		buffer.position(buffer.position() + 4 * animationCount);
+		buffer.asIntBuffer().put(glyphs, 0, 2 * glyphCount);
+		buffer.position(buffer.position() + 8 * glyphCount);
+		buffer.putShort((short) textureName.length).put(textureName);
+		for (int i = 0; i < animationCount; i++) {
+			buffer.putShort((short) names[i].length).put(names[i]);
+		}
+		stream.write(buffer.array());
+	}
+	
+	/**
+	 * Adds a frame.
+	 * @param x coordinate of the frame rectangle in pixels
+	 * @param y coordinate of the frame rectangle in pixels
+	 * @param w width of the frame rectangle
+	 * @param h height of the frame rectangle
+	 * @param pivotX x coordinate of the pivot relative to the frame
+	 * @param pivotY y coordinate of the pivot relative to the frame
+	 * @return index of the frame
+	 */
+	public int addFrame(float x, float y, float w, float h, float pivotX, float pivotY) {
+		checkNotCreated();
+		if (frameCount == sizes.length / 2) {
+			// Sheets read from a stream have arrays of their exact size, which may be 0
+			int size = Math.max(2 * frameCount, 16);
+			rects = Arrays.copyOf(rects, 4 * size);
+			sizes = Arrays.copyOf(sizes, 2 * size);
+			pivots = Arrays.copyOf(pivots, 2 * size);
+		}
+		int f = frameCount++;
+		rects[4 * f] = x;
+		rects[4 * f + 1] = y;
+		rects[4 * f + 2] = w;
+		rects[4 * f + 3] = h;
+		sizes[2 * f] = w;
+		sizes[2 * f + 1] = h;
+		pivots[2 * f] = pivotX;
+		pivots[2 * f + 1] = pivotY;
+		return f;
+	}
+	
+	/**
+	 * Sets another size for a frame, see ImageDescription.setSize(). For glyphs the width is the advance.
+	 * @param width width of the frame
+	 * @param height height of the frame
+	 * @param frame index of the frame
+	 */
+	public void setSize(float width, float height, int frame) {
+		checkNotCreated();
+		sizes[2 * frame] = width;
+		sizes[2 * frame + 1] = height;
+	}
+	
+	/**
+	 * Adds an animation over a range of frames.
+	 * @param name name of the animation, at most 65535 bytes in UTF-8
+	 * @param first index of the first frame
+	 * @param length number of frames
+	 * @param speed frames per second
+	 * @param mode ONCE, LOOP or PING_PONG
+	 * @return index of the animation
+	 */
+	public int addAnimation(String name, int first, int length, float speed, int mode) {
+		checkNotCreated();
+		checkName(name);
+		if (animationCount == speeds.length) {
+			int size = Math.max(2 * animationCount, 4);
+			animationNames = Arrays.copyOf(animationNames, size);
+			animations = Arrays.copyOf(animations, 3 * size);
+			speeds = Arrays.copyOf(speeds, size);
+		}
+		int a = animationCount++;
+		animationNames[a] = name;
+		animations[3 * a] = first;
+		animations[3 * a + 1] = length;
+		animations[3 * a + 2] = mode;
+		speeds[a] = speed;
+		return a;
+	}
+	
+	/**
+	 * Uses a frame as glyph of a char, so getFont() returns a font.
+	 * @param c char
+	 * @param frame index of the frame
+	 */
+	public void addGlyph(char c, int frame) {
+		checkNotCreated();
+		glyphs = Arrays.copyOf(glyphs, 2 * glyphCount + 2);
+		glyphs[2 * glyphCount] = c;
+		glyphs[2 * glyphCount + 1] = frame;
+		glyphCount++;
+	}
+	
+	/**
+	 * Sets the spacing of the font.
+	 * @param horizontal horizontal spacing between glyphs
+	 * @param vertical vertical spacing between lines
+	 */
+	public void setGlyphSpacing(float horizontal, float vertical) {
+		checkNotCreated();
+		spacing = horizontal;
+		lineSpacing = vertical;
+	}
+	
+	private static void checkName(String name) {
+		// Names are stored with a length of 16 bits
+		if (name.getBytes(UTF8).length > 0xffff) {
+			throw new IllegalArgumentException("Name is longer than 65535 bytes in UTF-8");
+		}
+	}
+	
+	private void checkNotCreated() {
+		if (image != null) {
+			throw new IllegalStateException("Image description has been created already");
+		}
+	}
+	
+	public String getTexture() {
+		return texture;
+	}
+	
+	/**
+	 * Returns an image description with all frames of the sheet, frame indices are the same. If the sheet has glyphs
+	 * this is the font returned by getFont(). The texture has to be loaded. The description is created once.
+	 * @return image description
+	 */
+	public ImageDescription getImage() {
+		if (image == null) {
+			if (glyphCount > 0) {
+				FontDescription font = new FontDescription(texture, alpha);
+				font.addFrames(rects, sizes, 0, frameCount);
+				for (int i = 0; i < glyphCount; i++) {
+					font.mapChar((char) glyphs[2 * i], glyphs[2 * i + 1]);
+				}
+				font.setSpacing(spacing, lineSpacing);
+				image = font;
+			} else {
+				image = new ImageDescription(texture, alpha, false);
+				image.addFrames(rects, sizes, 0, frameCount);
+			}
+		}
+		return image;
+	}
+	
+	/**
+	 * Returns the font of the sheet. The texture has to be loaded.
+	 * @return font or null if the sheet has no glyphs
+	 */
+	public FontDescription getFont() {
+		return glyphCount > 0 ? (FontDescription) getImage() : null;
+	}
+	
+	public int countFrames() {
+		return frameCount;
+	}
+	
+	/**
+	 * Returns the x coordinate of the pivot of a frame, relative to the upper left corner of the frame.
+	 * @param frame index of the frame
+	 * @return x coordinate of the pivot
+	 */
+	public float getPivotX(int frame) {
+		return pivots[2 * frame];
+	}
+	
+	/**
+	 * Returns the y coordinate of the pivot of a frame, relative to the upper left corner of the frame.
+	 * @param frame index of the frame
+	 * @return y coordinate of the pivot
+	 */
+	public float getPivotY(int frame) {
+		return pivots[2 * frame + 1];
+	}
+	
+	public int countAnimations() {
+		return animationCount;
+	}
+	
+	/**
+	 * Finds an animation by its name.
+	 * @param name name of the animation
+	 * @return index of the animation or -1 if there is none of this name
+	 */
+	public int findAnimation(String name) {
+		for (int i = 0; i < animationCount; i++) {
+			if (animationNames[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	public String getAnimationName(int animation) {
+		return animationNames[animation];
+	}
+	
+	/**
+	 * Returns the index of the first frame of an animation.
+	 * @param animation index of the animation
+	 * @return index of the first frame
+	 */
+	public int getAnimationStart(int animation) {
+		return animations[3 * animation];
+	}
+	
+	/**
+	 * Returns the number of frames of an animation.
+	 * @param animation index of the animation
+	 * @return number of frames
+	 */
+	public int getAnimationLength(int animation) {
+		return animations[3 * animation + 1];
+	}
+	
+	/**
+	 * Returns the mode of an animation.
+	 * @param animation index of the animation
+	 * @return ONCE, LOOP or PING_PONG
+	 */
+	public int getAnimationMode(int animation) {
+		return animations[3 * animation + 2];
+	}
+	
+	/**
+	 * Returns the speed of an animation.
+	 * @param animation index of the animation
+	 * @return frames per second
+	 */
+	public float getAnimationSpeed(int animation) {
+		return speeds[animation];
+	}
+}
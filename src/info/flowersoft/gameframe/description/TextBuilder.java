@@ -0,0 +1,231 @@
+package info.flowersoft.gameframe.description;
+
+import java.util.Arrays;
+
+/**
+ * A text builder formats numbers, times and text into a reusable char array, so labels like scores, timers or the
+ * frame rate can be updated every frame without creating strings. It is a CharSequence and can be passed directly to
+ * BlittingEngine.blitTextLine(), TextLayout and TextShape.setText().</br>
+ *
+ * Typical use is to keep one builder per label and call clear() followed by some append calls every frame.
+ *
+ * @author Lobby Divinus
+ */
+public class TextBuilder implements CharSequence {
+	
+	private static final float[] POWERS_OF_TEN = {1f, 10f, 100f, 1000f, 10000f, 100000f, 1000000f};
+	
+	private char[] chars;
+	
+	private int length;
+	
+	/**
+	 * Creates a new empty text builder.
+	 */
+	public TextBuilder() {
+		this(32);
+	}
+	
+	/**
+	 * Creates a new empty text builder.
+	 * @param capacity number of chars that can be appended before the buffer has to grow
+	 */
+	public TextBuilder(int capacity) {
+		chars = new char[Math.max(capacity, 1)];
+	}
+	
+	/**
+	 * Removes all chars.
+	 * @return this text builder
+	 */
+	public TextBuilder clear() {
+		length = 0;
+		return this;
+	}
+	
+	/**
+	 * Appends a single char.
+	 * @param c char to append
+	 * @return this text builder
+	 */
+	public TextBuilder append(char c) {
+		ensureCapacity(length + 1);
+		chars[length++] = c;
+		return this;
+	}
+	
+	/**
+	 * Appends some text.
+	 * @param text text to append
+	 * @return this text builder
+	 */
+	public TextBuilder append(CharSequence text) {
+		int n = text.length();
+		ensureCapacity(length + n);
+		for (int i = 0; i < n; i++) {
+			chars[length++] = text.charAt(i);
+		}
+		return this;
+	}
+	
+	/**
+	 * Appends an integer number.
+	 * @param value number to append
+	 * @return this text builder
+	 */
+	public TextBuilder append(long value) {
+		return append(value, 1);
+	}
+	
+	/**
+	 * Appends an integer number with leading zeros, e.g. for a score display of a fixed length.
+	 * @param value number to append
+	 * @param minDigits minimum number of digits, missing ones are filled with zeros
+	 * @return this text builder
+	 */
+	public TextBuilder append(long value, int minDigits) {
+		if (value < 0) {
+			append('-');
+		}
+		
+		// Digits are written backwards at the end, negative values avoid the overflow of Long.MIN_VALUE
+		long rest = value < 0 ? value : -value;
+		int digits = 1;
+		for (long v = rest / 10; v != 0; v /= 10) {
+			digits++;
+		}
+		digits = Math.max(digits, minDigits);
+		
+		ensureCapacity(length + digits);
+		for (int i = length + digits - 1; i >= length; i--) {
+			chars[i] = (char) ('0' - rest % 10);
+			rest /= 10;
+		}
+		length += digits;
+		return this;
+	}
+	
+	/**
+	 * Appends a decimal number rounded to a fixed number of decimals. NaN and infinite values are appended as "NaN"
+	 * and "Infinity".
+	 * @param value number to append
+	 * @param decimals number of decimals between 0 and 6
+	 * @return this text builder
+	 */
+	public TextBuilder append(float value, int decimals) {
+		if (value != value) {
+			return append("NaN");
+		}
+		if (Float.isInfinite(value)) {
+			return append(value < 0 ? "-Infinity" : "Infinity");
+		}
+		
+		long scaled = Math.round(Math.abs((double) value) * POWERS_OF_TEN[decimals]);
+		if (value < 0 && scaled != 0) {
+			append('-');
+		}
+		if (decimals == 0) {
+			return append(scaled, 1);
+		}
+		
+		long factor = (long) POWERS_OF_TEN[decimals];
+		append(scaled / factor, 1);
+		append('.');
+		return append(scaled % factor, decimals);
+	}
+	
+	/**
+	 * Appends a time as minutes and seconds like 4:05, or with hours like 1:04:05 if it is at least an hour long.
+	 * Negative times are appended with a minus sign.
+	 * @param seconds time in seconds
+	 * @return this text builder
+	 */
+	public TextBuilder appendTime(int seconds) {
+		if (seconds < 0) {
+			append('-');
+		}
+		long rest = Math.abs((long) seconds);
+		if (rest >= 3600) {
+			append(rest / 3600, 1);
+			append(':');
+			append(rest / 60 % 60, 2);
+		} else {
+			append(rest / 60, 1);
+		}
+		append(':');
+		return append(rest % 60, 2);
+	}
+	
+	/**
+	 * Replaces the content by another text. Does nothing if the content is equal already.
+	 * @param text new content
+	 * @return this text builder
+	 */
+	public TextBuilder set(CharSequence text) {
+		if (!contentEquals(text)) {
+			clear();
+			append(text);
+		}
+		return this;
+	}
+	
+	/**
+	 * Determines whether the content equals some text.
+	 * @param text text to compare with
+	 * @return true if the chars are equal
+	 */
+	public boolean contentEquals(CharSequence text) {
+		if (text.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (chars[i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private void ensureCapacity(int capacity) {
+		if (capacity > chars.length) {
+			chars = Arrays.copyOf(chars, Math.max(capacity, 2 * chars.length));
+		}
+	}
+	
+	/**
+	 * Returns the internal char array, which may be longer than the content. It is replaced when the buffer grows.
+	 * @return chars
+	 */
+	public char[] getChars() {
+		return chars;
+	}
+	
+	@Override
+	public int length() {
+		return length;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (index >= length) {
+			throw new IndexOutOfBoundsException("Index " + index + " is out of length " + length);
+		}
+		return chars[index];
+	}
+	
+	/**
+	 * Returns a part of the content as a new string.
+	 */
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		return new String(chars, start, end - start);
+	}
+	
+	/**
+	 * Returns the content as a new string.
+	 */
+	@Override
+	public String toString() {
+		return new String(chars, 0, length);
+	}
+}
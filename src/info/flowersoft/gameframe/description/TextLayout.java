@@ -0,0 +1,236 @@
+package info.flowersoft.gameframe.description;
+
+import com.threed.jpct.Texture;
+
+/**
+ * A text layout is a line of text laid out with a font at a specific scale. For every glyph it stores the source
+ * rectangle within the font texture in texels and the destination rectangle relative to the start of the line, so
+ * drawing the same text again needs no char lookups at all. Chars the font doesn't define are skipped. Horizontal
+ * offsets are rounded to whole units like the BlittingEngine always did.</br>
+ *
+ * The text is copied, so a TextBuilder can be laid out and changed afterwards. With fixed digits every digit takes the
+ * width of the widest one, centered within it, so changing numbers don't make the rest of the line jitter. The layout
+ * is updated automatically by set() when the font has been modified since.
+ *
+ * @author Lobby Divinus
+ */
+public class TextLayout {
+	
+	/**
+	 * Number of ints per glyph in the glyph data: source x, y, width, height and destination x offset.
+	 */
+	public static final int GLYPH_STRIDE = 5;
+	
+	private FontDescription font;
+	
+	private char[] chars;
+	
+	private int length;
+	
+	private boolean fixedDigits;
+	
+	private float scaleX;
+	
+	private float scaleY;
+	
+	private int fontModCount;
+	
+	private int glyphCount;
+	
+	private int[] glyphs;
+	
+	private float[] sizes;
+	
+	private int width;
+	
+	private float height;
+	
+	private float[] uv;
+	
+	/**
+	 * Creates a new empty text layout.
+	 */
+	public TextLayout() {
+		chars = new char[16];
+		uv = new float[4];
+		glyphs = new int[GLYPH_STRIDE * 16];
+		sizes = new float[2 * 16];
+	}
+	
+	/**
+	 * Creates a new text layout of a line of text.
+	 * @param font font to use
+	 * @param text line of text
+	 * @param scaleX horizontal scale
+	 * @param scaleY vertical scale
+	 */
+	public TextLayout(FontDescription font, CharSequence text, float scaleX, float scaleY) {
+		this();
+		set(font, text, scaleX, scaleY, false);
+	}
+	
+	/**
+	 * Determines whether the layout has been made for the given parameters. Doesn't check whether the font has been
+	 * modified since.
+	 * @param font font
+	 * @param text line of text
+	 * @param scaleX horizontal scale
+	 * @param scaleY vertical scale
+	 * @param fixedDigits true for fixed width digits
+	 * @return true if the layout is for the given parameters
+	 */
+	public boolean matches(FontDescription font, CharSequence text, float scaleX, float scaleY, boolean fixedDigits) {
+		if (this.font != font || this.scaleX != scaleX || this.scaleY != scaleY || this.fixedDigits != fixedDigits
+				|| text.length() != length) {
+			return false;
+		}
+		for (int i = 0; i < length; i++) {
+			if (chars[i] != text.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Lays out a line of text. Does nothing if the layout is already up to date for these parameters.
+	 * @param font font to use
+	 * @param text line of text
+	 * @param scaleX horizontal scale
+	 * @param scaleY vertical scale
+	 * @param fixedDigits true if all digits should take the width of the widest one
+	 * @return true if the text had to be laid out, false if the layout was up to date
+	 */
+	public boolean set(FontDescription font, CharSequence text, float scaleX, float scaleY, boolean fixedDigits) {
+		if (matches(font, text, scaleX, scaleY, fixedDigits) && fontModCount == font.getModificationCount()) {
+			return false;
+		}
+		
+		length = text.length();
+		if (chars.length < length) {
+			chars = new char[length];
+			glyphs = new int[GLYPH_STRIDE * length];
+			sizes = new float[2 * length];
+		}
+		for (int i = 0; i < length; i++) {
+			chars[i] = text.charAt(i);
+		}
+		
+		this.font = font;
+		this.scaleX = scaleX;
+		this.scaleY = scaleY;
+		this.fixedDigits = fixedDigits;
+		fontModCount = font.getModificationCount();
+		layout();
+		return true;
+	}
+	
+	private void layout() {
+		
+		Texture tex = font.getTextureObj();
+		int w = tex.getWidth();
+		int h = tex.getHeight();
+		float spacing = font.getHorizontalSpacing();
+		float digitWidth = fixedDigits ? font.getDigitWidth() : 0;
+		
+		glyphCount = 0;
+		height = 0;
+		int px = 0;
+		for (int i = 0; i < length; i++) {
+			char c = chars[i];
+			int frame = font.mapCharToFrame(c);
+			
+			if (frame >= 0) {
+				font.getUVCoords(frame, uv, 0);
+				float gw = font.getWidth(frame);
+				float gh = font.getHeight(frame);
+				float advance = gw;
+				int offset = 0;
+				if (fixedDigits && c >= '0' && c <= '9') {
+					advance = digitWidth;
+					offset = (int) (scaleX * (digitWidth - gw) / 2);
+				}
+				
+				int g = GLYPH_STRIDE * glyphCount;
+				glyphs[g] = (int) (uv[0] * w);
+				glyphs[g + 1] = (int) (uv[1] * h);
+				glyphs[g + 2] = (int) ((uv[2] - uv[0]) * w);
+				glyphs[g + 3] = (int) ((uv[3] - uv[1]) * h);
+				glyphs[g + 4] = px + offset;
+				sizes[2 * glyphCount] = scaleX * gw;
+				sizes[2 * glyphCount + 1] = scaleY * gh;
+				glyphCount++;
+				
+				height = Math.max(height, scaleY * gh);
+				px += (int) (scaleX * (advance + spacing));
+			}
+		}
+		width = px;
+	}
+	
+	public FontDescription getFont() {
+		return font;
+	}
+	
+	/**
+	 * Returns the laid out text as a new string.
+	 * @return text
+	 */
+	public String getText() {
+		return new String(chars, 0, length);
+	}
+	
+	public boolean hasFixedDigits() {
+		return fixedDigits;
+	}
+	
+	public float getScaleX() {
+		return scaleX;
+	}
+	
+	public float getScaleY() {
+		return scaleY;
+	}
+	
+	/**
+	 * Returns the number of glyphs, which is the number of chars of the text the font defines.
+	 * @return number of glyphs
+	 */
+	public int getGlyphCount() {
+		return glyphCount;
+	}
+	
+	/**
+	 * Returns the glyph data, GLYPH_STRIDE ints per glyph: source rectangle x, y, width, height in texels and the
+	 * destination x offset from the start of the line. The array may be longer than needed and must not be modified.
+	 * @return glyph data
+	 */
+	public int[] getGlyphData() {
+		return glyphs;
+	}
+	
+	/**
+	 * Returns the scaled destination width and height of every glyph, two floats per glyph. The array may be longer
+	 * than needed and must not be modified.
+	 * @return glyph sizes
+	 */
+	public float[] getGlyphSizes() {
+		return sizes;
+	}
+	
+	/**
+	 * Returns the width of the whole line including spacing.
+	 * @return width
+	 */
+	public int getWidth() {
+		return width;
+	}
+	
+	/**
+	 * Returns the height of the highest glyph.
+	 * @return height
+	 */
+	public float getHeight() {
+		return height;
+	}
+}
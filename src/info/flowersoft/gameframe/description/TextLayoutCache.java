@@ -0,0 +1,85 @@
+package info.flowersoft.gameframe.description;
+
+/**
+ * A text layout cache keeps the layouts of recently drawn lines of text, so labels that don't change are laid out
+ * only once. Layouts are found by font, text and scale, a few slots of a fixed table are searched and the least
+ * recently used one is replaced if none matches. Changing text like counters simply replaces old layouts.
+ *
+ * @author Lobby Divinus
+ */
+public class TextLayoutCache {
+	
+	private static final int PROBES = 4;
+	
+	private final TextLayout[] layouts;
+	
+	private final int[] lastUses;
+	
+	private int time;
+	
+	/**
+	 * Creates a new text layout cache.
+	 * @param capacity maximum number of layouts, rounded up to a power of two
+	 */
+	public TextLayoutCache(int capacity) {
+		int size = Integer.highestOneBit(Math.max(capacity, PROBES) - 1) << 1;
+		layouts = new TextLayout[size];
+		lastUses = new int[size];
+	}
+	
+	/**
+	 * Returns the layout of a line of text, laying it out only if it isn't in the cache or the font has been modified.
+	 * The layout is owned by the cache and may be reused for other text by later calls.
+	 * @param font font to use
+	 * @param text line of text
+	 * @param scaleX horizontal scale
+	 * @param scaleY vertical scale
+	 * @param fixedDigits true if all digits should take the width of the widest one
+	 * @return layout of the text
+	 */
+	public TextLayout get(FontDescription font, CharSequence text, float scaleX, float scaleY, boolean fixedDigits) {
+		int mask = layouts.length - 1;
+		int hash = System.identityHashCode(font);
+		for (int i = 0; i < text.length(); i++) {
+			hash = hash * 31 + text.charAt(i);
+		}
+		hash = hash * 31 + (fixedDigits ? 1 : 0);
+		hash = hash * 31 + Float.floatToIntBits(scaleX);
+		hash = hash * 31 + Float.floatToIntBits(scaleY);
+		hash ^= hash >>> 16;
+		
+		time++;
+		int victim = -1;
+		for (int i = 0; i < PROBES; i++) {
+			int slot = (hash + i) & mask;
+			TextLayout layout = layouts[slot];
+			if (layout == null) {
+				if (victim < 0 || layouts[victim] != null) {
+					victim = slot;
+				}
+			} else if (layout.matches(font, text, scaleX, scaleY, fixedDigits)) {
+				lastUses[slot] = time;
+				layout.set(font, text, scaleX, scaleY, fixedDigits);
+				return layout;
+			} else if (victim < 0 || (layouts[victim] != null && lastUses[slot] - lastUses[victim] < 0)) {
+				victim = slot;
+			}
+		}
+		
+		if (layouts[victim] == null) {
+			layouts[victim] = new TextLayout();
+		}
+		lastUses[victim] = time;
+		layouts[victim].set(font, text, scaleX, scaleY, fixedDigits);
+		return layouts[victim];
+	}
+	
+	/**
+	 * Removes all layouts.
+	 */
+	public void clear() {
+		for (int i = 0; i < layouts.length; i++) {
+			layouts[i] = null;
+		}
+	}
+}
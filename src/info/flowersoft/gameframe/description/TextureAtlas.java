@@ -0,0 +1,448 @@
+package info.flowersoft.gameframe.description;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.graphics.Bitmap;
+
+import com.threed.jpct.ITextureEffect;
+import com.threed.jpct.Texture;
+import com.threed.jpct.TextureManager;
+
+/**
+ * A texture atlas packs many images into a few textures, the pages, so sprites can be drawn without switching the
+ * texture for every sprite. Images are added as whole bitmaps, parts of bitmaps or pixel arrays and get a sprite id.
+ * pack() places them by a MaxRectsPacker, composes the pages and registers them at the TextureManager under the
+ * name of the atlas followed by the page index.</br>
+ *
+ * Afterwards every page has an image description with one frame per sprite on it. Sprite sheets and bitmap fonts can
+ * be added as one sprite and split into frames or glyphs by createImage() and createFont(), so they stay on one page.
+ * Pages have power of two sizes, all but the last one have the maximum size. The border pixels of every sprite are
+ * repeated into a padding around it, so filtering doesn't blend in neighbouring sprites. Packing only depends on the
+ * added sizes and their order.
+ *
+ * @author Lobby Divinus
+ */
+public class TextureAtlas {
+	
+	private final String name;
+	
+	private final int maxPageSize;
+	
+	private final int padding;
+	
+	private final boolean alpha;
+	
+	private int spriteCount;
+	
+	/**
+	 * Source rectangle of each sprite, four ints each: x, y, width, height.
+	 */
+	private int[] sources;
+	
+	private Bitmap[] bitmaps;
+	
+	private int[][] pixelArrays;
+	
+	/**
+	 * Placement of each sprite: page, x and y of the sprite within the page without padding.
+	 */
+	private int[] pages;
+	
+	private int[] xs;
+	
+	private int[] ys;
+	
+	private int[] frames;
+	
+	private int pageCount;
+	
+	private ImageDescription[] images;
+	
+	/**
+	 * Effect that copies the composed pixels into a page texture.
+	 */
+	private class PageEffect implements ITextureEffect {
+		
+		private int[] pixels;
+		
+		PageEffect(int[] pixels) {
+			this.pixels = pixels;
+		}
+		
+		@Override
+		public void init(Texture tex) {
+		}
+		
+		@Override
+		public void apply(int[] dest, int[] source) {
+			System.arraycopy(pixels, 0, dest, 0, pixels.length);
+		}
+		
+		@Override
+		public boolean containsAlpha() {
+			return alpha;
+		}
+	}
+	
+	/**
+	 * Creates a new empty texture atlas.
+	 * @param name texture name prefix of the pages
+	 * @param maxPageSize maximum width and height of a page, has to be a power of 2 up to 16384
+	 * @param padding number of pixels repeated around each sprite
+	 * @param hasAlpha set this to true if the sprites contain alpha you want to use
+	 */
+	public TextureAtlas(String name, int maxPageSize, int padding, boolean hasAlpha) {
+		if (Integer.bitCount(maxPageSize) != 1 || maxPageSize > 16384) {
+			throw new IllegalArgumentException("Page size has to be a power of 2 up to 16384");
+		}
+		this.name = name;
+		this.maxPageSize = maxPageSize;
+		this.padding = padding;
+		alpha = hasAlpha;
+		
+		sources = new int[4 * 64];
+		bitmaps = new Bitmap[64];
+		pixelArrays = new int[64][];
+	}
+	
+	/**
+	 * Adds a whole bitmap as sprite.
+	 * @param bitmap bitmap to add, it is read by pack()
+	 * @return sprite id
+	 */
+	public int add(Bitmap bitmap) {
+		return add(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight());
+	}
+	
+	/**
+	 * Adds a rectangle of a bitmap as sprite.
+	 * @param bitmap bitmap to add, it is read by pack()
+	 * @param x coordinate of the rectangle
+	 * @param y coordinate of the rectangle
+	 * @param w width of the rectangle
+	 * @param h height of the rectangle
+	 * @return sprite id
+	 */
+	public int add(Bitmap bitmap, int x, int y, int w, int h) {
+		int id = addSource(x, y, w, h);
+		bitmaps[id] = bitmap;
+		return id;
+	}
+	
+	/**
+	 * Adds an image given by ARGB pixels as sprite.
+	 * @param pixels pixels row by row, they are read by pack()
+	 * @param w width of the image
+	 * @param h height of the image
+	 * @return sprite id
+	 */
+	public int add(int[] pixels, int w, int h) {
+		int id = addSource(0, 0, w, h);
+		pixelArrays[id] = pixels;
+		return id;
+	}
+	
+	private int addSource(int x, int y, int w, int h) {
+		if (images != null) {
+			throw new IllegalStateException("Atlas has been packed already");
+		}
+		if (w + 2 * padding > maxPageSize || h + 2 * padding > maxPageSize) {
+			throw new IllegalArgumentException("Sprite of " + w + "x" + h + " doesn't fit into a page");
+		}
+		if (spriteCount == bitmaps.length) {
+			sources = Arrays.copyOf(sources, 8 * spriteCount);
+			bitmaps = Arrays.copyOf(bitmaps, 2 * spriteCount);
+			pixelArrays = Arrays.copyOf(pixelArrays, 2 * spriteCount);
+		}
+		int id = spriteCount++;
+		sources[4 * id] = x;
+		sources[4 * id + 1] = y;
+		sources[4 * id + 2] = w;
+		sources[4 * id + 3] = h;
+		return id;
+	}
+	
+	/**
+	 * Packs all sprites, creates the page textures and registers them at the TextureManager. Existing textures of the
+	 * same names are replaced. Sources aren't referenced anymore afterwards.
+	 */
+	public void pack() {
+		if (images != null) {
+			throw new IllegalStateException("Atlas has been packed already");
+		}
+		
+		// Sort by height, then width, then id, so the result doesn't depend on anything else
+		Integer[] boxed = new Integer[spriteCount];
+		for (int i = 0; i < spriteCount; i++) {
+			boxed[i] = i;
+		}
+		Arrays.sort(boxed, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				int d = sources[4 * b + 3] - sources[4 * a + 3];
+				if (d == 0) {
+					d = sources[4 * b + 2] - sources[4 * a + 2];
+				}
+				return d != 0 ? d : a - b;
+			}
+		});
+		int[] order = new int[spriteCount];
+		for (int i = 0; i < spriteCount; i++) {
+			order[i] = boxed[i];
+		}
+		
+		pages = new int[spriteCount];
+		xs = new int[spriteCount];
+		ys = new int[spriteCount];
+		frames = new int[spriteCount];
+		int[] pageSizes = new int[2 * 4];
+		pageCount = 0;
+		
+		MaxRectsPacker packer = new MaxRectsPacker(maxPageSize, maxPageSize);
+		int[] position = new int[2];
+		int[] pageSprites = new int[spriteCount];
+		int remaining = spriteCount;
+		int[] rest = order;
+		while (remaining > 0) {
+			// Fill a page of maximum size, sprites that don't fit anymore are left for the next page
+			packer.reset(maxPageSize, maxPageSize);
+			int placed = 0;
+			int left = 0;
+			for (int i = 0; i < remaining; i++) {
+				int id = rest[i];
+				if (packer.insert(sources[4 * id + 2] + 2 * padding, sources[4 * id + 3] + 2 * padding, position)) {
+					pageSprites[placed++] = id;
+					xs[id] = position[0] + padding;
+					ys[id] = position[1] + padding;
+				} else {
+					rest[left++] = id;
+				}
+			}
+			
+			int pageWidth = maxPageSize;
+			int pageHeight = maxPageSize;
+			if (left == 0) {
+				int size = shrink(packer, pageSprites, placed);
+				pageWidth = size >>> 16;
+				pageHeight = size & 0xffff;
+			}
+			
+			if (2 * pageCount == pageSizes.length) {
+				pageSizes = Arrays.copyOf(pageSizes, 2 * pageSizes.length);
+			}
+			pageSizes[2 * pageCount] = pageWidth;
+			pageSizes[2 * pageCount + 1] = pageHeight;
+			for (int i = 0; i < placed; i++) {
+				pages[pageSprites[i]] = pageCount;
+			}
+			pageCount++;
+			remaining = left;
+		}
+		
+		images = new ImageDescription[pageCount];
+		for (int page = 0; page < pageCount; page++) {
+			createPage(page, pageSizes[2 * page], pageSizes[2 * page + 1]);
+		}
+		
+		sources = null;
+		bitmaps = null;
+		pixelArrays = null;
+	}
+	
+	/**
+	 * Finds the smallest page that the sprites of the last page fit into and places them in it.
+	 * @return width and height of the page as width << 16 | height
+	 */
+	private int shrink(MaxRectsPacker packer, int[] pageSprites, int count) {
+		int used = packer.getUsedArea();
+		int[] position = new int[2];
+		int[] placedXs = new int[count];
+		int[] placedYs = new int[count];
+		
+		// Try sizes by increasing area, wide pages before high ones of the same area
+		for (int area = Integer.highestOneBit(Math.max(used - 1, 1)) << 1; area < maxPageSize * maxPageSize;
+				area <<= 1) {
+			for (int w = Math.min(area, maxPageSize); w * maxPageSize >= area; w >>= 1) {
+				int h = area / w;
+				packer.reset(w, h);
+				int i = 0;
+				while (i < count) {
+					int id = pageSprites[i];
+					if (!packer.insert(sources[4 * id + 2] + 2 * padding, sources[4 * id + 3] + 2 * padding,
+							position)) {
+						break;
+					}
+					placedXs[i] = position[0] + padding;
+					placedYs[i] = position[1] + padding;
+					i++;
+				}
+				if (i == count) {
+					for (i = 0; i < count; i++) {
+						xs[pageSprites[i]] = placedXs[i];
+						ys[pageSprites[i]] = placedYs[i];
+					}
+					return w << 16 | h;
+				}
+			}
+		}
+		return maxPageSize << 16 | maxPageSize;
+	}
+	
+	private void createPage(int page, int width, int height) {
+		int[] pixels = new int[width * height];
+		for (int id = 0; id < spriteCount; id++) {
+			if (pages[id] == page) {
+				copySprite(id, pixels, width);
+			}
+		}
+		
+		Texture texture = new Texture(width, height);
+		texture.setEffect(new PageEffect(pixels));
+		texture.applyEffect();
+		texture.removeEffect();
+		TextureManager mgr = TextureManager.getInstance();
+		String pageName = getPageName(page);
+		if (mgr.containsTexture(pageName)) {
+			mgr.replaceTexture(pageName, texture);
+		} else {
+			mgr.addTexture(pageName, texture);
+		}
+		
+		ImageDescription image = new ImageDescription(pageName, alpha, false);
+		for (int id = 0; id < spriteCount; id++) {
+			if (pages[id] == page) {
+				frames[id] = image.addFrame(xs[id], ys[id], sources[4 * id + 2], sources[4 * id + 3]);
+			}
+		}
+		images[page] = image;
+	}
+	
+	private void copySprite(int id, int[] pixels, int stride) {
+		int sx = sources[4 * id];
+		int sy = sources[4 * id + 1];
+		int w = sources[4 * id + 2];
+		int h = sources[4 * id + 3];
+		int x = xs[id];
+		int y = ys[id];
+		
+		if (bitmaps[id] != null) {
+			bitmaps[id].getPixels(pixels, y * stride + x, stride, sx, sy, w, h);
+		} else {
+			int[] src = pixelArrays[id];
+			for (int row = 0; row < h; row++) {
+				System.arraycopy(src, row * w, pixels, (y + row) * stride + x, w);
+			}
+		}
+		
+		// Repeat the border pixels into the padding, first left and right, then the whole rows above and below
+		for (int row = y; row < y + h; row++) {
+			int start = row * stride;
+			Arrays.fill(pixels, start + x - padding, start + x, pixels[start + x]);
+			Arrays.fill(pixels, start + x + w, start + x + w + padding, pixels[start + x + w - 1]);
+		}
+		for (int p = 1; p <= padding; p++) {
+			System.arraycopy(pixels, y * stride + x - padding, pixels, (y - p) * stride + x - padding, w + 2 * padding);
+			System.arraycopy(pixels, (y + h - 1) * stride + x - padding, pixels, (y + h - 1 + p) * stride + x - padding,
+					w + 2 * padding);
+		}
+	}
+	
+	/**
+	 * Returns the texture name of a page.
+	 * @param page index of the page
+	 * @return texture name
+	 */
+	public String getPageName(int page) {
+		return name + page;
+	}
+	
+	/**
+	 * Returns the number of pages. Only valid after pack().
+	 * @return number of pages
+	 */
+	public int getPageCount() {
+		return pageCount;
+	}
+	
+	/**
+	 * Returns the number of sprites.
+	 * @return number of sprites
+	 */
+	public int getSpriteCount() {
+		return spriteCount;
+	}
+	
+	/**
+	 * Returns the image description of a page, which contains a frame for every sprite on the page.
+	 * @param page index of the page
+	 * @return image description
+	 */
+	public ImageDescription getPage(int page) {
+		checkPacked();
+		return images[page];
+	}
+	
+	/**
+	 * Returns the image description of the page a sprite has been placed on.
+	 * @param sprite sprite id
+	 * @return image description
+	 */
+	public ImageDescription getImage(int sprite) {
+		checkPacked();
+		return images[pages[sprite]];
+	}
+	
+	/**
+	 * Returns the frame of a sprite within the image description returned by getImage().
+	 * @param sprite sprite id
+	 * @return frame index
+	 */
+	public int getFrame(int sprite) {
+		checkPacked();
+		return frames[sprite];
+	}
+	
+	/**
+	 * Creates an image description of a sprite sheet that has been added as one sprite. The frames are taken row by
+	 * row from the sprite like ImageDescription.addStrip() does.
+	 * @param sprite sprite id of the sheet
+	 * @param frameWidth width of a single frame
+	 * @param frameHeight height of a single frame
+	 * @param count maximum number of frames
+	 * @return image description on the page texture
+	 */
+	public ImageDescription createImage(int sprite, float frameWidth, float frameHeight, int count) {
+		checkPacked();
+		ImageDescription page = images[pages[sprite]];
+		ImageDescription image = new ImageDescription(page.getTexture(), alpha, false);
+		image.addStrip(xs[sprite], ys[sprite], page.getWidth(frames[sprite]), page.getHeight(frames[sprite]),
+				frameWidth, frameHeight, count);
+		return image;
+	}
+	
+	/**
+	 * Creates a font description of a bitmap font that has been added as one sprite. Glyphs are taken row by row
+	 * from the sprite like FontDescription.defineCharStrip() does.
+	 * @param sprite sprite id of the font
+	 * @param glyphWidth width of a glyph
+	 * @param glyphHeight height of a glyph
+	 * @param startChar first char
+	 * @param endChar last char
+	 * @return font description on the page texture
+	 */
+	public FontDescription createFont(int sprite, float glyphWidth, float glyphHeight, char startChar, char endChar) {
+		checkPacked();
+		ImageDescription page = images[pages[sprite]];
+		FontDescription font = new FontDescription(page.getTexture(), alpha);
+		font.defineCharStrip(xs[sprite], ys[sprite], page.getWidth(frames[sprite]), page.getHeight(frames[sprite]),
+				glyphWidth, glyphHeight, startChar, endChar);
+		return font;
+	}
+	
+	private void checkPacked() {
+		if (images == null) {
+			throw new IllegalStateException("Atlas hasn't been packed yet");
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package info.flowersoft.gameframe.mesh;
+
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import com.threed.jpct.Object3D;
+import com.threed.jpct.TextureManager;
+import com.threed.jpct.World;
+
+/**
+ * An async mesh loader generates meshes on worker threads, so creating detailed objects doesn't stall rendering. Only
+ * the final steps that need jPCT (creating the Object3D, building it and adding it to a world) are done by update(),
+ * which has to be called by the GL thread once per frame.</br>
+ *
+ * update() finalizes as many generated meshes as fit into a time budget, but at least one per call. Every load
+ * returns a future that is done as soon as the object has been added to its world. load() and update() should be
+ * called by the same thread.
+ *
+ * @author Lobby Divinus
+ */
+public class AsyncMeshLoader {
+	
+	/**
+	 * A mesh generator fills a mesh builder. Generators run on worker threads, so they must not use jPCT objects
+	 * that are used by the GL thread at the same time.
+	 *
+	 * @author Lobby Divinus
+	 */
+	public interface IMeshGenerator {
+		
+		/**
+		 * Generates the mesh.
+		 * @return builder containing the mesh
+		 */
+		MeshBuilder generate();
+	}
+	
+	/**
+	 * Default time budget per update() in milliseconds.
+	 */
+	public static final float DEFAULT_BUDGET = 2f;
+	
+	/**
+	 * Generation of a mesh that queues its finalization once it is done.
+	 */
+	private class Generation extends FutureTask<MeshBuilder> {
+		
+		private Finalization finalization;
+		
+		Generation(final IMeshGenerator generator) {
+			super(new Callable<MeshBuilder>() {
+				@Override
+				public MeshBuilder call() {
+					return generator.generate();
+				}
+			});
+		}
+		
+		@Override
+		protected void done() {
+			ready.add(finalization);
+		}
+	}
+	
+	/**
+	 * Finalization of a generated mesh on the GL thread.
+	 */
+	private static class Finalization extends FutureTask<Object3D> {
+		
+		Finalization(final Generation generation, final int textureId, final World world) {
+			super(new Callable<Object3D>() {
+				@Override
+				public Object3D call() throws InterruptedException {
+					MeshBuilder builder;
+					try {
+						builder = generation.get();
+					} catch (ExecutionException e) {
+						throw new IllegalStateException("Generating mesh failed", e.getCause());
+					}
+					
+					Object3D obj = builder.toObject3D(textureId);
+					obj.build();
+					if (world != null) {
+						world.addObject(obj);
+					}
+					return obj;
+				}
+			});
+		}
+	}
+	
+	private final Queue<Finalization> ready;
+	
+	private ExecutorService executor;
+	
+	private boolean ownExecutor;
+	
+	private long budget;
+	
+	private int pending;
+	
+	/**
+	 * Creates a new loader that uses its own thread pool with one thread less than available processors, but at
+	 * least one.
+	 */
+	public AsyncMeshLoader() {
+		this(Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)));
+		ownExecutor = true;
+	}
+	
+	/**
+	 * Creates a new loader.
+	 * @param executor executor the meshes are generated on
+	 */
+	public AsyncMeshLoader(ExecutorService executor) {
+		this.executor = executor;
+		ready = new ConcurrentLinkedQueue<Finalization>();
+		setBudget(DEFAULT_BUDGET);
+	}
+	
+	/**
+	 * Sets the time update() may spend on finalizing meshes.
+	 * @param millis time budget in milliseconds
+	 */
+	public void setBudget(float millis) {
+		budget = (long) (millis * 1000000);
+	}
+	
+	/**
+	 * Loads a mesh without texture.
+	 * @param generator generator creating the mesh
+	 * @param world world to add the object to, may be null
+	 * @return future of the built object
+	 */
+	public Future<Object3D> load(IMeshGenerator generator, World world) {
+		return load(generator, TextureManager.TEXTURE_NOTFOUND, world);
+	}
+	
+	/**
+	 * Loads a mesh. The generator is started at once, the object is created by one of the next calls of update().
+	 * @param generator generator creating the mesh
+	 * @param textureId id of the texture of the object
+	 * @param world world to add the object to, may be null
+	 * @return future of the built object
+	 * @throws IllegalStateException if the loader has been disposed
+	 */
+	public Future<Object3D> load(IMeshGenerator generator, int textureId, World world) {
+		if (executor == null) {
+			throw new IllegalStateException("Loader has been disposed already");
+		}
+		Generation generation = new Generation(generator);
+		Finalization finalization = new Finalization(generation, textureId, world);
+		generation.finalization = finalization;
+		pending++;
+		executor.execute(generation);
+		return finalization;
+	}
+	
+	/**
+	 * Returns the number of loads that haven't been finalized yet.
+	 * @return number of pending loads
+	 */
+	public int getPendingCount() {
+		return pending;
+	}
+	
+	/**
+	 * Creates, builds and adds the objects of generated meshes. Must be called by the GL thread.
+	 * @return number of finalized objects
+	 */
+	public int update() {
+		long start = System.nanoTime();
+		int count = 0;
+		Finalization finalization = ready.poll();
+		while (finalization != null) {
+			finalization.run();
+			pending--;
+			count++;
+			
+			if (System.nanoTime() - start >= budget) {
+				break;
+			}
+			finalization = ready.poll();
+		}
+		return count;
+	}
+	
+	/**
+	 * Stops the own thread pool. Meshes that are still being generated won't be finalized anymore and the loader
+	 * can't load any more meshes.
+	 */
+	public void dispose() {
+		if (ownExecutor) {
+			executor.shutdownNow();
+			ownExecutor = false;
+		}
+		executor = null;
+		ready.clear();
+		pending = 0;
+	}
+}
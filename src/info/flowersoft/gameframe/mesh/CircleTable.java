@@ -0,0 +1,93 @@
+package info.flowersoft.gameframe.mesh;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A circle table contains sine and cosine of evenly distributed angles around the unit circle. Tables are created
+ * once per number of segments and shared by all curved primitives and shapes, so creating many round objects doesn't
+ * compute the same trigonometric functions again and again.</br>
+ *
+ * Both arrays have segments + 1 entries for the angles 2 * PI * i / segments. The last entry equals the first one, so
+ * closed rings with a seam can be built without index wrapping. The arrays are shared and must not be modified.</br>
+ *
+ * Only the most recently used tables are cached, so odd segment counts, e.g. from level of detail calculations,
+ * don't stay in memory forever.
+ *
+ * @author Lobby Divinus
+ */
+public final class CircleTable {
+	
+	/**
+	 * Maximum number of cached tables.
+	 */
+	private static final int MAX_TABLES = 32;
+	
+	private static final Map<Integer, CircleTable> TABLES = new LinkedHashMap<Integer, CircleTable>(16, 0.75f, true) {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, CircleTable> eldest) {
+			return size() > MAX_TABLES;
+		}
+	};
+	
+	private final int segments;
+	
+	private final float[] cos;
+	
+	private final float[] sin;
+	
+	private CircleTable(int segments) {
+		this.segments = segments;
+		cos = new float[segments + 1];
+		sin = new float[segments + 1];
+		for (int i = 0; i < segments; i++) {
+			double angle = 2 * Math.PI * i / segments;
+			cos[i] = (float) Math.cos(angle);
+			sin[i] = (float) Math.sin(angle);
+		}
+		cos[segments] = cos[0];
+		sin[segments] = sin[0];
+	}
+	
+	/**
+	 * Returns the table for a number of segments. It is created on first use and kept as long as it is one of the
+	 * most recently used tables.
+	 * @param segments number of segments of the circle, at least 1
+	 * @return the shared table
+	 */
+	public static synchronized CircleTable get(int segments) {
+		CircleTable table = TABLES.get(segments);
+		if (table == null) {
+			table = new CircleTable(segments);
+			TABLES.put(segments, table);
+		}
+		return table;
+	}
+	
+	/**
+	 * Returns the number of segments.
+	 * @return number of segments
+	 */
+	public int getSegments() {
+		return segments;
+	}
+	
+	/**
+	 * Returns the cosine values. The array must not be modified.
+	 * @return cosine of 2 * PI * i / segments at index i
+	 */
+	public float[] getCos() {
+		return cos;
+	}
+	
+	/**
+	 * Returns the sine values. The array must not be modified.
+	 * @return sine of 2 * PI * i / segments at index i
+	 */
+	public float[] getSin() {
+		return sin;
+	}
+}
@@ -0,0 +1,364 @@
+package info.flowersoft.gameframe.mesh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.threed.jpct.GenericVertexController;
+import com.threed.jpct.IVertexController;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+import com.threed.jpct.World;
+
+/**
+ * An instanced mesh draws many moving copies of the same template with one Object3D and one draw call. The merged
+ * mesh contains a fixed number of copies, the transformations of the instances are kept in a float array and written
+ * into the mesh by a vertex controller once per frame.</br>
+ *
+ * Each instance uses TRANSFORM_SIZE floats of the transformation array: a row major 3x3 rotation matrix, the
+ * translation and a uniform scale. Only the first getCount() instances are shown, the vertices of all other copies
+ * are collapsed into a single point, so they don't produce any fragments. If an executor is set, large numbers of
+ * instances are transformed in parallel.</br>
+ *
+ * Collapsed copies are still sent to the GPU as degenerate triangles, so the cost of drawing the object depends on
+ * the capacity and not on the number of shown instances. The capacity shouldn't be much higher than needed.
+ *
+ * @author Lobby Divinus
+ */
+public class InstancedMesh {
+	
+	/**
+	 * Number of floats per instance in the transformation array.
+	 */
+	public static final int TRANSFORM_SIZE = 13;
+	
+	/**
+	 * Minimum number of instances per parallel task.
+	 */
+	private static final int MIN_TASK_SIZE = 256;
+	
+	/**
+	 * Vertex controller writing the transformed instances into the mesh.
+	 */
+	private class InstanceController extends GenericVertexController {
+		
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		public void apply() {
+			SimpleVector[] dst = getDestinationMesh();
+			SimpleVector[] dstNormals = getDestinationNormals();
+			
+			if (executor == null || count < 2 * MIN_TASK_SIZE) {
+				transform(dst, dstNormals, 0, count);
+			} else {
+				transformParallel(dst, dstNormals);
+			}
+			
+			// Collapse instances that were drawn last time but aren't used anymore
+			for (int v = count * vertices; v < drawn * vertices; v++) {
+				dst[v].set(0f, 0f, 0f);
+			}
+			drawn = count;
+		}
+	}
+	
+	/**
+	 * Task transforming a range of instances.
+	 */
+	private class TransformTask implements Callable<Void> {
+		
+		private SimpleVector[] dst;
+		private SimpleVector[] dstNormals;
+		private int start;
+		private int end;
+		
+		@Override
+		public Void call() {
+			transform(dst, dstNormals, start, end);
+			return null;
+		}
+	}
+	
+	private final Object3D object;
+	
+	private final float[] coords;
+	
+	private final float[] normals;
+	
+	private final int vertices;
+	
+	private final int capacity;
+	
+	private final float[] transforms;
+	
+	private int count;
+	
+	private int drawn;
+	
+	private ExecutorService executor;
+	
+	private List<TransformTask> tasks;
+	
+	/**
+	 * Creates a new instanced mesh. The template should not be transformed, its object space is used for every
+	 * instance.
+	 * @param template object to copy, it must have been built before and must not be stripped
+	 * @param capacity maximum number of instances
+	 */
+	public InstancedMesh(Object3D template, int capacity) {
+		this(createBuilder(template), capacity, template.getPolygonManager().getPolygonTexture(0));
+	}
+	
+	/**
+	 * Creates a new instanced mesh.
+	 * @param template mesh builder containing one instance
+	 * @param capacity maximum number of instances
+	 * @param textureId id of the texture for all instances
+	 */
+	public InstancedMesh(MeshBuilder template, int capacity, int textureId) {
+		this.capacity = capacity;
+		vertices = template.getVertexCount();
+		coords = new float[3 * vertices];
+		normals = new float[3 * vertices];
+		System.arraycopy(template.getCoords(), 0, coords, 0, coords.length);
+		System.arraycopy(template.getNormals(), 0, normals, 0, normals.length);
+		
+		// The copies are placed side by side along the X-Axis, so no two vertices of different copies are equal and
+		// can be merged when the object is built. They get their real positions from the controller.
+		float minX = 0f;
+		float maxX = 0f;
+		for (int v = 0; v < vertices; v++) {
+			minX = Math.min(minX, coords[3 * v]);
+			maxX = Math.max(maxX, coords[3 * v]);
+		}
+		float spacing = maxX - minX + 1f;
+		
+		int triangles = template.getTriangleCount();
+		int[] indices = template.getIndices();
+		MeshBuilder builder = new MeshBuilder(capacity * vertices, capacity * triangles);
+		float[] uvs = template.getUVs();
+		for (int i = 0; i < capacity; i++) {
+			int offset = builder.getVertexCount();
+			for (int v = 0; v < vertices; v++) {
+				builder.addVertex(coords[3 * v] + i * spacing, coords[3 * v + 1], coords[3 * v + 2],
+						normals[3 * v], normals[3 * v + 1], normals[3 * v + 2], uvs[2 * v], uvs[2 * v + 1]);
+			}
+			for (int t = 0; t < 3 * triangles; t += 3) {
+				builder.addTriangle(offset + indices[t], offset + indices[t + 1], offset + indices[t + 2]);
+			}
+		}
+		
+		transforms = new float[capacity * TRANSFORM_SIZE];
+		for (int i = 0; i < capacity; i++) {
+			setTransform(i, 0f, 0f, 0f, 0f, 1f);
+		}
+		
+		object = builder.toObject3D(textureId);
+		object.getMesh().setVertexController(new InstanceController(), IVertexController.PRESERVE_SOURCE_MESH);
+		object.compile(true);
+		object.build();
+		
+		// All copies are unused, the first update() collapses them
+		drawn = capacity;
+		object.setVisibility(false);
+	}
+	
+	private static MeshBuilder createBuilder(Object3D template) {
+		MeshBuilder builder = new MeshBuilder();
+		builder.add(template);
+		return builder;
+	}
+	
+	/**
+	 * Returns the object containing all instances. It can be textured, positioned and added to a world as usual.
+	 * @return the merged object
+	 */
+	public Object3D getObject() {
+		return object;
+	}
+	
+	/**
+	 * Adds the merged object to a world.
+	 * @param world world to add the object to
+	 */
+	public void addToWorld(World world) {
+		world.addObject(object);
+	}
+	
+	/**
+	 * Removes the merged object from a world.
+	 * @param world world to remove the object from
+	 */
+	public void removeFromWorld(World world) {
+		world.removeObject(object);
+	}
+	
+	/**
+	 * Sets an executor that is used to transform large numbers of instances in parallel. Default is null, then all
+	 * instances are transformed by the thread calling update().
+	 * @param executor executor to use or null
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Returns the maximum number of instances.
+	 * @return capacity given on creation
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of instances that are shown.
+	 * @return number of used instances
+	 */
+	public int getCount() {
+		return count;
+	}
+	
+	/**
+	 * Sets the number of instances that are shown. Instances 0 to count - 1 are drawn.
+	 * @param count number of used instances
+	 */
+	public void setCount(int count) {
+		if (count < 0 || count > capacity) {
+			throw new IllegalArgumentException("Count must be between 0 and " + capacity);
+		}
+		this.count = count;
+	}
+	
+	/**
+	 * Returns the transformation array. It can be written directly, see the class description for the layout.
+	 * @return array of all transformations
+	 */
+	public float[] getTransforms() {
+		return transforms;
+	}
+	
+	/**
+	 * Sets the position of an instance and keeps its rotation and scale.
+	 * @param index index of the instance
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param z z coordinate
+	 */
+	public void setPosition(int index, float x, float y, float z) {
+		int t = index * TRANSFORM_SIZE;
+		transforms[t + 9] = x;
+		transforms[t + 10] = y;
+		transforms[t + 11] = z;
+	}
+	
+	/**
+	 * Sets the transformation of an instance that is only rotated around the Y-Axis.
+	 * @param index index of the instance
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param z z coordinate
+	 * @param angle rotation around the Y-Axis in radian
+	 * @param scale uniform scale
+	 */
+	public void setTransform(int index, float x, float y, float z, float angle, float scale) {
+		float cos = (float) Math.cos(angle);
+		float sin = (float) Math.sin(angle);
+		int t = index * TRANSFORM_SIZE;
+		transforms[t + 0] = cos;
+		transforms[t + 1] = 0f;
+		transforms[t + 2] = sin;
+		transforms[t + 3] = 0f;
+		transforms[t + 4] = 1f;
+		transforms[t + 5] = 0f;
+		transforms[t + 6] = -sin;
+		transforms[t + 7] = 0f;
+		transforms[t + 8] = cos;
+		transforms[t + 9] = x;
+		transforms[t + 10] = y;
+		transforms[t + 11] = z;
+		transforms[t + 12] = scale;
+	}
+	
+	/**
+	 * Writes the current transformations into the mesh. Should be called once per frame before rendering.
+	 */
+	public void update() {
+		object.setVisibility(count > 0);
+		if (count > 0 || drawn > 0) {
+			object.getMesh().applyVertexController();
+			object.touch();
+			object.calcBoundingBox();
+		}
+	}
+	
+	private void transformParallel(SimpleVector[] dst, SimpleVector[] dstNormals) {
+		if (tasks == null) {
+			tasks = new ArrayList<TransformTask>();
+		}
+		int taskCount = Math.min(count / MIN_TASK_SIZE, 4 * Runtime.getRuntime().availableProcessors());
+		while (tasks.size() < taskCount) {
+			tasks.add(new TransformTask());
+		}
+		
+		for (int i = 0; i < taskCount; i++) {
+			TransformTask task = tasks.get(i);
+			task.dst = dst;
+			task.dstNormals = dstNormals;
+			task.start = (int) ((long) count * i / taskCount);
+			task.end = (int) ((long) count * (i + 1) / taskCount);
+		}
+		
+		try {
+			for (Future<Void> f : executor.invokeAll(tasks.subList(0, taskCount))) {
+				f.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while transforming instances", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Transforming instances failed", e.getCause());
+		}
+	}
+	
+	private void transform(SimpleVector[] dst, SimpleVector[] dstNormals, int start, int end) {
+		for (int i = start; i < end; i++) {
+			int t = i * TRANSFORM_SIZE;
+			float m00 = transforms[t + 0];
+			float m01 = transforms[t + 1];
+			float m02 = transforms[t + 2];
+			float m10 = transforms[t + 3];
+			float m11 = transforms[t + 4];
+			float m12 = transforms[t + 5];
+			float m20 = transforms[t + 6];
+			float m21 = transforms[t + 7];
+			float m22 = transforms[t + 8];
+			float tx = transforms[t + 9];
+			float ty = transforms[t + 10];
+			float tz = transforms[t + 11];
+			float s = transforms[t + 12];
+			
+			int offset = i * vertices;
+			for (int v = 0; v < vertices; v++) {
+				float x = coords[3 * v];
+				float y = coords[3 * v + 1];
+				float z = coords[3 * v + 2];
+				SimpleVector d = dst[offset + v];
+				d.x = s * (m00 * x + m01 * y + m02 * z) + tx;
+				d.y = s * (m10 * x + m11 * y + m12 * z) + ty;
+				d.z = s * (m20 * x + m21 * y + m22 * z) + tz;
+				
+				float nx = normals[3 * v];
+				float ny = normals[3 * v + 1];
+				float nz = normals[3 * v + 2];
+				SimpleVector n = dstNormals[offset + v];
+				n.x = m00 * nx + m01 * ny + m02 * nz;
+				n.y = m10 * nx + m11 * ny + m12 * nz;
+				n.z = m20 * nx + m21 * ny + m22 * nz;
+			}
+		}
+	}
+}
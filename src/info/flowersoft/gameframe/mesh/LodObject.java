@@ -0,0 +1,223 @@
+package info.flowersoft.gameframe.mesh;
+
+import com.threed.jpct.Camera;
+import com.threed.jpct.FrameBuffer;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+import com.threed.jpct.World;
+
+/**
+ * A lod object shows one of several levels of detail of the same shape, depending on its size on the screen. The
+ * levels are children of a pivot object, so the lod object is moved and rotated by transforming the pivot.</br>
+ *
+ * Levels are switched by comparing the squared distance to the camera with squared switch distances, so updateAll()
+ * needs neither a square root nor any allocation per object and can be called for thousands of objects every frame.
+ * To avoid flickering near a switch distance a level is only left if the distance is off by more than the hysteresis.
+ *
+ * @author Lobby Divinus
+ */
+public class LodObject {
+	
+	/**
+	 * Default hysteresis, a level is left if the distance differs by more than 10 percent from the switch distance.
+	 */
+	public static final float DEFAULT_HYSTERESIS = 0.1f;
+	
+	private final Object3D pivot;
+	
+	private final Object3D[] levels;
+	
+	private final float radius;
+	
+	private final float[] screenSizes;
+	
+	private final SimpleVector center;
+	
+	private float lowerFactor;
+	
+	private float upperFactor;
+	
+	private int level;
+	
+	private boolean culled;
+	
+	private float cullSize;
+	
+	/**
+	 * Creates a new lod object. The first level is visible until update() is called.
+	 * @param levels objects of the different levels, most detailed first. They should not have a parent yet.
+	 * @param radius radius of the bounding sphere of the shape, used to estimate the size on the screen
+	 * @param screenSizes screen radii in pixels at which the next level should be used, one less than levels and in
+	 * descending order. Level i is used as long as the object appears bigger than screenSizes[i].
+	 */
+	public LodObject(Object3D[] levels, float radius, float[] screenSizes) {
+		if (screenSizes.length != levels.length - 1) {
+			throw new IllegalArgumentException("There must be exactly one screen size less than levels");
+		}
+		
+		this.levels = levels.clone();
+		this.radius = radius;
+		this.screenSizes = screenSizes.clone();
+		center = new SimpleVector();
+		
+		pivot = Object3D.createDummyObj();
+		for (int i = 0; i < levels.length; i++) {
+			levels[i].addParent(pivot);
+			levels[i].setVisibility(i == 0);
+		}
+		
+		setHysteresis(DEFAULT_HYSTERESIS);
+	}
+	
+	/**
+	 * Returns the pivot object that should be used to move and rotate this lod object.
+	 * @return the pivot
+	 */
+	public Object3D getPivot() {
+		return pivot;
+	}
+	
+	/**
+	 * Returns the object of a level.
+	 * @param index index of the level, 0 is the most detailed one
+	 * @return the object
+	 */
+	public Object3D getLevel(int index) {
+		return levels[index];
+	}
+	
+	/**
+	 * Returns the number of levels.
+	 * @return number of levels
+	 */
+	public int getLevelCount() {
+		return levels.length;
+	}
+	
+	/**
+	 * Returns the index of the currently shown level.
+	 * @return index of the level, 0 is the most detailed one
+	 */
+	public int getCurrentLevel() {
+		return level;
+	}
+	
+	/**
+	 * Returns whether the object is completely hidden because it is smaller than the cull size.
+	 * @return true if no level is shown
+	 */
+	public boolean isCulled() {
+		return culled;
+	}
+	
+	/**
+	 * Sets the hysteresis of level switches.
+	 * @param hysteresis relative amount the distance must exceed a switch distance, 0 switches exactly at it
+	 */
+	public void setHysteresis(float hysteresis) {
+		lowerFactor = (1 - hysteresis) * (1 - hysteresis);
+		upperFactor = (1 + hysteresis) * (1 + hysteresis);
+	}
+	
+	/**
+	 * Sets a screen radius below which no level is shown at all. Default is 0, so the last level is always shown.
+	 * @param cullSize screen radius in pixels
+	 */
+	public void setCullSize(float cullSize) {
+		this.cullSize = cullSize;
+	}
+	
+	/**
+	 * Adds all levels to a world. The pivot itself doesn't have to be added.
+	 * @param world world to add the levels to
+	 */
+	public void addToWorld(World world) {
+		world.addObjects(levels);
+	}
+	
+	/**
+	 * Removes all levels from a world.
+	 * @param world world to remove the levels from
+	 */
+	public void removeFromWorld(World world) {
+		for (Object3D obj : levels) {
+			world.removeObject(obj);
+		}
+	}
+	
+	/**
+	 * Updates all given lod objects for the current camera. The pixel scale is computed only once.
+	 * @param objects lod objects to update
+	 * @param count number of objects to update, starting at index 0
+	 * @param camera camera used for rendering
+	 * @param buffer frame buffer used for rendering
+	 */
+	public static void updateAll(LodObject[] objects, int count, Camera camera, FrameBuffer buffer) {
+		float pixelScale = getPixelScale(camera, buffer);
+		SimpleVector position = camera.getPosition();
+		for (int i = 0; i < count; i++) {
+			objects[i].update(position.x, position.y, position.z, pixelScale);
+		}
+	}
+	
+	/**
+	 * Computes the factor that converts size divided by distance into pixels on the screen.
+	 * @param camera camera used for rendering
+	 * @param buffer frame buffer used for rendering
+	 * @return the pixel scale
+	 */
+	public static float getPixelScale(Camera camera, FrameBuffer buffer) {
+		return buffer.getWidth() / camera.getFOV();
+	}
+	
+	/**
+	 * Updates this lod object for the current camera.
+	 * @param camera camera used for rendering
+	 * @param buffer frame buffer used for rendering
+	 */
+	public void update(Camera camera, FrameBuffer buffer) {
+		SimpleVector position = camera.getPosition();
+		update(position.x, position.y, position.z, getPixelScale(camera, buffer));
+	}
+	
+	/**
+	 * Updates this lod object for a camera position.
+	 * @param cameraX x coordinate of the camera
+	 * @param cameraY y coordinate of the camera
+	 * @param cameraZ z coordinate of the camera
+	 * @param pixelScale pixel scale as returned by getPixelScale()
+	 */
+	public void update(float cameraX, float cameraY, float cameraZ, float pixelScale) {
+		pivot.getTransformedCenter(center);
+		float dx = center.x - cameraX;
+		float dy = center.y - cameraY;
+		float dz = center.z - cameraZ;
+		float distance2 = dx * dx + dy * dy + dz * dz;
+		float scaled = radius * pixelScale;
+		
+		int newLevel = level;
+		while (newLevel + 1 < levels.length && distance2 > upperFactor * square(scaled / screenSizes[newLevel])) {
+			newLevel++;
+		}
+		while (newLevel > 0 && distance2 < lowerFactor * square(scaled / screenSizes[newLevel - 1])) {
+			newLevel--;
+		}
+		
+		boolean newCulled = false;
+		if (cullSize > 0) {
+			float cullDistance2 = square(scaled / cullSize);
+			newCulled = distance2 > (culled ? lowerFactor : upperFactor) * cullDistance2;
+		}
+		
+		if (newLevel != level || newCulled != culled) {
+			levels[level].setVisibility(false);
+			levels[newLevel].setVisibility(!newCulled);
+			level = newLevel;
+			culled = newCulled;
+		}
+	}
+	
+	private static float square(float value) {
+		return value * value;
+	}
+}
@@ -0,0 +1,451 @@
+package info.flowersoft.gameframe.mesh;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.PolygonManager;
+import com.threed.jpct.SimpleVector;
+import com.threed.jpct.TextureManager;
+
+/**
+ * A mesh builder collects vertices and triangles in growable primitive arrays and creates an indexed Object3D from
+ * them. Vertices are added once with their position, normal and uv coordinates and can then be shared by as many
+ * triangles as needed, so jPCT doesn't have to search for equal vertices afterwards.</br>
+ *
+ * A builder can be reused by calling clear(), its arrays will keep their size.
+ *
+ * @author Lobby Divinus
+ */
+public class MeshBuilder {
+	
+	/**
+	 * Key to find equal vertices when adding polygons.
+	 */
+	private static class VertexKey {
+		
+		private final float[] values;
+		
+		VertexKey(float x, float y, float z, float u, float v) {
+			values = new float[] {x, y, z, u, v};
+		}
+		
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(values);
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof VertexKey && Arrays.equals(values, ((VertexKey) o).values);
+		}
+	}
+	
+	private float[] coords;
+	
+	private float[] normals;
+	
+	private float[] uvs;
+	
+	private int[] indices;
+	
+	private int vertexCount;
+	
+	private int indexCount;
+	
+	private Map<VertexKey, Integer> vertexMap;
+	
+	/**
+	 * Copy of the coordinates and uv coordinates used by calculateFlatNormals(), kept to avoid allocation.
+	 */
+	private float[] scratch;
+	
+	/**
+	 * Creates a new mesh builder with a small initial capacity.
+	 */
+	public MeshBuilder() {
+		this(64, 64);
+	}
+	
+	/**
+	 * Creates a new mesh builder. The arrays will grow if more vertices or triangles are added.
+	 * @param vertices number of vertices to reserve space for
+	 * @param triangles number of triangles to reserve space for
+	 */
+	public MeshBuilder(int vertices, int triangles) {
+		coords = new float[3 * Math.max(vertices, 1)];
+		normals = new float[3 * Math.max(vertices, 1)];
+		uvs = new float[2 * Math.max(vertices, 1)];
+		indices = new int[3 * Math.max(triangles, 1)];
+	}
+	
+	/**
+	 * Removes all vertices and triangles. The reserved space stays so the builder can be reused without allocation.
+	 */
+	public void clear() {
+		vertexCount = 0;
+		indexCount = 0;
+	}
+	
+	/**
+	 * Makes sure that there is space for the given number of additional vertices and triangles.
+	 * @param vertices number of vertices that will be added
+	 * @param triangles number of triangles that will be added
+	 */
+	public void ensureCapacity(int vertices, int triangles) {
+		int neededVertices = vertexCount + vertices;
+		if (3 * neededVertices > coords.length) {
+			int size = Math.max(neededVertices, 2 * coords.length / 3);
+			coords = Arrays.copyOf(coords, 3 * size);
+			normals = Arrays.copyOf(normals, 3 * size);
+			uvs = Arrays.copyOf(uvs, 2 * size);
+		}
+		
+		int neededIndices = indexCount + 3 * triangles;
+		if (neededIndices > indices.length) {
+			indices = Arrays.copyOf(indices, Math.max(neededIndices, 2 * indices.length));
+		}
+	}
+	
+	/**
+	 * Sets the number of valid vertices and triangles after the internal arrays have been filled directly.
+	 * @param vertices number of vertices
+	 * @param triangles number of triangles
+	 */
+	void setCounts(int vertices, int triangles) {
+		vertexCount = vertices;
+		indexCount = 3 * triangles;
+	}
+	
+	/**
+	 * Adds a new vertex.
+	 * @param x x coordinate
+	 * @param y y coordinate
+	 * @param z z coordinate
+	 * @param nx x component of the normal, should be normalized
+	 * @param ny y component of the normal, should be normalized
+	 * @param nz z component of the normal, should be normalized
+	 * @param u u texture coordinate
+	 * @param v v texture coordinate
+	 * @return index of the vertex to be used for addTriangle()
+	 */
+	public int addVertex(float x, float y, float z, float nx, float ny, float nz, float u, float v) {
+		ensureCapacity(1, 0);
+		
+		int c = 3 * vertexCount;
+		coords[c + 0] = x;
+		coords[c + 1] = y;
+		coords[c + 2] = z;
+		normals[c + 0] = nx;
+		normals[c + 1] = ny;
+		normals[c + 2] = nz;
+		uvs[2 * vertexCount + 0] = u;
+		uvs[2 * vertexCount + 1] = v;
+		
+		return vertexCount++;
+	}
+	
+	/**
+	 * Adds a triangle of three previously added vertices. Vertex order defines the visible side the same way as for
+	 * addTriangle() of Object3D.
+	 * @param a index of the first vertex
+	 * @param b index of the second vertex
+	 * @param c index of the third vertex
+	 */
+	public void addTriangle(int a, int b, int c) {
+		ensureCapacity(0, 1);
+		
+		indices[indexCount + 0] = a;
+		indices[indexCount + 1] = b;
+		indices[indexCount + 2] = c;
+		indexCount += 3;
+	}
+	
+	/**
+	 * Adds all triangles of an object with its current world transformation. Vertices with equal position and uv
+	 * coordinates are shared and get the average normal of their triangles. The object must have been built before
+	 * and must not be stripped.
+	 * @param obj object to add
+	 */
+	public void add(Object3D obj) {
+		PolygonManager mgr = obj.getPolygonManager();
+		int[] polygons = new int[mgr.getMaxPolygonID()];
+		for (int p = 0; p < polygons.length; p++) {
+			polygons[p] = p;
+		}
+		add(mgr, obj.getWorldTransformation(), polygons, polygons.length);
+	}
+	
+	/**
+	 * Adds some polygons of an object transformed by a matrix. Vertices with equal position and uv coordinates are
+	 * shared within the added polygons and get the average normal of their triangles. This is the vertex welding used
+	 * by add(Object3D) and the StaticBatcher.
+	 * @param mgr polygon manager of the object
+	 * @param matrix transformation of the object
+	 * @param polygons ids of the polygons to add
+	 * @param count number of polygons to add
+	 */
+	void add(PolygonManager mgr, Matrix matrix, int[] polygons, int count) {
+		ensureCapacity(3 * count, count);
+		
+		int start = vertexCount;
+		if (vertexMap == null) {
+			vertexMap = new HashMap<VertexKey, Integer>();
+		}
+		Map<VertexKey, Integer> map = vertexMap;
+		SimpleVector pos = new SimpleVector();
+		SimpleVector normal = new SimpleVector();
+		SimpleVector uv = new SimpleVector();
+		int[] ids = new int[3];
+		for (int i = 0; i < count; i++) {
+			int p = polygons[i];
+			mgr.getTransformedNormal(p, matrix, normal);
+			for (int v = 0; v < 3; v++) {
+				mgr.getTransformedVertex(p, v, matrix, pos);
+				mgr.getTextureUV(p, v, uv);
+				VertexKey key = new VertexKey(pos.x, pos.y, pos.z, uv.x, uv.y);
+				Integer id = map.get(key);
+				if (id == null) {
+					id = addVertex(pos.x, pos.y, pos.z, 0f, 0f, 0f, uv.x, uv.y);
+					map.put(key, id);
+				}
+				ids[v] = id;
+				normals[3 * id + 0] += normal.x;
+				normals[3 * id + 1] += normal.y;
+				normals[3 * id + 2] += normal.z;
+			}
+			addTriangle(ids[0], ids[1], ids[2]);
+		}
+		map.clear();
+		
+		normalize(start, vertexCount);
+	}
+	
+	/**
+	 * Adds all triangles of an object with its current world transformation without sharing vertices. Every triangle
+	 * gets three vertices of its own with the normal of the triangle, so the mesh looks faceted. Nothing is searched
+	 * or copied, the n-th added triangle uses the n-th three added vertices. The object must have been built before
+	 * and must not be stripped.
+	 * @param obj object to add
+	 */
+	public void addFlat(Object3D obj) {
+		PolygonManager mgr = obj.getPolygonManager();
+		Matrix matrix = obj.getWorldTransformation();
+		int polygons = mgr.getMaxPolygonID();
+		ensureCapacity(3 * polygons, polygons);
+		
+		SimpleVector pos = new SimpleVector();
+		SimpleVector uv = new SimpleVector();
+		for (int p = 0; p < polygons; p++) {
+			int first = vertexCount;
+			for (int v = 0; v < 3; v++) {
+				mgr.getTransformedVertex(p, v, matrix, pos);
+				mgr.getTextureUV(p, v, uv);
+				coords[3 * vertexCount + 0] = pos.x;
+				coords[3 * vertexCount + 1] = pos.y;
+				coords[3 * vertexCount + 2] = pos.z;
+				uvs[2 * vertexCount + 0] = uv.x;
+				uvs[2 * vertexCount + 1] = uv.y;
+				indices[indexCount++] = vertexCount++;
+			}
+			setFlatNormal(first);
+		}
+	}
+	
+	/**
+	 * Calculates smooth normals from the triangles. Each vertex gets the average normal of all triangles using it,
+	 * weighted by their area. Vertices that are not shared, like those along uv seams, are not smoothed across.
+	 */
+	public void calculateNormals() {
+		Arrays.fill(normals, 0, 3 * vertexCount, 0f);
+		
+		for (int i = 0; i < indexCount; i += 3) {
+			int a = 3 * indices[i];
+			int b = 3 * indices[i + 1];
+			int c = 3 * indices[i + 2];
+			float ux = coords[b] - coords[a];
+			float uy = coords[b + 1] - coords[a + 1];
+			float uz = coords[b + 2] - coords[a + 2];
+			float vx = coords[c] - coords[a];
+			float vy = coords[c + 1] - coords[a + 1];
+			float vz = coords[c + 2] - coords[a + 2];
+			float nx = uy * vz - uz * vy;
+			float ny = uz * vx - ux * vz;
+			float nz = ux * vy - uy * vx;
+			
+			normals[a] += nx;
+			normals[a + 1] += ny;
+			normals[a + 2] += nz;
+			normals[b] += nx;
+			normals[b + 1] += ny;
+			normals[b + 2] += nz;
+			normals[c] += nx;
+			normals[c + 1] += ny;
+			normals[c + 2] += nz;
+		}
+		
+		normalize(0, vertexCount);
+	}
+	
+	/**
+	 * Gives every triangle its own three vertices and sets their normals to the normal of the triangle, so the mesh
+	 * looks faceted. Afterwards vertex i belongs to triangle i / 3.
+	 */
+	public void calculateFlatNormals() {
+		int coordCount = 3 * vertexCount;
+		int uvCount = 2 * vertexCount;
+		if (scratch == null || scratch.length < coordCount + uvCount) {
+			scratch = new float[coordCount + uvCount];
+		}
+		System.arraycopy(coords, 0, scratch, 0, coordCount);
+		System.arraycopy(uvs, 0, scratch, coordCount, uvCount);
+		vertexCount = 0;
+		ensureCapacity(indexCount, 0);
+		
+		for (int i = 0; i < indexCount; i++) {
+			int v = indices[i];
+			coords[3 * i + 0] = scratch[3 * v + 0];
+			coords[3 * i + 1] = scratch[3 * v + 1];
+			coords[3 * i + 2] = scratch[3 * v + 2];
+			uvs[2 * i + 0] = scratch[coordCount + 2 * v + 0];
+			uvs[2 * i + 1] = scratch[coordCount + 2 * v + 1];
+			indices[i] = i;
+		}
+		vertexCount = indexCount;
+		
+		for (int i = 0; i < indexCount; i += 3) {
+			setFlatNormal(i);
+		}
+	}
+	
+	/**
+	 * Sets the normalized normal of the triangle made of three consecutive vertices to all three of them.
+	 * @param first index of the first vertex
+	 */
+	private void setFlatNormal(int first) {
+		int a = 3 * first;
+		float ux = coords[a + 3] - coords[a];
+		float uy = coords[a + 4] - coords[a + 1];
+		float uz = coords[a + 5] - coords[a + 2];
+		float vx = coords[a + 6] - coords[a];
+		float vy = coords[a + 7] - coords[a + 1];
+		float vz = coords[a + 8] - coords[a + 2];
+		float nx = uy * vz - uz * vy;
+		float ny = uz * vx - ux * vz;
+		float nz = ux * vy - uy * vx;
+		float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length > 0) {
+			nx /= length;
+			ny /= length;
+			nz /= length;
+		}
+		for (int k = 0; k < 9; k += 3) {
+			normals[a + k + 0] = nx;
+			normals[a + k + 1] = ny;
+			normals[a + k + 2] = nz;
+		}
+	}
+	
+	private void normalize(int start, int end) {
+		for (int v = start; v < end; v++) {
+			float nx = normals[3 * v + 0];
+			float ny = normals[3 * v + 1];
+			float nz = normals[3 * v + 2];
+			float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+			if (length > 0) {
+				setNormal(v, nx / length, ny / length, nz / length);
+			}
+		}
+	}
+	
+	/**
+	 * Sets the normal of a vertex.
+	 * @param vertex index of the vertex
+	 * @param nx x component of the normal
+	 * @param ny y component of the normal
+	 * @param nz z component of the normal
+	 */
+	public void setNormal(int vertex, float nx, float ny, float nz) {
+		normals[3 * vertex + 0] = nx;
+		normals[3 * vertex + 1] = ny;
+		normals[3 * vertex + 2] = nz;
+	}
+	
+	/**
+	 * Returns the number of vertices added so far.
+	 * @return number of vertices
+	 */
+	public int getVertexCount() {
+		return vertexCount;
+	}
+	
+	/**
+	 * Returns the number of triangles added so far.
+	 * @return number of triangles
+	 */
+	public int getTriangleCount() {
+		return indexCount / 3;
+	}
+	
+	/**
+	 * Returns the internal coordinate array. It may be larger than needed, only the first 3 * getVertexCount() values
+	 * are valid. The array may be replaced when more vertices are added.
+	 * @return coordinates in format x0, y0, z0, x1, ...
+	 */
+	public float[] getCoords() {
+		return coords;
+	}
+	
+	/**
+	 * Returns the internal normal array. It may be larger than needed, only the first 3 * getVertexCount() values
+	 * are valid. The array may be replaced when more vertices are added.
+	 * @return normals in format x0, y0, z0, x1, ...
+	 */
+	public float[] getNormals() {
+		return normals;
+	}
+	
+	/**
+	 * Returns the internal uv array. It may be larger than needed, only the first 2 * getVertexCount() values are
+	 * valid. The array may be replaced when more vertices are added.
+	 * @return uv coordinates in format u0, v0, u1, ...
+	 */
+	public float[] getUVs() {
+		return uvs;
+	}
+	
+	/**
+	 * Returns the internal index array. It may be larger than needed, only the first 3 * getTriangleCount() values
+	 * are valid. The array may be replaced when more triangles are added.
+	 * @return vertex indices, three per triangle
+	 */
+	public int[] getIndices() {
+		return indices;
+	}
+	
+	/**
+	 * Creates a new Object3D from the vertices and triangles added so far. The object has no texture and still has
+	 * to be built. The builder can be cleared and reused afterwards.
+	 * @return the created object
+	 */
+	public Object3D toObject3D() {
+		return toObject3D(TextureManager.TEXTURE_NOTFOUND);
+	}
+	
+	/**
+	 * Creates a new Object3D from the vertices and triangles added so far. The object still has to be built. The
+	 * builder can be cleared and reused afterwards.
+	 * @param textureId id of the texture for all triangles
+	 * @return the created object
+	 */
+	public Object3D toObject3D(int textureId) {
+		return new Object3D(
+				Arrays.copyOf(coords, 3 * vertexCount),
+				Arrays.copyOf(normals, 3 * vertexCount),
+				Arrays.copyOf(uvs, 2 * vertexCount),
+				Arrays.copyOf(indices, indexCount),
+				textureId);
+	}
+}
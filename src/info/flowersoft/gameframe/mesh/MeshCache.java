@@ -0,0 +1,214 @@
+package info.flowersoft.gameframe.mesh;
+
+import info.flowersoft.gameframe.mesh.AsyncMeshLoader.IMeshGenerator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.threed.jpct.Logger;
+import com.threed.jpct.Object3D;
+
+/**
+ * A mesh cache stores generated meshes in binary files, so procedural geometry has to be generated only once and not
+ * on every launch. Loading a cached mesh maps the file into memory and copies the arrays in bulk, which is much
+ * faster than generating detailed meshes again.</br>
+ *
+ * Each file contains a format version and a hash of the generation parameters. If either doesn't match, or the file
+ * is missing or damaged, the mesh is generated and the file is written again. So the hash has to change whenever the
+ * generated mesh would change, hash() can be used to compute it from the parameters.</br>
+ *
+ * File layout (little endian): magic, version, hash (long), vertex count, triangle count, followed by coords,
+ * normals and uvs as floats and the indices as ints.
+ *
+ * @author Lobby Divinus
+ */
+public class MeshCache {
+	
+	/**
+	 * Version of the file format. Files of other versions are ignored.
+	 */
+	public static final int VERSION = 1;
+	
+	private static final int MAGIC = 0x47464d43;
+	
+	private static final int HEADER_SIZE = 24;
+	
+	private static final String SUFFIX = ".mesh";
+	
+	private final File directory;
+	
+	/**
+	 * Creates a new mesh cache.
+	 * @param directory directory the mesh files are stored in, it is created if it doesn't exist
+	 */
+	public MeshCache(File directory) {
+		this.directory = directory;
+	}
+	
+	/**
+	 * Computes a 64 bit hash of generation parameters.
+	 * @param name name of the generator, for example "cog"
+	 * @param params parameters of the generator
+	 * @return the hash
+	 */
+	public static long hash(String name, float[] params) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < name.length(); i++) {
+			hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+		}
+		for (float param : params) {
+			hash = (hash ^ Float.floatToIntBits(param)) * 0x100000001b3L;
+		}
+		return hash;
+	}
+	
+	/**
+	 * Returns a cached mesh or generates and caches it.
+	 * @param name file name of the mesh without suffix
+	 * @param hash hash of the generation parameters
+	 * @param generator generator used if the mesh isn't cached yet
+	 * @return the mesh
+	 */
+	public MeshBuilder get(String name, long hash, IMeshGenerator generator) {
+		MeshBuilder builder = load(name, hash);
+		if (builder == null) {
+			builder = generator.generate();
+			save(name, hash, builder);
+		}
+		return builder;
+	}
+	
+	/**
+	 * Returns a new object of a cached mesh or generates and caches the mesh. The object still has to be built.
+	 * @param name file name of the mesh without suffix
+	 * @param hash hash of the generation parameters
+	 * @param textureId id of the texture for all triangles
+	 * @param generator generator used if the mesh isn't cached yet
+	 * @return the created object
+	 */
+	public Object3D getObject(String name, long hash, int textureId, IMeshGenerator generator) {
+		return get(name, hash, generator).toObject3D(textureId);
+	}
+	
+	/**
+	 * Loads a cached mesh.
+	 * @param name file name of the mesh without suffix
+	 * @param hash hash of the generation parameters
+	 * @return the mesh or null if it isn't cached or has been generated with other parameters
+	 */
+	public MeshBuilder load(String name, long hash) {
+		File file = getFile(name);
+		if (!file.isFile() || file.length() < HEADER_SIZE) {
+			return null;
+		}
+		
+		FileInputStream stream = null;
+		try {
+			stream = new FileInputStream(file);
+			FileChannel channel = stream.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			
+			if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getLong() != hash) {
+				return null;
+			}
+			int vertices = buffer.getInt();
+			int triangles = buffer.getInt();
+			if (vertices < 0 || triangles < 0 || buffer.remaining() != 32L * vertices + 12L * triangles) {
+				return null;
+			}
+			
+			MeshBuilder builder = new MeshBuilder(vertices, triangles);
+			buffer.asFloatBuffer().get(builder.getCoords(), 0, 3 * vertices);
+			buffer.position(buffer.position() + 12 * vertices);
+			buffer.asFloatBuffer().get(builder.getNormals(), 0, 3 * vertices);
+			buffer.position(buffer.position() + 12 * vertices);
+			buffer.asFloatBuffer().get(builder.getUVs(), 0, 2 * vertices);
+			buffer.position(buffer.position() + 8 * vertices);
+			buffer.asIntBuffer().get(builder.getIndices(), 0, 3 * triangles);
+			builder.setCounts(vertices, triangles);
+			return builder;
+		} catch (IOException e) {
+			Logger.log("Couldn't read cached mesh " + file + ": " + e, Logger.WARNING);
+			return null;
+		} finally {
+			close(stream);
+		}
+	}
+	
+	/**
+	 * Writes a mesh into the cache. Errors are logged, the mesh is just generated again on the next launch then.
+	 * @param name file name of the mesh without suffix
+	 * @param hash hash of the generation parameters
+	 * @param builder the mesh
+	 */
+	public void save(String name, long hash, MeshBuilder builder) {
+		int vertices = builder.getVertexCount();
+		int triangles = builder.getTriangleCount();
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 32 * vertices + 12 * triangles);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		buffer.putInt(MAGIC).putInt(VERSION).putLong(hash).putInt(vertices).putInt(triangles);
+		buffer.asFloatBuffer().put(builder.getCoords(), 0, 3 * vertices);
+		buffer.position(buffer.position() + 12 * vertices);
+		buffer.asFloatBuffer().put(builder.getNormals(), 0, 3 * vertices);
+		buffer.position(buffer.position() + 12 * vertices);
+		buffer.asFloatBuffer().put(builder.getUVs(), 0, 2 * vertices);
+		buffer.position(buffer.position() + 8 * vertices);
+		buffer.asIntBuffer().put(builder.getIndices(), 0, 3 * triangles);
+		buffer.rewind();
+		
+		// Write to a temporary file first, so a crash never leaves a damaged file with a valid header
+		File file = getFile(name);
+		File temp = new File(directory, name + SUFFIX + ".tmp");
+		FileOutputStream stream = null;
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Couldn't create directory");
+			}
+			stream = new FileOutputStream(temp);
+			FileChannel channel = stream.getChannel();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			stream.close();
+			stream = null;
+			if ((file.exists() && !file.delete()) || !temp.renameTo(file)) {
+				throw new IOException("Couldn't replace file");
+			}
+		} catch (IOException e) {
+			Logger.log("Couldn't write cached mesh " + file + ": " + e, Logger.WARNING);
+			temp.delete();
+		} finally {
+			close(stream);
+		}
+	}
+	
+	/**
+	 * Removes a mesh from the cache.
+	 * @param name file name of the mesh without suffix
+	 */
+	public void remove(String name) {
+		getFile(name).delete();
+	}
+	
+	private File getFile(String name) {
+		return new File(directory, name + SUFFIX);
+	}
+	
+	private static void close(Closeable stream) {
+		if (stream != null) {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				Logger.log("Couldn't close mesh file: " + e, Logger.WARNING);
+			}
+		}
+	}
+}
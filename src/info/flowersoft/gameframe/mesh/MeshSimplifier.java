@@ -0,0 +1,512 @@
+package info.flowersoft.gameframe.mesh;
+
+import java.util.Arrays;
+
+/**
+ * A mesh simplifier reduces the number of triangles of an indexed mesh by collapsing edges. The error of a collapse
+ * is measured with quadric error metrics: every vertex gets the sum of the squared distances to the planes of its
+ * original triangles, so edges on flat areas are collapsed first and silhouettes are kept as long as possible.</br>
+ *
+ * Edges are collapsed into one of their vertices, so the remaining vertices keep their positions, normals and uvs.
+ * Vertices on borders of the mesh and on uv seams (vertices sharing their position with other vertices) are never
+ * moved, so neighbouring terrain chunks still fit together and textures don't get distorted at seams. Collapses that
+ * would flip triangles or make the mesh non-manifold are skipped.</br>
+ *
+ * Candidate collapses are kept in a binary heap of primitive arrays. Entries aren't removed when vertices change,
+ * instead each entry remembers a change counter of its vertices and is skipped when popped if it is outdated.
+ *
+ * @author Lobby Divinus
+ */
+public final class MeshSimplifier {
+	
+	/**
+	 * Minimum cosine of the angle between the normals of a triangle before and after a collapse.
+	 */
+	private static final float MIN_NORMAL_COS = 0.2f;
+	
+	private final MeshBuilder source;
+	
+	private final int vertexCount;
+	
+	private final int triangleCount;
+	
+	private final float[] coords;
+	
+	private final int[] triangles;
+	
+	private final boolean[] deadTriangles;
+	
+	private final double[] quadrics;
+	
+	private final boolean[] locked;
+	
+	private final boolean[] removed;
+	
+	private final int[] stamps;
+	
+	private final int[][] vertexTriangles;
+	
+	private final int[] vertexTriangleCounts;
+	
+	private final int[] marks;
+	
+	private int mark;
+	
+	private float[] heapKeys;
+	
+	private int[] heapEntries;
+	
+	private int heapSize;
+	
+	private int[] entryFrom;
+	
+	private int[] entryTo;
+	
+	private int[] entryStampFrom;
+	
+	private int[] entryStampTo;
+	
+	private int entryCount;
+	
+	private MeshSimplifier(MeshBuilder source) {
+		this.source = source;
+		vertexCount = source.getVertexCount();
+		triangleCount = source.getTriangleCount();
+		coords = Arrays.copyOf(source.getCoords(), 3 * vertexCount);
+		triangles = Arrays.copyOf(source.getIndices(), 3 * triangleCount);
+		deadTriangles = new boolean[triangleCount];
+		quadrics = new double[10 * vertexCount];
+		locked = new boolean[vertexCount];
+		removed = new boolean[vertexCount];
+		stamps = new int[vertexCount];
+		vertexTriangles = new int[vertexCount][];
+		vertexTriangleCounts = new int[vertexCount];
+		marks = new int[vertexCount];
+		
+		int capacity = 16 + 6 * triangleCount;
+		heapKeys = new float[capacity];
+		heapEntries = new int[capacity];
+		entryFrom = new int[capacity];
+		entryTo = new int[capacity];
+		entryStampFrom = new int[capacity];
+		entryStampTo = new int[capacity];
+	}
+	
+	/**
+	 * Simplifies a mesh. The mesh should share vertices between its triangles wherever the uvs are equal, like meshes
+	 * of MeshBuilder.add() or of the generators in ExtendedPrimitives. Otherwise all vertices count as seams and
+	 * nothing can be collapsed.
+	 * @param mesh mesh to simplify, it isn't changed
+	 * @param targetTriangles number of triangles to reduce the mesh to. The result may have more triangles if the
+	 * error bound is reached first or if no more edges can be collapsed.
+	 * @param maxError maximum distance a collapse may move the surface, Float.POSITIVE_INFINITY to only use the
+	 * triangle count
+	 * @return new mesh builder containing the simplified mesh
+	 */
+	public static MeshBuilder simplify(MeshBuilder mesh, int targetTriangles, float maxError) {
+		return new MeshSimplifier(mesh).run(targetTriangles, maxError);
+	}
+	
+	/**
+	 * Simplifies a mesh to a fraction of its triangles.
+	 * @param mesh mesh to simplify, it isn't changed
+	 * @param ratio fraction of triangles to keep, between 0 and 1
+	 * @return new mesh builder containing the simplified mesh
+	 */
+	public static MeshBuilder simplify(MeshBuilder mesh, float ratio) {
+		return simplify(mesh, (int) (ratio * mesh.getTriangleCount()), Float.POSITIVE_INFINITY);
+	}
+	
+	private MeshBuilder run(int targetTriangles, float maxError) {
+		buildAdjacency();
+		lockSeams();
+		long[] edges = lockBorders();
+		computeQuadrics();
+		
+		for (long edge : edges) {
+			if (edge != -1) {
+				pushPair((int) (edge >>> 32), (int) edge);
+			}
+		}
+		
+		float maxCost = maxError * maxError;
+		int alive = triangleCount;
+		while (alive > targetTriangles && heapSize > 0) {
+			float cost = heapKeys[0];
+			int entry = popHeap();
+			if (cost > maxCost) {
+				break;
+			}
+			
+			int from = entryFrom[entry];
+			int to = entryTo[entry];
+			if (removed[from] || removed[to] || stamps[from] != entryStampFrom[entry]
+					|| stamps[to] != entryStampTo[entry]) {
+				continue;
+			}
+			if (canCollapse(from, to)) {
+				alive -= collapse(from, to);
+			}
+		}
+		
+		return createResult(alive);
+	}
+	
+	private void buildAdjacency() {
+		for (int i = 0; i < triangles.length; i++) {
+			vertexTriangleCounts[triangles[i]]++;
+		}
+		for (int v = 0; v < vertexCount; v++) {
+			vertexTriangles[v] = new int[Math.max(vertexTriangleCounts[v], 1)];
+			vertexTriangleCounts[v] = 0;
+		}
+		for (int i = 0; i < triangles.length; i++) {
+			int v = triangles[i];
+			vertexTriangles[v][vertexTriangleCounts[v]++] = i / 3;
+		}
+	}
+	
+	/**
+	 * Locks all vertices that share their position with another vertex.
+	 */
+	private void lockSeams() {
+		int size = Integer.highestOneBit(Math.max(2 * vertexCount, 2)) << 1;
+		int[] table = new int[size];
+		Arrays.fill(table, -1);
+		for (int v = 0; v < vertexCount; v++) {
+			int c = 3 * v;
+			int hash = Float.floatToIntBits(coords[c]) * 73856093 ^ Float.floatToIntBits(coords[c + 1]) * 19349663
+					^ Float.floatToIntBits(coords[c + 2]) * 83492791;
+			int slot = (hash ^ hash >>> 16) & (size - 1);
+			while (table[slot] != -1) {
+				int o = 3 * table[slot];
+				if (coords[o] == coords[c] && coords[o + 1] == coords[c + 1] && coords[o + 2] == coords[c + 2]) {
+					locked[table[slot]] = true;
+					locked[v] = true;
+					break;
+				}
+				slot = (slot + 1) & (size - 1);
+			}
+			if (table[slot] == -1) {
+				table[slot] = v;
+			}
+		}
+	}
+	
+	/**
+	 * Builds the edge table and locks the vertices of edges that don't have exactly two triangles.
+	 * @return edge table, unused slots are -1
+	 */
+	private long[] lockBorders() {
+		int size = Integer.highestOneBit(Math.max(6 * triangleCount, 2)) << 1;
+		long[] keys = new long[size];
+		int[] counts = new int[size];
+		Arrays.fill(keys, -1);
+		for (int t = 0; t < triangleCount; t++) {
+			for (int k = 0; k < 3; k++) {
+				int a = triangles[3 * t + k];
+				int b = triangles[3 * t + (k + 1) % 3];
+				long key = a < b ? (long) a << 32 | b : (long) b << 32 | a;
+				long hash = key * 0x9e3779b97f4a7c15L;
+				int slot = (int) (hash ^ hash >>> 32) & (size - 1);
+				while (keys[slot] != -1 && keys[slot] != key) {
+					slot = (slot + 1) & (size - 1);
+				}
+				keys[slot] = key;
+				counts[slot]++;
+			}
+		}
+		
+		for (int i = 0; i < size; i++) {
+			if (keys[i] != -1 && counts[i] != 2) {
+				locked[(int) (keys[i] >>> 32)] = true;
+				locked[(int) keys[i]] = true;
+			}
+		}
+		return keys;
+	}
+	
+	private void computeQuadrics() {
+		for (int t = 0; t < triangleCount; t++) {
+			int a = 3 * triangles[3 * t];
+			int b = 3 * triangles[3 * t + 1];
+			int c = 3 * triangles[3 * t + 2];
+			double ux = coords[b] - coords[a];
+			double uy = coords[b + 1] - coords[a + 1];
+			double uz = coords[b + 2] - coords[a + 2];
+			double vx = coords[c] - coords[a];
+			double vy = coords[c + 1] - coords[a + 1];
+			double vz = coords[c + 2] - coords[a + 2];
+			double nx = uy * vz - uz * vy;
+			double ny = uz * vx - ux * vz;
+			double nz = ux * vy - uy * vx;
+			double length = Math.sqrt(nx * nx + ny * ny + nz * nz);
+			if (length == 0) {
+				continue;
+			}
+			nx /= length;
+			ny /= length;
+			nz /= length;
+			double d = -(nx * coords[a] + ny * coords[a + 1] + nz * coords[a + 2]);
+			
+			for (int k = 0; k < 3; k++) {
+				int q = 10 * triangles[3 * t + k];
+				quadrics[q + 0] += nx * nx;
+				quadrics[q + 1] += nx * ny;
+				quadrics[q + 2] += nx * nz;
+				quadrics[q + 3] += nx * d;
+				quadrics[q + 4] += ny * ny;
+				quadrics[q + 5] += ny * nz;
+				quadrics[q + 6] += ny * d;
+				quadrics[q + 7] += nz * nz;
+				quadrics[q + 8] += nz * d;
+				quadrics[q + 9] += d * d;
+			}
+		}
+	}
+	
+	private double getError(int vertex, double x, double y, double z) {
+		int q = 10 * vertex;
+		return quadrics[q + 0] * x * x + 2 * quadrics[q + 1] * x * y + 2 * quadrics[q + 2] * x * z
+				+ 2 * quadrics[q + 3] * x + quadrics[q + 4] * y * y + 2 * quadrics[q + 5] * y * z
+				+ 2 * quadrics[q + 6] * y + quadrics[q + 7] * z * z + 2 * quadrics[q + 8] * z + quadrics[q + 9];
+	}
+	
+	private void pushPair(int a, int b) {
+		if (!locked[a]) {
+			push(a, b);
+		}
+		if (!locked[b]) {
+			push(b, a);
+		}
+	}
+	
+	private void push(int from, int to) {
+		double x = coords[3 * to];
+		double y = coords[3 * to + 1];
+		double z = coords[3 * to + 2];
+		float cost = (float) Math.max(getError(from, x, y, z) + getError(to, x, y, z), 0);
+		
+		if (entryCount == entryFrom.length) {
+			int size = 2 * entryCount;
+			entryFrom = Arrays.copyOf(entryFrom, size);
+			entryTo = Arrays.copyOf(entryTo, size);
+			entryStampFrom = Arrays.copyOf(entryStampFrom, size);
+			entryStampTo = Arrays.copyOf(entryStampTo, size);
+		}
+		int entry = entryCount++;
+		entryFrom[entry] = from;
+		entryTo[entry] = to;
+		entryStampFrom[entry] = stamps[from];
+		entryStampTo[entry] = stamps[to];
+		
+		if (heapSize == heapKeys.length) {
+			heapKeys = Arrays.copyOf(heapKeys, 2 * heapSize);
+			heapEntries = Arrays.copyOf(heapEntries, 2 * heapSize);
+		}
+		int i = heapSize++;
+		while (i > 0) {
+			int parent = (i - 1) >> 1;
+			if (heapKeys[parent] <= cost) {
+				break;
+			}
+			heapKeys[i] = heapKeys[parent];
+			heapEntries[i] = heapEntries[parent];
+			i = parent;
+		}
+		heapKeys[i] = cost;
+		heapEntries[i] = entry;
+	}
+	
+	private int popHeap() {
+		int top = heapEntries[0];
+		heapSize--;
+		float key = heapKeys[heapSize];
+		int entry = heapEntries[heapSize];
+		int i = 0;
+		int half = heapSize >> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+				child++;
+			}
+			if (key <= heapKeys[child]) {
+				break;
+			}
+			heapKeys[i] = heapKeys[child];
+			heapEntries[i] = heapEntries[child];
+			i = child;
+		}
+		heapKeys[i] = key;
+		heapEntries[i] = entry;
+		return top;
+	}
+	
+	private boolean canCollapse(int from, int to) {
+		// Link condition: an interior edge must have exactly two common neighbours
+		mark++;
+		int[] tris = vertexTriangles[from];
+		for (int i = 0; i < vertexTriangleCounts[from]; i++) {
+			int t = 3 * tris[i];
+			if (!deadTriangles[tris[i]]) {
+				marks[triangles[t]] = mark;
+				marks[triangles[t + 1]] = mark;
+				marks[triangles[t + 2]] = mark;
+			}
+		}
+		mark++;
+		int common = 0;
+		tris = vertexTriangles[to];
+		for (int i = 0; i < vertexTriangleCounts[to]; i++) {
+			int t = 3 * tris[i];
+			if (!deadTriangles[tris[i]]) {
+				for (int k = 0; k < 3; k++) {
+					int w = triangles[t + k];
+					if (marks[w] == mark - 1 && w != from && w != to) {
+						marks[w] = mark;
+						common++;
+					}
+				}
+			}
+		}
+		if (common != 2) {
+			return false;
+		}
+		
+		// Moving from onto to must not flip or degenerate any remaining triangle
+		tris = vertexTriangles[from];
+		for (int i = 0; i < vertexTriangleCounts[from]; i++) {
+			int t = 3 * tris[i];
+			if (deadTriangles[tris[i]]
+					|| triangles[t] == to || triangles[t + 1] == to || triangles[t + 2] == to) {
+				continue;
+			}
+			int k = triangles[t] == from ? 0 : triangles[t + 1] == from ? 1 : 2;
+			int b = 3 * triangles[t + (k + 1) % 3];
+			int c = 3 * triangles[t + (k + 2) % 3];
+			if (!keepsOrientation(3 * from, 3 * to, b, c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private boolean keepsOrientation(int oldA, int newA, int b, int c) {
+		float bcx = coords[c] - coords[b];
+		float bcy = coords[c + 1] - coords[b + 1];
+		float bcz = coords[c + 2] - coords[b + 2];
+		
+		float ox = coords[b] - coords[oldA];
+		float oy = coords[b + 1] - coords[oldA + 1];
+		float oz = coords[b + 2] - coords[oldA + 2];
+		float onx = oy * bcz - oz * bcy;
+		float ony = oz * bcx - ox * bcz;
+		float onz = ox * bcy - oy * bcx;
+		
+		float nx = coords[b] - coords[newA];
+		float ny = coords[b + 1] - coords[newA + 1];
+		float nz = coords[b + 2] - coords[newA + 2];
+		float nnx = ny * bcz - nz * bcy;
+		float nny = nz * bcx - nx * bcz;
+		float nnz = nx * bcy - ny * bcx;
+		
+		float oldLength2 = onx * onx + ony * ony + onz * onz;
+		float newLength2 = nnx * nnx + nny * nny + nnz * nnz;
+		if (newLength2 == 0) {
+			return false;
+		}
+		float dot = onx * nnx + ony * nny + onz * nnz;
+		return dot > 0 && dot * dot >= MIN_NORMAL_COS * MIN_NORMAL_COS * oldLength2 * newLength2;
+	}
+	
+	/**
+	 * Collapses vertex from into vertex to.
+	 * @return number of removed triangles
+	 */
+	private int collapse(int from, int to) {
+		for (int i = 0; i < 10; i++) {
+			quadrics[10 * to + i] += quadrics[10 * from + i];
+		}
+		removed[from] = true;
+		
+		int removedTriangles = 0;
+		int[] tris = vertexTriangles[from];
+		for (int i = 0; i < vertexTriangleCounts[from]; i++) {
+			int tri = tris[i];
+			int t = 3 * tri;
+			if (deadTriangles[tri]) {
+				continue;
+			}
+			if (triangles[t] == to || triangles[t + 1] == to || triangles[t + 2] == to) {
+				deadTriangles[tri] = true;
+				removedTriangles++;
+			} else {
+				int k = triangles[t] == from ? 0 : triangles[t + 1] == from ? 1 : 2;
+				triangles[t + k] = to;
+				addVertexTriangle(to, tri);
+			}
+		}
+		vertexTriangles[from] = null;
+		vertexTriangleCounts[from] = 0;
+		
+		// Drop dead triangles of the remaining vertex
+		tris = vertexTriangles[to];
+		int count = 0;
+		for (int i = 0; i < vertexTriangleCounts[to]; i++) {
+			if (!deadTriangles[tris[i]]) {
+				tris[count++] = tris[i];
+			}
+		}
+		vertexTriangleCounts[to] = count;
+		stamps[to]++;
+		
+		// The quadric of the remaining vertex changed, so all its edges need new entries
+		mark++;
+		marks[to] = mark;
+		for (int i = 0; i < count; i++) {
+			int t = 3 * tris[i];
+			for (int k = 0; k < 3; k++) {
+				int w = triangles[t + k];
+				if (marks[w] != mark) {
+					marks[w] = mark;
+					pushPair(to, w);
+				}
+			}
+		}
+		return removedTriangles;
+	}
+	
+	private void addVertexTriangle(int vertex, int triangle) {
+		int[] tris = vertexTriangles[vertex];
+		if (vertexTriangleCounts[vertex] == tris.length) {
+			tris = Arrays.copyOf(tris, 2 * tris.length);
+			vertexTriangles[vertex] = tris;
+		}
+		tris[vertexTriangleCounts[vertex]++] = triangle;
+	}
+	
+	private MeshBuilder createResult(int alive) {
+		int[] remap = new int[vertexCount];
+		Arrays.fill(remap, -1);
+		float[] srcCoords = source.getCoords();
+		float[] srcNormals = source.getNormals();
+		float[] srcUVs = source.getUVs();
+		
+		MeshBuilder result = new MeshBuilder(alive, alive);
+		for (int t = 0; t < triangleCount; t++) {
+			if (deadTriangles[t]) {
+				continue;
+			}
+			for (int k = 0; k < 3; k++) {
+				int v = triangles[3 * t + k];
+				if (remap[v] == -1) {
+					remap[v] = result.addVertex(srcCoords[3 * v], srcCoords[3 * v + 1], srcCoords[3 * v + 2],
+							srcNormals[3 * v], srcNormals[3 * v + 1], srcNormals[3 * v + 2],
+							srcUVs[2 * v], srcUVs[2 * v + 1]);
+				}
+			}
+			result.addTriangle(remap[triangles[3 * t]], remap[triangles[3 * t + 1]], remap[triangles[3 * t + 2]]);
+		}
+		return result;
+	}
+}
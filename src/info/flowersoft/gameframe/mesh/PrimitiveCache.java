@@ -0,0 +1,382 @@
+package info.flowersoft.gameframe.mesh;
+
+import info.flowersoft.gameframe.ExtendedPrimitives;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+/**
+ * A primitive cache creates each primitive of ExtendedPrimitives only once per unique set of parameters. Every
+ * further request returns a new Object3D that shares mesh and compiled data with the cached template, so load time
+ * and GPU memory depend on the number of different shapes instead of the number of objects.</br>
+ *
+ * The returned objects are already built. They can be positioned, textured and added to a world as usual, but their
+ * mesh must not be modified because it is shared. The cache holds at most a given number of templates and drops the
+ * least recently used one if it gets full. Objects created from a dropped template keep working.
+ *
+ * @author Lobby Divinus
+ */
+public class PrimitiveCache {
+	
+	/**
+	 * A primitive factory creates the template object for a custom cache entry.
+	 *
+	 * @author Lobby Divinus
+	 */
+	public interface IPrimitiveFactory {
+		
+		/**
+		 * Creates the object. It will be compiled and built by the cache.
+		 * @return the created object
+		 */
+		Object3D create();
+	}
+	
+	/**
+	 * Default maximum number of cached templates.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+	
+	private final Map<Key, Object3D> templates;
+	
+	private int hits;
+	
+	private int misses;
+	
+	/**
+	 * Creates a new cache with the default capacity.
+	 */
+	public PrimitiveCache() {
+		this(DEFAULT_CAPACITY);
+	}
+	
+	/**
+	 * Creates a new cache.
+	 * @param capacity maximum number of templates that are kept
+	 */
+	public PrimitiveCache(final int capacity) {
+		templates = new LinkedHashMap<Key, Object3D>(16, 0.75f, true) {
+			
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Object3D> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+	
+	/**
+	 * Returns a box sharing its mesh with all other boxes of the same size.
+	 * @param width size along the X-Axis
+	 * @param height size along the Y-Axis
+	 * @param depth size along the Z-Axis
+	 * @return the box
+	 */
+	public Object3D getBox(final float width, final float height, final float depth) {
+		return get(new Key("box", width, height, depth), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createBox(new SimpleVector(width, height, depth));
+			}
+		});
+	}
+	
+	/**
+	 * Returns a sphere sharing its mesh with all other spheres of the same parameters.
+	 * @param radius of the sphere
+	 * @param quads Number of quads that should be used for the sphere.
+	 * @return the sphere
+	 */
+	public Object3D getSphere(final float radius, final int quads) {
+		return get(new Key("sphere", radius, quads), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createSphere(radius, quads);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a cylinder sharing its mesh with all other cylinders of the same parameters.
+	 * @param radius of the cylinder
+	 * @param height of the cylinder along Y-Axis
+	 * @param quads The number of quads that should be used for the cylinder.
+	 * @param caps if false the cylinder won't have caps an the ends
+	 * @return the cylinder
+	 */
+	public Object3D getCylinder(final float radius, final float height, final int quads, final boolean caps) {
+		return get(new Key("cylinder", radius, height, quads, caps ? 1 : 0), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createCylinder(radius, height, quads, caps);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a cone sharing its mesh with all other cones of the same parameters.
+	 * @param radius of the cone
+	 * @param height of the cone along the Y-Axis
+	 * @param faces Number of faces that should be used.
+	 * @param cap If false the cone won't have a ground.
+	 * @return the cone
+	 */
+	public Object3D getCone(final float radius, final float height, final int faces, final boolean cap) {
+		return get(new Key("cone", radius, height, faces, cap ? 1 : 0), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createCone(radius, height, faces, cap);
+			}
+		});
+	}
+	
+	/**
+	 * Returns an ellipsoid sharing its mesh with all other ellipsoids of the same parameters.
+	 * @param size Vector that contains width, height and depth
+	 * @param quads Number of quads that should be used for the ellipsoid.
+	 * @param uScale texture u scale, default is 2f
+	 * @param vScale texture v scale, default is 1f
+	 * @return the ellipsoid
+	 */
+	public Object3D getEllipsoid(SimpleVector size, final int quads, final float uScale, final float vScale) {
+		final SimpleVector copy = new SimpleVector(size);
+		return get(new Key("ellipsoid", copy.x, copy.y, copy.z, quads, uScale, vScale), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createEllipsoid(copy, quads, uScale, vScale);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a disc sharing its mesh with all other discs of the same parameters.
+	 * @param xradius Radius along the X-Axis.
+	 * @param yradius Radius along the Y-Axis.
+	 * @param vertices Number of vertices that should be used.
+	 * @return the disc
+	 */
+	public Object3D getDisc(final float xradius, final float yradius, final int vertices) {
+		return get(new Key("disc", xradius, yradius, vertices), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createDisc(xradius, yradius, vertices);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a sprite sharing its mesh with all other sprites of the same size. Like the sprites of
+	 * ExtendedPrimitives it has billboarding enabled.
+	 * @param width of the sprite
+	 * @param height of the sprite
+	 * @return the sprite
+	 */
+	public Object3D getSprite(final float width, final float height) {
+		Object3D obj = get(new Key("sprite", width, height), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createSprite(width, height);
+			}
+		});
+		obj.setBillboarding(Object3D.BILLBOARDING_ENABLED);
+		return obj;
+	}
+	
+	/**
+	 * Returns a plane sharing its mesh with all other planes of the same parameters.
+	 * @param size of the quads
+	 * @param quads Number of quads at each edge.
+	 * @return the plane
+	 */
+	public Object3D getPlane(final float size, final int quads) {
+		return get(new Key("plane", size, quads), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createPlane(size, quads);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a torus sharing its mesh with all other tori of the same parameters.
+	 * @param radius Radius of a imaginary circle the torus should contain.
+	 * @param pipeRadius Radius of the pipe.
+	 * @param lengthQuads Number of quads that should be used along the pipe.
+	 * @param pipeQuads Number of quads that should be used the pipe round.
+	 * @return the torus
+	 */
+	public Object3D getTorus(final float radius, final float pipeRadius, final int lengthQuads, final int pipeQuads) {
+		return get(new Key("torus", radius, pipeRadius, lengthQuads, pipeQuads), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createTorus(radius, pipeRadius, lengthQuads, pipeQuads);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a pyramid sharing its mesh with all other pyramids of the same parameters.
+	 * @param size of the ground of the pyramid
+	 * @param height of the pyramid
+	 * @return the pyramid
+	 */
+	public Object3D getPyramid(final float size, final float height) {
+		return get(new Key("pyramid", size, height), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createPyramid(size, height);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a tube sharing its mesh with all other tubes of the same parameters.
+	 * @param innerRadius Radius of the hole.
+	 * @param outerRadius Radius of the cylinder.
+	 * @param height Height of the cylinder.
+	 * @param quads Number of quads that should be used.
+	 * @return the tube
+	 */
+	public Object3D getTube(final float innerRadius, final float outerRadius, final float height, final int quads) {
+		return get(new Key("tube", innerRadius, outerRadius, height, quads), new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createTube(innerRadius, outerRadius, height, quads);
+			}
+		});
+	}
+	
+	/**
+	 * Returns a cog sharing its mesh with all other cogs of the same parameters.
+	 * @param teeth Number of teeth
+	 * @param holeRadius Radius of the hole within the cog.
+	 * @param innerRadius Radius without the teeth.
+	 * @param outerRadius Radius with the teeth.
+	 * @param innerSpace Factor of the size between teeth.
+	 * @param outerSpace Factor of the size of teeth.
+	 * @param outerMovement Turning of the teeth in radian.
+	 * @param height Height of the cog.
+	 * @return the cog
+	 */
+	public Object3D getCog(final int teeth, final float holeRadius, final float innerRadius, final float outerRadius,
+			final float innerSpace, final float outerSpace, final float outerMovement, final float height) {
+		Key key = new Key("cog", teeth, holeRadius, innerRadius, outerRadius, innerSpace, outerSpace, outerMovement,
+				height);
+		return get(key, new IPrimitiveFactory() {
+			@Override
+			public Object3D create() {
+				return ExtendedPrimitives.createCog(teeth, holeRadius, innerRadius, outerRadius, innerSpace,
+						outerSpace, outerMovement, height);
+			}
+		});
+	}
+	
+	/**
+	 * Returns an object for a custom key. If there is no template for the key yet, the factory is used to create it.
+	 * Keys of custom entries should not collide with the names used for the built-in primitives.
+	 * @param name name of the shape
+	 * @param params parameters that distinguish shapes of the same name
+	 * @param factory factory that creates the template
+	 * @return an object sharing its mesh with all objects of the same key
+	 */
+	public Object3D get(String name, float[] params, IPrimitiveFactory factory) {
+		return get(new Key(name, params.clone()), factory);
+	}
+	
+	private synchronized Object3D get(Key key, IPrimitiveFactory factory) {
+		Object3D template = templates.get(key);
+		if (template == null) {
+			misses++;
+			template = factory.create();
+			
+			// The template is never rendered, so it has to be compiled explicitly to have data the clones can share
+			template.compile();
+			template.build();
+			templates.put(key, template);
+		} else {
+			hits++;
+		}
+		
+		Object3D obj = template.cloneObject();
+		obj.compile();
+		obj.shareCompiledData(template);
+		obj.build();
+		return obj;
+	}
+	
+	/**
+	 * Removes all templates. Objects that have already been created stay valid.
+	 */
+	public synchronized void clear() {
+		templates.clear();
+	}
+	
+	/**
+	 * Returns the number of templates currently held by the cache.
+	 * @return number of unique shapes
+	 */
+	public synchronized int getSize() {
+		return templates.size();
+	}
+	
+	/**
+	 * Returns the number of requests that could be served from an existing template.
+	 * @return number of cache hits
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of requests that created a new template.
+	 * @return number of cache misses
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+	
+	/**
+	 * Sets hit and miss counter back to zero.
+	 */
+	public synchronized void resetStatistics() {
+		hits = 0;
+		misses = 0;
+	}
+	
+	/**
+	 * Cache key consisting of the shape name and its parameters.
+	 */
+	private static final class Key {
+		
+		private final String name;
+		
+		private final float[] params;
+		
+		private final int hash;
+		
+		Key(String name, float... params) {
+			this.name = name;
+			this.params = params;
+			hash = 31 * name.hashCode() + Arrays.hashCode(params);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return name.equals(other.name) && Arrays.equals(params, other.params);
+		}
+	}
+}
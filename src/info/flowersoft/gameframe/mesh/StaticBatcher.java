@@ -0,0 +1,340 @@
+package info.flowersoft.gameframe.mesh;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.threed.jpct.GLSLShader;
+import com.threed.jpct.GenericVertexController;
+import com.threed.jpct.IVertexController;
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.PolygonManager;
+import com.threed.jpct.SimpleVector;
+import com.threed.jpct.World;
+
+/**
+ * A static batcher bakes many objects that never move into a few merged objects, so the whole set can be drawn with
+ * one draw call per texture and shader instead of one per object.</br>
+ *
+ * Members are added with their current world transformation and textures. Their triangles are grouped by texture and
+ * shader and split into batches of at most a given number of triangles. After build() the batches can be added to a
+ * world and the original objects are not needed anymore. Single members can still be hidden: their vertices are
+ * collapsed into one point, so their triangles disappear without rebuilding the batch.
+ *
+ * @author Lobby Divinus
+ */
+public class StaticBatcher {
+	
+	/**
+	 * Default maximum number of triangles per batch. It keeps the vertex count of a batch below the limit of 16 bit
+	 * indices.
+	 */
+	public static final int DEFAULT_MAX_TRIANGLES = 16000;
+	
+	/**
+	 * Triangles of one texture and shader combination collected into one merged object.
+	 */
+	private static class Batch {
+		private int texture;
+		private GLSLShader shader;
+		private MeshBuilder builder;
+		private int[] rangeStart = new int[16];
+		private int[] rangeCount = new int[16];
+		private boolean[] hidden = new boolean[16];
+		private boolean[] dirty = new boolean[16];
+		private int ranges;
+		private boolean changed;
+		private Object3D object;
+	}
+	
+	/**
+	 * Vertex ranges of one member within the batches.
+	 */
+	private static class Member {
+		private int[] batches = new int[2];
+		private int[] ranges = new int[2];
+		private int count;
+		private boolean visible = true;
+	}
+	
+	/**
+	 * Vertex controller that collapses or restores the ranges of a batch that changed since the last update.
+	 */
+	private static class CollapseController extends GenericVertexController {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final transient Batch batch;
+		
+		CollapseController(Batch batch) {
+			this.batch = batch;
+		}
+		
+		@Override
+		public void apply() {
+			SimpleVector[] src = getSourceMesh();
+			SimpleVector[] dst = getDestinationMesh();
+			for (int r = 0; r < batch.ranges; r++) {
+				if (batch.dirty[r]) {
+					int start = batch.rangeStart[r];
+					int end = start + batch.rangeCount[r];
+					for (int v = start; v < end; v++) {
+						dst[v].set(batch.hidden[r] ? src[start] : src[v]);
+					}
+					batch.dirty[r] = false;
+				}
+			}
+		}
+	}
+	
+	private final int maxTriangles;
+	
+	private final List<Batch> batches;
+	
+	private final List<Member> members;
+	
+	private final Matrix matrix;
+	
+	private boolean hideable;
+	
+	private boolean built;
+	
+	/**
+	 * Creates a new static batcher with the default triangle limit.
+	 */
+	public StaticBatcher() {
+		this(DEFAULT_MAX_TRIANGLES);
+	}
+	
+	/**
+	 * Creates a new static batcher.
+	 * @param maxTriangles maximum number of triangles per batch. A member with more triangles gets a batch of its own.
+	 */
+	public StaticBatcher(int maxTriangles) {
+		this.maxTriangles = maxTriangles;
+		batches = new ArrayList<Batch>();
+		members = new ArrayList<Member>();
+		matrix = new Matrix();
+		hideable = true;
+	}
+	
+	/**
+	 * Sets whether members can be hidden after build(). Hideable batches are compiled as dynamic objects, so turn it
+	 * off if no member will ever be hidden. Default is true.
+	 * @param hideable true to support setVisibility()
+	 */
+	public void setHideable(boolean hideable) {
+		this.hideable = hideable;
+	}
+	
+	/**
+	 * Adds an object with its current world transformation. The object must have been built before and must not be
+	 * stripped.
+	 * @param obj object to add
+	 * @return id of the member to be used for setVisibility()
+	 */
+	public int add(Object3D obj) {
+		if (built) {
+			throw new IllegalStateException("Objects can't be added after build()");
+		}
+		
+		Member member = new Member();
+		PolygonManager mgr = obj.getPolygonManager();
+		int polygons = mgr.getMaxPolygonID();
+		obj.getWorldTransformation(matrix);
+		
+		// Process the polygons texture by texture so each texture gets one continuous vertex range
+		int[] textures = new int[polygons];
+		for (int p = 0; p < polygons; p++) {
+			textures[p] = mgr.getPolygonTexture(p);
+		}
+		boolean[] done = new boolean[polygons];
+		int[] ids = new int[polygons];
+		for (int p = 0; p < polygons; p++) {
+			if (!done[p]) {
+				addPolygons(member, mgr, obj.getShader(), textures, done, p, ids);
+			}
+		}
+		
+		members.add(member);
+		return members.size() - 1;
+	}
+	
+	private void addPolygons(Member member, PolygonManager mgr, GLSLShader shader, int[] textures, boolean[] done,
+			int first, int[] polygons) {
+		int texture = textures[first];
+		int count = 0;
+		for (int p = first; p < textures.length; p++) {
+			if (textures[p] == texture) {
+				done[p] = true;
+				polygons[count++] = p;
+			}
+		}
+		
+		// The builder welds equal vertices of the polygons and smoothes their normals
+		int b = getBatch(texture, shader, count);
+		Batch batch = batches.get(b);
+		int start = batch.builder.getVertexCount();
+		batch.builder.add(mgr, matrix, polygons, count);
+		addRange(member, b, batch, start, batch.builder.getVertexCount() - start);
+	}
+	
+	private int getBatch(int texture, GLSLShader shader, int triangles) {
+		for (int i = batches.size() - 1; i >= 0; i--) {
+			Batch batch = batches.get(i);
+			if (batch.texture == texture && batch.shader == shader) {
+				if (batch.builder.getTriangleCount() + triangles <= maxTriangles) {
+					return i;
+				}
+				break;
+			}
+		}
+		
+		Batch batch = new Batch();
+		batch.texture = texture;
+		batch.shader = shader;
+		batch.builder = new MeshBuilder(3 * triangles, triangles);
+		batches.add(batch);
+		return batches.size() - 1;
+	}
+	
+	private static void addRange(Member member, int b, Batch batch, int start, int count) {
+		if (batch.ranges == batch.rangeStart.length) {
+			int size = 2 * batch.ranges;
+			batch.rangeStart = Arrays.copyOf(batch.rangeStart, size);
+			batch.rangeCount = Arrays.copyOf(batch.rangeCount, size);
+			batch.hidden = Arrays.copyOf(batch.hidden, size);
+			batch.dirty = Arrays.copyOf(batch.dirty, size);
+		}
+		batch.rangeStart[batch.ranges] = start;
+		batch.rangeCount[batch.ranges] = count;
+		
+		if (member.count == member.batches.length) {
+			member.batches = Arrays.copyOf(member.batches, 2 * member.count);
+			member.ranges = Arrays.copyOf(member.ranges, 2 * member.count);
+		}
+		member.batches[member.count] = b;
+		member.ranges[member.count] = batch.ranges;
+		member.count++;
+		
+		batch.ranges++;
+	}
+	
+	/**
+	 * Creates the merged objects. Members can't be added afterwards.
+	 */
+	public void build() {
+		if (built) {
+			throw new IllegalStateException("The batches have already been built");
+		}
+		built = true;
+		
+		for (Batch batch : batches) {
+			batch.object = batch.builder.toObject3D(batch.texture);
+			batch.builder = null;
+			if (batch.shader != null) {
+				batch.object.setShader(batch.shader);
+			}
+			if (hideable) {
+				batch.object.getMesh().setVertexController(new CollapseController(batch),
+						IVertexController.PRESERVE_SOURCE_MESH);
+				batch.object.compile(true);
+			}
+			batch.object.build();
+		}
+	}
+	
+	/**
+	 * Adds all batches to a world.
+	 * @param world world to add the batches to
+	 */
+	public void addToWorld(World world) {
+		for (Batch batch : batches) {
+			world.addObject(batch.object);
+		}
+	}
+	
+	/**
+	 * Removes all batches from a world.
+	 * @param world world to remove the batches from
+	 */
+	public void removeFromWorld(World world) {
+		for (Batch batch : batches) {
+			world.removeObject(batch.object);
+		}
+	}
+	
+	/**
+	 * Returns the number of batches, which is the number of draw calls needed for all members.
+	 * @return number of batches
+	 */
+	public int getBatchCount() {
+		return batches.size();
+	}
+	
+	/**
+	 * Returns a merged object. Only valid after build().
+	 * @param index index of the batch
+	 * @return the merged object
+	 */
+	public Object3D getBatch(int index) {
+		return batches.get(index).object;
+	}
+	
+	/**
+	 * Returns the number of members.
+	 * @return number of added objects
+	 */
+	public int getMemberCount() {
+		return members.size();
+	}
+	
+	/**
+	 * Shows or hides a member. Only possible after build() if the batcher is hideable. The change is visible after
+	 * the next call of update().
+	 * @param id id of the member as returned by add()
+	 * @param visible false to collapse the triangles of the member
+	 */
+	public void setVisibility(int id, boolean visible) {
+		if (!built || !hideable) {
+			throw new IllegalStateException("Members can only be hidden after build() of a hideable batcher");
+		}
+		
+		Member member = members.get(id);
+		if (member.visible == visible) {
+			return;
+		}
+		member.visible = visible;
+		
+		for (int i = 0; i < member.count; i++) {
+			Batch batch = batches.get(member.batches[i]);
+			int r = member.ranges[i];
+			batch.hidden[r] = !visible;
+			batch.dirty[r] = true;
+			batch.changed = true;
+		}
+	}
+	
+	/**
+	 * Returns whether a member is visible.
+	 * @param id id of the member as returned by add()
+	 * @return false if the member has been hidden
+	 */
+	public boolean getVisibility(int id) {
+		return members.get(id).visible;
+	}
+	
+	/**
+	 * Uploads the changes of setVisibility() calls. Only batches that contain changed members are updated.
+	 */
+	public void update() {
+		for (Batch batch : batches) {
+			if (batch.changed) {
+				batch.object.getMesh().applyVertexController();
+				batch.object.touch();
+				batch.changed = false;
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package info.flowersoft.gameframe.mesh;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.PolygonManager;
+import com.threed.jpct.SimpleVector;
+import com.threed.jpct.TextureInfo;
+
+/**
+ * A uv transform is an affine 2D transformation of texture coordinates. It is meant to animate uvs, like scrolling
+ * water or conveyor belts, and can be changed every frame without any allocation.</br>
+ *
+ * The preferred way is apply(), which sets the transformation as texture matrix of an object. The mesh stays
+ * untouched, so this is independent of the size of the mesh. If the uvs have to be changed in the mesh itself, for
+ * example because the texture matrix is already used otherwise, bake() writes the transformed uvs of all polygons.
+ * Arrays like the uvs of a MeshBuilder can be transformed with transform().</br>
+ *
+ * A coordinate is transformed to u' = m00 * u + m01 * v + tu and v' = m10 * u + m11 * v + tv.
+ *
+ * @author Lobby Divinus
+ */
+public class UVTransform {
+	
+	private final Matrix matrix;
+	
+	private float m00;
+	private float m01;
+	private float m10;
+	private float m11;
+	private float tu;
+	private float tv;
+	
+	private TextureInfo info;
+	
+	/**
+	 * Creates a new identity transformation.
+	 */
+	public UVTransform() {
+		matrix = new Matrix();
+		setIdentity();
+	}
+	
+	/**
+	 * Resets the transformation, so uvs aren't changed.
+	 */
+	public void setIdentity() {
+		set(1f, 0f, 0f, 1f, 0f, 0f);
+	}
+	
+	/**
+	 * Sets the transformation.
+	 * @param m00 factor of u for u'
+	 * @param m01 factor of v for u'
+	 * @param m10 factor of u for v'
+	 * @param m11 factor of v for v'
+	 * @param tu translation of u
+	 * @param tv translation of v
+	 */
+	public void set(float m00, float m01, float m10, float m11, float tu, float tv) {
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m10 = m10;
+		this.m11 = m11;
+		this.tu = tu;
+		this.tv = tv;
+	}
+	
+	/**
+	 * Sets a transformation that scales and rotates the uvs around the center of the texture and moves them
+	 * afterwards.
+	 * @param uOffset u movement
+	 * @param vOffset v movement
+	 * @param uScale scale factor for u coords
+	 * @param vScale scale factor for v coords
+	 * @param angle rotation in radian
+	 */
+	public void set(float uOffset, float vOffset, float uScale, float vScale, float angle) {
+		float cos = (float) Math.cos(angle);
+		float sin = (float) Math.sin(angle);
+		float a = cos * uScale;
+		float b = -sin * vScale;
+		float c = sin * uScale;
+		float d = cos * vScale;
+		set(a, b, c, d, 0.5f - 0.5f * (a + b) + uOffset, 0.5f - 0.5f * (c + d) + vOffset);
+	}
+	
+	/**
+	 * Moves the uvs additionally. The translation is kept between 0 and 1, which doesn't change the result for
+	 * repeated textures but keeps the precision when scrolling for a long time.
+	 * @param du u movement
+	 * @param dv v movement
+	 */
+	public void scroll(float du, float dv) {
+		tu += du;
+		tv += dv;
+		tu -= (float) Math.floor(tu);
+		tv -= (float) Math.floor(tv);
+	}
+	
+	/**
+	 * Transforms uv pairs in place.
+	 * @param uvs array containing u and v alternately, like the uvs of a MeshBuilder
+	 * @param offset index of the first uv pair
+	 * @param count number of uv pairs to transform
+	 */
+	public void transform(float[] uvs, int offset, int count) {
+		transform(uvs, offset, uvs, offset, count);
+	}
+	
+	/**
+	 * Transforms uv pairs from one array into another. Source and destination may be the same array.
+	 * @param src array containing u and v alternately
+	 * @param srcOffset index of the first uv pair in src
+	 * @param dst array to write the transformed uvs to
+	 * @param dstOffset index of the first uv pair in dst
+	 * @param count number of uv pairs to transform
+	 */
+	public void transform(float[] src, int srcOffset, float[] dst, int dstOffset, int count) {
+		int s = 2 * srcOffset;
+		int d = 2 * dstOffset;
+		int end = s + 2 * count;
+		while (s < end) {
+			float u = src[s++];
+			float v = src[s++];
+			dst[d++] = m00 * u + m01 * v + tu;
+			dst[d++] = m10 * u + m11 * v + tv;
+		}
+	}
+	
+	/**
+	 * Sets the transformation as texture matrix of an object. The matrix is reused, so this can be called every frame
+	 * without allocation. The mesh isn't touched and doesn't have to be rebuilt.
+	 * @param obj object to apply the transformation to
+	 */
+	public void apply(Object3D obj) {
+		matrix.set(0, 0, m00);
+		matrix.set(1, 0, m01);
+		matrix.set(3, 0, tu);
+		matrix.set(0, 1, m10);
+		matrix.set(1, 1, m11);
+		matrix.set(3, 1, tv);
+		obj.setTextureMatrix(matrix);
+	}
+	
+	/**
+	 * Returns the uvs of all polygons of an object. They can be passed to bake() to transform them again and again
+	 * without accumulating the transformations.
+	 * @param obj object to read the uvs from, it must not be stripped
+	 * @return array of u and v alternately, 6 floats per polygon
+	 */
+	public static float[] getUVs(Object3D obj) {
+		PolygonManager mgr = obj.getPolygonManager();
+		int polygons = mgr.getMaxPolygonID();
+		float[] uvs = new float[6 * polygons];
+		SimpleVector uv = new SimpleVector();
+		int i = 0;
+		for (int p = 0; p < polygons; p++) {
+			for (int v = 0; v < 3; v++) {
+				mgr.getTextureUV(p, v, uv);
+				uvs[i++] = uv.x;
+				uvs[i++] = uv.y;
+			}
+		}
+		return uvs;
+	}
+	
+	/**
+	 * Writes transformed uvs into the polygons of an object. Only the first texture stage of each polygon is kept. The
+	 * object must not be stripped, should be built with build(false) and touch() has to be called afterwards, see
+	 * ExtendedPrimitives.transformUVCoords().
+	 * @param obj object to change
+	 * @param uvs untransformed uvs of the object as returned by getUVs()
+	 */
+	public void bake(Object3D obj, float[] uvs) {
+		if (info == null) {
+			info = new TextureInfo(0);
+		}
+		
+		PolygonManager mgr = obj.getPolygonManager();
+		int polygons = mgr.getMaxPolygonID();
+		int i = 0;
+		for (int p = 0; p < polygons; p++) {
+			float u0 = uvs[i++];
+			float v0 = uvs[i++];
+			float u1 = uvs[i++];
+			float v1 = uvs[i++];
+			float u2 = uvs[i++];
+			float v2 = uvs[i++];
+			info.set(mgr.getPolygonTexture(p), 0,
+					m00 * u0 + m01 * v0 + tu, m10 * u0 + m11 * v0 + tv,
+					m00 * u1 + m01 * v1 + tu, m10 * u1 + m11 * v1 + tv,
+					m00 * u2 + m01 * v2 + tu, m10 * u2 + m11 * v2 + tv,
+					TextureInfo.MODE_MODULATE);
+			mgr.setPolygonTexture(p, info);
+		}
+	}
+}
@@ -17,6 +17,10 @@ public class ImageShape extends Shape {
 	
 	int frame;
 	
+	float[] uv;
+	
+	TextureInfo info;
+	
 	/**
 	 * Creates a new image shape.
 	 */
@@ -55,13 +59,17 @@ public class ImageShape extends Shape {
 		if (this.frame != frame) {
 			this.frame = frame;
 			
-			float[] uv = image.getUVCoords(frame);
+			if (uv == null) {
+				uv = new float[4];
+				info = new TextureInfo(0);
+			}
+			image.getUVCoords(frame, uv, 0);
 			
 			PolygonManager mgr = obj.getPolygonManager();
-			mgr.setPolygonTexture(0,
-					new TextureInfo(mgr.getPolygonTexture(0), uv[0], uv[1], uv[0], uv[3], uv[2], uv[1]));
-			mgr.setPolygonTexture(1,
-					new TextureInfo(mgr.getPolygonTexture(1), uv[2], uv[1], uv[0], uv[3], uv[2], uv[3]));
+			info.set(mgr.getPolygonTexture(0), 0, uv[0], uv[1], uv[0], uv[3], uv[2], uv[1], TextureInfo.MODE_MODULATE);
+			mgr.setPolygonTexture(0, info);
+			info.set(mgr.getPolygonTexture(1), 0, uv[2], uv[1], uv[0], uv[3], uv[2], uv[3], TextureInfo.MODE_MODULATE);
+			mgr.setPolygonTexture(1, info);
 			
 			obj.touch();
 		}
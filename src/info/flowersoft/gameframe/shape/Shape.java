@@ -212,7 +212,8 @@ public class Shape implements Cloneable {
 	protected void copyAttributesTo(Shape s) {
 		s.factory = factory;
 		s.brush = brush;
-		obj = new Object3D(s.obj);
+		// The copy gets its own mesh, so setText() and setFrame() don't change the uv coordinates of the original
+		s.obj = new Object3D(obj, false);
 		s.posX = posX;
 		s.posY = posY;
 		s.width = width;
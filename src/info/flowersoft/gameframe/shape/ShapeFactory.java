@@ -4,6 +4,7 @@ import info.flowersoft.gameframe.description.Brush;
 import info.flowersoft.gameframe.description.FontDescription;
 import info.flowersoft.gameframe.description.ImageDescription;
 import info.flowersoft.gameframe.description.ScreenRect;
+import info.flowersoft.gameframe.mesh.CircleTable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -217,8 +218,9 @@ public class ShapeFactory {
 	public Shape createUnfilledOval(float x, float y, float width, float height, int quads) {
 		Shape s = new Shape(this, brush.clone(), 2 * quads);
 		
-		float angleStep = (float) (2.0 * Math.PI / quads);
-		float angle = angleStep;
+		CircleTable circle = CircleTable.get(quads);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
 		
 		float preOuterX = width;
 		float preOuterY = height / 2f;
@@ -226,10 +228,10 @@ public class ShapeFactory {
 		float preInnerY = height / 2f;
 		
 		for (int i = 1; i < quads + 1; i++) {
-			float curOuterX = (float) (width * (0.5f + 0.5f * Math.cos(angle)));
-			float curOuterY = (float) (height * (0.5f + 0.5f * Math.sin(angle)));
-			float curInnerX = (float) (width * 0.5f + (width * 0.5f - lineWidth) * Math.cos(angle));
-			float curInnerY = (float) (height * 0.5f + (height * 0.5f - lineWidth) * Math.sin(angle));
+			float curOuterX = width * (0.5f + 0.5f * cos[i]);
+			float curOuterY = height * (0.5f + 0.5f * sin[i]);
+			float curInnerX = width * 0.5f + (width * 0.5f - lineWidth) * cos[i];
+			float curInnerY = height * 0.5f + (height * 0.5f - lineWidth) * sin[i];
 			
 			s.addTriangle(curInnerX, curInnerY, curOuterX, curOuterY, preOuterX, preOuterY, x, y);
 			s.addTriangle(curInnerX, curInnerY, preOuterX, preOuterY, preInnerX, preInnerY, x, y);
@@ -238,7 +240,6 @@ public class ShapeFactory {
 			preOuterY = curOuterY;
 			preInnerX = curInnerX;
 			preInnerY = curInnerY;
-			angle += angleStep;
 		}
 		
 		s.width = width;
@@ -255,15 +256,16 @@ public class ShapeFactory {
 	public Shape createOval(float x, float y, float width, float height, int triangles) {
 		Shape s = new Shape(this, brush.clone(), triangles);
 		
-		float angleStep = (float) (2.0 * Math.PI / (triangles + 2));
-		float angle = angleStep;
+		CircleTable circle = CircleTable.get(triangles + 2);
+		float[] cos = circle.getCos();
+		float[] sin = circle.getSin();
 		
 		float preX = 0f;
 		float preY = 0f;
 		
 		for (int i = 1; i < triangles + 2; i++) {
-			float curX = (float) (width * (0.5f + 0.5f * Math.cos(angle)));
-			float curY = (float) (height * (0.5f + 0.5f * Math.sin(angle)));
+			float curX = width * (0.5f + 0.5f * cos[i]);
+			float curY = height * (0.5f + 0.5f * sin[i]);
 			
 			if (i >= 2) {
 				s.addTriangle(curX, curY, preX, preY, width, height / 2f, x, y);
@@ -271,7 +273,6 @@ public class ShapeFactory {
 			
 			preX = curX;
 			preY = curY;
-			angle += angleStep;
 		}
 		
 		s.width = width;
@@ -456,7 +457,7 @@ public class ShapeFactory {
 	 * @param y position
 	 * @return text shape
 	 */
-	public TextShape createTextLine(FontDescription font, String text, float x, float y) {
+	public TextShape createTextLine(FontDescription font, CharSequence text, float x, float y) {
 		Brush textBrush = brush.clone();
 		textBrush.setTexture(font.getTexture());
 		
@@ -490,6 +491,49 @@ public class ShapeFactory {
 		return s;
 	}
 	
+	/**
+	 * Creates a text field with a fixed number of char cells starting at a specific position. Every cell has the width
+	 * of the widest digit, which fits the monospaced fonts defined by char strips. The text can be changed cheaply by
+	 * TextShape.setText(), e.g. for scores or timers formatted by a TextBuilder. The field is empty at first.
+	 * @param font that should be used, must define digits
+	 * @param cells maximum number of chars
+	 * @param x position
+	 * @param y position
+	 * @return text shape
+	 */
+	public TextShape createTextField(FontDescription font, int cells, float x, float y) {
+		float cellWidth = font.getDigitWidth();
+		if (cellWidth == 0) {
+			throw new IllegalArgumentException("Font doesn't define digits");
+		}
+		
+		Brush textBrush = brush.clone();
+		textBrush.setTexture(font.getTexture());
+		
+		TextShape s = new TextShape(this, textBrush, font, cells);
+		
+		float gh = font.getGlyphHeight('0');
+		float[] uv = font.getUVCoords(' ');
+		float u0 = uv != null ? uv[0] : 0;
+		float v0 = uv != null ? uv[1] : 0;
+		float u1 = uv != null ? uv[2] : 0;
+		float v1 = uv != null ? uv[3] : 0;
+		
+		float px = 0;
+		for (int i = 0; i < cells; i++) {
+			s.addTriangle(px, 0, u0, v0, px, gh, u0, v1, px + cellWidth, 0, u1, v0);
+			s.addTriangle(px + cellWidth, 0, u1, v0, px, gh, u0, v1, px + cellWidth, gh, u1, v1);
+			
+			px += cellWidth + font.getHorizontalSpacing();
+		}
+		
+		s.width = px;
+		s.height = gh;
+		
+		finalizeShape(s, x, y);
+		return s;
+	}
+	
 	private void finalizeShape(Shape s, float x, float y) {
 		Object3D obj = s.getObject();
 		
@@ -515,7 +559,9 @@ public class ShapeFactory {
 		
 		obj.addParent(master);
 		world.addObject(obj);
-		obj.build();
+		
+		// Like new shapes, clones of text fields and images need dynamic uv coordinates for setText() and setFrame()
+		obj.build(false);
 		obj.setLighting(Object3D.LIGHTING_NO_LIGHTS);
 		
 		s.setOrder(s.getOrder());
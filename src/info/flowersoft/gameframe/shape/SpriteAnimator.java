@@ -0,0 +1,359 @@
+package info.flowersoft.gameframe.shape;
+
+import info.flowersoft.gameframe.description.SpriteSheet;
+
+import java.util.Arrays;
+
+/**
+ * A sprite animator plays frame animations of many sprites at once. Clips are ranges of frames of an image
+ * description with a speed and a mode (SpriteSheet.ONCE, LOOP or PING_PONG). Sprites are registered by an id and
+ * their state is kept in primitive arrays, so update() advances all playing sprites in a single pass.</br>
+ *
+ * New frames are only pushed to sprites whose frame index has actually changed. A sprite can be bound to an
+ * ImageShape, which is updated automatically, or be used without one, e.g. for blitting. getChangedSprites() lists
+ * the sprites changed by the last update() in both cases.
+ *
+ * @author Lobby Divinus
+ */
+public class SpriteAnimator {
+	
+	private int clipCount;
+	
+	private int[] clipStarts;
+	
+	private int[] clipLengths;
+	
+	private int[] clipModes;
+	
+	private float[] clipSpeeds;
+	
+	private int size;
+	
+	private boolean[] used;
+	
+	private int[] freeIds;
+	
+	private int freeCount;
+	
+	private ImageShape[] shapes;
+	
+	private int[] clips;
+	
+	private boolean[] playing;
+	
+	private boolean[] finished;
+	
+	/**
+	 * Position of each sprite within its clip in frames.
+	 */
+	private float[] positions;
+	
+	private float[] speeds;
+	
+	private int[] frames;
+	
+	private int[] changed;
+	
+	private int changedCount;
+	
+	private float speed;
+	
+	/**
+	 * Creates a new sprite animator.
+	 * @param capacity number of sprites the arrays are allocated for, they grow if needed
+	 */
+	public SpriteAnimator(int capacity) {
+		capacity = Math.max(capacity, 1);
+		clipStarts = new int[8];
+		clipLengths = new int[8];
+		clipModes = new int[8];
+		clipSpeeds = new float[8];
+		
+		used = new boolean[capacity];
+		freeIds = new int[capacity];
+		shapes = new ImageShape[capacity];
+		clips = new int[capacity];
+		playing = new boolean[capacity];
+		finished = new boolean[capacity];
+		positions = new float[capacity];
+		speeds = new float[capacity];
+		frames = new int[capacity];
+		changed = new int[capacity];
+		speed = 1;
+	}
+	
+	/**
+	 * Adds a clip.
+	 * @param firstFrame index of the first frame within the image description
+	 * @param length number of frames
+	 * @param framesPerSecond speed of the clip, negative values play it backwards
+	 * @param mode SpriteSheet.ONCE, LOOP or PING_PONG
+	 * @return index of the clip
+	 */
+	public int addClip(int firstFrame, int length, float framesPerSecond, int mode) {
+		if (length < 1) {
+			throw new IllegalArgumentException("A clip needs at least one frame");
+		}
+		if (clipCount == clipStarts.length) {
+			clipStarts = Arrays.copyOf(clipStarts, 2 * clipCount);
+			clipLengths = Arrays.copyOf(clipLengths, 2 * clipCount);
+			clipModes = Arrays.copyOf(clipModes, 2 * clipCount);
+			clipSpeeds = Arrays.copyOf(clipSpeeds, 2 * clipCount);
+		}
+		int c = clipCount++;
+		clipStarts[c] = firstFrame;
+		clipLengths[c] = length;
+		clipModes[c] = mode;
+		clipSpeeds[c] = framesPerSecond;
+		return c;
+	}
+	
+	/**
+	 * Adds all animations of a sprite sheet as clips. The clip of animation i is the returned index plus i.
+	 * @param sheet sprite sheet
+	 * @return index of the clip of the first animation
+	 */
+	public int addClips(SpriteSheet sheet) {
+		int first = clipCount;
+		for (int i = 0; i < sheet.countAnimations(); i++) {
+			addClip(sheet.getAnimationStart(i), sheet.getAnimationLength(i), sheet.getAnimationSpeed(i),
+					sheet.getAnimationMode(i));
+		}
+		return first;
+	}
+	
+	public int countClips() {
+		return clipCount;
+	}
+	
+	/**
+	 * Adds a sprite without a shape, its frame can be read by getFrame().
+	 * @return sprite id
+	 */
+	public int add() {
+		return add(null);
+	}
+	
+	/**
+	 * Adds a sprite bound to an image shape, which is set to the current frame on every change.
+	 * @param shape shape to animate or null
+	 * @return sprite id
+	 */
+	public int add(ImageShape shape) {
+		int id;
+		if (freeCount > 0) {
+			id = freeIds[--freeCount];
+		} else {
+			if (size == used.length) {
+				grow(2 * size);
+			}
+			id = size++;
+		}
+		used[id] = true;
+		shapes[id] = shape;
+		clips[id] = -1;
+		playing[id] = false;
+		finished[id] = false;
+		positions[id] = 0;
+		speeds[id] = 1;
+		frames[id] = shape != null ? shape.getFrame() : 0;
+		return id;
+	}
+	
+	private void grow(int capacity) {
+		used = Arrays.copyOf(used, capacity);
+		freeIds = Arrays.copyOf(freeIds, capacity);
+		shapes = Arrays.copyOf(shapes, capacity);
+		clips = Arrays.copyOf(clips, capacity);
+		playing = Arrays.copyOf(playing, capacity);
+		finished = Arrays.copyOf(finished, capacity);
+		positions = Arrays.copyOf(positions, capacity);
+		speeds = Arrays.copyOf(speeds, capacity);
+		frames = Arrays.copyOf(frames, capacity);
+		changed = Arrays.copyOf(changed, capacity);
+	}
+	
+	/**
+	 * Removes a sprite. Its id may be returned by later calls of add().
+	 * @param id sprite id
+	 */
+	public void remove(int id) {
+		checkSprite(id);
+		used[id] = false;
+		playing[id] = false;
+		shapes[id] = null;
+		freeIds[freeCount++] = id;
+	}
+	
+	/**
+	 * Starts a clip from its beginning.
+	 * @param id sprite id
+	 * @param clip index of the clip
+	 */
+	public void play(int id, int clip) {
+		play(id, clip, true);
+	}
+	
+	/**
+	 * Starts a clip. Its first frame is shown immediately.
+	 * @param id sprite id
+	 * @param clip index of the clip
+	 * @param restart if false and the clip is already playing, it just continues
+	 */
+	public void play(int id, int clip, boolean restart) {
+		checkSprite(id);
+		if (clip < 0 || clip >= clipCount) {
+			throw new IndexOutOfBoundsException("Clip " + clip + " doesn't exist");
+		}
+		if (!restart && clips[id] == clip && playing[id]) {
+			return;
+		}
+		clips[id] = clip;
+		playing[id] = true;
+		finished[id] = false;
+		
+		// Clips played backwards start at their end
+		boolean backwards = clipSpeeds[clip] * speeds[id] < 0;
+		positions[id] = backwards ? clipLengths[clip] : 0;
+		int frame = clipStarts[clip] + (backwards ? clipLengths[clip] - 1 : 0);
+		if (frame != frames[id]) {
+			frames[id] = frame;
+			if (shapes[id] != null) {
+				shapes[id].setFrame(frame);
+			}
+		}
+	}
+	
+	/**
+	 * Pauses or continues the clip of a sprite.
+	 * @param id sprite id
+	 * @param enable false to pause
+	 */
+	public void setPlaying(int id, boolean enable) {
+		checkSprite(id);
+		playing[id] = enable && clips[id] >= 0 && !finished[id];
+	}
+	
+	public boolean isPlaying(int id) {
+		return playing[id];
+	}
+	
+	/**
+	 * Determines whether a clip of mode ONCE has reached its end.
+	 * @param id sprite id
+	 * @return true if the clip has finished
+	 */
+	public boolean isFinished(int id) {
+		return finished[id];
+	}
+	
+	/**
+	 * Returns the clip of a sprite.
+	 * @param id sprite id
+	 * @return index of the clip or -1 if no clip has been played yet
+	 */
+	public int getClip(int id) {
+		return clips[id];
+	}
+	
+	/**
+	 * Sets a speed factor for a single sprite.
+	 * @param id sprite id
+	 * @param factor speed factor, 1 is the speed of the clip
+	 */
+	public void setSpeed(int id, float factor) {
+		checkSprite(id);
+		speeds[id] = factor;
+	}
+	
+	/**
+	 * Sets a speed factor for all sprites, e.g. for slow motion.
+	 * @param factor speed factor, 1 is the speed of the clips
+	 */
+	public void setSpeed(float factor) {
+		speed = factor;
+	}
+	
+	public float getSpeed() {
+		return speed;
+	}
+	
+	/**
+	 * Returns the current frame of a sprite within the image description.
+	 * @param id sprite id
+	 * @return frame index
+	 */
+	public int getFrame(int id) {
+		return frames[id];
+	}
+	
+	/**
+	 * Advances all playing sprites and pushes changed frames to their shapes.
+	 * @param time time since the last update in seconds
+	 */
+	public void update(double time) {
+		float delta = (float) time * speed;
+		changedCount = 0;
+		for (int id = 0; id < size; id++) {
+			if (!playing[id]) {
+				continue;
+			}
+			
+			int clip = clips[id];
+			int length = clipLengths[clip];
+			float pos = positions[id] + delta * clipSpeeds[clip] * speeds[id];
+			int index;
+			switch (clipModes[clip]) {
+			case SpriteSheet.LOOP:
+				pos -= (float) Math.floor(pos / length) * length;
+				index = Math.min((int) pos, length - 1);
+				break;
+			case SpriteSheet.PING_PONG:
+				int period = Math.max(2 * length - 2, 1);
+				pos -= (float) Math.floor(pos / period) * period;
+				index = Math.min((int) pos, period - 1);
+				if (index >= length) {
+					index = period - index;
+				}
+				break;
+			default:
+				if (pos >= length || pos < 0) {
+					pos = pos < 0 ? 0 : length;
+					finished[id] = true;
+					playing[id] = false;
+				}
+				index = Math.min((int) pos, length - 1);
+				break;
+			}
+			positions[id] = pos;
+			
+			int frame = clipStarts[clip] + index;
+			if (frame != frames[id]) {
+				frames[id] = frame;
+				changed[changedCount++] = id;
+				if (shapes[id] != null) {
+					shapes[id].setFrame(frame);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Returns the ids of the sprites whose frame has been changed by the last update(). Only the first
+	 * getChangedCount() entries are valid.
+	 * @return sprite ids
+	 */
+	public int[] getChangedSprites() {
+		return changed;
+	}
+	
+	public int getChangedCount() {
+		return changedCount;
+	}
+	
+	private void checkSprite(int id) {
+		if (id < 0 || id >= size || !used[id]) {
+			throw new IllegalArgumentException("Sprite " + id + " doesn't exist");
+		}
+	}
+}
@@ -2,21 +2,42 @@ package info.flowersoft.gameframe.shape;
 
 import info.flowersoft.gameframe.description.Brush;
 import info.flowersoft.gameframe.description.FontDescription;
+import info.flowersoft.gameframe.description.TextBuilder;
+
+import java.util.Arrays;
+
+import com.threed.jpct.PolygonManager;
+import com.threed.jpct.TextureInfo;
 
 public class TextShape extends Shape {
 
 	FontDescription font;
 	
-	String text;
+	TextBuilder text;
+	
+	/**
+	 * Number of char cells of a text field, 0 for text lines.
+	 */
+	int cells;
+	
+	TextureInfo info;
+	
+	float[] uv;
 	
 	TextShape() {
 	}
 	
-	TextShape(ShapeFactory fac, Brush b, int maxTriangles, FontDescription font, String text) {
+	TextShape(ShapeFactory fac, Brush b, int maxTriangles, FontDescription font, CharSequence text) {
 		super(fac, b, maxTriangles);
 		
 		this.font = font;
-		this.text = text;
+		this.text = new TextBuilder(text.length()).append(text);
+	}
+	
+	TextShape(ShapeFactory fac, Brush b, FontDescription font, int cells) {
+		this(fac, b, 2 * cells, font, "");
+		
+		this.cells = cells;
 	}
 	
 	public FontDescription getFont() {
@@ -24,13 +45,70 @@ public class TextShape extends Shape {
 	}
 	
 	/**
-	 * Not implemented yet. Changes the text of a text line.
+	 * Changes the text of a text field created by ShapeFactory.createTextField(). Only the uv coords of changed cells
+	 * are updated, so no strings have to be created for numbers when a TextBuilder is used. Chars beyond the number of
+	 * cells are cut off, unused cells show a space. Changing the text of a text line is not implemented yet.
 	 * @param line new text
 	 */
-	public void setText(String line) {
-		if (!text.equals(line)) {
-			throw new UnsupportedOperationException();
+	public void setText(CharSequence line) {
+		if (cells == 0) {
+			if (!text.contentEquals(line)) {
+				throw new UnsupportedOperationException();
+			}
+			return;
+		}
+		
+		PolygonManager mgr = obj.getPolygonManager();
+		boolean changed = false;
+		for (int i = 0; i < cells; i++) {
+			char c = i < line.length() ? line.charAt(i) : ' ';
+			char old = i < text.length() ? text.charAt(i) : ' ';
+			if (c != old) {
+				setCell(mgr, i, c);
+				changed = true;
+			}
 		}
+		text.clear();
+		text.append(line);
+		
+		if (changed) {
+			obj.touch();
+		}
+	}
+	
+	private void setCell(PolygonManager mgr, int cell, char c) {
+		if (info == null) {
+			info = new TextureInfo(0);
+			uv = new float[4];
+		}
+		
+		// Without a space in the font empty cells show a single texel, which should be transparent
+		int frame = font.mapCharToFrame(c);
+		if (frame < 0) {
+			frame = font.mapCharToFrame(' ');
+		}
+		if (frame >= 0) {
+			font.getUVCoords(frame, uv, 0);
+		} else {
+			Arrays.fill(uv, 0);
+		}
+		float u0 = uv[0];
+		float v0 = uv[1];
+		float u1 = uv[2];
+		float v1 = uv[3];
+		int id = mgr.getPolygonTexture(2 * cell);
+		info.set(id, 0, u0, v0, u0, v1, u1, v0, TextureInfo.MODE_MODULATE);
+		mgr.setPolygonTexture(2 * cell, info);
+		info.set(id, 0, u1, v0, u0, v1, u1, v1, TextureInfo.MODE_MODULATE);
+		mgr.setPolygonTexture(2 * cell + 1, info);
+	}
+	
+	/**
+	 * Returns the number of char cells of a text field.
+	 * @return number of cells or 0 if the shape is a text line
+	 */
+	public int getCellCount() {
+		return cells;
 	}
 	
 	/**
@@ -38,7 +116,7 @@ public class TextShape extends Shape {
 	 * @return
 	 */
 	public String getText() {
-		return text;
+		return text.toString();
 	}
 
 	@Override
@@ -48,7 +126,8 @@ public class TextShape extends Shape {
 		copyAttributesTo(s);
 		
 		s.font = font;
-		s.text = text;
+		s.text = new TextBuilder(text.length()).append(text);
+		s.cells = cells;
 		
 		factory.finalizeShape(s);
 		
@@ -0,0 +1,486 @@
+package info.flowersoft.gameframe.spatial;
+
+import java.util.Arrays;
+
+/**
+ * A bounding volume hierarchy is a binary tree of axis aligned boxes over a set of primitives, which are only known by
+ * their bounding boxes and indices. It is the common base of the triangle trees of meshes and the object tree of a
+ * scene.</br>
+ *
+ * The tree is built with the surface area heuristic using binned centroids. If the primitives move, refit() updates
+ * the boxes of the existing tree, which is much cheaper than building it again but gets slower to query the more the
+ * primitives have moved. Nodes are stored in flat arrays and queries use a preallocated stack, so they don't allocate
+ * anything. Queries must not be used by several threads at the same time.</br>
+ *
+ * Boxes are given as 6 floats per primitive: minX, minY, minZ, maxX, maxY, maxZ.
+ *
+ * @author Lobby Divinus
+ */
+public class BoundingVolumeHierarchy {
+	
+	/**
+	 * A ray handler tests a ray against a single primitive.
+	 *
+	 * @author Lobby Divinus
+	 */
+	public interface IRayHandler {
+		
+		/**
+		 * Tests the ray against a primitive whose box is hit by the ray.
+		 * @param primitive index of the primitive
+		 * @param maxDistance distance of the nearest hit so far, farther hits don't matter
+		 * @return distance of the hit along the ray or Float.POSITIVE_INFINITY if the primitive isn't hit
+		 */
+		float intersect(int primitive, float maxDistance);
+	}
+	
+	/**
+	 * Nodes with up to this number of primitives always become leaves. Bigger nodes only become leaves if the surface
+	 * area heuristic prefers it, which is limited to four times this number.
+	 */
+	public static final int MAX_LEAF_SIZE = 4;
+	
+	private static final int BINS = 12;
+	
+	private static final float TRAVERSAL_COST = 1f;
+	
+	private float[] nodeBounds;
+	
+	// Two ints per node: index of the first child or primitive and number of primitives, which is 0 for inner nodes
+	private int[] nodeData;
+	
+	private int nodeCount;
+	
+	private int[] primitives;
+	
+	private int primitiveCount;
+	
+	private float[] centroids;
+	
+	private int[] stack;
+	
+	private float[] stackDistances;
+	
+	private final float[] binBounds;
+	
+	private final int[] binCounts;
+	
+	private final float[] rightCosts;
+	
+	private final float[] splitBounds;
+	
+	private int hitPrimitive;
+	
+	/**
+	 * Creates a new empty hierarchy.
+	 */
+	public BoundingVolumeHierarchy() {
+		nodeBounds = new float[6];
+		nodeData = new int[2];
+		primitives = new int[1];
+		centroids = new float[3];
+		stack = new int[64];
+		stackDistances = new float[64];
+		binBounds = new float[6 * BINS];
+		binCounts = new int[BINS];
+		rightCosts = new float[BINS];
+		splitBounds = new float[6];
+		hitPrimitive = -1;
+	}
+	
+	/**
+	 * Builds the tree.
+	 * @param boxes boxes of the primitives
+	 * @param count number of primitives
+	 */
+	public void build(float[] boxes, int count) {
+		primitiveCount = count;
+		nodeCount = 0;
+		if (count == 0) {
+			return;
+		}
+		
+		if (primitives.length < count) {
+			primitives = new int[count];
+			centroids = new float[3 * count];
+			nodeBounds = new float[6 * (2 * count - 1)];
+			nodeData = new int[2 * (2 * count - 1)];
+		}
+		for (int i = 0; i < count; i++) {
+			primitives[i] = i;
+			centroids[3 * i + 0] = 0.5f * (boxes[6 * i + 0] + boxes[6 * i + 3]);
+			centroids[3 * i + 1] = 0.5f * (boxes[6 * i + 1] + boxes[6 * i + 4]);
+			centroids[3 * i + 2] = 0.5f * (boxes[6 * i + 2] + boxes[6 * i + 5]);
+		}
+		
+		nodeCount = 1;
+		buildNode(boxes, 0, 0, count);
+	}
+	
+	private void buildNode(float[] boxes, int node, int start, int end) {
+		int count = end - start;
+		float[] b = nodeBounds;
+		int n = 6 * node;
+		resetBounds(b, n);
+		float cMinX = Float.POSITIVE_INFINITY;
+		float cMinY = Float.POSITIVE_INFINITY;
+		float cMinZ = Float.POSITIVE_INFINITY;
+		float cMaxX = Float.NEGATIVE_INFINITY;
+		float cMaxY = Float.NEGATIVE_INFINITY;
+		float cMaxZ = Float.NEGATIVE_INFINITY;
+		for (int i = start; i < end; i++) {
+			int p = primitives[i];
+			growBounds(b, n, boxes, 6 * p);
+			float cx = centroids[3 * p];
+			float cy = centroids[3 * p + 1];
+			float cz = centroids[3 * p + 2];
+			cMinX = Math.min(cMinX, cx);
+			cMinY = Math.min(cMinY, cy);
+			cMinZ = Math.min(cMinZ, cz);
+			cMaxX = Math.max(cMaxX, cx);
+			cMaxY = Math.max(cMaxY, cy);
+			cMaxZ = Math.max(cMaxZ, cz);
+		}
+		
+		if (count <= MAX_LEAF_SIZE) {
+			makeLeaf(node, start, count);
+			return;
+		}
+		
+		int axis = 0;
+		float min = cMinX;
+		float extent = cMaxX - cMinX;
+		if (cMaxY - cMinY > extent) {
+			axis = 1;
+			min = cMinY;
+			extent = cMaxY - cMinY;
+		}
+		if (cMaxZ - cMinZ > extent) {
+			axis = 2;
+			min = cMinZ;
+			extent = cMaxZ - cMinZ;
+		}
+		
+		int mid;
+		if (extent > 0) {
+			mid = partition(boxes, node, start, end, axis, min, extent);
+			if (mid < 0) {
+				makeLeaf(node, start, count);
+				return;
+			}
+		} else {
+			mid = (start + end) >>> 1;
+		}
+		
+		int left = nodeCount;
+		nodeCount += 2;
+		nodeData[2 * node] = left;
+		nodeData[2 * node + 1] = 0;
+		buildNode(boxes, left, start, mid);
+		buildNode(boxes, left + 1, mid, end);
+	}
+	
+	/**
+	 * Splits the primitives at the cheapest bin border.
+	 * @return index of the first primitive of the right child or -1 if a leaf is cheaper
+	 */
+	private int partition(float[] boxes, int node, int start, int end, int axis, float min, float extent) {
+		Arrays.fill(binCounts, 0);
+		for (int i = 0; i < BINS; i++) {
+			resetBounds(binBounds, 6 * i);
+		}
+		float scale = BINS / extent;
+		for (int i = start; i < end; i++) {
+			int p = primitives[i];
+			int bin = Math.min(BINS - 1, (int) ((centroids[3 * p + axis] - min) * scale));
+			binCounts[bin]++;
+			growBounds(binBounds, 6 * bin, boxes, 6 * p);
+		}
+		
+		// Sweep from the right to get the cost of all right sides, then from the left to find the best split
+		float[] acc = splitBounds;
+		resetBounds(acc, 0);
+		int accCount = 0;
+		for (int i = BINS - 1; i > 0; i--) {
+			growBounds(acc, 0, binBounds, 6 * i);
+			accCount += binCounts[i];
+			rightCosts[i] = accCount == 0 ? 0 : accCount * area(acc, 0);
+		}
+		
+		resetBounds(acc, 0);
+		accCount = 0;
+		int best = -1;
+		float bestCost = Float.POSITIVE_INFINITY;
+		for (int i = 0; i < BINS - 1; i++) {
+			growBounds(acc, 0, binBounds, 6 * i);
+			accCount += binCounts[i];
+			float cost = (accCount == 0 ? 0 : accCount * area(acc, 0)) + rightCosts[i + 1];
+			if (accCount > 0 && accCount < end - start && cost < bestCost) {
+				best = i;
+				bestCost = cost;
+			}
+		}
+		
+		float nodeArea = area(nodeBounds, 6 * node);
+		int count = end - start;
+		if (best < 0) {
+			return (start + end) >>> 1;
+		}
+		if (count <= 4 * MAX_LEAF_SIZE && count * nodeArea <= TRAVERSAL_COST * nodeArea + bestCost) {
+			return -1;
+		}
+		
+		int i = start;
+		int j = end - 1;
+		while (i <= j) {
+			int p = primitives[i];
+			int bin = Math.min(BINS - 1, (int) ((centroids[3 * p + axis] - min) * scale));
+			if (bin <= best) {
+				i++;
+			} else {
+				primitives[i] = primitives[j];
+				primitives[j] = p;
+				j--;
+			}
+		}
+		return i;
+	}
+	
+	private void makeLeaf(int node, int start, int count) {
+		nodeData[2 * node] = start;
+		nodeData[2 * node + 1] = count;
+	}
+	
+	/**
+	 * Updates the boxes of the tree after the primitives have moved. The number of primitives must not have changed.
+	 * @param boxes new boxes of the primitives
+	 */
+	public void refit(float[] boxes) {
+		for (int node = nodeCount - 1; node >= 0; node--) {
+			int n = 6 * node;
+			resetBounds(nodeBounds, n);
+			int first = nodeData[2 * node];
+			int count = nodeData[2 * node + 1];
+			if (count > 0) {
+				for (int i = first; i < first + count; i++) {
+					growBounds(nodeBounds, n, boxes, 6 * primitives[i]);
+				}
+			} else {
+				growBounds(nodeBounds, n, nodeBounds, 6 * first);
+				growBounds(nodeBounds, n, nodeBounds, 6 * (first + 1));
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of primitives of the last build().
+	 * @return number of primitives
+	 */
+	public int getPrimitiveCount() {
+		return primitiveCount;
+	}
+	
+	/**
+	 * Copies the box around all primitives.
+	 * @param dst array to write minX, minY, minZ, maxX, maxY, maxZ to
+	 * @param offset index to start writing at
+	 */
+	public void getBounds(float[] dst, int offset) {
+		if (nodeCount == 0) {
+			Arrays.fill(dst, offset, offset + 6, 0f);
+		} else {
+			System.arraycopy(nodeBounds, 0, dst, offset, 6);
+		}
+	}
+	
+	/**
+	 * Returns the primitive of the nearest hit of the last raycast().
+	 * @return index of the primitive or -1 if nothing has been hit
+	 */
+	public int getHitPrimitive() {
+		return hitPrimitive;
+	}
+	
+	/**
+	 * Finds the nearest primitive hit by a ray. Nodes are visited front to back and skipped if they are farther away
+	 * than the nearest hit so far.
+	 * @param ox x coordinate of the ray origin
+	 * @param oy y coordinate of the ray origin
+	 * @param oz z coordinate of the ray origin
+	 * @param dx x component of the ray direction
+	 * @param dy y component of the ray direction
+	 * @param dz z component of the ray direction
+	 * @param maxDistance maximum distance along the ray in units of the direction length
+	 * @param handler handler testing single primitives
+	 * @return distance of the nearest hit or Float.POSITIVE_INFINITY if nothing has been hit
+	 */
+	public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance,
+			IRayHandler handler) {
+		hitPrimitive = -1;
+		if (nodeCount == 0) {
+			return Float.POSITIVE_INFINITY;
+		}
+		float ix = 1f / dx;
+		float iy = 1f / dy;
+		float iz = 1f / dz;
+		float best = maxDistance;
+		
+		float entry = intersectBox(0, ox, oy, oz, ix, iy, iz, best);
+		if (entry == Float.POSITIVE_INFINITY) {
+			return Float.POSITIVE_INFINITY;
+		}
+		int top = 0;
+		stack[top] = 0;
+		stackDistances[top++] = entry;
+		while (top > 0) {
+			top--;
+			if (stackDistances[top] > best) {
+				continue;
+			}
+			int node = stack[top];
+			int first = nodeData[2 * node];
+			int count = nodeData[2 * node + 1];
+			if (count > 0) {
+				for (int i = first; i < first + count; i++) {
+					float distance = handler.intersect(primitives[i], best);
+					// A miss returns infinity, which must not count as a hit if the range is infinite
+					if (distance <= best && distance != Float.POSITIVE_INFINITY) {
+						best = distance;
+						hitPrimitive = primitives[i];
+					}
+				}
+			} else {
+				float left = intersectBox(first, ox, oy, oz, ix, iy, iz, best);
+				float right = intersectBox(first + 1, ox, oy, oz, ix, iy, iz, best);
+				if (top + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, 2 * stack.length);
+					stackDistances = Arrays.copyOf(stackDistances, stack.length);
+				}
+				// Push the farther child first, so the nearer one is visited next
+				if (left <= right) {
+					top = push(top, first + 1, right);
+					top = push(top, first, left);
+				} else {
+					top = push(top, first, left);
+					top = push(top, first + 1, right);
+				}
+			}
+		}
+		return hitPrimitive < 0 ? Float.POSITIVE_INFINITY : best;
+	}
+	
+	private int push(int top, int node, float distance) {
+		if (distance != Float.POSITIVE_INFINITY) {
+			stack[top] = node;
+			stackDistances[top] = distance;
+			return top + 1;
+		}
+		return top;
+	}
+	
+	private float intersectBox(int node, float ox, float oy, float oz, float ix, float iy, float iz, float max) {
+		// Rays parallel to a slab are tested by their origin, the slab distances would be NaN for an origin on a border
+		int n = 6 * node;
+		float near = 0f;
+		float far = Float.POSITIVE_INFINITY;
+		if (Float.isInfinite(ix)) {
+			if (ox < nodeBounds[n] || ox > nodeBounds[n + 3]) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else {
+			float t0 = (nodeBounds[n] - ox) * ix;
+			float t1 = (nodeBounds[n + 3] - ox) * ix;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		if (Float.isInfinite(iy)) {
+			if (oy < nodeBounds[n + 1] || oy > nodeBounds[n + 4]) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else {
+			float t0 = (nodeBounds[n + 1] - oy) * iy;
+			float t1 = (nodeBounds[n + 4] - oy) * iy;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		if (Float.isInfinite(iz)) {
+			if (oz < nodeBounds[n + 2] || oz > nodeBounds[n + 5]) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else {
+			float t0 = (nodeBounds[n + 2] - oz) * iz;
+			float t1 = (nodeBounds[n + 5] - oz) * iz;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		return near <= far && near <= max ? near : Float.POSITIVE_INFINITY;
+	}
+	
+	/**
+	 * Finds all primitives whose boxes overlap a box.
+	 * @param minX minimum x coordinate of the box
+	 * @param minY minimum y coordinate of the box
+	 * @param minZ minimum z coordinate of the box
+	 * @param maxX maximum x coordinate of the box
+	 * @param maxY maximum y coordinate of the box
+	 * @param maxZ maximum z coordinate of the box
+	 * @param result array to write the indices of the primitives to
+	 * @return number of found primitives, at most the length of result
+	 */
+	public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] result) {
+		if (nodeCount == 0) {
+			return 0;
+		}
+		int found = 0;
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0 && found < result.length) {
+			int node = stack[--top];
+			int n = 6 * node;
+			if (nodeBounds[n] > maxX || nodeBounds[n + 1] > maxY || nodeBounds[n + 2] > maxZ
+					|| nodeBounds[n + 3] < minX || nodeBounds[n + 4] < minY || nodeBounds[n + 5] < minZ) {
+				continue;
+			}
+			int first = nodeData[2 * node];
+			int count = nodeData[2 * node + 1];
+			if (count > 0) {
+				for (int i = first; i < first + count && found < result.length; i++) {
+					result[found++] = primitives[i];
+				}
+			} else {
+				if (top + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, 2 * stack.length);
+					stackDistances = Arrays.copyOf(stackDistances, stack.length);
+				}
+				stack[top++] = first + 1;
+				stack[top++] = first;
+			}
+		}
+		return found;
+	}
+	
+	private static void resetBounds(float[] b, int n) {
+		b[n] = Float.POSITIVE_INFINITY;
+		b[n + 1] = Float.POSITIVE_INFINITY;
+		b[n + 2] = Float.POSITIVE_INFINITY;
+		b[n + 3] = Float.NEGATIVE_INFINITY;
+		b[n + 4] = Float.NEGATIVE_INFINITY;
+		b[n + 5] = Float.NEGATIVE_INFINITY;
+	}
+	
+	private static void growBounds(float[] b, int n, float[] src, int s) {
+		b[n] = Math.min(b[n], src[s]);
+		b[n + 1] = Math.min(b[n + 1], src[s + 1]);
+		b[n + 2] = Math.min(b[n + 2], src[s + 2]);
+		b[n + 3] = Math.max(b[n + 3], src[s + 3]);
+		b[n + 4] = Math.max(b[n + 4], src[s + 4]);
+		b[n + 5] = Math.max(b[n + 5], src[s + 5]);
+	}
+	
+	private static float area(float[] b, int n) {
+		float x = b[n + 3] - b[n];
+		float y = b[n + 4] - b[n + 1];
+		float z = b[n + 5] - b[n + 2];
+		return x * y + y * z + z * x;
+	}
+}
@@ -0,0 +1,235 @@
+package info.flowersoft.gameframe.spatial;
+
+import java.util.Arrays;
+
+/**
+ * A loose quadtree divides a square area of the ground plane recursively into four quadrants. The bounds of every
+ * node are extended by half its size on each side, so an object can be stored in a node by its center alone: it goes
+ * into the deepest level whose nodes are at least twice as big as its radius. Inserting and moving objects doesn't
+ * need any search or splitting.</br>
+ *
+ * All nodes exist from the beginning and are addressed by level and position, each node knows how many objects its
+ * subtree contains, so queries skip empty parts. Unlike a grid the quadtree handles objects of very different sizes
+ * well. Objects outside the area are kept in the root node and are tested by every query.
+ *
+ * @author Lobby Divinus
+ */
+public class LooseQuadtree extends SpatialIndex {
+	
+	/**
+	 * Maximum number of levels below the root.
+	 */
+	public static final int MAX_DEPTH = 10;
+	
+	private final float minX;
+	
+	private final float minZ;
+	
+	private final float size;
+	
+	private final int depth;
+	
+	private final int[] levelOffsets;
+	
+	private final int[] heads;
+	
+	private final int[] counts;
+	
+	private final int[] next;
+	
+	private final int[] prev;
+	
+	private final int[] itemNodes;
+	
+	private final int[] stackLevels;
+	
+	private final int[] stackXs;
+	
+	private final int[] stackZs;
+	
+	/**
+	 * Creates a new loose quadtree.
+	 * @param capacity maximum number of objects, ids must be smaller
+	 * @param minX minimum x coordinate of the area
+	 * @param minZ minimum z coordinate of the area
+	 * @param size width of the square area
+	 * @param depth number of levels below the root, at most MAX_DEPTH. The smallest nodes have a width of
+	 * size / 2^depth, which should be about the size of the smallest objects.
+	 */
+	public LooseQuadtree(int capacity, float minX, float minZ, float size, int depth) {
+		super(capacity);
+		if (depth < 0 || depth > MAX_DEPTH) {
+			throw new IllegalArgumentException("Depth must be between 0 and " + MAX_DEPTH);
+		}
+		this.minX = minX;
+		this.minZ = minZ;
+		this.size = size;
+		this.depth = depth;
+		
+		levelOffsets = new int[depth + 2];
+		for (int level = 0; level <= depth; level++) {
+			levelOffsets[level + 1] = levelOffsets[level] + (1 << (2 * level));
+		}
+		heads = new int[levelOffsets[depth + 1]];
+		counts = new int[heads.length];
+		Arrays.fill(heads, -1);
+		
+		next = new int[capacity];
+		prev = new int[capacity];
+		itemNodes = new int[capacity];
+		stackLevels = new int[3 * depth + 4];
+		stackXs = new int[stackLevels.length];
+		stackZs = new int[stackLevels.length];
+	}
+	
+	@Override
+	protected void addEntry(int id) {
+		link(id, getNode(id));
+	}
+	
+	@Override
+	protected void removeEntry(int id) {
+		unlink(id);
+	}
+	
+	@Override
+	protected void moveEntry(int id, float oldX, float oldZ) {
+		int node = getNode(id);
+		if (node != itemNodes[id]) {
+			unlink(id);
+			link(id, node);
+		}
+	}
+	
+	@Override
+	protected void rebuildEntries() {
+		Arrays.fill(heads, -1);
+		Arrays.fill(counts, 0);
+		for (int id = 0; id < getCapacity(); id++) {
+			if (contains(id)) {
+				link(id, getNode(id));
+			}
+		}
+	}
+	
+	@Override
+	protected float getSearchRadius() {
+		return size / (1 << depth);
+	}
+	
+	private int getNode(int id) {
+		float x = (xs[id] - minX) / size;
+		float z = (zs[id] - minZ) / size;
+		if (x < 0 || x >= 1 || z < 0 || z >= 1) {
+			return 0;
+		}
+		
+		// Deepest level whose nodes are at least twice as big as the object
+		float r = radii[id] / size;
+		int level = depth;
+		while (level > 0 && 2 * r > 1f / (1 << level)) {
+			level--;
+		}
+		
+		int cells = 1 << level;
+		return levelOffsets[level] + (int) (z * cells) * cells + (int) (x * cells);
+	}
+	
+	@Override
+	protected void visit(float qMinX, float qMinZ, float qMaxX, float qMaxZ) {
+		if (counts[0] == 0) {
+			return;
+		}
+		visitNode(0);
+		
+		int top = pushChildren(0, 0, 0, 0);
+		while (top > 0) {
+			top--;
+			int level = stackLevels[top];
+			int ix = stackXs[top];
+			int iz = stackZs[top];
+			int cells = 1 << level;
+			int node = levelOffsets[level] + iz * cells + ix;
+			if (counts[node] == 0) {
+				continue;
+			}
+			
+			// Loose bounds of the node
+			float nodeSize = size / cells;
+			float x0 = minX + (ix - 0.5f) * nodeSize;
+			float z0 = minZ + (iz - 0.5f) * nodeSize;
+			float x1 = x0 + 2 * nodeSize;
+			float z1 = z0 + 2 * nodeSize;
+			if (x0 > qMaxX || z0 > qMaxZ || x1 < qMinX || z1 < qMinZ) {
+				continue;
+			}
+			
+			visitNode(node);
+			top = pushChildren(top, level, ix, iz);
+		}
+	}
+	
+	private int pushChildren(int top, int level, int ix, int iz) {
+		if (level == depth) {
+			return top;
+		}
+		for (int i = 0; i < 4; i++) {
+			stackLevels[top + i] = level + 1;
+			stackXs[top + i] = 2 * ix + (i & 1);
+			stackZs[top + i] = 2 * iz + (i >> 1);
+		}
+		return top + 4;
+	}
+	
+	private void visitNode(int node) {
+		int id = heads[node];
+		while (id >= 0) {
+			int following = next[id];
+			test(id);
+			id = following;
+		}
+	}
+	
+	private void link(int id, int node) {
+		int head = heads[node];
+		next[id] = head;
+		prev[id] = -1;
+		if (head >= 0) {
+			prev[head] = id;
+		}
+		heads[node] = id;
+		itemNodes[id] = node;
+		changeCounts(node, 1);
+	}
+	
+	private void unlink(int id) {
+		int n = next[id];
+		int p = prev[id];
+		if (p >= 0) {
+			next[p] = n;
+		} else {
+			heads[itemNodes[id]] = n;
+		}
+		if (n >= 0) {
+			prev[n] = p;
+		}
+		changeCounts(itemNodes[id], -1);
+	}
+	
+	private void changeCounts(int node, int delta) {
+		// Walk up to the root, the parent of a node is at half its position one level above
+		int level = 0;
+		while (node >= levelOffsets[level + 1]) {
+			level++;
+		}
+		int index = node - levelOffsets[level];
+		int ix = index & ((1 << level) - 1);
+		int iz = index >> level;
+		while (level >= 0) {
+			counts[levelOffsets[level] + (iz << level) + ix] += delta;
+			ix >>= 1;
+			iz >>= 1;
+			level--;
+		}
+	}
+}
@@ -0,0 +1,417 @@
+package info.flowersoft.gameframe.spatial;
+
+import info.flowersoft.gameframe.spatial.BoundingVolumeHierarchy.IRayHandler;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.threed.jpct.Camera;
+import com.threed.jpct.FrameBuffer;
+import com.threed.jpct.Interact2D;
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Mesh;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+/**
+ * A scene bvh is a two level bounding volume hierarchy for picking and overlap queries against many objects. The top
+ * level contains the world space boxes of the objects and is refitted by update() every frame, so objects may move
+ * freely. The bottom level contains the triangles of an object in object space. It is built once per mesh and shared
+ * by all objects with the same mesh, rays are transformed into object space instead of transforming the
+ * triangles.</br>
+ *
+ * Objects can be added with or without triangles. Without triangles only their bounding boxes are hit, which is
+ * enough for small or fast moving objects. Invisible objects are never hit. Queries don't allocate anything and must
+ * be done by one thread at a time.
+ *
+ * @author Lobby Divinus
+ */
+public class SceneBVH {
+	
+	private final BoundingVolumeHierarchy tree;
+	
+	private final Map<Mesh, TriangleBVH> meshTrees;
+	
+	private final IRayHandler handler;
+	
+	private final Matrix matrix;
+	
+	private final float[] dump;
+	
+	private final SimpleVector vector;
+	
+	private final SimpleVector direction;
+	
+	private Object3D[] objects;
+	
+	private TriangleBVH[] meshes;
+	
+	private float[] localBoxes;
+	
+	private float[] boxes;
+	
+	private float[] inverses;
+	
+	private int count;
+	
+	private boolean changed;
+	
+	private float rayOX;
+	private float rayOY;
+	private float rayOZ;
+	private float rayDX;
+	private float rayDY;
+	private float rayDZ;
+	
+	private Object3D hitObject;
+	
+	private float hitDistance;
+	
+	private int hitTriangle;
+	
+	private int nearestTriangle;
+	
+	/**
+	 * Creates a new empty scene bvh.
+	 */
+	public SceneBVH() {
+		tree = new BoundingVolumeHierarchy();
+		meshTrees = new IdentityHashMap<Mesh, TriangleBVH>();
+		matrix = new Matrix();
+		dump = new float[16];
+		vector = new SimpleVector();
+		direction = new SimpleVector();
+		objects = new Object3D[16];
+		meshes = new TriangleBVH[16];
+		localBoxes = new float[6 * 16];
+		boxes = new float[6 * 16];
+		inverses = new float[16 * 16];
+		hitTriangle = -1;
+		
+		handler = new IRayHandler() {
+			@Override
+			public float intersect(int primitive, float maxDistance) {
+				return intersectObject(primitive, maxDistance);
+			}
+		};
+	}
+	
+	/**
+	 * Adds an object. The top level is rebuilt by the next update().
+	 * @param obj object to add, it must have been built before
+	 * @param triangles true to hit the triangles of the object, false to only hit its bounding box. Objects with
+	 * triangles must not be stripped and their meshes must not be changed afterwards.
+	 */
+	public void add(Object3D obj, boolean triangles) {
+		if (count == objects.length) {
+			int size = 2 * count;
+			objects = Arrays.copyOf(objects, size);
+			meshes = Arrays.copyOf(meshes, size);
+			localBoxes = Arrays.copyOf(localBoxes, 6 * size);
+			boxes = Arrays.copyOf(boxes, 6 * size);
+			inverses = Arrays.copyOf(inverses, 16 * size);
+		}
+		
+		objects[count] = obj;
+		if (triangles) {
+			TriangleBVH mesh = meshTrees.get(obj.getMesh());
+			if (mesh == null) {
+				mesh = new TriangleBVH(obj);
+				meshTrees.put(obj.getMesh(), mesh);
+			}
+			meshes[count] = mesh;
+			mesh.getBounds(localBoxes, 6 * count);
+		} else {
+			meshes[count] = null;
+			float[] box = obj.getMesh().getBoundingBox();
+			int b = 6 * count;
+			localBoxes[b] = box[0];
+			localBoxes[b + 1] = box[2];
+			localBoxes[b + 2] = box[4];
+			localBoxes[b + 3] = box[1];
+			localBoxes[b + 4] = box[3];
+			localBoxes[b + 5] = box[5];
+		}
+		count++;
+		changed = true;
+	}
+	
+	/**
+	 * Removes an object. The top level is rebuilt by the next update(), queries must not be done before.
+	 * @param obj object to remove
+	 * @return false if the object hasn't been added
+	 */
+	public boolean remove(Object3D obj) {
+		for (int i = 0; i < count; i++) {
+			if (objects[i] == obj) {
+				count--;
+				objects[i] = objects[count];
+				meshes[i] = meshes[count];
+				System.arraycopy(localBoxes, 6 * count, localBoxes, 6 * i, 6);
+				objects[count] = null;
+				meshes[count] = null;
+				changed = true;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Removes all objects and forgets the triangle trees of their meshes.
+	 */
+	public void clear() {
+		Arrays.fill(objects, 0, count, null);
+		Arrays.fill(meshes, 0, count, null);
+		meshTrees.clear();
+		count = 0;
+		changed = true;
+	}
+	
+	/**
+	 * Returns the number of objects.
+	 * @return number of objects
+	 */
+	public int getObjectCount() {
+		return count;
+	}
+	
+	/**
+	 * Updates the world space boxes of all objects and refits the top level, or rebuilds it if objects have been
+	 * added or removed. Should be called once per frame after the objects have been moved.
+	 */
+	public void update() {
+		for (int i = 0; i < count; i++) {
+			Object3D obj = objects[i];
+			obj.getInverseWorldTransformation(matrix);
+			matrix.fillDump(dump);
+			System.arraycopy(dump, 0, inverses, 16 * i, 16);
+			obj.getWorldTransformation(matrix);
+			matrix.fillDump(dump);
+			transformBox(i);
+		}
+		
+		if (changed) {
+			tree.build(boxes, count);
+			changed = false;
+		} else {
+			tree.refit(boxes);
+		}
+	}
+	
+	/**
+	 * Rebuilds the top level at the next update(). Refitting keeps the tree valid, but if objects have moved far
+	 * from where they were on the last rebuild, queries get slower.
+	 */
+	public void invalidate() {
+		changed = true;
+	}
+	
+	private void transformBox(int i) {
+		// Transform center and extents of the box, jPCT matrices transform row vectors
+		int b = 6 * i;
+		float cx = 0.5f * (localBoxes[b] + localBoxes[b + 3]);
+		float cy = 0.5f * (localBoxes[b + 1] + localBoxes[b + 4]);
+		float cz = 0.5f * (localBoxes[b + 2] + localBoxes[b + 5]);
+		float ex = 0.5f * (localBoxes[b + 3] - localBoxes[b]);
+		float ey = 0.5f * (localBoxes[b + 4] - localBoxes[b + 1]);
+		float ez = 0.5f * (localBoxes[b + 5] - localBoxes[b + 2]);
+		for (int k = 0; k < 3; k++) {
+			float c = cx * dump[k] + cy * dump[4 + k] + cz * dump[8 + k] + dump[12 + k];
+			float e = ex * Math.abs(dump[k]) + ey * Math.abs(dump[4 + k]) + ez * Math.abs(dump[8 + k]);
+			boxes[b + k] = c - e;
+			boxes[b + 3 + k] = c + e;
+		}
+	}
+	
+	/**
+	 * Finds the nearest object hit by a ray in world space.
+	 * @param ox x coordinate of the ray origin
+	 * @param oy y coordinate of the ray origin
+	 * @param oz z coordinate of the ray origin
+	 * @param dx x component of the ray direction, should be normalized
+	 * @param dy y component of the ray direction, should be normalized
+	 * @param dz z component of the ray direction, should be normalized
+	 * @param maxDistance maximum distance along the ray
+	 * @return the hit object or null
+	 */
+	public Object3D raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+		rayOX = ox;
+		rayOY = oy;
+		rayOZ = oz;
+		rayDX = dx;
+		rayDY = dy;
+		rayDZ = dz;
+		hitDistance = tree.raycast(ox, oy, oz, dx, dy, dz, maxDistance, handler);
+		int primitive = tree.getHitPrimitive();
+		if (primitive < 0) {
+			hitObject = null;
+			hitTriangle = -1;
+			return null;
+		}
+		
+		hitObject = objects[primitive];
+		hitTriangle = nearestTriangle;
+		return hitObject;
+	}
+	
+	/**
+	 * Casts many rays at once.
+	 * @param rays origin and direction of each ray, 6 floats per ray
+	 * @param rayCount number of rays
+	 * @param maxDistance maximum distance along the rays
+	 * @param hitObjects array to write the hit object of each ray to, null for rays without hit
+	 * @param hitDistances array to write the hit distance of each ray to, may be null
+	 * @return number of rays that hit an object
+	 */
+	public int raycast(float[] rays, int rayCount, float maxDistance, Object3D[] hitObjects, float[] hitDistances) {
+		int hits = 0;
+		for (int i = 0; i < rayCount; i++) {
+			int r = 6 * i;
+			Object3D obj = raycast(rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5],
+					maxDistance);
+			hitObjects[i] = obj;
+			if (hitDistances != null) {
+				hitDistances[i] = hitDistance;
+			}
+			if (obj != null) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+	
+	/**
+	 * Finds the nearest object under a point on the screen.
+	 * @param camera camera used for rendering
+	 * @param buffer frame buffer used for rendering
+	 * @param x x coordinate on the screen
+	 * @param y y coordinate on the screen
+	 * @param maxDistance maximum distance from the camera
+	 * @return the hit object or null
+	 */
+	public Object3D pick(Camera camera, FrameBuffer buffer, int x, int y, float maxDistance) {
+		Interact2D.reproject2D3DWS(camera, buffer, x, y, direction);
+		direction.normalize(direction);
+		camera.getPosition(vector);
+		return raycast(vector.x, vector.y, vector.z, direction.x, direction.y, direction.z, maxDistance);
+	}
+	
+	/**
+	 * Returns the object hit by the last raycast() or pick().
+	 * @return the object or null
+	 */
+	public Object3D getHitObject() {
+		return hitObject;
+	}
+	
+	/**
+	 * Returns the distance of the last hit.
+	 * @return distance along the ray or Float.POSITIVE_INFINITY if nothing has been hit
+	 */
+	public float getHitDistance() {
+		return hitDistance;
+	}
+	
+	/**
+	 * Returns the polygon of the hit object that has been hit by the last raycast() or pick().
+	 * @return polygon id or -1 if nothing or only the bounding box of an object has been hit
+	 */
+	public int getHitPolygon() {
+		return hitTriangle;
+	}
+	
+	/**
+	 * Finds all visible objects whose world space boxes overlap a box.
+	 * @param minX minimum x coordinate of the box
+	 * @param minY minimum y coordinate of the box
+	 * @param minZ minimum z coordinate of the box
+	 * @param maxX maximum x coordinate of the box
+	 * @param maxY maximum y coordinate of the box
+	 * @param maxZ maximum z coordinate of the box
+	 * @param indices temporary array for the tree query, its length limits the number of results
+	 * @param result array to write the objects to, must be at least as long as indices
+	 * @return number of found objects
+	 */
+	public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] indices,
+			Object3D[] result) {
+		int found = tree.query(minX, minY, minZ, maxX, maxY, maxZ, indices);
+		int visible = 0;
+		for (int i = 0; i < found; i++) {
+			Object3D obj = objects[indices[i]];
+			if (obj.getVisibility()) {
+				result[visible++] = obj;
+			}
+		}
+		return visible;
+	}
+	
+	private float intersectObject(int index, float maxDistance) {
+		if (!objects[index].getVisibility()) {
+			return Float.POSITIVE_INFINITY;
+		}
+		
+		// Transform the ray into object space, distances along it stay the same
+		int m = 16 * index;
+		float[] inv = inverses;
+		float ox = rayOX * inv[m] + rayOY * inv[m + 4] + rayOZ * inv[m + 8] + inv[m + 12];
+		float oy = rayOX * inv[m + 1] + rayOY * inv[m + 5] + rayOZ * inv[m + 9] + inv[m + 13];
+		float oz = rayOX * inv[m + 2] + rayOY * inv[m + 6] + rayOZ * inv[m + 10] + inv[m + 14];
+		float dx = rayDX * inv[m] + rayDY * inv[m + 4] + rayDZ * inv[m + 8];
+		float dy = rayDX * inv[m + 1] + rayDY * inv[m + 5] + rayDZ * inv[m + 9];
+		float dz = rayDX * inv[m + 2] + rayDY * inv[m + 6] + rayDZ * inv[m + 10];
+		
+		TriangleBVH mesh = meshes[index];
+		float distance;
+		if (mesh != null) {
+			distance = mesh.raycast(ox, oy, oz, dx, dy, dz, maxDistance);
+		} else {
+			distance = intersectLocalBox(6 * index, ox, oy, oz, dx, dy, dz, maxDistance);
+		}
+		
+		// The tree accepts every hit that isn't farther than maxDistance, so this is the nearest one in the end. A miss
+		// returns infinity, which must not count as a hit if the range is infinite.
+		if (distance <= maxDistance && distance != Float.POSITIVE_INFINITY) {
+			nearestTriangle = mesh != null ? mesh.getHitTriangle() : -1;
+		}
+		return distance;
+	}
+	
+	private float intersectLocalBox(int b, float ox, float oy, float oz, float dx, float dy, float dz, float max) {
+		// Rays parallel to a slab are tested by their origin, the slab distances would be NaN for an origin on a border
+		float near = 0f;
+		float far = max;
+		if (dx == 0f) {
+			if (ox < localBoxes[b] || ox > localBoxes[b + 3]) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else {
+			float t0 = (localBoxes[b] - ox) / dx;
+			float t1 = (localBoxes[b + 3] - ox) / dx;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		if (dy == 0f) {
+			if (oy < localBoxes[b + 1] || oy > localBoxes[b + 4]) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else {
+			float t0 = (localBoxes[b + 1] - oy) / dy;
+			float t1 = (localBoxes[b + 4] - oy) / dy;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		if (dz == 0f) {
+			if (oz < localBoxes[b + 2] || oz > localBoxes[b + 5]) {
+				return Float.POSITIVE_INFINITY;
+			}
+		} else {
+			float t0 = (localBoxes[b + 2] - oz) / dz;
+			float t1 = (localBoxes[b + 5] - oz) / dz;
+			near = Math.max(near, Math.min(t0, t1));
+			far = Math.min(far, Math.max(t0, t1));
+		}
+		return near <= far ? near : Float.POSITIVE_INFINITY;
+	}
+}
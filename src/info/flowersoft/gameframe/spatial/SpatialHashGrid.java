@@ -0,0 +1,222 @@
+package info.flowersoft.gameframe.spatial;
+
+import java.util.Arrays;
+
+/**
+ * A spatial hash grid divides the ground plane into square cells of equal size. Only cells that contain objects are
+ * stored, in a hash table, so the grid has no bounds. Each object is stored in the cell of its center, the objects of
+ * a cell are linked by int arrays.</br>
+ *
+ * The grid works best if most objects are about as big as a cell or smaller and queries cover a few cells. Moving an
+ * object within its cell costs nothing but storing the new position.
+ *
+ * @author Lobby Divinus
+ */
+public class SpatialHashGrid extends SpatialIndex {
+	
+	private static final long EMPTY = Long.MIN_VALUE;
+	
+	private final float cellSize;
+	
+	private final float inverseCellSize;
+	
+	private long[] cellKeys;
+	
+	private int[] cellHeads;
+	
+	private int cellCount;
+	
+	private final int[] next;
+	
+	private final int[] prev;
+	
+	private final int[] itemCells;
+	
+	/**
+	 * Creates a new spatial hash grid.
+	 * @param capacity maximum number of objects, ids must be smaller
+	 * @param cellSize width of a cell
+	 */
+	public SpatialHashGrid(int capacity, float cellSize) {
+		super(capacity);
+		this.cellSize = cellSize;
+		inverseCellSize = 1f / cellSize;
+		next = new int[capacity];
+		prev = new int[capacity];
+		itemCells = new int[capacity];
+		cellKeys = new long[64];
+		cellHeads = new int[64];
+		Arrays.fill(cellKeys, EMPTY);
+	}
+	
+	/**
+	 * Returns the width of a cell.
+	 * @return cell size
+	 */
+	public float getCellSize() {
+		return cellSize;
+	}
+	
+	@Override
+	protected void addEntry(int id) {
+		link(id, getCell(getKey(xs[id], zs[id]), true));
+	}
+	
+	@Override
+	protected void removeEntry(int id) {
+		unlink(id);
+	}
+	
+	@Override
+	protected void moveEntry(int id, float oldX, float oldZ) {
+		long key = getKey(xs[id], zs[id]);
+		if (key != getKey(oldX, oldZ)) {
+			unlink(id);
+			link(id, getCell(key, true));
+		}
+	}
+	
+	@Override
+	protected void rebuildEntries() {
+		// Start with an empty table, so cells that have become empty are dropped
+		Arrays.fill(cellKeys, EMPTY);
+		cellCount = 0;
+		for (int id = 0; id < getCapacity(); id++) {
+			if (contains(id)) {
+				link(id, getCell(getKey(xs[id], zs[id]), true));
+			}
+		}
+	}
+	
+	@Override
+	protected void visit(float minX, float minZ, float maxX, float maxZ) {
+		int minCX = (int) Math.floor((minX - maxRadius) * inverseCellSize);
+		int minCZ = (int) Math.floor((minZ - maxRadius) * inverseCellSize);
+		int maxCX = (int) Math.floor((maxX + maxRadius) * inverseCellSize);
+		int maxCZ = (int) Math.floor((maxZ + maxRadius) * inverseCellSize);
+		
+		// Infinite ranges end up at the int limits, so the sizes are long and checked one by one before multiplying
+		long width = (long) maxCX - minCX + 1;
+		long height = (long) maxCZ - minCZ + 1;
+		if (width > cellCount || height > cellCount || width * height > cellCount) {
+			// Cheaper to look at all stored cells than at all cells of the range
+			for (int slot = 0; slot < cellKeys.length; slot++) {
+				long key = cellKeys[slot];
+				if (key != EMPTY) {
+					int cx = (int) (key >> 32);
+					int cz = (int) key;
+					if (cx >= minCX && cx <= maxCX && cz >= minCZ && cz <= maxCZ) {
+						visitCell(slot);
+					}
+				}
+			}
+			return;
+		}
+		
+		// Long counters, an int would wrap around after Integer.MAX_VALUE and never end the loop
+		for (long cz = minCZ; cz <= maxCZ; cz++) {
+			for (long cx = minCX; cx <= maxCX; cx++) {
+				int slot = getCell(cx << 32 | (cz & 0xffffffffL), false);
+				if (slot >= 0) {
+					visitCell(slot);
+				}
+			}
+		}
+	}
+	
+	private void visitCell(int slot) {
+		int id = cellHeads[slot];
+		while (id >= 0) {
+			int following = next[id];
+			test(id);
+			id = following;
+		}
+	}
+	
+	@Override
+	protected float getSearchRadius() {
+		return cellSize;
+	}
+	
+	private long getKey(float x, float z) {
+		int cx = (int) Math.floor(x * inverseCellSize);
+		int cz = (int) Math.floor(z * inverseCellSize);
+		return (long) cx << 32 | (cz & 0xffffffffL);
+	}
+	
+	private int getCell(long key, boolean create) {
+		int mask = cellKeys.length - 1;
+		long hash = key * 0x9e3779b97f4a7c15L;
+		int slot = (int) (hash ^ hash >>> 32) & mask;
+		while (cellKeys[slot] != EMPTY) {
+			if (cellKeys[slot] == key) {
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if (!create) {
+			return -1;
+		}
+		
+		if (2 * (cellCount + 1) > cellKeys.length) {
+			grow();
+			return getCell(key, true);
+		}
+		cellKeys[slot] = key;
+		cellHeads[slot] = -1;
+		cellCount++;
+		return slot;
+	}
+	
+	private void grow() {
+		long[] oldKeys = cellKeys;
+		int[] oldHeads = cellHeads;
+		int used = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			if (oldKeys[slot] != EMPTY && oldHeads[slot] >= 0) {
+				used++;
+			}
+		}
+		
+		// Empty cells are dropped, so the table only grows if most cells are in use
+		int size = Math.max(64, Integer.highestOneBit(Math.max(4 * used, 1)) << 1);
+		cellKeys = new long[size];
+		cellHeads = new int[size];
+		Arrays.fill(cellKeys, EMPTY);
+		cellCount = 0;
+		for (int slot = 0; slot < oldKeys.length; slot++) {
+			int head = oldHeads[slot];
+			if (oldKeys[slot] != EMPTY && head >= 0) {
+				int newSlot = getCell(oldKeys[slot], true);
+				cellHeads[newSlot] = head;
+				for (int id = head; id >= 0; id = next[id]) {
+					itemCells[id] = newSlot;
+				}
+			}
+		}
+	}
+	
+	private void link(int id, int slot) {
+		int head = cellHeads[slot];
+		next[id] = head;
+		prev[id] = -1;
+		if (head >= 0) {
+			prev[head] = id;
+		}
+		cellHeads[slot] = id;
+		itemCells[id] = slot;
+	}
+	
+	private void unlink(int id) {
+		int n = next[id];
+		int p = prev[id];
+		if (p >= 0) {
+			next[p] = n;
+		} else {
+			cellHeads[itemCells[id]] = n;
+		}
+		if (n >= 0) {
+			prev[n] = p;
+		}
+	}
+}
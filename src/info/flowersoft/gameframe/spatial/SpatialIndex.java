@@ -0,0 +1,480 @@
+package info.flowersoft.gameframe.spatial;
+
+import java.util.Arrays;
+
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+/**
+ * A spatial index finds game objects near a position on the ground plane, so proximity checks for AI, collisions or
+ * sound don't have to compare every object with every other one. Objects are identified by int ids between 0 and
+ * the capacity, their positions are x and z coordinates and each may have a radius.</br>
+ *
+ * Objects can be moved one by one with move(), or all positions can be written at once followed by rebuild(). Objects
+ * added with track() follow the translation of an Object3D whenever update() is called. Query results are written
+ * into int arrays or passed to a query handler. Queries don't allocate anything, but they aren't reentrant: a query
+ * handler must not start another query of the same index.
+ *
+ * @author Lobby Divinus
+ */
+public abstract class SpatialIndex {
+	
+	/**
+	 * A query handler receives the objects found by a query.
+	 *
+	 * @author Lobby Divinus
+	 */
+	public interface IQueryHandler {
+		
+		/**
+		 * Is called for every found object.
+		 * @param id id of the object
+		 */
+		void found(int id);
+	}
+	
+	private static final int MODE_RADIUS = 0;
+	
+	private static final int MODE_BOX = 1;
+	
+	private static final int MODE_NEAREST = 2;
+	
+	private final int capacity;
+	
+	/**
+	 * X coordinates of all objects.
+	 */
+	protected final float[] xs;
+	
+	/**
+	 * Z coordinates of all objects.
+	 */
+	protected final float[] zs;
+	
+	/**
+	 * Radii of all objects.
+	 */
+	protected final float[] radii;
+	
+	private final boolean[] inserted;
+	
+	private final Object3D[] tracked;
+	
+	private final SimpleVector translation;
+	
+	private int size;
+	
+	private int trackedCount;
+	
+	/**
+	 * Largest radius of all objects ever inserted.
+	 */
+	protected float maxRadius;
+	
+	private int mode;
+	private float queryX;
+	private float queryZ;
+	private float queryRadius;
+	private float queryMinX;
+	private float queryMinZ;
+	private float queryMaxX;
+	private float queryMaxZ;
+	
+	private int[] result;
+	private int found;
+	private IQueryHandler handler;
+	
+	private int[] nearIds;
+	private float[] nearDistances;
+	
+	/**
+	 * Creates a new spatial index.
+	 * @param capacity maximum number of objects, ids must be smaller
+	 */
+	protected SpatialIndex(int capacity) {
+		this.capacity = capacity;
+		xs = new float[capacity];
+		zs = new float[capacity];
+		radii = new float[capacity];
+		inserted = new boolean[capacity];
+		tracked = new Object3D[capacity];
+		translation = new SimpleVector();
+		nearIds = new int[16];
+		nearDistances = new float[16];
+	}
+	
+	/**
+	 * Adds an object to the data structure of the index. Its position and radius have already been stored.
+	 * @param id id of the object
+	 */
+	protected abstract void addEntry(int id);
+	
+	/**
+	 * Removes an object from the data structure of the index.
+	 * @param id id of the object
+	 */
+	protected abstract void removeEntry(int id);
+	
+	/**
+	 * Updates the data structure after an object has moved. The new position has already been stored.
+	 * @param id id of the object
+	 * @param oldX previous x coordinate
+	 * @param oldZ previous z coordinate
+	 */
+	protected abstract void moveEntry(int id, float oldX, float oldZ);
+	
+	/**
+	 * Recreates the whole data structure from the stored positions of all inserted objects.
+	 */
+	protected abstract void rebuildEntries();
+	
+	/**
+	 * Calls test() for every object that might overlap a rectangle. Objects may be passed even if they don't overlap,
+	 * but no object may be passed twice.
+	 * @param minX minimum x coordinate
+	 * @param minZ minimum z coordinate
+	 * @param maxX maximum x coordinate
+	 * @param maxZ maximum z coordinate
+	 */
+	protected abstract void visit(float minX, float minZ, float maxX, float maxZ);
+	
+	/**
+	 * Returns the radius the search of findNearest() starts with. It is doubled until enough objects are found.
+	 * @return the initial search radius
+	 */
+	protected abstract float getSearchRadius();
+	
+	/**
+	 * Returns the maximum number of objects.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of inserted objects.
+	 * @return number of objects
+	 */
+	public int getSize() {
+		return size;
+	}
+	
+	/**
+	 * Returns whether an object has been inserted.
+	 * @param id id of the object
+	 * @return true if the object is in the index
+	 */
+	public boolean contains(int id) {
+		return inserted[id];
+	}
+	
+	/**
+	 * Returns the x coordinate of an object.
+	 * @param id id of the object
+	 * @return x coordinate
+	 */
+	public float getX(int id) {
+		return xs[id];
+	}
+	
+	/**
+	 * Returns the z coordinate of an object.
+	 * @param id id of the object
+	 * @return z coordinate
+	 */
+	public float getZ(int id) {
+		return zs[id];
+	}
+	
+	/**
+	 * Inserts an object.
+	 * @param id id of the object, between 0 and capacity - 1
+	 * @param x x coordinate
+	 * @param z z coordinate
+	 * @param radius radius of the object, 0 for points
+	 */
+	public void insert(int id, float x, float z, float radius) {
+		if (inserted[id]) {
+			throw new IllegalStateException("Object " + id + " has already been inserted");
+		}
+		xs[id] = x;
+		zs[id] = z;
+		radii[id] = radius;
+		maxRadius = Math.max(maxRadius, radius);
+		inserted[id] = true;
+		size++;
+		addEntry(id);
+	}
+	
+	/**
+	 * Moves an object.
+	 * @param id id of the object
+	 * @param x new x coordinate
+	 * @param z new z coordinate
+	 */
+	public void move(int id, float x, float z) {
+		if (!inserted[id]) {
+			throw new IllegalStateException("Object " + id + " hasn't been inserted");
+		}
+		float oldX = xs[id];
+		float oldZ = zs[id];
+		if (oldX != x || oldZ != z) {
+			xs[id] = x;
+			zs[id] = z;
+			moveEntry(id, oldX, oldZ);
+		}
+	}
+	
+	/**
+	 * Removes an object. Tracked objects aren't tracked anymore afterwards.
+	 * @param id id of the object
+	 */
+	public void remove(int id) {
+		if (inserted[id]) {
+			removeEntry(id);
+			inserted[id] = false;
+			size--;
+			if (tracked[id] != null) {
+				tracked[id] = null;
+				trackedCount--;
+			}
+		}
+	}
+	
+	/**
+	 * Sets the positions of all inserted objects at once and rebuilds the index. This is faster than moving most of
+	 * the objects one by one.
+	 * @param positions x and z coordinate of each id, entries of ids that aren't inserted are ignored
+	 */
+	public void rebuild(float[] positions) {
+		for (int id = 0; id < capacity; id++) {
+			if (inserted[id]) {
+				xs[id] = positions[2 * id];
+				zs[id] = positions[2 * id + 1];
+			}
+		}
+		rebuildEntries();
+	}
+	
+	/**
+	 * Inserts an object that follows the translation of an Object3D.
+	 * @param id id of the object
+	 * @param obj object whose translation is used as position
+	 * @param radius radius of the object
+	 */
+	public void track(int id, Object3D obj, float radius) {
+		obj.getTranslation(translation);
+		insert(id, translation.x, translation.z, radius);
+		tracked[id] = obj;
+		trackedCount++;
+	}
+	
+	/**
+	 * Returns the Object3D an object follows.
+	 * @param id id of the object
+	 * @return the tracked Object3D or null
+	 */
+	public Object3D getTracked(int id) {
+		return tracked[id];
+	}
+	
+	/**
+	 * Moves all tracked objects to the current translations of their Object3Ds. Should be called once per frame after
+	 * the objects have been moved.
+	 */
+	public void update() {
+		if (trackedCount == 0) {
+			return;
+		}
+		for (int id = 0; id < capacity; id++) {
+			if (tracked[id] != null) {
+				tracked[id].getTranslation(translation);
+				move(id, translation.x, translation.z);
+			}
+		}
+	}
+	
+	/**
+	 * Finds all objects overlapping a circle.
+	 * @param x x coordinate of the center
+	 * @param z z coordinate of the center
+	 * @param radius radius of the circle
+	 * @param result array to write the ids to
+	 * @return number of found objects, at most the length of result
+	 */
+	public int queryRadius(float x, float z, float radius, int[] result) {
+		startRadius(x, z, radius, result, null);
+		return finish();
+	}
+	
+	/**
+	 * Finds all objects overlapping a circle.
+	 * @param x x coordinate of the center
+	 * @param z z coordinate of the center
+	 * @param radius radius of the circle
+	 * @param handler handler called for every found object
+	 * @return number of found objects
+	 */
+	public int queryRadius(float x, float z, float radius, IQueryHandler handler) {
+		startRadius(x, z, radius, null, handler);
+		return finish();
+	}
+	
+	/**
+	 * Finds all objects overlapping a rectangle.
+	 * @param minX minimum x coordinate
+	 * @param minZ minimum z coordinate
+	 * @param maxX maximum x coordinate
+	 * @param maxZ maximum z coordinate
+	 * @param result array to write the ids to
+	 * @return number of found objects, at most the length of result
+	 */
+	public int queryBox(float minX, float minZ, float maxX, float maxZ, int[] result) {
+		startBox(minX, minZ, maxX, maxZ, result, null);
+		return finish();
+	}
+	
+	/**
+	 * Finds all objects overlapping a rectangle.
+	 * @param minX minimum x coordinate
+	 * @param minZ minimum z coordinate
+	 * @param maxX maximum x coordinate
+	 * @param maxZ maximum z coordinate
+	 * @param handler handler called for every found object
+	 * @return number of found objects
+	 */
+	public int queryBox(float minX, float minZ, float maxX, float maxZ, IQueryHandler handler) {
+		startBox(minX, minZ, maxX, maxZ, null, handler);
+		return finish();
+	}
+	
+	/**
+	 * Finds the nearest objects to a position. The radii of the objects are ignored.
+	 * @param x x coordinate
+	 * @param z z coordinate
+	 * @param maxDistance maximum distance of the objects
+	 * @param exclude id that isn't returned, for example the object searching for neighbours, or -1
+	 * @param result array to write the ids to, sorted by distance. Its length is the number of objects to find.
+	 * @return number of found objects
+	 */
+	public int findNearest(float x, float z, float maxDistance, int exclude, int[] result) {
+		int k = result.length;
+		int available = exclude >= 0 && inserted[exclude] ? size - 1 : size;
+		float searchRadius = getSearchRadius();
+		int count;
+		while (true) {
+			float limit = Math.min(searchRadius, maxDistance);
+			mode = MODE_NEAREST;
+			queryX = x;
+			queryZ = z;
+			queryRadius = limit;
+			this.result = null;
+			this.handler = null;
+			found = 0;
+			visit(x - limit, z - limit, x + limit, z + limit);
+			count = found;
+			int excluded = 0;
+			for (int i = 0; i < count; i++) {
+				if (nearIds[i] == exclude) {
+					excluded = 1;
+				}
+			}
+			if (count - excluded >= k || count - excluded >= available || limit >= maxDistance
+					|| Float.isInfinite(searchRadius)) {
+				break;
+			}
+			searchRadius *= 2;
+		}
+		
+		// Partial selection sort of the k nearest
+		int n = 0;
+		for (int i = 0; i < count && n < k; i++) {
+			int min = i;
+			for (int j = i + 1; j < count; j++) {
+				if (nearDistances[j] < nearDistances[min]) {
+					min = j;
+				}
+			}
+			int id = nearIds[min];
+			nearIds[min] = nearIds[i];
+			nearDistances[min] = nearDistances[i];
+			nearIds[i] = id;
+			if (id != exclude) {
+				result[n++] = id;
+			}
+		}
+		return n;
+	}
+	
+	private void startRadius(float x, float z, float radius, int[] result, IQueryHandler handler) {
+		mode = MODE_RADIUS;
+		queryX = x;
+		queryZ = z;
+		queryRadius = radius;
+		this.result = result;
+		this.handler = handler;
+		found = 0;
+		visit(x - radius, z - radius, x + radius, z + radius);
+	}
+	
+	private void startBox(float minX, float minZ, float maxX, float maxZ, int[] result, IQueryHandler handler) {
+		mode = MODE_BOX;
+		queryMinX = minX;
+		queryMinZ = minZ;
+		queryMaxX = maxX;
+		queryMaxZ = maxZ;
+		this.result = result;
+		this.handler = handler;
+		found = 0;
+		visit(minX, minZ, maxX, maxZ);
+	}
+	
+	private int finish() {
+		result = null;
+		handler = null;
+		return found;
+	}
+	
+	/**
+	 * Tests an object against the current query. Has to be called by visit().
+	 * @param id id of the object
+	 */
+	protected final void test(int id) {
+		float x = xs[id];
+		float z = zs[id];
+		if (mode == MODE_NEAREST) {
+			float dx = x - queryX;
+			float dz = z - queryZ;
+			float distance2 = dx * dx + dz * dz;
+			if (distance2 <= queryRadius * queryRadius) {
+				if (found == nearIds.length) {
+					nearIds = Arrays.copyOf(nearIds, 2 * found);
+					nearDistances = Arrays.copyOf(nearDistances, 2 * found);
+				}
+				nearIds[found] = id;
+				nearDistances[found++] = distance2;
+			}
+			return;
+		}
+		
+		float r = radii[id];
+		if (mode == MODE_RADIUS) {
+			float dx = x - queryX;
+			float dz = z - queryZ;
+			float max = queryRadius + r;
+			if (dx * dx + dz * dz > max * max) {
+				return;
+			}
+		} else if (x + r < queryMinX || x - r > queryMaxX || z + r < queryMinZ || z - r > queryMaxZ) {
+			return;
+		}
+		
+		if (handler != null) {
+			handler.found(id);
+			found++;
+		} else if (found < result.length) {
+			result[found++] = id;
+		}
+	}
+}
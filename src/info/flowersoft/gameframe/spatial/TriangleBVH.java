@@ -0,0 +1,184 @@
+package info.flowersoft.gameframe.spatial;
+
+import info.flowersoft.gameframe.mesh.MeshBuilder;
+import info.flowersoft.gameframe.spatial.BoundingVolumeHierarchy.IRayHandler;
+
+import com.threed.jpct.Matrix;
+import com.threed.jpct.Object3D;
+import com.threed.jpct.PolygonManager;
+import com.threed.jpct.SimpleVector;
+
+/**
+ * A triangle bvh is a bounding volume hierarchy over the triangles of a static mesh in object space. It is the bottom
+ * level of a SceneBVH and can be shared by all objects using the same mesh. Both sides of the triangles are hit.
+ *
+ * @author Lobby Divinus
+ */
+public class TriangleBVH {
+	
+	private final float[] triangles;
+	
+	private final int triangleCount;
+	
+	private final BoundingVolumeHierarchy tree;
+	
+	private final IRayHandler handler;
+	
+	private float rayOX;
+	private float rayOY;
+	private float rayOZ;
+	private float rayDX;
+	private float rayDY;
+	private float rayDZ;
+	
+	/**
+	 * Creates a new triangle bvh of a mesh.
+	 * @param mesh mesh in object space
+	 */
+	public TriangleBVH(MeshBuilder mesh) {
+		triangleCount = mesh.getTriangleCount();
+		triangles = new float[9 * triangleCount];
+		float[] coords = mesh.getCoords();
+		int[] indices = mesh.getIndices();
+		for (int i = 0; i < 3 * triangleCount; i++) {
+			System.arraycopy(coords, 3 * indices[i], triangles, 3 * i, 3);
+		}
+		tree = new BoundingVolumeHierarchy();
+		handler = createHandler();
+		build();
+	}
+	
+	/**
+	 * Creates a new triangle bvh of the mesh of an object. Only the object space coordinates are used, so the tree
+	 * stays valid when the object is moved.
+	 * @param obj object that must have been built before and must not be stripped
+	 */
+	public TriangleBVH(Object3D obj) {
+		PolygonManager mgr = obj.getPolygonManager();
+		triangleCount = mgr.getMaxPolygonID();
+		triangles = new float[9 * triangleCount];
+		Matrix identity = new Matrix();
+		SimpleVector vertex = new SimpleVector();
+		int i = 0;
+		for (int p = 0; p < triangleCount; p++) {
+			for (int v = 0; v < 3; v++) {
+				mgr.getTransformedVertex(p, v, identity, vertex);
+				triangles[i++] = vertex.x;
+				triangles[i++] = vertex.y;
+				triangles[i++] = vertex.z;
+			}
+		}
+		tree = new BoundingVolumeHierarchy();
+		handler = createHandler();
+		build();
+	}
+	
+	private void build() {
+		float[] boxes = new float[6 * triangleCount];
+		for (int t = 0; t < triangleCount; t++) {
+			int c = 9 * t;
+			for (int k = 0; k < 3; k++) {
+				boxes[6 * t + k] = Math.min(triangles[c + k], Math.min(triangles[c + 3 + k], triangles[c + 6 + k]));
+				boxes[6 * t + 3 + k] = Math.max(triangles[c + k], Math.max(triangles[c + 3 + k], triangles[c + 6 + k]));
+			}
+		}
+		tree.build(boxes, triangleCount);
+	}
+	
+	private IRayHandler createHandler() {
+		return new IRayHandler() {
+			@Override
+			public float intersect(int primitive, float maxDistance) {
+				return intersectTriangle(primitive);
+			}
+		};
+	}
+	
+	/**
+	 * Returns the number of triangles.
+	 * @return number of triangles
+	 */
+	public int getTriangleCount() {
+		return triangleCount;
+	}
+	
+	/**
+	 * Copies the box around all triangles in object space.
+	 * @param dst array to write minX, minY, minZ, maxX, maxY, maxZ to
+	 * @param offset index to start writing at
+	 */
+	public void getBounds(float[] dst, int offset) {
+		tree.getBounds(dst, offset);
+	}
+	
+	/**
+	 * Returns the triangle of the nearest hit of the last raycast().
+	 * @return index of the triangle, which is the polygon id for trees of objects, or -1 if nothing has been hit
+	 */
+	public int getHitTriangle() {
+		return tree.getHitPrimitive();
+	}
+	
+	/**
+	 * Finds the nearest triangle hit by a ray in object space.
+	 * @param ox x coordinate of the ray origin
+	 * @param oy y coordinate of the ray origin
+	 * @param oz z coordinate of the ray origin
+	 * @param dx x component of the ray direction
+	 * @param dy y component of the ray direction
+	 * @param dz z component of the ray direction
+	 * @param maxDistance maximum distance along the ray in units of the direction length
+	 * @return distance of the hit or Float.POSITIVE_INFINITY if no triangle has been hit
+	 */
+	public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+		rayOX = ox;
+		rayOY = oy;
+		rayOZ = oz;
+		rayDX = dx;
+		rayDY = dy;
+		rayDZ = dz;
+		return tree.raycast(ox, oy, oz, dx, dy, dz, maxDistance, handler);
+	}
+	
+	private float intersectTriangle(int triangle) {
+		// Moeller-Trumbore without culling
+		int c = 9 * triangle;
+		float ax = triangles[c];
+		float ay = triangles[c + 1];
+		float az = triangles[c + 2];
+		float e1x = triangles[c + 3] - ax;
+		float e1y = triangles[c + 4] - ay;
+		float e1z = triangles[c + 5] - az;
+		float e2x = triangles[c + 6] - ax;
+		float e2y = triangles[c + 7] - ay;
+		float e2z = triangles[c + 8] - az;
+		
+		float px = rayDY * e2z - rayDZ * e2y;
+		float py = rayDZ * e2x - rayDX * e2z;
+		float pz = rayDX * e2y - rayDY * e2x;
+		float det = e1x * px + e1y * py + e1z * pz;
+		if (det == 0) {
+			return Float.POSITIVE_INFINITY;
+		}
+		float inv = 1f / det;
+		
+		float tx = rayOX - ax;
+		float ty = rayOY - ay;
+		float tz = rayOZ - az;
+		float u = (tx * px + ty * py + tz * pz) * inv;
+		if (u < 0 || u > 1) {
+			return Float.POSITIVE_INFINITY;
+		}
+		
+		float qx = ty * e1z - tz * e1y;
+		float qy = tz * e1x - tx * e1z;
+		float qz = tx * e1y - ty * e1x;
+		float v = (rayDX * qx + rayDY * qy + rayDZ * qz) * inv;
+		if (v < 0 || u + v > 1) {
+			return Float.POSITIVE_INFINITY;
+		}
+		
+		float t = (e2x * qx + e2y * qy + e2z * qz) * inv;
+		return t >= 0 ? t : Float.POSITIVE_INFINITY;
+	}
+}
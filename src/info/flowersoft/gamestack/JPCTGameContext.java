@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 
+import info.flowersoft.gameframe.description.SpriteSheet;
 import info.flowersoft.gameframe.key.KeyMapper;
 import info.flowersoft.gameframe.touch.TouchMapper;
 import android.content.Context;
@@ -190,6 +191,27 @@ public class JPCTGameContext {
 		return context.getResources().openRawResource(resID);
 	}
 	
+	/**
+	 * Loads a binary sprite sheet from the given resource. The texture of the sheet has to be loaded before its image
+	 * description is used.
+	 * @param resId Resource id of the sprite sheet.
+	 * @return The loaded sprite sheet.
+	 */
+	public SpriteSheet loadSpriteSheet(int resId) {
+		InputStream stream = openStream(resId);
+		try {
+			return SpriteSheet.read(stream);
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't load sprite sheet", e);
+		} finally {
+			try {
+				stream.close();
+			} catch (IOException e) {
+				// Nothing has been written, so the sheet is complete anyway
+			}
+		}
+	}
+	
 	/**
 	 * Current display width. Zero if onSizeChanged has never been called before.
 	 * @return Display width in pixels.
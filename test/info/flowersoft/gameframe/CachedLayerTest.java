@@ -0,0 +1,102 @@
+package info.flowersoft.gameframe;
+
+import com.threed.jpct.FrameBuffer;
+
+/**
+ * Plain Java checks of the dirty tracking and scheduling of CachedLayer. The drawing is replaced by a counter, so no
+ * GPU is needed. Run main(), it throws an AssertionError on the first failing check.
+ *
+ * @author Lobby Divinus
+ */
+public class CachedLayerTest {
+	
+	public static void main(String[] args) {
+		layerWithoutSizeIsSkipped();
+		cleanLayerIsSkipped();
+		invalidateRendersOnce();
+		resolutionChangeRendersAgain();
+		fixedSizeIgnoresResolution();
+		System.out.println("CachedLayerTest passed");
+	}
+	
+	private static void layerWithoutSizeIsSkipped() {
+		CountingLayer layer = new CountingLayer("layer");
+		check(layer.isDirty(), "a new layer must be dirty");
+		check(!layer.needsRendering(), "a layer without size must not be rendered");
+		check(!layer.render(null), "render() must skip a layer without size");
+		check(layer.draws == 0, "nothing must be drawn without size");
+	}
+	
+	private static void cleanLayerIsSkipped() {
+		CountingLayer layer = new CountingLayer("layer");
+		layer.setResolution(800, 480);
+		check(layer.render(null), "a dirty layer must be rendered");
+		check(!layer.isDirty() && !layer.needsRendering(), "a rendered layer must be clean");
+		for (int i = 0; i < 10; i++) {
+			check(!layer.render(null), "a clean layer must be skipped");
+		}
+		check(layer.draws == 1 && layer.getRenderCount() == 1, "expected one drawing, got " + layer.draws);
+	}
+	
+	private static void invalidateRendersOnce() {
+		CountingLayer layer = new CountingLayer("layer");
+		layer.setResolution(800, 480);
+		layer.render(null);
+		layer.invalidate();
+		layer.invalidate();
+		check(layer.needsRendering(), "an invalidated layer must be rendered");
+		layer.render(null);
+		layer.render(null);
+		check(layer.draws == 2, "several invalidations must cause one drawing, got " + layer.draws);
+	}
+	
+	private static void resolutionChangeRendersAgain() {
+		CountingLayer layer = new CountingLayer("layer");
+		layer.setResolution(800, 480);
+		layer.render(null);
+		layer.setResolution(1280, 720);
+		check(layer.getWidth() == 1280 && layer.getHeight() == 720, "the layer must take the resolution as size");
+		check(layer.needsRendering(), "a resolution change must make the layer dirty");
+		
+		// A new surface with the same size may have lost the texture as well
+		layer.render(null);
+		layer.setResolution(1280, 720);
+		check(layer.needsRendering(), "a new surface must make the layer dirty");
+	}
+	
+	private static void fixedSizeIgnoresResolution() {
+		CountingLayer layer = new CountingLayer("layer", 256, 128);
+		check(layer.needsRendering(), "a fixed size layer can be rendered without resolution");
+		layer.render(null);
+		layer.setResolution(1280, 720);
+		check(layer.getWidth() == 256 && layer.getHeight() == 128, "a fixed size must not change");
+		check(layer.needsRendering(), "a resolution change must make a fixed size layer dirty too");
+	}
+	
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+	
+	/**
+	 * Layer counting its drawings instead of drawing.
+	 */
+	private static class CountingLayer extends CachedLayer {
+		
+		private int draws;
+		
+		CountingLayer(String name) {
+			super(name);
+		}
+		
+		CountingLayer(String name, int width, int height) {
+			super(name, width, height);
+		}
+		
+		@Override
+		protected void draw(FrameBuffer buffer) {
+			draws++;
+		}
+	}
+}
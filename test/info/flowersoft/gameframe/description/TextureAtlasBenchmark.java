@@ -0,0 +1,77 @@
+package info.flowersoft.gameframe.description;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Measures packing 1500 random sprites of 8 to 67 pixels. The MaxRectsPacker alone places them sorted by height into
+ * one 2048 page. The TextureAtlas packs them with their pixels and 2 pixels of padding into 512 pages, which also
+ * shows how many pages are needed compared to the covered area. Run main() on a desktop JVM, jPCT has to be on the
+ * class path for the pages of the atlas.
+ *
+ * @author Lobby Divinus
+ */
+public class TextureAtlasBenchmark {
+	
+	private static final int SPRITES = 1500;
+	
+	private static final int PADDING = 2;
+	
+	private static final int ROUNDS = 10;
+	
+	public static void main(String[] args) {
+		Random random = new Random(5);
+		int[] widths = new int[SPRITES];
+		int[] heights = new int[SPRITES];
+		for (int i = 0; i < SPRITES; i++) {
+			widths[i] = 8 + random.nextInt(60);
+			heights[i] = 8 + random.nextInt(60);
+		}
+		
+		for (int round = 0; round < ROUNDS; round++) {
+			System.out.printf("round %d: packer %.1f ms, atlas %s%n", round, packRects(widths, heights) / 1e6,
+					packAtlas(widths, heights));
+		}
+	}
+	
+	private static long packRects(int[] widths, int[] heights) {
+		Integer[] order = new Integer[SPRITES];
+		for (int i = 0; i < SPRITES; i++) {
+			order[i] = i;
+		}
+		final int[] h = heights;
+		long start = System.nanoTime();
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return h[b] - h[a];
+			}
+		});
+		MaxRectsPacker packer = new MaxRectsPacker(2048, 2048);
+		int[] position = new int[2];
+		for (int i = 0; i < SPRITES; i++) {
+			int s = order[i];
+			if (!packer.insert(widths[s] + 2 * PADDING, heights[s] + 2 * PADDING, position)) {
+				throw new IllegalStateException("Sprites don't fit into 2048x2048");
+			}
+		}
+		return System.nanoTime() - start;
+	}
+	
+	private static String packAtlas(int[] widths, int[] heights) {
+		TextureAtlas atlas = new TextureAtlas("benchmark", 512, PADDING, true);
+		long area = 0;
+		for (int i = 0; i < SPRITES; i++) {
+			int[] pixels = new int[widths[i] * heights[i]];
+			Arrays.fill(pixels, i + 1);
+			atlas.add(pixels, widths[i], heights[i]);
+			area += (widths[i] + 2 * PADDING) * (heights[i] + 2 * PADDING);
+		}
+		long start = System.nanoTime();
+		atlas.pack();
+		long time = System.nanoTime() - start;
+		return String.format("%.1f ms, %d pages for %.1f pages of area", time / 1e6, atlas.getPageCount(),
+				area / (512.0 * 512.0));
+	}
+}
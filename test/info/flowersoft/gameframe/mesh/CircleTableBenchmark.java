@@ -0,0 +1,88 @@
+package info.flowersoft.gameframe.mesh;
+
+import info.flowersoft.gameframe.ExtendedPrimitives;
+
+/**
+ * Compares mass creation of cylinder meshes by ExtendedPrimitives.buildCylinder(), which reads the shared circle
+ * tables, with the same generator computing Math.cos and Math.sin per vertex like before. Only meshes are built, no
+ * objects, so the difference is the cost of the trigonometric functions. Run main() on a desktop JVM, jPCT has to be
+ * on the class path for loading ExtendedPrimitives.
+ *
+ * @author Lobby Divinus
+ */
+public class CircleTableBenchmark {
+	
+	private static final int QUADS = 32;
+	
+	private static final int COUNT = 20000;
+	
+	private static final int ROUNDS = 5;
+	
+	/**
+	 * Sum of some vertex coordinates, printed so the meshes can't be optimized away.
+	 */
+	private static float checksum;
+	
+	public static void main(String[] args) {
+		for (int round = 0; round < ROUNDS; round++) {
+			long table = measure(true);
+			long math = measure(false);
+			System.out.printf("%d cylinders with %d quads: tables %.1f ms, Math %.1f ms, %.1fx%n", COUNT, QUADS,
+					table / 1e6, math / 1e6, (double) math / table);
+		}
+		System.out.println("checksum " + checksum);
+	}
+	
+	private static long measure(boolean tables) {
+		long start = System.nanoTime();
+		for (int i = 0; i < COUNT; i++) {
+			MeshBuilder builder = tables ? ExtendedPrimitives.buildCylinder(0.5f, 1f, QUADS, true)
+					: buildCylinderWithMath(0.5f, 1f, QUADS);
+			checksum += builder.getCoords()[3 * (i % builder.getVertexCount())];
+		}
+		return System.nanoTime() - start;
+	}
+	
+	/**
+	 * Same mesh as ExtendedPrimitives.buildCylinder() with caps, but every vertex computes its angle again.
+	 */
+	private static MeshBuilder buildCylinderWithMath(float radius, float height, int quads) {
+		MeshBuilder builder = new MeshBuilder(2 * (quads + 1) + 2 * quads, 4 * quads - 4);
+		float halfHeight = height / 2;
+		
+		int top = builder.getVertexCount();
+		for (int i = 0; i < quads; i++) {
+			double angle = 2 * Math.PI * i / quads;
+			float x = (float) Math.cos(angle);
+			float y = (float) Math.sin(angle);
+			builder.addVertex(radius * x, -halfHeight, radius * y, 0f, -1f, 0f, 0.5f + 0.5f * x, 0.5f - 0.5f * y);
+		}
+		int bottom = builder.getVertexCount();
+		for (int i = 0; i < quads; i++) {
+			double angle = 2 * Math.PI * i / quads;
+			float x = (float) Math.cos(angle);
+			float y = (float) Math.sin(angle);
+			builder.addVertex(radius * x, halfHeight, radius * y, 0f, 1f, 0f, 0.5f - 0.5f * x, 0.5f - 0.5f * y);
+		}
+		for (int i = 1; i + 1 < quads; i++) {
+			builder.addTriangle(top, top + i, top + i + 1);
+			builder.addTriangle(bottom, bottom + i + 1, bottom + i);
+		}
+		
+		int side = builder.getVertexCount();
+		float uStep = 2f / quads;
+		for (int i = 0; i <= quads; i++) {
+			double angle = 2 * Math.PI * i / quads;
+			float x = (float) Math.cos(angle);
+			float y = (float) Math.sin(angle);
+			builder.addVertex(radius * x, -halfHeight, radius * y, x, 0f, y, i * uStep, 0f);
+			builder.addVertex(radius * x, halfHeight, radius * y, x, 0f, y, i * uStep, 1f);
+		}
+		for (int i = 0; i < quads; i++) {
+			int t = side + 2 * i;
+			builder.addTriangle(t, t + 1, t + 2);
+			builder.addTriangle(t + 2, t + 1, t + 3);
+		}
+		return builder;
+	}
+}
@@ -0,0 +1,99 @@
+package info.flowersoft.gameframe.mesh;
+
+import info.flowersoft.gameframe.ExtendedPrimitives;
+
+import com.threed.jpct.Object3D;
+import com.threed.jpct.SimpleVector;
+
+/**
+ * Compares building a highly tessellated torus through MeshBuilder with the former way of the primitive generators,
+ * which added every triangle corner as a new SimpleVector and let jPCT search for equal vertices. Needs jPCT on the
+ * class path, run main() on a desktop JVM. Prints the average build time and the heap retained by the built objects.
+ *
+ * @author Lobby Divinus
+ */
+public class MeshBuilderBenchmark {
+	
+	private static final int LENGTH_QUADS = 128;
+	
+	private static final int PIPE_QUADS = 64;
+	
+	private static final int WARMUP = 10;
+	
+	private static final int RUNS = 20;
+	
+	/**
+	 * Keeps the built objects reachable while the heap is measured.
+	 */
+	private static Object3D[] retained;
+	
+	public static void main(String[] args) {
+		for (int i = 0; i < WARMUP; i++) {
+			buildIndexed().build();
+			buildLegacy().build();
+		}
+		
+		System.out.println("Torus " + LENGTH_QUADS + "x" + PIPE_QUADS + ", " + 2 * LENGTH_QUADS * PIPE_QUADS
+				+ " triangles, average of " + RUNS + " builds");
+		measure("MeshBuilder", true);
+		measure("addTriangle", false);
+	}
+	
+	private static void measure(String name, boolean indexed) {
+		Object3D[] objects = new Object3D[RUNS];
+		long before = usedMemory();
+		long start = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			objects[i] = indexed ? buildIndexed() : buildLegacy();
+			objects[i].build();
+		}
+		long time = System.nanoTime() - start;
+		retained = objects;
+		long memory = usedMemory() - before;
+		retained = null;
+		System.out.printf("%-12s %8.2f ms %10d KB per object%n", name, time / 1e6 / RUNS, memory / 1024 / RUNS);
+	}
+	
+	private static Object3D buildIndexed() {
+		return ExtendedPrimitives.createTorus(0.35f, 0.15f, LENGTH_QUADS, PIPE_QUADS);
+	}
+	
+	/**
+	 * Builds the same torus like the generators did before MeshBuilder.
+	 */
+	private static Object3D buildLegacy() {
+		float radius = 0.35f;
+		float pipeRadius = 0.15f;
+		Object3D obj = new Object3D(2 * LENGTH_QUADS * PIPE_QUADS);
+		float uStep = 1f / LENGTH_QUADS;
+		float vStep = 1f / PIPE_QUADS;
+		for (int i = 0; i < PIPE_QUADS; i++) {
+			for (int j = 0; j < LENGTH_QUADS; j++) {
+				SimpleVector a = torusVertex(radius, pipeRadius, i, j);
+				SimpleVector b = torusVertex(radius, pipeRadius, i + 1, j);
+				SimpleVector c = torusVertex(radius, pipeRadius, i, j + 1);
+				SimpleVector d = torusVertex(radius, pipeRadius, i + 1, j + 1);
+				obj.addTriangle(a, j * uStep, i * vStep, b, j * uStep, (i + 1) * vStep, c, (j + 1) * uStep, i * vStep);
+				obj.addTriangle(c, (j + 1) * uStep, i * vStep, b, j * uStep, (i + 1) * vStep,
+						d, (j + 1) * uStep, (i + 1) * vStep);
+			}
+		}
+		return obj;
+	}
+	
+	private static SimpleVector torusVertex(float radius, float pipeRadius, int ring, int column) {
+		double pipeAngle = Math.PI + 2 * Math.PI * ring / PIPE_QUADS;
+		double angle = 2 * Math.PI * column / LENGTH_QUADS;
+		float ringRadius = radius + pipeRadius * (float) Math.cos(pipeAngle);
+		return new SimpleVector(ringRadius * (float) Math.cos(angle), pipeRadius * (float) Math.sin(pipeAngle),
+				ringRadius * (float) Math.sin(angle));
+	}
+	
+	private static long usedMemory() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
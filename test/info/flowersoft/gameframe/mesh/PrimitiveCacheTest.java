@@ -0,0 +1,119 @@
+package info.flowersoft.gameframe.mesh;
+
+import info.flowersoft.gameframe.mesh.PrimitiveCache.IPrimitiveFactory;
+
+import com.threed.jpct.Object3D;
+
+/**
+ * Plain Java checks that objects of a PrimitiveCache share mesh and compiled data of their template. The objects
+ * record the calls instead of talking to the GPU. Run main(), it throws an AssertionError on the first failing check.
+ *
+ * @author Lobby Divinus
+ */
+public class PrimitiveCacheTest {
+	
+	public static void main(String[] args) {
+		instancesShareCompiledData();
+		differentParametersGetOwnTemplates();
+		System.out.println("PrimitiveCacheTest passed");
+	}
+	
+	private static void instancesShareCompiledData() {
+		PrimitiveCache cache = new PrimitiveCache();
+		RecordingFactory factory = new RecordingFactory();
+		RecordingObject a = (RecordingObject) cache.get("custom", new float[] {1f}, factory);
+		RecordingObject b = (RecordingObject) cache.get("custom", new float[] {1f}, factory);
+		RecordingObject template = factory.created;
+		
+		check(factory.count == 1, "the template must be created once, got " + factory.count);
+		check(template.compiled && template.built, "the template must be compiled and built");
+		check(!template.compiledAfterBuild, "the template must be compiled before it is built");
+		check(a != template && b != template && a != b, "every request must return a new object");
+		check(a.getMesh() == template.getMesh() && b.getMesh() == template.getMesh(), "the mesh must be shared");
+		check(a.sharedWith == template && b.sharedWith == template, "the compiled data of the template must be shared");
+		check(a.sharedWithCompiled && b.sharedWithCompiled, "the template must be compiled before it is shared");
+		check(a.built && b.built, "the returned objects must be built");
+		check(cache.getHits() == 1 && cache.getMisses() == 1, "expected one hit and one miss");
+	}
+	
+	private static void differentParametersGetOwnTemplates() {
+		PrimitiveCache cache = new PrimitiveCache();
+		RecordingFactory factory = new RecordingFactory();
+		cache.get("custom", new float[] {1f}, factory);
+		RecordingObject first = factory.created;
+		RecordingObject obj = (RecordingObject) cache.get("custom", new float[] {2f}, factory);
+		check(factory.count == 2 && obj.sharedWith == factory.created && obj.sharedWith != first,
+				"other parameters must get their own template");
+	}
+	
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+	
+	/**
+	 * Factory counting the created templates.
+	 */
+	private static class RecordingFactory implements IPrimitiveFactory {
+		
+		private int count;
+		
+		private RecordingObject created;
+		
+		@Override
+		public Object3D create() {
+			count++;
+			created = new RecordingObject();
+			return created;
+		}
+	}
+	
+	/**
+	 * Object recording compilation, building and sharing. Its clones are recording objects as well.
+	 */
+	private static class RecordingObject extends Object3D {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private boolean compiled;
+		
+		private boolean built;
+		
+		private boolean compiledAfterBuild;
+		
+		private RecordingObject sharedWith;
+		
+		private boolean sharedWithCompiled;
+		
+		RecordingObject() {
+			super(2);
+		}
+		
+		RecordingObject(RecordingObject template) {
+			super(template, true);
+		}
+		
+		@Override
+		public Object3D cloneObject() {
+			return new RecordingObject(this);
+		}
+		
+		@Override
+		public void compile() {
+			compiled = true;
+			compiledAfterBuild = built;
+		}
+		
+		@Override
+		public void build() {
+			built = true;
+		}
+		
+		@Override
+		public void shareCompiledData(Object3D obj) {
+			sharedWith = (RecordingObject) obj;
+			sharedWithCompiled = sharedWith.compiled;
+		}
+	}
+}
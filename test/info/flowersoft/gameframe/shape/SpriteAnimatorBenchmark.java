@@ -0,0 +1,38 @@
+package info.flowersoft.gameframe.shape;
+
+import info.flowersoft.gameframe.description.SpriteSheet;
+
+/**
+ * Measures SpriteAnimator.update() for 10000 sprites playing an 8 frame loop at 12 frames per second, updated 1000
+ * times with 16 ms steps. Run main() on a desktop JVM, jPCT has to be on the class path for loading ImageShape.
+ *
+ * @author Lobby Divinus
+ */
+public class SpriteAnimatorBenchmark {
+	
+	private static final int SPRITES = 10000;
+	
+	private static final int UPDATES = 1000;
+	
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) {
+		for (int round = 0; round < ROUNDS; round++) {
+			SpriteAnimator animator = new SpriteAnimator(SPRITES);
+			int clip = animator.addClip(0, 8, 12, SpriteSheet.LOOP);
+			for (int i = 0; i < SPRITES; i++) {
+				animator.play(animator.add(), clip);
+			}
+			
+			long changed = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < UPDATES; i++) {
+				animator.update(0.016);
+				changed += animator.getChangedCount();
+			}
+			long time = System.nanoTime() - start;
+			System.out.printf("round %d: %.3f ms per update of %d sprites, %.1f%% of the frames changed%n", round,
+					time / 1e6 / UPDATES, SPRITES, 100.0 * changed / ((long) SPRITES * UPDATES));
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package info.flowersoft.gameframe.spatial;
+
+import info.flowersoft.gameframe.spatial.BoundingVolumeHierarchy.IRayHandler;
+
+/**
+ * Plain Java checks of the ray queries of BoundingVolumeHierarchy. Run main(), it throws an AssertionError on the
+ * first failing check.
+ *
+ * @author Lobby Divinus
+ */
+public class BoundingVolumeHierarchyTest {
+	
+	/**
+	 * A single box from 0, 0, 0 to 1, 1, 1 containing the triangle 0, 0, 0 / 1, 0, 0 / 0, 1, 0 in its z = 0 plane.
+	 */
+	private static final float[] BOX = {0f, 0f, 0f, 1f, 1f, 1f};
+	
+	private static final float EPSILON = 1e-5f;
+	
+	public static void main(String[] args) {
+		rayPastTrianglesWithInfiniteRange();
+		rayHittingTriangleWithInfiniteRange();
+		axisAlignedRayOnBoxBorder();
+		System.out.println("BoundingVolumeHierarchyTest passed");
+	}
+	
+	private static void rayPastTrianglesWithInfiniteRange() {
+		BoundingVolumeHierarchy tree = new BoundingVolumeHierarchy();
+		tree.build(BOX, 1);
+		
+		// Crosses the box, but passes the triangle in its upper right half
+		float distance = tree.raycast(0.9f, 0.9f, -1f, 0f, 0f, 1f, Float.POSITIVE_INFINITY, new TriangleHandler(
+				0.9f, 0.9f, -1f, 0f, 0f, 1f));
+		check(distance == Float.POSITIVE_INFINITY, "a miss must return infinity, got " + distance);
+		check(tree.getHitPrimitive() == -1, "a miss must not set a hit primitive, got " + tree.getHitPrimitive());
+	}
+	
+	private static void rayHittingTriangleWithInfiniteRange() {
+		BoundingVolumeHierarchy tree = new BoundingVolumeHierarchy();
+		tree.build(BOX, 1);
+		
+		float distance = tree.raycast(0.2f, 0.2f, -1f, 0f, 0f, 1f, Float.POSITIVE_INFINITY, new TriangleHandler(
+				0.2f, 0.2f, -1f, 0f, 0f, 1f));
+		check(Math.abs(distance - 1f) < EPSILON, "expected a hit at distance 1, got " + distance);
+		check(tree.getHitPrimitive() == 0, "expected primitive 0, got " + tree.getHitPrimitive());
+	}
+	
+	private static void axisAlignedRayOnBoxBorder() {
+		BoundingVolumeHierarchy tree = new BoundingVolumeHierarchy();
+		tree.build(BOX, 1);
+		
+		// Origin lies in the x = 0 and y = 0 planes of the box, the direction has zero x and y components
+		float distance = tree.raycast(0f, 0f, -1f, 0f, 0f, 1f, Float.POSITIVE_INFINITY, new TriangleHandler(
+				0f, 0f, -1f, 0f, 0f, 1f));
+		check(Math.abs(distance - 1f) < EPSILON, "a ray along the box border must reach the box, got " + distance);
+		
+		distance = tree.raycast(0f, 0f, -1f, -0f, -0f, 1f, Float.POSITIVE_INFINITY, new TriangleHandler(
+				0f, 0f, -1f, -0f, -0f, 1f));
+		check(Math.abs(distance - 1f) < EPSILON, "negative zero components must work too, got " + distance);
+		
+		distance = tree.raycast(-0.5f, 0.5f, -1f, 0f, 0f, 1f, Float.POSITIVE_INFINITY, new TriangleHandler(
+				-0.5f, 0.5f, -1f, 0f, 0f, 1f));
+		check(distance == Float.POSITIVE_INFINITY, "a parallel ray outside the box must miss, got " + distance);
+	}
+	
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+	
+	/**
+	 * Tests the ray against the triangle in the z = 0 plane of the box.
+	 */
+	private static class TriangleHandler implements IRayHandler {
+		
+		private final float ox;
+		
+		private final float oy;
+		
+		private final float oz;
+		
+		private final float dx;
+		
+		private final float dy;
+		
+		private final float dz;
+		
+		TriangleHandler(float ox, float oy, float oz, float dx, float dy, float dz) {
+			this.ox = ox;
+			this.oy = oy;
+			this.oz = oz;
+			this.dx = dx;
+			this.dy = dy;
+			this.dz = dz;
+		}
+		
+		@Override
+		public float intersect(int primitive, float maxDistance) {
+			if (dz == 0) {
+				return Float.POSITIVE_INFINITY;
+			}
+			float t = -oz / dz;
+			float x = ox + t * dx;
+			float y = oy + t * dy;
+			if (t < 0 || x < 0 || y < 0 || x + y > 1) {
+				return Float.POSITIVE_INFINITY;
+			}
+			return t;
+		}
+	}
+}
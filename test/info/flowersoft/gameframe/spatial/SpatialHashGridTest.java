@@ -0,0 +1,55 @@
+package info.flowersoft.gameframe.spatial;
+
+/**
+ * Plain Java checks of the queries of SpatialHashGrid with huge and infinite ranges, which used to loop over billions
+ * of cells. Run main(), it throws an AssertionError on the first failing check.
+ *
+ * @author Lobby Divinus
+ */
+public class SpatialHashGridTest {
+	
+	private static final int COUNT = 50;
+	
+	public static void main(String[] args) {
+		infiniteRadius();
+		hugeBox();
+		rangeAtIntLimit();
+		System.out.println("SpatialHashGridTest passed");
+	}
+	
+	private static void infiniteRadius() {
+		int found = createGrid().queryRadius(0f, 0f, Float.POSITIVE_INFINITY, new int[COUNT]);
+		check(found == COUNT, "an infinite radius must find all objects, got " + found);
+	}
+	
+	private static void hugeBox() {
+		int found = createGrid().queryBox(-1e30f, -1e30f, 1e30f, 1e30f, new int[COUNT]);
+		check(found == COUNT, "a huge box must find all objects, got " + found);
+		
+		found = createGrid().queryBox(0f, 0f, 5f, 5f, new int[COUNT]);
+		check(found == 1, "a small box must still find its objects, got " + found);
+	}
+	
+	private static void rangeAtIntLimit() {
+		SpatialHashGrid grid = createGrid();
+		grid.insert(COUNT, 3e12f, 0f, 0.5f);
+		
+		// The cell range ends at Integer.MAX_VALUE, a loop counting cells up to it must still end
+		int found = grid.queryBox(2.1e12f, -1f, Float.POSITIVE_INFINITY, 1f, new int[COUNT + 1]);
+		check(found == 1, "expected the far object only, got " + found);
+	}
+	
+	private static SpatialHashGrid createGrid() {
+		SpatialHashGrid grid = new SpatialHashGrid(COUNT + 1, 1f);
+		for (int i = 0; i < COUNT; i++) {
+			grid.insert(i, 3f * i, -2f * i, 0.5f);
+		}
+		return grid;
+	}
+	
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+}